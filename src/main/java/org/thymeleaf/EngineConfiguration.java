@@ -27,6 +27,7 @@
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 
 import org.thymeleaf.cache.ICacheManager;
 import org.thymeleaf.context.IEngineContextFactory;
@@ -75,6 +76,15 @@ public class EngineConfiguration implements IEngineConfiguration {
     private final ICacheManager cacheManager;
     private final IEngineContextFactory engineContextFactory;
     private final IDecoupledTemplateLogicResolver decoupledTemplateLogicResolver;
+    private final boolean eventCanonicalizationEnabled;
+    private final ExecutorService parallelIterationExecutor;
+    private final int parallelIterationThreshold;
+    private final boolean autoFlushAfterHead;
+    private final int autoFlushThreshold;
+    private final boolean templateCompilationEnabled;
+    private final int stringTemplateCacheMaxSize;
+    private final boolean compactTemplateModelsEnabled;
+    private final boolean fragmentPrecompositionEnabled;
     private TemplateManager templateManager;
     private final ConcurrentHashMap<TemplateMode,IModelFactory> modelFactories;
 
@@ -90,6 +100,20 @@ public class EngineConfiguration implements IEngineConfiguration {
             final ICacheManager cacheManager,
             final IEngineContextFactory engineContextFactory,
             final IDecoupledTemplateLogicResolver decoupledTemplateLogicResolver) {
+        this(templateResolvers, messageResolvers, linkBuilders, dialectConfigurations, cacheManager,
+                engineContextFactory, decoupledTemplateLogicResolver, new EngineSettings());
+    }
+
+
+    EngineConfiguration(
+            final Set<ITemplateResolver> templateResolvers,
+            final Set<IMessageResolver> messageResolvers,
+            final Set<ILinkBuilder> linkBuilders,
+            final Set<DialectConfiguration> dialectConfigurations,
+            final ICacheManager cacheManager,
+            final IEngineContextFactory engineContextFactory,
+            final IDecoupledTemplateLogicResolver decoupledTemplateLogicResolver,
+            final EngineSettings settings) {
 
         super();
 
@@ -101,6 +125,7 @@ public class EngineConfiguration implements IEngineConfiguration {
         // Cache Manager CAN be null
         Validate.notNull(engineContextFactory, "Engine Context Factory cannot be null");
         Validate.notNull(decoupledTemplateLogicResolver, "Decoupled Template Logic Resolver cannot be null");
+        Validate.notNull(settings, "Engine Settings cannot be null");
 
         final List<ITemplateResolver> templateResolversList = new ArrayList<ITemplateResolver>(templateResolvers);
         Collections.sort(templateResolversList, TemplateResolverComparator.INSTANCE);
@@ -120,6 +145,25 @@ public class EngineConfiguration implements IEngineConfiguration {
 
         this.decoupledTemplateLogicResolver = decoupledTemplateLogicResolver;
 
+        this.eventCanonicalizationEnabled = settings.eventCanonicalizationEnabled;
+
+        // Parallel iteration executor CAN be null (parallel iteration disabled)
+        this.parallelIterationExecutor = settings.parallelIterationExecutor;
+        this.parallelIterationThreshold = settings.parallelIterationThreshold;
+
+        // An auto-flush threshold of 0 means output will not be flushed on a size basis
+        this.autoFlushAfterHead = settings.autoFlushAfterHead;
+        this.autoFlushThreshold = settings.autoFlushThreshold;
+
+        this.templateCompilationEnabled = settings.templateCompilationEnabled;
+
+        // A max size of 0 means non-cacheable String templates will not be cached by content
+        this.stringTemplateCacheMaxSize = settings.stringTemplateCacheMaxSize;
+
+        this.compactTemplateModelsEnabled = settings.compactTemplateModelsEnabled;
+
+        this.fragmentPrecompositionEnabled = settings.fragmentPrecompositionEnabled;
+
         this.dialectSetConfiguration = DialectSetConfiguration.build(dialectConfigurations);
 
         // NOTE we are NOT initializing the templateManager here, but in #initialize()
@@ -171,6 +215,60 @@ public IDecoupledTemplateLogicResolver getDecoupledTemplateLogicResolver() {
 
 
 
+    /*
+     * The following configuration methods are NOT a part of the IEngineConfiguration interface (so that third-party
+     * implementations of such interface are not broken), and are only meant for internal usage. Engine code reading
+     * them should check whether the configuration is an instance of this class, and apply the defaults otherwise.
+     */
+
+    public boolean isEventCanonicalizationEnabled() {
+        return this.eventCanonicalizationEnabled;
+    }
+
+
+
+    public ExecutorService getParallelIterationExecutor() {
+        return this.parallelIterationExecutor;
+    }
+
+
+    public int getParallelIterationThreshold() {
+        return this.parallelIterationThreshold;
+    }
+
+
+
+    public boolean isAutoFlushAfterHead() {
+        return this.autoFlushAfterHead;
+    }
+
+
+    public int getAutoFlushThreshold() {
+        return this.autoFlushThreshold;
+    }
+
+
+    public boolean isTemplateCompilationEnabled() {
+        return this.templateCompilationEnabled;
+    }
+
+
+    public int getStringTemplateCacheMaxSize() {
+        return this.stringTemplateCacheMaxSize;
+    }
+
+
+    public boolean isCompactTemplateModelsEnabled() {
+        return this.compactTemplateModelsEnabled;
+    }
+
+
+    public boolean isFragmentPrecompositionEnabled() {
+        return this.fragmentPrecompositionEnabled;
+    }
+
+
+
 
     public Set<DialectConfiguration> getDialectConfigurations() {
         return this.dialectSetConfiguration.getDialectConfigurations();
@@ -0,0 +1,51 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2016, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf;
+
+import java.util.concurrent.ExecutorService;
+
+
+/*
+ * Groups the engine settings that are not a part of the IEngineConfiguration interface (see the corresponding
+ * setters at TemplateEngine), so that they can be handed to EngineConfiguration without adding a new constructor
+ * argument for each of them. Fields are initialized to the engine defaults.
+ *
+ * @author Daniel Fern&aacute;ndez
+ * @since 3.0.8
+ *
+ */
+final class EngineSettings {
+
+    boolean eventCanonicalizationEnabled = false;
+    ExecutorService parallelIterationExecutor = null;
+    int parallelIterationThreshold = TemplateEngine.DEFAULT_PARALLEL_ITERATION_THRESHOLD;
+    boolean autoFlushAfterHead = false;
+    int autoFlushThreshold = 0;
+    boolean templateCompilationEnabled = false;
+    int stringTemplateCacheMaxSize = 0;
+    boolean compactTemplateModelsEnabled = false;
+    boolean fragmentPrecompositionEnabled = false;
+
+
+    EngineSettings() {
+        super();
+    }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2016, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf;
+
+import org.thymeleaf.context.IContext;
+
+/**
+ * <p>
+ *   Interface to be implemented by receivers of the results of batch template processing operations
+ *   (see {@link TemplateEngine#processBatch(TemplateSpec, Iterable, java.util.concurrent.Executor, int, ITemplateBatchSink)}).
+ * </p>
+ * <p>
+ *   When batches are processed using an executor, results will be delivered from several threads at the
+ *   same time and in no specific order, so implementations of this interface should be <strong>thread-safe</strong>
+ *   and use the <tt>index</tt> of each result if order matters.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.0.8
+ *
+ */
+public interface ITemplateBatchSink {
+
+    /**
+     * <p>
+     *   Receives the result of processing the template with one of the contexts in the batch.
+     * </p>
+     *
+     * @param index the position of the context in the batch (zero-based).
+     * @param context the context used for processing the template.
+     * @param result the result of processing the template.
+     */
+    public void accept(final int index, final IContext context, final String result);
+
+}
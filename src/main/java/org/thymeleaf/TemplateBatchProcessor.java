@@ -0,0 +1,289 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2016, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.thymeleaf.context.IContext;
+import org.thymeleaf.engine.TemplateManager;
+import org.thymeleaf.engine.TemplateModel;
+import org.thymeleaf.exceptions.TemplateProcessingException;
+import org.thymeleaf.util.FastStringWriter;
+
+/*
+ * Processes a batch of contexts against a single, already parsed template model, from one or more worker tasks
+ * that take contexts from a shared iterator. Each worker sizes its output buffers after the results it has
+ * already produced, which avoids most buffer growth for batches of similar documents.
+ *
+ * When an executor is used, the calling thread also acts as a worker, and then only waits for the workers that
+ * the executor has already started: those not started yet are claimed by the calling thread so that they never
+ * run. Otherwise, processing a batch from a thread of the same executor could wait forever for workers that no
+ * free thread is left to run.
+ *
+ * Processing stops at the first error, which is then rethrown at the calling thread once all workers finish.
+ * If the calling thread is interrupted while waiting, workers are cancelled (interrupted, if the executor is
+ * an ExecutorService) and the sink is closed before returning: results are delivered to the sink while holding
+ * a read lock, so closing it (with the write lock) waits for any callbacks in progress and prevents new ones.
+ *
+ * @author Daniel Fern&aacute;ndez
+ * @since 3.0.8
+ *
+ */
+final class TemplateBatchProcessor {
+
+    private static final int DEFAULT_BUFFER_SIZE = 1024;
+
+    private final TemplateManager templateManager;
+    private final TemplateModel templateModel;
+    private final Map<String,Object> templateResolutionAttributes;
+    private final Iterator<? extends IContext> contexts;
+    private final ITemplateBatchSink sink;
+    private final ReadWriteLock sinkLock = new ReentrantReadWriteLock();
+    private boolean sinkClosed = false; // guarded by sinkLock
+
+    private int nextIndex = 0;
+    private Locale locale = null;
+    private boolean mixedLocales = false;
+    private RuntimeException runtimeFailure = null;
+    private Error errorFailure = null;
+
+
+
+    TemplateBatchProcessor(
+            final TemplateManager templateManager, final TemplateModel templateModel,
+            final Map<String,Object> templateResolutionAttributes,
+            final Iterable<? extends IContext> contexts, final ITemplateBatchSink sink) {
+        super();
+        this.templateManager = templateManager;
+        this.templateModel = templateModel;
+        this.templateResolutionAttributes = templateResolutionAttributes;
+        this.contexts = contexts.iterator();
+        this.sink = sink;
+    }
+
+
+
+
+    int processInCurrentThread() {
+        new Worker(null).run();
+        rethrowFailureIfAny();
+        return this.nextIndex;
+    }
+
+
+    int processInExecutor(final Executor executor, final int parallelism) {
+
+        // The calling thread is one of the workers, so one less is submitted to the executor
+        final int submittedWorkers = parallelism - 1;
+        final CountDownLatch latch = new CountDownLatch(submittedWorkers);
+        final List<Worker> workers = new ArrayList<Worker>(submittedWorkers);
+        final List<Future<?>> futures = new ArrayList<Future<?>>(submittedWorkers);
+
+        for (int i = 0; i < submittedWorkers; i++) {
+            final Worker worker = new Worker(latch);
+            try {
+                if (executor instanceof ExecutorService) {
+                    futures.add(((ExecutorService) executor).submit(worker));
+                } else {
+                    executor.execute(worker);
+                }
+                workers.add(worker);
+            } catch (final RejectedExecutionException e) {
+                // Workers not submitted will never count down, so we need to do it for them
+                for (int j = i; j < submittedWorkers; j++) {
+                    latch.countDown();
+                }
+                break;
+            }
+        }
+
+        new Worker(null).run();
+
+        // Workers not started by now will find nothing left to do, so they are claimed in order not to wait for them
+        for (final Worker worker : workers) {
+            if (worker.claim()) {
+                latch.countDown();
+            }
+        }
+        for (final Future<?> future : futures) {
+            future.cancel(false);
+        }
+
+        try {
+            latch.await();
+        } catch (final InterruptedException e) {
+            synchronized (this) {
+                // Make running workers stop taking new contexts
+                if (this.runtimeFailure == null && this.errorFailure == null) {
+                    this.runtimeFailure = new TemplateProcessingException("Interrupted while waiting for batch processing to finish", e);
+                }
+            }
+            // Workers still running can be interrupted if we have their futures
+            for (final Future<?> future : futures) {
+                future.cancel(true);
+            }
+            closeSink();
+            Thread.currentThread().interrupt();
+        }
+
+        rethrowFailureIfAny();
+        return this.nextIndex;
+
+    }
+
+
+    /*
+     * Returns the locale of the processed contexts for logging, or "*" if they did not all have the same one
+     */
+    synchronized Object getLocaleForLogging() {
+        return (this.mixedLocales? "*" : this.locale);
+    }
+
+
+    private void closeSink() {
+        // Waits for any sink callbacks still in progress (they are not interruptible from here)
+        this.sinkLock.writeLock().lock();
+        try {
+            this.sinkClosed = true;
+        } finally {
+            this.sinkLock.writeLock().unlock();
+        }
+    }
+
+
+    private void deliver(final int index, final IContext context, final String result) {
+        this.sinkLock.readLock().lock();
+        try {
+            if (!this.sinkClosed) {
+                this.sink.accept(index, context, result);
+            }
+        } finally {
+            this.sinkLock.readLock().unlock();
+        }
+    }
+
+
+    private synchronized void rethrowFailureIfAny() {
+        if (this.errorFailure != null) {
+            throw this.errorFailure;
+        }
+        if (this.runtimeFailure != null) {
+            throw this.runtimeFailure;
+        }
+    }
+
+
+
+
+    private final class Worker implements Runnable {
+
+        private final CountDownLatch latch;
+        private final AtomicBoolean claimed = new AtomicBoolean(false);
+
+        Worker(final CountDownLatch latch) {
+            super();
+            this.latch = latch;
+        }
+
+        boolean claim() {
+            return this.claimed.compareAndSet(false, true);
+        }
+
+        public void run() {
+
+            if (!claim()) {
+                // Claimed by the calling thread, which has already counted down for this worker
+                return;
+            }
+
+            final TemplateBatchProcessor batch = TemplateBatchProcessor.this;
+            int bufferSize = DEFAULT_BUFFER_SIZE;
+
+            try {
+
+                while (true) {
+
+                    final IContext context;
+                    final int index;
+                    synchronized (batch) {
+                        if (batch.runtimeFailure != null || batch.errorFailure != null || !batch.contexts.hasNext()) {
+                            break;
+                        }
+                        context = batch.contexts.next();
+                        index = batch.nextIndex++;
+                        if (index == 0) {
+                            batch.locale = context.getLocale();
+                        } else if (!batch.mixedLocales && !equals(batch.locale, context.getLocale())) {
+                            batch.mixedLocales = true;
+                        }
+                    }
+
+                    final FastStringWriter writer = new FastStringWriter(bufferSize);
+                    batch.templateManager.processTemplateModel(
+                            batch.templateModel, batch.templateResolutionAttributes, context, writer);
+                    final String result = writer.toString();
+
+                    // Leave some room for variations among results
+                    bufferSize = Math.max(bufferSize, result.length() + (result.length() >> 3));
+
+                    batch.deliver(index, context, result);
+
+                }
+
+            } catch (final RuntimeException e) {
+                synchronized (batch) {
+                    if (batch.runtimeFailure == null && batch.errorFailure == null) {
+                        batch.runtimeFailure = e;
+                    }
+                }
+            } catch (final Error e) {
+                synchronized (batch) {
+                    if (batch.errorFailure == null) {
+                        batch.errorFailure = e;
+                    }
+                }
+            } finally {
+                if (this.latch != null) {
+                    this.latch.countDown();
+                }
+            }
+
+        }
+
+        private boolean equals(final Locale locale1, final Locale locale2) {
+            return (locale1 == null? locale2 == null : locale1.equals(locale2));
+        }
+
+    }
+
+
+}
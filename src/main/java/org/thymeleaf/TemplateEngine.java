@@ -28,6 +28,8 @@
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,6 +40,7 @@
 import org.thymeleaf.context.StandardEngineContextFactory;
 import org.thymeleaf.dialect.IDialect;
 import org.thymeleaf.engine.TemplateManager;
+import org.thymeleaf.engine.TemplateModel;
 import org.thymeleaf.exceptions.TemplateEngineException;
 import org.thymeleaf.exceptions.TemplateOutputException;
 import org.thymeleaf.exceptions.TemplateProcessingException;
@@ -236,6 +239,16 @@ public class TemplateEngine implements ITemplateEngine {
      */
     public static final String TIMER_LOGGER_NAME = TemplateEngine.class.getName() + ".TIMER";
 
+    /**
+     * <p>
+     *   Default minimum amount of iterated elements for an iteration to be rendered in parallel, if a
+     *   parallel iteration executor has been set: <b>{@value}</b>
+     * </p>
+     *
+     * @since 3.0.8
+     */
+    public static final int DEFAULT_PARALLEL_ITERATION_THRESHOLD = 1000;
+
     private static final Logger logger = LoggerFactory.getLogger(TemplateEngine.class);
     private static final Logger timerLogger = LoggerFactory.getLogger(TIMER_LOGGER_NAME);
 
@@ -250,6 +263,15 @@ public class TemplateEngine implements ITemplateEngine {
     private ICacheManager cacheManager = null;
     private IEngineContextFactory engineContextFactory = null;
     private IDecoupledTemplateLogicResolver decoupledTemplateLogicResolver = null;
+    private boolean eventCanonicalizationEnabled = false;
+    private ExecutorService parallelIterationExecutor = null;
+    private int parallelIterationThreshold = DEFAULT_PARALLEL_ITERATION_THRESHOLD;
+    private boolean autoFlushAfterHead = false;
+    private int autoFlushThreshold = 0;
+    private boolean templateCompilationEnabled = false;
+    private int stringTemplateCacheMaxSize = 0;
+    private boolean compactTemplateModelsEnabled = false;
+    private boolean fragmentPrecompositionEnabled = false;
 
 
     private IEngineConfiguration configuration = null;
@@ -333,11 +355,21 @@ final void initialize() {
                     }
 
                     // Build the EngineConfiguration object
+                    final EngineSettings settings = new EngineSettings();
+                    settings.eventCanonicalizationEnabled = this.eventCanonicalizationEnabled;
+                    settings.parallelIterationExecutor = this.parallelIterationExecutor;
+                    settings.parallelIterationThreshold = this.parallelIterationThreshold;
+                    settings.autoFlushAfterHead = this.autoFlushAfterHead;
+                    settings.autoFlushThreshold = this.autoFlushThreshold;
+                    settings.templateCompilationEnabled = this.templateCompilationEnabled;
+                    settings.stringTemplateCacheMaxSize = this.stringTemplateCacheMaxSize;
+                    settings.compactTemplateModelsEnabled = this.compactTemplateModelsEnabled;
+                    settings.fragmentPrecompositionEnabled = this.fragmentPrecompositionEnabled;
                     this.configuration =
                             new EngineConfiguration(
                                     this.templateResolvers, this.messageResolvers, this.linkBuilders,
                                     this.dialectConfigurations, this.cacheManager, this.engineContextFactory,
-                                    this.decoupledTemplateLogicResolver);
+                                    this.decoupledTemplateLogicResolver, settings);
                     ((EngineConfiguration)this.configuration).initialize();
 
                     this.initialized = true;
@@ -816,6 +848,416 @@ public void setDecoupledTemplateLogicResolver(final IDecoupledTemplateLogicResol
         this.decoupledTemplateLogicResolver = decoupledTemplateLogicResolver;
     }
 
+
+    /**
+     * <p>
+     *   Returns whether immutable events and attributes in cached templates are canonicalized, i.e.
+     *   deduplicated across all the templates in the cache.
+     * </p>
+     * <p>
+     *   By default, event canonicalization is disabled.
+     * </p>
+     *
+     * @return whether event canonicalization is enabled.
+     * @since 3.0.8
+     */
+    public final boolean isEventCanonicalizationEnabled() {
+        if (this.initialized) {
+            return ((EngineConfiguration)this.configuration).isEventCanonicalizationEnabled();
+        }
+        return this.eventCanonicalizationEnabled;
+    }
+
+    /**
+     * <p>
+     *   Sets whether immutable events and attributes in cached templates should be canonicalized.
+     * </p>
+     * <p>
+     *   When enabled, whitespace-only texts, attributes with no associated processors (e.g. <tt>class="row"</tt>)
+     *   and small sets of such attributes will be shared among all cached templates instead of being stored
+     *   separately in each of them, thus reducing the memory footprint of the template cache. Canonicalized
+     *   instances do not keep location (line and column) information. The memory saved can be monitored by means
+     *   of {@link org.thymeleaf.engine.TemplateManager#getEventCanonicalizer()}.
+     * </p>
+     * <p>
+     *   This operation can only be executed before processing templates for the first
+     *   time. Once a template is processed, the template engine is considered to be
+     *   <i>initialized</i>, and from then on any attempt to change its configuration
+     *   will result in an exception.
+     * </p>
+     *
+     * @param eventCanonicalizationEnabled whether event canonicalization should be enabled.
+     * @since 3.0.8
+     */
+    public void setEventCanonicalizationEnabled(final boolean eventCanonicalizationEnabled) {
+        checkNotInitialized();
+        this.eventCanonicalizationEnabled = eventCanonicalizationEnabled;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the executor service used for rendering large iterations (<tt>th:each</tt>) in parallel, if
+     *   any. See {@link #setParallelIterationExecutor(ExecutorService)}.
+     * </p>
+     *
+     * @return the executor service, or <tt>null</tt> if parallel iteration is disabled (the default).
+     * @since 3.0.8
+     */
+    public final ExecutorService getParallelIterationExecutor() {
+        if (this.initialized) {
+            return ((EngineConfiguration)this.configuration).getParallelIterationExecutor();
+        }
+        return this.parallelIterationExecutor;
+    }
+
+    /**
+     * <p>
+     *   Sets the executor service to be used for rendering large iterations in parallel. A <tt>null</tt>
+     *   value (the default) disables parallel iteration.
+     * </p>
+     * <p>
+     *   When enabled, iterations explicitly marked as parallel (by means of the <tt>th:parallel</tt> attribute
+     *   of the Standard Dialects, e.g. <tt>&lt;tr th:parallel th:each="..."&gt;</tt>) over lists (implementing
+     *   {@link java.util.RandomAccess}) or arrays with at least {@link #getParallelIterationThreshold()}
+     *   elements will be split into chunks, each of them rendered into a separate buffer using a copy of the
+     *   current context, and then output in order. The amount of chunks is computed from the number of threads
+     *   of the executor (if it is a {@link java.util.concurrent.ThreadPoolExecutor} or a fork/join pool).
+     *   Iteration status variables (index, odd/even, first/last...) are computed for the whole iteration.
+     * </p>
+     * <p>
+     *   Note the body of such iterations should be free of side effects (e.g. should not modify shared objects),
+     *   as it might be evaluated more than once: iterations using identifier sequences (<tt>#ids</tt>) are
+     *   rendered again serially. Parallel iteration is never applied in throttled executions, in web contexts
+     *   (request attributes cannot be safely shared among threads), when post-processors are configured for the
+     *   template mode, or to iterations nested inside a parallel one.
+     * </p>
+     * <p>
+     *   This operation can only be executed before processing templates for the first
+     *   time. Once a template is processed, the template engine is considered to be
+     *   <i>initialized</i>, and from then on any attempt to change its configuration
+     *   will result in an exception.
+     * </p>
+     *
+     * @param parallelIterationExecutor the executor service to be used (can be null).
+     * @since 3.0.8
+     */
+    public void setParallelIterationExecutor(final ExecutorService parallelIterationExecutor) {
+        checkNotInitialized();
+        this.parallelIterationExecutor = parallelIterationExecutor;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the minimum amount of iterated elements for an iteration to be rendered in parallel (if
+     *   a parallel iteration executor has been set). Default is {@link #DEFAULT_PARALLEL_ITERATION_THRESHOLD}.
+     * </p>
+     *
+     * @return the threshold.
+     * @since 3.0.8
+     */
+    public final int getParallelIterationThreshold() {
+        if (this.initialized) {
+            return ((EngineConfiguration)this.configuration).getParallelIterationThreshold();
+        }
+        return this.parallelIterationThreshold;
+    }
+
+    /**
+     * <p>
+     *   Sets the minimum amount of iterated elements for an iteration to be rendered in parallel (if
+     *   a parallel iteration executor has been set).
+     * </p>
+     * <p>
+     *   This operation can only be executed before processing templates for the first
+     *   time. Once a template is processed, the template engine is considered to be
+     *   <i>initialized</i>, and from then on any attempt to change its configuration
+     *   will result in an exception.
+     * </p>
+     *
+     * @param parallelIterationThreshold the threshold (must be at least 2).
+     * @since 3.0.8
+     */
+    public void setParallelIterationThreshold(final int parallelIterationThreshold) {
+        Validate.isTrue(parallelIterationThreshold >= 2, "Parallel iteration threshold must be at least 2");
+        checkNotInitialized();
+        this.parallelIterationThreshold = parallelIterationThreshold;
+    }
+
+
+    /**
+     * <p>
+     *   Returns whether output will be flushed right after the <tt>&lt;/head&gt;</tt> close tag is written
+     *   in HTML templates. See {@link #setAutoFlushAfterHead(boolean)}.
+     * </p>
+     *
+     * @return whether output will be flushed after <tt>&lt;/head&gt;</tt> (default: <tt>false</tt>).
+     * @since 3.0.8
+     */
+    public final boolean isAutoFlushAfterHead() {
+        if (this.initialized) {
+            return ((EngineConfiguration)this.configuration).isAutoFlushAfterHead();
+        }
+        return this.autoFlushAfterHead;
+    }
+
+    /**
+     * <p>
+     *   Sets whether output should be flushed right after the <tt>&lt;/head&gt;</tt> close tag is written in
+     *   HTML templates, so that browsers can start fetching the stylesheets and scripts linked from the document
+     *   head while the (possibly slow) body is still being rendered.
+     * </p>
+     * <p>
+     *   Output can also be flushed at specific points in templates by means of the <tt>th:flush</tt> attribute
+     *   of the Standard Dialects. Note flushing is not performed on throttled executions, which already release
+     *   their output at the end of each step, unless such output is being compressed
+     *   (see {@link org.thymeleaf.engine.CompressedTemplateOutputStream}).
+     * </p>
+     * <p>
+     *   This operation can only be executed before processing templates for the first
+     *   time. Once a template is processed, the template engine is considered to be
+     *   <i>initialized</i>, and from then on any attempt to change its configuration
+     *   will result in an exception.
+     * </p>
+     *
+     * @param autoFlushAfterHead whether output should be flushed after <tt>&lt;/head&gt;</tt>.
+     * @since 3.0.8
+     */
+    public void setAutoFlushAfterHead(final boolean autoFlushAfterHead) {
+        checkNotInitialized();
+        this.autoFlushAfterHead = autoFlushAfterHead;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the amount of output chars after which output will be flushed, or 0 if output is not flushed
+     *   on a size basis (the default). See {@link #setAutoFlushThreshold(int)}.
+     * </p>
+     *
+     * @return the auto-flush threshold, in chars.
+     * @since 3.0.8
+     */
+    public final int getAutoFlushThreshold() {
+        if (this.initialized) {
+            return ((EngineConfiguration)this.configuration).getAutoFlushThreshold();
+        }
+        return this.autoFlushThreshold;
+    }
+
+    /**
+     * <p>
+     *   Sets the amount of output chars after which output should be flushed. Flushing is performed at event
+     *   boundaries, once at least this amount of chars has been written since the last flush. A value of 0
+     *   (the default) means output is only flushed at the end of template processing (or whenever
+     *   <tt>th:flush</tt> or {@link #setAutoFlushAfterHead(boolean)} say so).
+     * </p>
+     * <p>
+     *   This operation can only be executed before processing templates for the first
+     *   time. Once a template is processed, the template engine is considered to be
+     *   <i>initialized</i>, and from then on any attempt to change its configuration
+     *   will result in an exception.
+     * </p>
+     *
+     * @param autoFlushThreshold the auto-flush threshold, in chars (0 or greater).
+     * @since 3.0.8
+     */
+    public void setAutoFlushThreshold(final int autoFlushThreshold) {
+        Validate.isTrue(autoFlushThreshold >= 0, "Auto-flush threshold cannot be negative");
+        checkNotInitialized();
+        this.autoFlushThreshold = autoFlushThreshold;
+    }
+
+
+    /**
+     * <p>
+     *   Returns whether cached templates will be compiled into a flat sequence of pre-rendered output
+     *   and expression slots (default: <tt>false</tt>). See {@link #setTemplateCompilationEnabled(boolean)}.
+     * </p>
+     *
+     * @return whether template compilation is enabled.
+     * @since 3.0.8
+     */
+    public final boolean isTemplateCompilationEnabled() {
+        if (this.initialized) {
+            return ((EngineConfiguration)this.configuration).isTemplateCompilationEnabled();
+        }
+        return this.templateCompilationEnabled;
+    }
+
+    /**
+     * <p>
+     *   Sets whether cached templates should be compiled, the first time they are processed after being
+     *   cached, into a flat sequence of pre-rendered output and expression slots that can be executed
+     *   without going through the processor chain.
+     * </p>
+     * <p>
+     *   This is an <strong>experimental</strong> feature. Only HTML templates are compiled, and only when
+     *   the processors they need are limited to <tt>th:text</tt>, <tt>th:utext</tt> and the removal
+     *   of <tt>xmlns:th</tt>, no inlined expressions or conditional comments are present and no pre-processors,
+     *   post-processors or non-Standard processors for non-element events are configured. Every other template
+     *   is transparently processed the usual way, and so are templates processed in throttled mode.
+     * </p>
+     * <p>
+     *   This operation can only be executed before processing templates for the first
+     *   time. Once a template is processed, the template engine is considered to be
+     *   <i>initialized</i>, and from then on any attempt to change its configuration
+     *   will result in an exception.
+     * </p>
+     *
+     * @param templateCompilationEnabled whether template compilation should be enabled.
+     * @since 3.0.8
+     */
+    public void setTemplateCompilationEnabled(final boolean templateCompilationEnabled) {
+        checkNotInitialized();
+        this.templateCompilationEnabled = templateCompilationEnabled;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the maximum amount of non-cacheable String templates that will be kept parsed, keyed by
+     *   their contents, or 0 if they are not cached (the default). See {@link #setStringTemplateCacheMaxSize(int)}.
+     * </p>
+     *
+     * @return the maximum size of the String template cache.
+     * @since 3.0.8
+     */
+    public final int getStringTemplateCacheMaxSize() {
+        if (this.initialized) {
+            return ((EngineConfiguration)this.configuration).getStringTemplateCacheMaxSize();
+        }
+        return this.stringTemplateCacheMaxSize;
+    }
+
+    /**
+     * <p>
+     *   Sets the maximum amount of non-cacheable String templates (like those resolved by default by
+     *   {@link StringTemplateResolver}) that will be kept parsed in a separate LRU cache keyed by a
+     *   SHA-256 hash of their contents, so that the same template contents are only parsed once even if
+     *   they are not considered cacheable by their resolvers. Modified contents will simply produce a different
+     *   key. A value of 0 (the default) means these templates will not be cached.
+     * </p>
+     * <p>
+     *   This cache is independent from the template cache configured at the {@link ICacheManager}, so that
+     *   arbitrary String templates do not evict other templates from it.
+     * </p>
+     * <p>
+     *   This operation can only be executed before processing templates for the first
+     *   time. Once a template is processed, the template engine is considered to be
+     *   <i>initialized</i>, and from then on any attempt to change its configuration
+     *   will result in an exception.
+     * </p>
+     *
+     * @param stringTemplateCacheMaxSize the maximum size of the String template cache (0 or greater).
+     * @since 3.0.8
+     */
+    public void setStringTemplateCacheMaxSize(final int stringTemplateCacheMaxSize) {
+        Validate.isTrue(stringTemplateCacheMaxSize >= 0, "String template cache max size cannot be negative");
+        checkNotInitialized();
+        this.stringTemplateCacheMaxSize = stringTemplateCacheMaxSize;
+    }
+
+
+    /**
+     * <p>
+     *   Returns whether templates will be stored at the template cache in a compact, columnar form
+     *   (default: <tt>false</tt>). See {@link #setCompactTemplateModelsEnabled(boolean)}.
+     * </p>
+     *
+     * @return whether compact template models are enabled.
+     * @since 3.0.8
+     */
+    public final boolean isCompactTemplateModelsEnabled() {
+        if (this.initialized) {
+            return ((EngineConfiguration)this.configuration).isCompactTemplateModelsEnabled();
+        }
+        return this.compactTemplateModelsEnabled;
+    }
+
+    /**
+     * <p>
+     *   Sets whether parsed templates should be stored at the template cache in a compact, columnar form
+     *   instead of as an array of event objects. In this form, the events of a template are kept as type codes,
+     *   offsets into a shared text pool and attribute tables, which greatly reduces the number of objects kept
+     *   in memory by large template caches.
+     * </p>
+     * <p>
+     *   This is an <strong>experimental</strong> feature that trades processing time for memory: event
+     *   objects are created from the compact form the first time the template is processed, and then only
+     *   softly referenced, so that they (and per-event computations like parsed expressions or the processors
+     *   associated to each element) are reused between executions for as long as memory allows, and created
+     *   again after the Garbage Collector reclaims them. Writing a cached template to output without processing
+     *   it does not need to create any event objects.
+     * </p>
+     * <p>
+     *   This operation can only be executed before processing templates for the first
+     *   time. Once a template is processed, the template engine is considered to be
+     *   <i>initialized</i>, and from then on any attempt to change its configuration
+     *   will result in an exception.
+     * </p>
+     *
+     * @param compactTemplateModelsEnabled whether compact template models should be enabled.
+     * @since 3.0.8
+     */
+    public void setCompactTemplateModelsEnabled(final boolean compactTemplateModelsEnabled) {
+        checkNotInitialized();
+        this.compactTemplateModelsEnabled = compactTemplateModelsEnabled;
+    }
+
+
+    /**
+     * <p>
+     *   Returns whether literal fragment insertions will be inlined into the templates that contain them
+     *   when these templates are cached (default: <tt>false</tt>).
+     *   See {@link #setFragmentPrecompositionEnabled(boolean)}.
+     * </p>
+     *
+     * @return whether fragment precomposition is enabled.
+     * @since 3.0.8
+     */
+    public final boolean isFragmentPrecompositionEnabled() {
+        if (this.initialized) {
+            return ((EngineConfiguration)this.configuration).isFragmentPrecompositionEnabled();
+        }
+        return this.fragmentPrecompositionEnabled;
+    }
+
+    /**
+     * <p>
+     *   Sets whether fragment insertions using literal, parameterless fragment expressions (like
+     *   <tt>th:insert="~{layout/header :: header}"</tt> or <tt>th:replace="footer :: copy"</tt>) should be
+     *   inlined into the model of the template containing them when such template is parsed and cached, so that
+     *   these fragments do not have to be resolved and inserted again every time the template is processed.
+     * </p>
+     * <p>
+     *   The cache entries of templates with inlined fragments are only valid as long as the cache entries of
+     *   all the inlined fragments are, and clearing the cache entries for a template (see
+     *   {@link #clearTemplateCacheFor(String)}) will also clear those of the templates it has been inlined into.
+     * </p>
+     * <p>
+     *   Only fragment insertions which would produce exactly the same result if executed during template
+     *   processing will be inlined. This means, among other conditions, that fragments containing any message
+     *   expressions, fragment expressions or references to execution info will never be inlined (because their
+     *   results could depend on the template they are defined at), nor will any fragments at all be inlined
+     *   for template modes with non-cacheable pre-processors configured.
+     * </p>
+     * <p>
+     *   This operation can only be executed before processing templates for the first
+     *   time. Once a template is processed, the template engine is considered to be
+     *   <i>initialized</i>, and from then on any attempt to change its configuration
+     *   will result in an exception.
+     * </p>
+     *
+     * @param fragmentPrecompositionEnabled whether fragment precomposition should be enabled.
+     * @since 3.0.8
+     */
+    public void setFragmentPrecompositionEnabled(final boolean fragmentPrecompositionEnabled) {
+        checkNotInitialized();
+        this.fragmentPrecompositionEnabled = fragmentPrecompositionEnabled;
+    }
+
     
     /**
      * <p>
@@ -1228,5 +1670,132 @@ public final IThrottledTemplateProcessor processThrottled(final TemplateSpec tem
 
 
 
+    /**
+     * <p>
+     *   Processes the specified template once for each of the contexts in a batch, delivering each result
+     *   to the specified sink. Processing is performed sequentially in the calling thread.
+     * </p>
+     * <p>
+     *   The template is parsed (or obtained from cache) only once for the whole batch, so processing a batch
+     *   is cheaper than calling {@link #process(TemplateSpec, IContext)} once per context.
+     * </p>
+     *
+     * @param templateSpec the template specification.
+     * @param contexts the contexts to be used for processing the template.
+     * @param sink the receiver of the processing results.
+     * @return the number of contexts processed.
+     * @since 3.0.8
+     */
+    public final int processBatch(
+            final TemplateSpec templateSpec, final Iterable<? extends IContext> contexts, final ITemplateBatchSink sink) {
+        return processBatch(templateSpec, contexts, null, 1, sink);
+    }
+
+
+    /**
+     * <p>
+     *   Processes the specified template once for each of the contexts in a batch, delivering each result
+     *   to the specified sink. Processing is performed by <tt>parallelism</tt> workers: the calling thread itself
+     *   and <tt>parallelism - 1</tt> tasks submitted to the specified executor.
+     * </p>
+     * <p>
+     *   The template is parsed (or obtained from cache) only once for the whole batch. Note that, when an executor
+     *   is used, the sink will be called from several threads at the same time, and that contexts will be
+     *   used from threads other than the caller's, so they should not depend on thread-bound state.
+     * </p>
+     * <p>
+     *   Once it runs out of contexts, the calling thread only waits for the tasks that the executor has already
+     *   started, so this method can be safely called from threads of the same executor (e.g. from a task
+     *   processing another batch).
+     * </p>
+     * <p>
+     *   Processing stops at the first error, which is then thrown from this method. If the calling thread is
+     *   interrupted while waiting, the submitted tasks are cancelled (interrupting them if the executor is an
+     *   {@link java.util.concurrent.ExecutorService}), the interrupt flag is restored and an exception is thrown.
+     *   In that case this method waits for sink calls already in progress, and no more calls are made after it returns.
+     * </p>
+     *
+     * @param templateSpec the template specification.
+     * @param contexts the contexts to be used for processing the template.
+     * @param executor the executor to be used, or <tt>null</tt> for processing in the calling thread.
+     * @param parallelism the number of tasks to be submitted to the executor (must be &gt; 0).
+     * @param sink the receiver of the processing results.
+     * @return the number of contexts processed.
+     * @since 3.0.8
+     */
+    public final int processBatch(
+            final TemplateSpec templateSpec, final Iterable<? extends IContext> contexts,
+            final Executor executor, final int parallelism, final ITemplateBatchSink sink) {
+
+        if (!this.initialized) {
+            initialize();
+        }
+
+        try {
+
+            Validate.notNull(templateSpec, "Template Specification cannot be null");
+            Validate.notNull(contexts, "Contexts cannot be null");
+            Validate.isTrue(parallelism > 0, "Parallelism must be greater than zero");
+            Validate.notNull(sink, "Sink cannot be null");
+
+            if (logger.isTraceEnabled()) {
+                logger.trace("[THYMELEAF][{}] STARTING BATCH PROCESS OF TEMPLATE \"{}\"",
+                        new Object[]{TemplateEngine.threadIndex(), templateSpec});
+            }
+
+            final long startNanos = System.nanoTime();
+
+            final TemplateManager templateManager = this.configuration.getTemplateManager();
+            final TemplateModel templateModel = templateManager.parseTemplateSpec(templateSpec);
+
+            final TemplateBatchProcessor batchProcessor =
+                    new TemplateBatchProcessor(
+                            templateManager, templateModel, templateSpec.getTemplateResolutionAttributes(), contexts, sink);
+
+            final int processed =
+                    (executor == null || parallelism == 1?
+                        batchProcessor.processInCurrentThread() : batchProcessor.processInExecutor(executor, parallelism));
+
+            final long endNanos = System.nanoTime();
+
+            if (logger.isTraceEnabled()) {
+                logger.trace("[THYMELEAF][{}] FINISHED BATCH PROCESS OF TEMPLATE \"{}\" WITH {} CONTEXTS",
+                        new Object[]{TemplateEngine.threadIndex(), templateSpec, Integer.valueOf(processed)});
+            }
+
+            if (timerLogger.isTraceEnabled()) {
+                final BigDecimal elapsed = BigDecimal.valueOf(endNanos - startNanos);
+                final BigDecimal elapsedMs = elapsed.divide(BigDecimal.valueOf(NANOS_IN_SECOND), RoundingMode.HALF_UP);
+                // Same prefix as single executions, so that timer logs can be parsed in the same way
+                final Object locale = batchProcessor.getLocaleForLogging();
+                timerLogger.trace(
+                        "[THYMELEAF][{}][{}][{}][{}][{}] TEMPLATE \"{}\" WITH LOCALE {} PROCESSED IN {} nanoseconds (approx. {}ms) IN BATCH OF {} CONTEXTS",
+                        new Object[]{
+                                TemplateEngine.threadIndex(),
+                                LoggingUtils.loggifyTemplateName(templateSpec.getTemplate()), locale, elapsed, elapsedMs,
+                                templateSpec, locale, elapsed, elapsedMs, Integer.valueOf(processed)});
+            }
+
+            return processed;
+
+        } catch (final TemplateEngineException e) {
+
+            // We log the exception just in case higher levels do not end up logging it (e.g. they could simply display traces in the browser
+            logger.error(String.format("[THYMELEAF][%s] Exception processing template \"%s\" in batch: %s", new Object[] {TemplateEngine.threadIndex(), templateSpec, e.getMessage()}), e);
+            throw e;
+
+        } catch (final RuntimeException e) {
+
+            // We log the exception just in case higher levels do not end up logging it (e.g. they could simply display traces in the browser
+            logger.error(String.format("[THYMELEAF][%s] Exception processing template \"%s\" in batch: %s", new Object[] {TemplateEngine.threadIndex(), templateSpec, e.getMessage()}), e);
+            throw new TemplateProcessingException("Exception processing template in batch", templateSpec.toString(), e);
+
+        }
+
+    }
+
+
+
+
 
 }
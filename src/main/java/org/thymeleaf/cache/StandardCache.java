@@ -98,6 +98,17 @@ public StandardCache(final String name, final boolean useSoftReferences,
     public StandardCache(final String name, final boolean useSoftReferences,
             final int initialCapacity, final int maxSize, final ICacheEntryValidityChecker<? super K, ? super V> entryValidityChecker,
             final Logger logger, final boolean enableCounters) {
+        this(name, useSoftReferences, initialCapacity, maxSize, entryValidityChecker, logger, enableCounters, null);
+    }
+
+    /*
+     * The eviction listener (if any) will be notified of every entry removed from the cache because its max size
+     * was exceeded. The evicted entry is still mapped while the listener is notified, and removed right afterwards.
+     * It is not public API, and is only used by caches that keep a second tier for evicted entries.
+     */
+    StandardCache(final String name, final boolean useSoftReferences,
+            final int initialCapacity, final int maxSize, final ICacheEntryValidityChecker<? super K, ? super V> entryValidityChecker,
+            final Logger logger, final boolean enableCounters, final IEvictionListener<V> evictionListener) {
 
         super();
 
@@ -114,7 +125,8 @@ public StandardCache(final String name, final boolean useSoftReferences,
         this.traceExecution = (logger != null && logger.isTraceEnabled());
         this.enableCounters = (this.traceExecution || enableCounters);
         this.dataContainer =
-                new CacheDataContainer<K,V>(this.name, initialCapacity, maxSize, this.traceExecution, this.logger);
+                new CacheDataContainer<K,V>(
+                        this.name, initialCapacity, maxSize, this.traceExecution, this.logger, evictionListener);
 
         this.getCount = new AtomicLong(0);
         this.putCount = new AtomicLong(0);
@@ -141,10 +153,19 @@ public StandardCache(final String name, final boolean useSoftReferences,
 
 
     public void put(final K key, final V value) {
+        put(key, value, 0L);
+    }
+
+
+    /*
+     * The version is an opaque number kept with the entry and handed to the eviction listener, so that caches
+     * keeping a second tier for evicted entries can tell apart different values put for the same key.
+     */
+    void put(final K key, final V value, final long version) {
 
         incrementReportEntity(this.putCount);
 
-        final CacheEntry<V> entry = new CacheEntry<V>(value, this.useSoftReferences);
+        final CacheEntry<V> entry = new CacheEntry<V>(value, this.useSoftReferences, version);
 
         // newSize will be -1 if traceExecution is false
         final int newSize = this.dataContainer.put(key, entry);
@@ -243,6 +264,35 @@ public void clear() {
 
 
 
+    /*
+     * Returns the version of the entry currently mapped for the key, or -1 if there is none. Unlike get(...), this
+     * does not check entry validity nor update any counters.
+     */
+    long peekVersion(final K key) {
+        final CacheEntry<V> entry = this.dataContainer.get(key);
+        return (entry == null? -1L : entry.getVersion());
+    }
+
+
+
+    /*
+     * Removes the entry for the key only if it is the one with the specified version, so that an entry put
+     * afterwards is not affected.
+     */
+    void clearKey(final K key, final long version) {
+
+        final int newSize = this.dataContainer.remove(key, version);
+
+        if (this.traceExecution && newSize != -1) {
+            this.logger.trace(
+                    "[THYMELEAF][{}][*][{}][CACHE_REMOVE][{}] Removed cache entry in cache \"{}\" for key \"{}\". New size is {}.",
+                    new Object[] {TemplateEngine.threadIndex(), this.name, Integer.valueOf(newSize), this.name, key, Integer.valueOf(newSize)});
+        }
+
+    }
+
+
+
     public void clearKey(final K key) {
 
         final int newSize = this.dataContainer.remove(key);
@@ -368,6 +418,7 @@ private void outputReportIfNeeded() {
         private final int maxSize;
         private final boolean traceExecution;
         private final Logger logger;
+        private final IEvictionListener<V> evictionListener;
 
         private final ConcurrentHashMap<K,CacheEntry<V>> container;
         private final Object[] fifo;
@@ -375,7 +426,8 @@ private void outputReportIfNeeded() {
 
 
         CacheDataContainer(final String name, final int initialCapacity,
-                final int maxSize, final boolean traceExecution, final Logger logger) {
+                final int maxSize, final boolean traceExecution, final Logger logger,
+                final IEvictionListener<V> evictionListener) {
 
             super();
 
@@ -392,6 +444,7 @@ private void outputReportIfNeeded() {
             this.fifoPointer = 0;
             this.traceExecution = traceExecution;
             this.logger = logger;
+            this.evictionListener = evictionListener;
 
         }
 
@@ -433,41 +486,81 @@ private int putWithoutTracing(final K key, final CacheEntry<V> value) {
             }
 
             if (this.sizeLimit) {
+                Object removedKey = null;
+                CacheEntry<V> removed = null;
                 synchronized (this.fifo) {
-                    final Object removedKey = this.fifo[this.fifoPointer];
+                    removedKey = this.fifo[this.fifoPointer];
                     if (removedKey != null) {
-                        this.container.remove(removedKey);
+                        removed = evict(removedKey);
                     }
                     this.fifo[this.fifoPointer] = key;
                     this.fifoPointer = (this.fifoPointer + 1) % this.maxSize;
                 }
+                // Listener is notified outside the FIFO lock, as it might need some time to process the evicted entry
+                if (removed != null) {
+                    notifyEviction(removedKey, removed);
+                }
             }
 
             return -1;
 
         }
 
-        private synchronized int putWithTracing(final K key, final CacheEntry<V> value) {
+        private int putWithTracing(final K key, final CacheEntry<V> value) {
 
-            final CacheEntry<V> existing = this.container.putIfAbsent(key, value);
-            if (existing == null) {
-                if (this.sizeLimit) {
-                    final Object removedKey = this.fifo[this.fifoPointer];
-                    if (removedKey != null) {
-                        final CacheEntry<V> removed = this.container.remove(removedKey);
-                        if (removed != null) {
-                            final Integer newSize = Integer.valueOf(this.container.size());
-                            this.logger.trace(
-                                    "[THYMELEAF][{}][{}][CACHE_REMOVE][{}] Max size exceeded for cache \"{}\". Removing entry for key \"{}\". New size is {}.",
-                                    new Object[] {TemplateEngine.threadIndex(), this.name, newSize, this.name, removedKey, newSize});
+            Object removedKey = null;
+            CacheEntry<V> removed = null;
+            final int newSize;
+            synchronized (this) {
+                final CacheEntry<V> existing = this.container.putIfAbsent(key, value);
+                if (existing == null) {
+                    if (this.sizeLimit) {
+                        removedKey = this.fifo[this.fifoPointer];
+                        if (removedKey != null) {
+                            removed = evict(removedKey);
+                            if (removed != null) {
+                                final Integer removedNewSize = Integer.valueOf(this.container.size());
+                                this.logger.trace(
+                                        "[THYMELEAF][{}][{}][CACHE_REMOVE][{}] Max size exceeded for cache \"{}\". Removing entry for key \"{}\". New size is {}.",
+                                        new Object[] {TemplateEngine.threadIndex(), this.name, removedNewSize, this.name, removedKey, removedNewSize});
+                            }
                         }
+                        this.fifo[this.fifoPointer] = key;
+                        this.fifoPointer = (this.fifoPointer + 1) % this.maxSize;
                     }
-                    this.fifo[this.fifoPointer] = key;
-                    this.fifoPointer = (this.fifoPointer + 1) % this.maxSize;
                 }
+                newSize = this.container.size();
             }
-            return this.container.size();
+            // As in the non-tracing case, the listener is notified outside the lock
+            if (removed != null) {
+                notifyEviction(removedKey, removed);
+            }
+            return newSize;
+
+        }
+
+
+        private CacheEntry<V> evict(final Object removedKey) {
+            // If there is an eviction listener, the entry is kept mapped until the listener has been notified, so
+            // that a listener racing with a removal of the same key can find out by checking the entry is still there
+            if (this.evictionListener == null) {
+                return this.container.remove(removedKey);
+            }
+            return this.container.get(removedKey);
+        }
+
 
+        private void notifyEviction(final Object removedKey, final CacheEntry<V> removed) {
+            if (this.evictionListener == null) {
+                return;
+            }
+            final V removedValue = removed.getValue();
+            if (removedValue != null) {
+                this.evictionListener.entryEvicted(
+                        removedKey, removedValue, removed.getCreationTimeInMillis(), removed.getVersion());
+            }
+            // Only the evicted entry is removed, so that a newer one put in the meantime is not affected
+            this.container.remove(removedKey, removed);
         }
 
 
@@ -480,29 +573,56 @@ public int remove(final K key) {
 
 
         private int removeWithoutTracing(final K key) {
-            // FIFO is also updated to avoid 'removed' keys remaining at FIFO (which could end up reducing cache size to 1)
             final CacheEntry<V> removed = this.container.remove(key);
             if (removed != null) {
-                if (this.sizeLimit && key != null) {
-                    for (int i = 0; i < this.maxSize; i++) {
-                        if (key.equals(this.fifo[i])) {
-                            this.fifo[i] = null;
-                            break;
-                        }
-                    }
-                }
+                removeFromFifo(key);
             }
             return -1;
         }
 
 
         private synchronized int removeWithTracing(final K key) {
-            // FIFO is also updated to avoid 'removed' keys remaining at FIFO (which could end up reducing cache size to 1)
             final CacheEntry<V> removed = this.container.remove(key);
             if (removed == null) {
                 // When tracing is active, this means nothing was removed
                 return -1;
             }
+            removeFromFifo(key);
+            return this.container.size();
+        }
+
+
+        public int remove(final K key, final long version) {
+            final CacheEntry<V> entry = this.container.get(key);
+            if (entry == null || entry.getVersion() != version) {
+                return -1;
+            }
+            if (this.traceExecution) {
+                return removeWithTracing(key, entry);
+            }
+            return removeWithoutTracing(key, entry);
+        }
+
+
+        private int removeWithoutTracing(final K key, final CacheEntry<V> entry) {
+            if (this.container.remove(key, entry)) {
+                removeFromFifo(key);
+            }
+            return -1;
+        }
+
+
+        private synchronized int removeWithTracing(final K key, final CacheEntry<V> entry) {
+            if (!this.container.remove(key, entry)) {
+                return -1;
+            }
+            removeFromFifo(key);
+            return this.container.size();
+        }
+
+
+        private void removeFromFifo(final K key) {
+            // FIFO is also updated to avoid 'removed' keys remaining at FIFO (which could end up reducing cache size to 1)
             if (this.sizeLimit && key != null) {
                 for (int i = 0; i < this.maxSize; i++) {
                     if (key.equals(this.fifo[i])) {
@@ -511,7 +631,6 @@ private synchronized int removeWithTracing(final K key) {
                     }
                 }
             }
-            return this.container.size();
         }
 
 
@@ -533,6 +652,7 @@ public int size() {
 
         private final SoftReference<V> cachedValueReference;
         private final long creationTimeInMillis;
+        private final long version;
 
         // Although we will use the reference for normal operation for cleaner code, this
         // variable will act as an "anchor" to avoid the value to be cleaned if we don't
@@ -541,13 +661,14 @@ public int size() {
         private final V cachedValueAnchor;
 
 
-        CacheEntry(final V cachedValue, final boolean useSoftReferences) {
+        CacheEntry(final V cachedValue, final boolean useSoftReferences, final long version) {
 
             super();
 
             this.cachedValueReference = new SoftReference<V>(cachedValue);
             this.cachedValueAnchor = (!useSoftReferences? cachedValue : null);
             this.creationTimeInMillis = System.currentTimeMillis();
+            this.version = version;
 
         }
 
@@ -577,6 +698,24 @@ public long getCreationTimeInMillis() {
             return this.creationTimeInMillis;
         }
 
+        long getVersion() {
+            return this.version;
+        }
+
+        V getValue() {
+            // Might be null if soft references are being used and the value has been cleared by GC
+            return this.cachedValueReference.get();
+        }
+
+    }
+
+
+
+
+    interface IEvictionListener<V> {
+
+        void entryEvicted(final Object key, final V value, final long creationTimeInMillis, final long version);
+
     }
 
 
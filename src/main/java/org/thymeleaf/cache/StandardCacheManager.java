@@ -59,6 +59,12 @@
  *       it is still valid and can be used.
  * </ul>
  * <p>
+ *   Additionally, the template cache can be configured to use an <i>off-heap second tier</i> by
+ *   setting a maximum off-heap size in bytes greater than zero. In such case a {@link TwoTierTemplateCache}
+ *   will be used instead of a {@link StandardCache}, and the <i>soft references</i> flag will be ignored
+ *   for the template cache.
+ * </p>
+ * <p>
  *   Note a class with this name existed since 2.0.0, but it was completely reimplemented
  *   in Thymeleaf 3.0
  * </p>
@@ -106,6 +112,11 @@ public class StandardCacheManager extends AbstractCacheManager {
      */
     public static final ICacheEntryValidityChecker<TemplateCacheKey,TemplateModel> DEFAULT_TEMPLATE_CACHE_VALIDITY_CHECKER = new StandardParsedTemplateEntryValidator();
 
+    /**
+     * Default template cache off-heap tier maximum size in bytes: {@value} (no off-heap tier)
+     */
+    public static final long DEFAULT_TEMPLATE_CACHE_OFF_HEAP_MAX_SIZE_IN_BYTES = 0L;
+
     
     /**
      * Default expression cache name: {@value}
@@ -152,6 +163,7 @@ public class StandardCacheManager extends AbstractCacheManager {
     private boolean templateCacheUseSoftReferences = DEFAULT_TEMPLATE_CACHE_USE_SOFT_REFERENCES;
     private String templateCacheLoggerName = DEFAULT_TEMPLATE_CACHE_LOGGER_NAME;
     private ICacheEntryValidityChecker<TemplateCacheKey,TemplateModel> templateCacheValidityChecker = DEFAULT_TEMPLATE_CACHE_VALIDITY_CHECKER;
+    private long templateCacheOffHeapMaxSizeInBytes = DEFAULT_TEMPLATE_CACHE_OFF_HEAP_MAX_SIZE_IN_BYTES;
 
     private String expressionCacheName = DEFAULT_EXPRESSION_CACHE_NAME;
     private int expressionCacheInitialSize = DEFAULT_EXPRESSION_CACHE_INITIAL_SIZE;
@@ -175,6 +187,12 @@ protected final ICache<TemplateCacheKey, TemplateModel> initializeTemplateCache(
         if (maxSize == 0) {
             return null;
         }
+        final long offHeapMaxSizeInBytes = getTemplateCacheOffHeapMaxSizeInBytes();
+        if (offHeapMaxSizeInBytes > 0L) {
+            return new TwoTierTemplateCache(
+                    getTemplateCacheName(), getTemplateCacheInitialSize(), maxSize, offHeapMaxSizeInBytes,
+                    getTemplateCacheValidityChecker(), getTemplateCacheLogger(), getTemplateCacheEnableCounters());
+        }
         return new StandardCache<TemplateCacheKey, TemplateModel>(
                 getTemplateCacheName(), getTemplateCacheUseSoftReferences(), 
                 getTemplateCacheInitialSize(), maxSize,
@@ -224,6 +242,10 @@ public String getTemplateCacheLoggerName() {
     public ICacheEntryValidityChecker<TemplateCacheKey,TemplateModel> getTemplateCacheValidityChecker() {
         return this.templateCacheValidityChecker;
     }
+
+    public long getTemplateCacheOffHeapMaxSizeInBytes() {
+        return this.templateCacheOffHeapMaxSizeInBytes;
+    }
     
     public final Logger getTemplateCacheLogger() {
         final String loggerName = getTemplateCacheLoggerName();
@@ -303,6 +325,10 @@ public void setTemplateCacheValidityChecker(final ICacheEntryValidityChecker<Tem
     public void setTemplateCacheEnableCounters(boolean templateCacheEnableCounters) {
         this.templateCacheEnableCounters = templateCacheEnableCounters;
     }
+
+    public void setTemplateCacheOffHeapMaxSizeInBytes(final long templateCacheOffHeapMaxSizeInBytes) {
+        this.templateCacheOffHeapMaxSizeInBytes = templateCacheOffHeapMaxSizeInBytes;
+    }
     
     
     public void setExpressionCacheName(final String expressionCacheName) {
@@ -0,0 +1,511 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2016, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.thymeleaf.IEngineConfiguration;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.engine.TemplateData;
+import org.thymeleaf.engine.TemplateModel;
+import org.thymeleaf.engine.TemplateModelSerializer;
+import org.thymeleaf.util.Validate;
+
+
+/**
+ * <p>
+ *   Two-tier implementation of the template cache.
+ * </p>
+ * <p>
+ *   The first tier is a bounded, on-heap {@link StandardCache} of live {@link TemplateModel} objects that
+ *   <strong>never</strong> uses soft references. The second tier keeps a compact serialized form (see
+ *   {@link TemplateModelSerializer}) of the templates evicted from the first tier in direct (off-heap)
+ *   {@link ByteBuffer}s, bounded by a maximum size in bytes.
+ * </p>
+ * <p>
+ *   Templates are only serialized when they are demoted to the second tier, so templates that are never evicted
+ *   from the first tier never pay the cost of serialization. Direct buffers released by the second tier are
+ *   pooled and reused for later demotions, as direct memory is only reclaimed by the Garbage Collector.
+ * </p>
+ * <p>
+ *   When a template is evicted from the first tier, it can be rehydrated from the second tier, which is much
+ *   faster than resolving and parsing the template resource again. As no soft references are used, the size of
+ *   the cache is predictable and entries are never cleared all at once by the Garbage Collector when memory
+ *   runs low.
+ * </p>
+ * <p>
+ *   Every value put into the first tier is stamped with an increasing version, which travels with it when it is
+ *   demoted to (and rehydrated from) the second tier. All updates to the second tier are atomic compare-and-set
+ *   operations on these versions, so that a demotion racing with a <tt>put(...)</tt> for the same key can never
+ *   leave an outdated serialized form in the second tier. Evicted values stay in the first tier until they have
+ *   been demoted, so that a demotion racing with a <tt>clearKey(...)</tt> can find out and discard itself.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.0.8
+ *
+ */
+public final class TwoTierTemplateCache implements ICache<TemplateCacheKey,TemplateModel> {
+
+    private static final int MAX_POOLED_BUFFERS = 16;
+
+    private final String name;
+    private final StandardCache<TemplateCacheKey,TemplateModel> heapTier;
+    private final long offHeapMaxSizeInBytes;
+    private final ICacheEntryValidityChecker<? super TemplateCacheKey, ? super TemplateModel> entryValidityChecker;
+
+    private final ConcurrentHashMap<TemplateCacheKey,OffHeapEntry> offHeapTier;
+    private final ConcurrentLinkedQueue<OffHeapEntry> offHeapFifo;
+    private final List<ByteBuffer> bufferPool; // guarded by itself
+    private final AtomicLong offHeapSizeInBytes;
+    private final AtomicLong rehydrationCount;
+    private final AtomicLong versionSequence;
+    private final AtomicLong clearVersion; // version at the last clear(), all previous values are outdated
+
+    private final Logger logger;
+    private final boolean traceExecution;
+
+
+
+
+    public TwoTierTemplateCache(
+            final String name, final int initialCapacity, final int maxSize, final long offHeapMaxSizeInBytes,
+            final ICacheEntryValidityChecker<? super TemplateCacheKey, ? super TemplateModel> entryValidityChecker,
+            final Logger logger, final boolean enableCounters) {
+
+        super();
+
+        Validate.notEmpty(name, "Name cannot be null or empty");
+        Validate.isTrue(offHeapMaxSizeInBytes > 0, "Off-heap max size must be > 0");
+
+        this.name = name;
+        this.heapTier =
+                new StandardCache<TemplateCacheKey, TemplateModel>(
+                        name, false, initialCapacity, maxSize, entryValidityChecker, logger, enableCounters,
+                        new StandardCache.IEvictionListener<TemplateModel>() {
+                            public void entryEvicted(
+                                    final Object key, final TemplateModel value,
+                                    final long creationTimeInMillis, final long version) {
+                                demote((TemplateCacheKey) key, value, creationTimeInMillis, version);
+                            }
+                        });
+        this.offHeapMaxSizeInBytes = offHeapMaxSizeInBytes;
+        this.entryValidityChecker = entryValidityChecker;
+
+        this.offHeapTier = new ConcurrentHashMap<TemplateCacheKey, OffHeapEntry>(initialCapacity, 0.9f, 2);
+        this.offHeapFifo = new ConcurrentLinkedQueue<OffHeapEntry>();
+        this.bufferPool = new ArrayList<ByteBuffer>(MAX_POOLED_BUFFERS);
+        this.offHeapSizeInBytes = new AtomicLong(0L);
+        this.rehydrationCount = new AtomicLong(0L);
+        this.versionSequence = new AtomicLong(0L);
+        this.clearVersion = new AtomicLong(0L);
+
+        this.logger = logger;
+        this.traceExecution = (logger != null && logger.isTraceEnabled());
+
+        if (this.logger != null) {
+            this.logger.trace("[THYMELEAF][CACHE_INITIALIZE] Initializing off-heap tier for cache {}. Max size: {} bytes.",
+                    this.name, Long.valueOf(this.offHeapMaxSizeInBytes));
+        }
+
+    }
+
+
+
+
+    public void put(final TemplateCacheKey key, final TemplateModel value) {
+        final long version = this.versionSequence.incrementAndGet();
+        this.heapTier.put(key, value, version);
+        // Any serialized form of a previous value for this key is now outdated. Note this is done after the heap
+        // tier has been updated, so that any demotion of a previous value that completes later will see the newer
+        // version in the heap tier and discard itself (see demote(...))
+        removeOffHeap(key, version);
+    }
+
+
+
+
+    public TemplateModel get(final TemplateCacheKey key) {
+        return get(key, this.entryValidityChecker);
+    }
+
+
+    public TemplateModel get(
+            final TemplateCacheKey key,
+            final ICacheEntryValidityChecker<? super TemplateCacheKey, ? super TemplateModel> validityChecker) {
+
+        final TemplateModel heapValue = this.heapTier.get(key, validityChecker);
+        if (heapValue != null) {
+            return heapValue;
+        }
+
+        final OffHeapEntry entry = this.offHeapTier.get(key);
+        if (entry == null || !entry.acquire()) {
+            // Not there, cleared, or removed (and its buffer released) in the meantime
+            return null;
+        }
+
+        final TemplateModel rehydrated;
+        try {
+            rehydrated = TemplateModelSerializer.deserialize(entry.configuration, entry.templateData, entry.buffer);
+        } finally {
+            if (entry.releaseAcquired()) {
+                recycleBuffer(entry.buffer);
+            }
+        }
+
+        if (validityChecker != null &&
+                !validityChecker.checkIsValueStillValid(key, rehydrated, entry.creationTimeInMillis)) {
+            removeOffHeap(key, entry);
+            return null;
+        }
+
+        this.rehydrationCount.incrementAndGet();
+        if (this.traceExecution) {
+            this.logger.trace(
+                    "[THYMELEAF][{}][{}][CACHE_REHYDRATE] Rehydrated entry from off-heap tier in cache \"{}\" for key \"{}\".",
+                    new Object[] {TemplateEngine.threadIndex(), this.name, this.name, key});
+        }
+
+        // Promote the rehydrated model back to the heap tier with the version of its serialized form, which is kept
+        // in the off-heap tier so that it will not need to be serialized again when evicted (see demote(...))
+        this.heapTier.put(key, rehydrated, entry.version);
+
+        // If the key was cleared in the meantime (its serialized form will not be there anymore in such case), the
+        // rehydrated model is outdated and must not stay in the heap tier
+        if (this.offHeapTier.get(key) != entry || this.clearVersion.get() > entry.version) {
+            this.heapTier.clearKey(key, entry.version);
+        }
+
+        return rehydrated;
+
+    }
+
+
+
+
+    public void clear() {
+        this.clearVersion.set(this.versionSequence.incrementAndGet());
+        this.heapTier.clear();
+        final Iterator<OffHeapEntry> entries = this.offHeapTier.values().iterator();
+        while (entries.hasNext()) {
+            final OffHeapEntry entry = entries.next();
+            removeOffHeap(entry.key, entry);
+        }
+    }
+
+
+    public void clearKey(final TemplateCacheKey key) {
+        // The off-heap entry is removed both before and after the heap one: a rehydration racing with this will find
+        // its serialized form removed before it is promoted (see get(...)), and a demotion racing with this will
+        // either find its heap entry removed or have its off-heap entry removed afterwards (see demote(...))
+        removeOffHeap(key);
+        this.heapTier.clearKey(key);
+        removeOffHeap(key);
+    }
+
+
+    public Set<TemplateCacheKey> keySet() {
+        final Set<TemplateCacheKey> keys = new HashSet<TemplateCacheKey>(this.heapTier.keySet());
+        // See StandardCache for the reason of this cast (Java 6/7 compatibility of ConcurrentHashMap#keySet())
+        keys.addAll(((Map<TemplateCacheKey,OffHeapEntry>)this.offHeapTier).keySet());
+        return keys;
+    }
+
+
+
+
+    public String getName() {
+        return this.name;
+    }
+
+    public int getMaxSize() {
+        return this.heapTier.getMaxSize();
+    }
+
+    public long getOffHeapMaxSizeInBytes() {
+        return this.offHeapMaxSizeInBytes;
+    }
+
+    public int size() {
+        return this.heapTier.size();
+    }
+
+    public int getOffHeapSize() {
+        return this.offHeapTier.size();
+    }
+
+    public long getOffHeapSizeInBytes() {
+        return this.offHeapSizeInBytes.get();
+    }
+
+    public long getRehydrationCount() {
+        return this.rehydrationCount.get();
+    }
+
+
+
+
+    // Package-private so that races between demotions and other operations can be tested deterministically
+    void demote(
+            final TemplateCacheKey key, final TemplateModel value, final long creationTimeInMillis, final long version) {
+
+        if (isOutdated(key, version)) {
+            // Either the off-heap tier already contains the serialized form of this value (because the value was
+            // rehydrated from it), or the value has been removed from the heap tier in the meantime
+            return;
+        }
+
+        final byte[] serialized = TemplateModelSerializer.serialize(value);
+        if (serialized.length > this.offHeapMaxSizeInBytes) {
+            // This template is too big to ever fit into the off-heap tier, so it will simply be discarded (along
+            // with any serialized form of a previous value for the same key)
+            removeOffHeap(key, version);
+            return;
+        }
+
+        final ByteBuffer buffer = acquireBuffer(serialized.length);
+        buffer.put(serialized);
+        buffer.flip();
+
+        final OffHeapEntry entry =
+                new OffHeapEntry(
+                        key, value.getConfiguration(), value.getTemplateData(), buffer, creationTimeInMillis, version);
+
+        // Only replace an existing entry if it is older than this one
+        while (true) {
+            final OffHeapEntry existing = this.offHeapTier.get(key);
+            if (existing == null) {
+                if (this.offHeapTier.putIfAbsent(key, entry) == null) {
+                    break;
+                }
+            } else if (existing.version >= version) {
+                recycleBuffer(buffer);
+                return;
+            } else if (this.offHeapTier.replace(key, existing, entry)) {
+                discardOffHeap(existing);
+                break;
+            }
+        }
+        this.offHeapFifo.offer(entry);
+        this.offHeapSizeInBytes.addAndGet(entry.sizeInBytes);
+
+        // The evicted value stays in the heap tier until this demotion is done, so if it is not there anymore it has
+        // been cleared while being serialized. If that happened before our entry was added, the check below will see
+        // it. If after, clearKey(...) or clear() will remove our entry themselves.
+        if (this.heapTier.peekVersion(key) != version || this.clearVersion.get() > version) {
+            removeOffHeap(key, entry);
+            return;
+        }
+
+        if (this.traceExecution) {
+            this.logger.trace(
+                    "[THYMELEAF][{}][{}][CACHE_DEMOTE] Demoted entry to off-heap tier in cache \"{}\" for key \"{}\".",
+                    new Object[] {TemplateEngine.threadIndex(), this.name, this.name, key});
+        }
+
+        evictOffHeapIfNeeded();
+
+    }
+
+
+    private boolean isOutdated(final TemplateCacheKey key, final long version) {
+        if (this.clearVersion.get() > version) {
+            return true;
+        }
+        final OffHeapEntry existing = this.offHeapTier.get(key);
+        if (existing != null && existing.version >= version) {
+            return true;
+        }
+        return (this.heapTier.peekVersion(key) != version);
+    }
+
+
+    // Removes the off-heap entry for the key, if it is older than the specified version
+    private void removeOffHeap(final TemplateCacheKey key, final long version) {
+        final OffHeapEntry existing = this.offHeapTier.get(key);
+        if (existing != null && existing.version < version) {
+            removeOffHeap(key, existing);
+        }
+    }
+
+
+    // Removes the off-heap entry for the key, only if it still is the specified one
+    private void removeOffHeap(final TemplateCacheKey key, final OffHeapEntry entry) {
+        if (this.offHeapTier.remove(key, entry)) {
+            discardOffHeap(entry);
+        }
+    }
+
+
+    private void removeOffHeap(final TemplateCacheKey key) {
+        final OffHeapEntry removed = this.offHeapTier.remove(key);
+        if (removed != null) {
+            discardOffHeap(removed);
+        }
+    }
+
+
+    // Entries removed from the off-heap tier other than by eviction must also be removed from the FIFO
+    private void discardOffHeap(final OffHeapEntry removed) {
+        this.offHeapFifo.remove(removed);
+        releaseOffHeap(removed);
+    }
+
+
+    private void releaseOffHeap(final OffHeapEntry removed) {
+        this.offHeapSizeInBytes.addAndGet(-removed.sizeInBytes);
+        if (removed.release()) {
+            recycleBuffer(removed.buffer);
+        }
+    }
+
+
+    private ByteBuffer acquireBuffer(final int size) {
+        // Pooled buffers are reused if big enough, but not too big so that off-heap space is not wasted
+        synchronized (this.bufferPool) {
+            for (int i = 0, n = this.bufferPool.size(); i < n; i++) {
+                final ByteBuffer buffer = this.bufferPool.get(i);
+                if (buffer.capacity() >= size && buffer.capacity() <= (size * 2)
+                        && buffer.capacity() <= this.offHeapMaxSizeInBytes) {
+                    this.bufferPool.remove(i);
+                    buffer.clear();
+                    return buffer;
+                }
+            }
+        }
+        return ByteBuffer.allocateDirect(size);
+    }
+
+
+    private void recycleBuffer(final ByteBuffer buffer) {
+        // If the pool is full the buffer is simply discarded, and its memory will be reclaimed by the GC
+        synchronized (this.bufferPool) {
+            if (this.bufferPool.size() < MAX_POOLED_BUFFERS) {
+                this.bufferPool.add(buffer);
+            }
+        }
+    }
+
+
+    private void evictOffHeapIfNeeded() {
+
+        while (this.offHeapSizeInBytes.get() > this.offHeapMaxSizeInBytes) {
+
+            final OffHeapEntry eldest = this.offHeapFifo.poll();
+            if (eldest == null) {
+                return;
+            }
+
+            // Only remove if the entry has not been replaced in the meantime (in which case it will not be mapped
+            // anymore and its size will already have been discounted)
+            if (this.offHeapTier.remove(eldest.key, eldest)) {
+                releaseOffHeap(eldest);
+                final long newSize = this.offHeapSizeInBytes.get();
+                if (this.traceExecution) {
+                    this.logger.trace(
+                            "[THYMELEAF][{}][{}][CACHE_REMOVE][{}] Max off-heap size exceeded for cache \"{}\". Removing entry for key \"{}\". New off-heap size is {} bytes.",
+                            new Object[] {TemplateEngine.threadIndex(), this.name, Long.valueOf(newSize), this.name, eldest.key, Long.valueOf(newSize)});
+                }
+            }
+
+        }
+
+    }
+
+
+
+
+    static final class OffHeapEntry {
+
+        // Flag in the state counter that signals the entry has been removed and its buffer must be released as
+        // soon as no thread is reading it anymore
+        private static final int RELEASED = Integer.MIN_VALUE;
+
+        final TemplateCacheKey key;
+        final IEngineConfiguration configuration;
+        final TemplateData templateData;
+        final ByteBuffer buffer;
+        final int sizeInBytes;
+        final long creationTimeInMillis;
+        final long version;
+        private final AtomicInteger state; // number of threads reading the buffer, plus RELEASED flag
+
+        OffHeapEntry(
+                final TemplateCacheKey key, final IEngineConfiguration configuration,
+                final TemplateData templateData, final ByteBuffer buffer, final long creationTimeInMillis,
+                final long version) {
+            super();
+            this.key = key;
+            this.configuration = configuration;
+            this.templateData = templateData;
+            this.buffer = buffer;
+            this.sizeInBytes = buffer.capacity();
+            this.creationTimeInMillis = creationTimeInMillis;
+            this.version = version;
+            this.state = new AtomicInteger(0);
+        }
+
+        boolean acquire() {
+            while (true) {
+                final int current = this.state.get();
+                if ((current & RELEASED) != 0) {
+                    return false;
+                }
+                if (this.state.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        // Returns true if the buffer can be recycled (entry was released while being read, and this was the last reader)
+        boolean releaseAcquired() {
+            return (this.state.decrementAndGet() == RELEASED);
+        }
+
+        // Returns true if the buffer can be recycled (no thread was reading it)
+        boolean release() {
+            while (true) {
+                final int current = this.state.get();
+                if ((current & RELEASED) != 0) {
+                    return false;
+                }
+                if (this.state.compareAndSet(current, current | RELEASED)) {
+                    return (current == 0);
+                }
+            }
+        }
+
+    }
+
+
+}
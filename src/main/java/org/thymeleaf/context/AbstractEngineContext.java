@@ -62,6 +62,7 @@ public abstract class AbstractEngineContext implements IEngineContext {
 
     private IExpressionObjects expressionObjects = null;
     private IdentifierSequences identifierSequences = null;
+    private ExpressionMemoizationTable expressionMemoizationTable = null;
 
 
 
@@ -189,5 +190,30 @@ public final IdentifierSequences getIdentifierSequences() {
     }
 
 
+    /**
+     * <p>
+     *   Returns whether identifier sequences have been used in this context (i.e. whether
+     *   {@link #getIdentifierSequences()} has ever been called). Not part of the {@link IEngineContext}
+     *   interface, this is used by the engine in order to know whether the output of a context depends
+     *   on the order in which it was processed with respect to others.
+     * </p>
+     *
+     * @return true if identifier sequences have been used, false if not.
+     * @since 3.0.8
+     */
+    public final boolean isIdentifierSequencesInitialized() {
+        return this.identifierSequences != null;
+    }
+
+
+    public final ExpressionMemoizationTable getExpressionMemoizationTable() {
+        // Only templates evaluating expressions configured as pure will need this, so we will initialize it lazily
+        if (this.expressionMemoizationTable == null) {
+            this.expressionMemoizationTable = new ExpressionMemoizationTable();
+        }
+        return this.expressionMemoizationTable;
+    }
+
+
 
 }
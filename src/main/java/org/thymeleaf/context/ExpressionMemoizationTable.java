@@ -0,0 +1,146 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2016, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.context;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ *   Objects of this class are kept at engine contexts (see {@link AbstractEngineContext}) in order to memoize,
+ *   during a single template execution, the results of expressions considered <em>pure</em>, i.e. expressions
+ *   whose result only depends on the value of a <em>root</em> object (a variable or an expression object) which
+ *   will not be modified during template processing.
+ * </p>
+ * <p>
+ *   Results are keyed by the (parsed) expression object identity and, in order to be reused, require both the
+ *   execution context and the root object to be the same ones (identity) as when they were memoized. This way,
+ *   setting a new value for the root variable (at any context level, e.g. by means of <tt>th:with</tt>) or
+ *   removing it automatically invalidates the memoized result.
+ * </p>
+ * <p>
+ *   Note this class is NOT thread-safe, same as engine contexts themselves.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.0.8
+ *
+ */
+public final class ExpressionMemoizationTable {
+
+    /**
+     * <p>
+     *   Value returned by {@link #getResult(Object, Object, Object)} when no valid result is memoized.
+     * </p>
+     */
+    public static final Object NO_RESULT = new Object();
+
+
+    private final Map<Object,MemoizedResult> results;
+    private int hitCount = 0;
+    private int missCount = 0;
+
+
+
+
+    public ExpressionMemoizationTable() {
+        super();
+        this.results = new IdentityHashMap<Object,MemoizedResult>(16);
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Returns the memoized result for an expression, if it is still valid.
+     * </p>
+     *
+     * @param expression the expression (parsed) object.
+     * @param executionContext the execution context being used for the expression (might be null).
+     * @param rootValue the current value of the root object of the expression (might be null).
+     * @return the memoized result, or {@link #NO_RESULT} if there is no valid memoized result.
+     */
+    public Object getResult(final Object expression, final Object executionContext, final Object rootValue) {
+        final MemoizedResult result = this.results.get(expression);
+        if (result == null || result.executionContext != executionContext || result.rootValue != rootValue) {
+            this.missCount++;
+            return NO_RESULT;
+        }
+        this.hitCount++;
+        return result.value;
+    }
+
+
+    /**
+     * <p>
+     *   Memoizes the result of an expression, replacing any previous result for it.
+     * </p>
+     *
+     * @param expression the expression (parsed) object.
+     * @param executionContext the execution context used for the expression (might be null).
+     * @param rootValue the value of the root object of the expression used for computing the result (might be null).
+     * @param value the result.
+     */
+    public void putResult(final Object expression, final Object executionContext, final Object rootValue, final Object value) {
+        this.results.put(expression, new MemoizedResult(executionContext, rootValue, value));
+    }
+
+
+    public void clear() {
+        this.results.clear();
+    }
+
+
+    public int size() {
+        return this.results.size();
+    }
+
+
+    public int getHitCount() {
+        return this.hitCount;
+    }
+
+
+    public int getMissCount() {
+        return this.missCount;
+    }
+
+
+
+
+    private static final class MemoizedResult {
+
+        final Object executionContext;
+        final Object rootValue;
+        final Object value;
+
+        MemoizedResult(final Object executionContext, final Object rootValue, final Object value) {
+            super();
+            this.executionContext = executionContext;
+            this.rootValue = rootValue;
+            this.value = value;
+        }
+
+    }
+
+
+}
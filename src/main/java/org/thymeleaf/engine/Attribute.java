@@ -55,6 +55,8 @@ final class Attribute implements IAttribute {
     final int col;
 
     private volatile IStandardExpression standardExpression = null;
+    // Other parsed forms of the value: AssignationSequence, Each or FragmentSignature
+    private volatile Object standardParsedValue = null;
 
 
 
@@ -148,6 +150,15 @@ void setCachedStandardExpression(final IStandardExpression standardExpression) {
     }
 
 
+    Object getCachedStandardParsedValue() {
+        return this.standardParsedValue;
+    }
+
+    void setCachedStandardParsedValue(final Object standardParsedValue) {
+        this.standardParsedValue = standardParsedValue;
+    }
+
+
 
     /*
      * This method allows the easy creation of instances derivate from this one but keeping some specific fields
@@ -0,0 +1,138 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2016, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.thymeleaf.util.Validate;
+
+/**
+ * <p>
+ *   Bounded pool of fixed-size {@link ByteBuffer} instances, used by {@link ThrottledTemplatePublisher}
+ *   for emitting chunks of template output without allocating a new (possibly direct) buffer for
+ *   each of them.
+ * </p>
+ * <p>
+ *   Pools are thread-safe. Buffers obtained from the pool should be {@link #release(ByteBuffer) released}
+ *   once their contents have been consumed (e.g. written to a network channel). Buffers that are not released
+ *   will simply be garbage collected.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.0.8
+ *
+ */
+public final class ByteBufferPool {
+
+    public static final int DEFAULT_MAX_POOLED = 64;
+
+    private final int bufferSize;
+    private final int maxPooled;
+    private final boolean direct;
+
+    private final Queue<ByteBuffer> buffers;
+    private final AtomicInteger size;
+
+
+
+    public ByteBufferPool(final int bufferSize, final boolean direct) {
+        this(bufferSize, DEFAULT_MAX_POOLED, direct);
+    }
+
+
+    public ByteBufferPool(final int bufferSize, final int maxPooled, final boolean direct) {
+        super();
+        Validate.isTrue(bufferSize > 0, "Buffer size must be greater than zero");
+        Validate.isTrue(maxPooled >= 0, "Maximum number of pooled buffers cannot be negative");
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        this.direct = direct;
+        this.buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+        this.size = new AtomicInteger(0);
+    }
+
+
+
+
+    public int getBufferSize() {
+        return this.bufferSize;
+    }
+
+
+    public int getMaxPooled() {
+        return this.maxPooled;
+    }
+
+
+    public boolean isDirect() {
+        return this.direct;
+    }
+
+
+    public int getPooledCount() {
+        return this.size.get();
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Obtains a cleared buffer from the pool, allocating a new one if the pool is empty.
+     * </p>
+     *
+     * @return the buffer.
+     */
+    public ByteBuffer acquire() {
+        final ByteBuffer buffer = this.buffers.poll();
+        if (buffer != null) {
+            this.size.decrementAndGet();
+            return buffer;
+        }
+        return (this.direct? ByteBuffer.allocateDirect(this.bufferSize) : ByteBuffer.allocate(this.bufferSize));
+    }
+
+
+    /**
+     * <p>
+     *   Returns a buffer to the pool. Buffers not belonging to this pool (different capacity or type)
+     *   are ignored, as are buffers returned when the pool is already full.
+     * </p>
+     *
+     * @param buffer the buffer being returned.
+     */
+    public void release(final ByteBuffer buffer) {
+        if (buffer == null || buffer.capacity() != this.bufferSize || buffer.isDirect() != this.direct || buffer.isReadOnly()) {
+            return;
+        }
+        if (this.size.incrementAndGet() > this.maxPooled) {
+            this.size.decrementAndGet();
+            return;
+        }
+        buffer.clear();
+        this.buffers.offer(buffer);
+    }
+
+
+}
@@ -40,6 +40,10 @@
     final String trailingWhiteSpace; // can be null if there is none
     final boolean unmatched;
 
+    // Iteration models computed for the element this tag closes, so that they can be reused when the
+    // same (cached) element is iterated again
+    private volatile IteratedGatheringModelProcessable.CachedIterationModels cachedIterationModels = null;
+
 
 
 
@@ -79,6 +83,15 @@ public boolean isUnmatched() {
     }
 
 
+    IteratedGatheringModelProcessable.CachedIterationModels getCachedIterationModels() {
+        return this.cachedIterationModels;
+    }
+
+    void setCachedIterationModels(final IteratedGatheringModelProcessable.CachedIterationModels cachedIterationModels) {
+        this.cachedIterationModels = cachedIterationModels;
+    }
+
+
     // ------------
     // NO GETTER for trailingWhiteSpace, as it is an internal-only property with no interest outside the engine
     // ------------
@@ -0,0 +1,787 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2016, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.thymeleaf.exceptions.TemplateProcessingException;
+import org.thymeleaf.model.AttributeValueQuotes;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.util.IWritableCharSequence;
+
+/*
+ * Immutable, columnar representation of the events of a TemplateModel, meant for reducing the memory footprint
+ * (number of objects, headers and pointers) of large template caches (see
+ * TemplateEngine#setCompactTemplateModelsEnabled(...)).
+ *
+ * Instead of one object per event (plus Attributes, Attribute[] and Attribute objects for each element tag), this
+ * representation keeps:
+ *
+ *   - A byte[] with a type code for each event.
+ *   - An int[] with the offset of the data of each event in a shared int[] data table.
+ *   - A shared char[] text pool, containing the contents of texts, comments and CDATA sections plus attribute values,
+ *     referenced from the data table as (offset, length) pairs.
+ *   - A table of (deduplicated) names: element and attribute names, whitespace, prefixes/suffixes, template names...
+ *     with their resolved element and attribute definitions.
+ *   - An int[] attribute table, with one row per attribute of each element tag.
+ *
+ * Event objects are materialized (all of them at once) the first time the engine processes the model or asks for
+ * its events, and are then kept through a soft reference so that later executions reuse the very same objects.
+ * This keeps working all the caches that live in event objects (parsed attribute expressions and values, fragment
+ * resolution caches, cached iteration models) while the Garbage Collector can still reclaim the events when memory
+ * runs low, in which case they will be materialized again when needed. Writing the model to output does not
+ * materialize any events.
+ *
+ * @author Daniel Fern&aacute;ndez
+ * @since 3.0.8
+ *
+ */
+final class CompactTemplateModel {
+
+    static final byte EVENT_TEMPLATE_START = 1;
+    static final byte EVENT_TEMPLATE_END = 2;
+    static final byte EVENT_TEXT = 3;
+    static final byte EVENT_COMMENT = 4;
+    static final byte EVENT_CDATA_SECTION = 5;
+    static final byte EVENT_DOC_TYPE = 6;
+    static final byte EVENT_XML_DECLARATION = 7;
+    static final byte EVENT_PROCESSING_INSTRUCTION = 8;
+    static final byte EVENT_OPEN_ELEMENT = 9;
+    static final byte EVENT_STANDALONE_ELEMENT = 10;
+    static final byte EVENT_CLOSE_ELEMENT = 11;
+
+    private static final int NULL = -1;
+
+    // Attributes of element tags are referenced with a count, which can also signal there is no Attributes
+    // object at all (NULL_ATTRIBUTES) or there is one but with a null Attribute[] (NO_ATTRIBUTE_ARRAY)
+    private static final int NULL_ATTRIBUTES = -2;
+    private static final int NO_ATTRIBUTE_ARRAY = -1;
+
+    // Each row of the attribute table: templateName, line, col, completeName, operator, valueOffset, valueLength, quotes
+    private static final int ATTRIBUTE_ROW_SIZE = 8;
+
+    private static final int FLAG_SYNTHETIC = 1;
+    private static final int FLAG_MINIMIZED = 2;
+    private static final int FLAG_UNMATCHED = 4;
+
+    private static final AttributeValueQuotes[] ATTRIBUTE_VALUE_QUOTES = AttributeValueQuotes.values();
+
+
+    private final TemplateMode templateMode;
+    private final byte[] types;
+    private final int[] dataOffsets;
+    private final int[] data;
+    private final char[] textPool;
+    private final String[] names;
+    private final ElementDefinition[] nameElementDefinitions;
+    private final AttributeDefinition[] nameAttributeDefinitions;
+    private final int[] attributeTable;
+
+    private volatile SoftReference<IEngineTemplateEvent[]> materializedEvents = null;
+
+
+
+
+    static CompactTemplateModel compact(final TemplateMode templateMode, final IEngineTemplateEvent[] queue) {
+        final Builder builder = new Builder(templateMode, queue.length);
+        for (int i = 0; i < queue.length; i++) {
+            builder.addEvent(queue[i]);
+        }
+        return builder.build();
+    }
+
+
+
+
+    private CompactTemplateModel(
+            final TemplateMode templateMode, final byte[] types, final int[] dataOffsets, final int[] data,
+            final char[] textPool, final String[] names,
+            final ElementDefinition[] nameElementDefinitions, final AttributeDefinition[] nameAttributeDefinitions,
+            final int[] attributeTable) {
+        super();
+        this.templateMode = templateMode;
+        this.types = types;
+        this.dataOffsets = dataOffsets;
+        this.data = data;
+        this.textPool = textPool;
+        this.names = names;
+        this.nameElementDefinitions = nameElementDefinitions;
+        this.nameAttributeDefinitions = nameAttributeDefinitions;
+        this.attributeTable = attributeTable;
+    }
+
+
+
+
+    int size() {
+        return this.types.length;
+    }
+
+
+    byte getEventType(final int pos) {
+        return this.types[pos];
+    }
+
+
+
+
+    /*
+     * Returns the materialized events, reusing the ones materialized before if they have not been reclaimed yet.
+     * Two threads racing to materialize them could end up using different objects, which is harmless as each of
+     * them is a complete and correct set of events.
+     */
+    IEngineTemplateEvent[] getEvents() {
+        final SoftReference<IEngineTemplateEvent[]> reference = this.materializedEvents;
+        IEngineTemplateEvent[] events = (reference == null? null : reference.get());
+        if (events == null) {
+            events = new IEngineTemplateEvent[this.types.length];
+            for (int i = 0; i < events.length; i++) {
+                events[i] = materialize(i);
+            }
+            this.materializedEvents = new SoftReference<IEngineTemplateEvent[]>(events);
+        }
+        return events;
+    }
+
+
+    private IEngineTemplateEvent materialize(final int pos) {
+
+        final byte type = this.types[pos];
+
+        if (type == EVENT_TEMPLATE_START) {
+            return TemplateStart.TEMPLATE_START_INSTANCE;
+        }
+        if (type == EVENT_TEMPLATE_END) {
+            return TemplateEnd.TEMPLATE_END_INSTANCE;
+        }
+
+        final int[] d = this.data;
+        int o = this.dataOffsets[pos];
+
+        final String templateName = name(d[o++]);
+        final int line = d[o++];
+        final int col = d[o++];
+
+        switch (type) {
+
+            case EVENT_TEXT:
+                return new Text(text(d[o], d[o + 1]), templateName, line, col);
+
+            case EVENT_OPEN_ELEMENT: {
+                final int nameIndex = d[o++];
+                final int flags = d[o++];
+                return new OpenElementTag(
+                        this.templateMode, this.nameElementDefinitions[nameIndex], this.names[nameIndex],
+                        attributes(d[o], d[o + 1], d[o + 2]), (flags & FLAG_SYNTHETIC) != 0, templateName, line, col);
+            }
+
+            case EVENT_STANDALONE_ELEMENT: {
+                final int nameIndex = d[o++];
+                final int flags = d[o++];
+                return new StandaloneElementTag(
+                        this.templateMode, this.nameElementDefinitions[nameIndex], this.names[nameIndex],
+                        attributes(d[o], d[o + 1], d[o + 2]), (flags & FLAG_SYNTHETIC) != 0, (flags & FLAG_MINIMIZED) != 0,
+                        templateName, line, col);
+            }
+
+            case EVENT_CLOSE_ELEMENT: {
+                final int nameIndex = d[o++];
+                final int flags = d[o + 1];
+                return new CloseElementTag(
+                        this.templateMode, this.nameElementDefinitions[nameIndex], this.names[nameIndex],
+                        name(d[o]), (flags & FLAG_SYNTHETIC) != 0, (flags & FLAG_UNMATCHED) != 0, templateName, line, col);
+            }
+
+            case EVENT_COMMENT:
+                return new Comment(name(d[o]), text(d[o + 1], d[o + 2]), name(d[o + 3]), templateName, line, col);
+
+            case EVENT_CDATA_SECTION:
+                return new CDATASection(name(d[o]), text(d[o + 1], d[o + 2]), name(d[o + 3]), templateName, line, col);
+
+            case EVENT_DOC_TYPE:
+                return new DocType(
+                        name(d[o]), name(d[o + 1]), name(d[o + 2]), name(d[o + 3]), name(d[o + 4]), name(d[o + 5]),
+                        templateName, line, col);
+
+            case EVENT_XML_DECLARATION:
+                return new XMLDeclaration(
+                        name(d[o]), name(d[o + 1]), name(d[o + 2]), name(d[o + 3]), name(d[o + 4]),
+                        templateName, line, col);
+
+            case EVENT_PROCESSING_INSTRUCTION:
+                return new ProcessingInstruction(name(d[o]), name(d[o + 1]), name(d[o + 2]), templateName, line, col);
+
+            default:
+                throw new TemplateProcessingException("Unknown compact template model event type code " + type);
+
+        }
+
+    }
+
+
+    private Attributes attributes(final int attributeCount, final int attributeRow, final int whiteSpacesOffset) {
+
+        if (attributeCount == NULL_ATTRIBUTES) {
+            return null;
+        }
+
+        Attribute[] attributeArray = null;
+        if (attributeCount != NO_ATTRIBUTE_ARRAY) {
+            attributeArray = new Attribute[attributeCount];
+            final int[] t = this.attributeTable;
+            for (int i = 0, r = attributeRow; i < attributeCount; i++, r += ATTRIBUTE_ROW_SIZE) {
+                final int nameIndex = t[r + 3];
+                attributeArray[i] =
+                        new Attribute(
+                                this.nameAttributeDefinitions[nameIndex], this.names[nameIndex], name(t[r + 4]),
+                                string(t[r + 5], t[r + 6]), (t[r + 7] == NULL? null : ATTRIBUTE_VALUE_QUOTES[t[r + 7]]),
+                                name(t[r]), t[r + 1], t[r + 2]);
+            }
+        }
+
+        String[] innerWhiteSpaces = null;
+        final int whiteSpaceCount = this.data[whiteSpacesOffset];
+        if (whiteSpaceCount != NULL) {
+            innerWhiteSpaces = new String[whiteSpaceCount];
+            for (int i = 0; i < whiteSpaceCount; i++) {
+                innerWhiteSpaces[i] = this.names[this.data[whiteSpacesOffset + 1 + i]];
+            }
+        }
+
+        if (attributeArray == null && innerWhiteSpaces == null) {
+            return Attributes.EMPTY_ATTRIBUTES;
+        }
+        return new Attributes(attributeArray, innerWhiteSpaces);
+
+    }
+
+
+
+
+    void process(final ITemplateHandler handler) {
+        final IEngineTemplateEvent[] events = getEvents();
+        for (int i = 0; i < events.length; i++) {
+            events[i].beHandled(handler);
+        }
+    }
+
+
+    int process(final ITemplateHandler handler, final int offset, final TemplateFlowController controller) {
+
+        if (controller == null) {
+            process(handler);
+            return this.types.length;
+        }
+
+        if (offset >= this.types.length) {
+            return 0;
+        }
+
+        final IEngineTemplateEvent[] events = getEvents();
+        int processed = 0;
+
+        for (int i = offset; i < events.length && !controller.stopProcessing; i++) {
+            events[i].beHandled(handler);
+            processed++;
+        }
+
+        return processed;
+
+    }
+
+
+
+
+    /*
+     * Writes the model directly from the columns, producing exactly the same output as the write(Writer) methods
+     * of the corresponding event objects, but without materializing them.
+     */
+    void write(final Writer writer) throws IOException {
+
+        final int[] d = this.data;
+        final boolean text = this.templateMode.isText();
+
+        for (int i = 0; i < this.types.length; i++) {
+
+            final byte type = this.types[i];
+            if (type == EVENT_TEMPLATE_START || type == EVENT_TEMPLATE_END) {
+                continue;
+            }
+
+            // Skip the location (templateName, line, col)
+            final int o = this.dataOffsets[i] + 3;
+
+            switch (type) {
+
+                case EVENT_TEXT:
+                    writeText(writer, d[o], d[o + 1]);
+                    break;
+
+                case EVENT_OPEN_ELEMENT:
+                case EVENT_STANDALONE_ELEMENT: {
+                    final int flags = d[o + 1];
+                    if ((flags & FLAG_SYNTHETIC) != 0) {
+                        break;
+                    }
+                    writer.write(text? "[#" : "<");
+                    writer.write(this.names[d[o]]);
+                    writeAttributes(writer, d[o + 2], d[o + 3], d[o + 4]);
+                    if ((flags & FLAG_MINIMIZED) != 0) {
+                        writer.write(text? "/]" : "/>");
+                    } else {
+                        writer.write(text? ']' : '>');
+                    }
+                    break;
+                }
+
+                case EVENT_CLOSE_ELEMENT: {
+                    if ((d[o + 2] & FLAG_SYNTHETIC) != 0) {
+                        break;
+                    }
+                    writer.write(text? "[/" : "</");
+                    writer.write(this.names[d[o]]);
+                    if (d[o + 1] != NULL) {
+                        writer.write(this.names[d[o + 1]]);
+                    }
+                    writer.write(text? ']' : '>');
+                    break;
+                }
+
+                case EVENT_COMMENT:
+                case EVENT_CDATA_SECTION:
+                    writer.write(this.names[d[o]]);
+                    writeText(writer, d[o + 1], d[o + 2]);
+                    writer.write(this.names[d[o + 3]]);
+                    break;
+
+                case EVENT_DOC_TYPE:
+                case EVENT_XML_DECLARATION:
+                case EVENT_PROCESSING_INSTRUCTION:
+                    // The first String for all these events is their complete representation
+                    writer.write(this.names[d[o]]);
+                    break;
+
+                default:
+                    throw new TemplateProcessingException("Unknown compact template model event type code " + type);
+
+            }
+
+        }
+
+    }
+
+
+    private void writeAttributes(
+            final Writer writer, final int attributeCount, final int attributeRow, final int whiteSpacesOffset)
+            throws IOException {
+
+        if (attributeCount == NULL_ATTRIBUTES) {
+            return;
+        }
+
+        final int whiteSpaceCount = this.data[whiteSpacesOffset];
+
+        if (attributeCount == NO_ATTRIBUTE_ARRAY) {
+            if (whiteSpaceCount != NULL) {
+                // In this case, there will be only one white space
+                writer.write(this.names[this.data[whiteSpacesOffset + 1]]);
+            }
+            return;
+        }
+
+        final int[] t = this.attributeTable;
+        int i = 0;
+        for (int r = attributeRow; i < attributeCount; i++, r += ATTRIBUTE_ROW_SIZE) {
+            writer.write(this.names[this.data[whiteSpacesOffset + 1 + i]]);
+            writer.write(this.names[t[r + 3]]);
+            if (t[r + 5] != NULL) {
+                writer.write(this.names[t[r + 4]]);
+                final AttributeValueQuotes valueQuotes = (t[r + 7] == NULL? null : ATTRIBUTE_VALUE_QUOTES[t[r + 7]]);
+                if (valueQuotes == AttributeValueQuotes.DOUBLE) {
+                    writer.write('"');
+                    writer.write(this.textPool, t[r + 5], t[r + 6]);
+                    writer.write('"');
+                } else if (valueQuotes == AttributeValueQuotes.SINGLE) {
+                    writer.write('\'');
+                    writer.write(this.textPool, t[r + 5], t[r + 6]);
+                    writer.write('\'');
+                } else {
+                    writer.write(this.textPool, t[r + 5], t[r + 6]);
+                }
+            }
+        }
+
+        // There might be a final whitespace after the last attribute
+        if (i < whiteSpaceCount) {
+            writer.write(this.names[this.data[whiteSpacesOffset + 1 + i]]);
+        }
+
+    }
+
+
+    private void writeText(final Writer writer, final int offset, final int length) throws IOException {
+        if (offset != NULL) {
+            writer.write(this.textPool, offset, length);
+        }
+    }
+
+
+
+
+    private String name(final int index) {
+        return (index == NULL? null : this.names[index]);
+    }
+
+
+    private String string(final int offset, final int length) {
+        return (offset == NULL? null : new String(this.textPool, offset, length));
+    }
+
+
+    private CharSequence text(final int offset, final int length) {
+        return (offset == NULL? null : new PooledText(this.textPool, offset, length));
+    }
+
+
+
+
+    /*
+     * Text contents are materialized as views on the text pool, so that no String needs to be created unless
+     * a processor asks for it (in which case it will be computed and kept by the event itself).
+     */
+    private static final class PooledText implements IWritableCharSequence {
+
+        private final char[] pool;
+        private final int offset;
+        private final int length;
+
+        PooledText(final char[] pool, final int offset, final int length) {
+            super();
+            this.pool = pool;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public int length() {
+            return this.length;
+        }
+
+        public char charAt(final int index) {
+            if (index < 0 || index >= this.length) {
+                throw new StringIndexOutOfBoundsException(index);
+            }
+            return this.pool[this.offset + index];
+        }
+
+        public CharSequence subSequence(final int start, final int end) {
+            if (start < 0 || end > this.length || start > end) {
+                throw new StringIndexOutOfBoundsException("Invalid subsequence: " + start + ", " + end);
+            }
+            return new PooledText(this.pool, this.offset + start, end - start);
+        }
+
+        public void write(final Writer writer) throws IOException {
+            writer.write(this.pool, this.offset, this.length);
+        }
+
+        @Override
+        public String toString() {
+            return new String(this.pool, this.offset, this.length);
+        }
+
+    }
+
+
+
+
+    private static final class Builder {
+
+        private final TemplateMode templateMode;
+
+        private final byte[] types;
+        private final int[] dataOffsets;
+        private int[] data;
+        private int dataSize;
+        private int[] attributeTable;
+        private int attributeTableSize;
+        private final StringBuilder textPool;
+
+        private final Map<String,Integer> nameIndexes;
+        private String[] names;
+        private ElementDefinition[] nameElementDefinitions;
+        private AttributeDefinition[] nameAttributeDefinitions;
+        private int namesSize;
+
+        private int eventCount;
+
+
+        Builder(final TemplateMode templateMode, final int eventCount) {
+            super();
+            this.templateMode = templateMode;
+            this.types = new byte[eventCount];
+            this.dataOffsets = new int[eventCount];
+            this.data = new int[Math.max(16, eventCount * 6)];
+            this.dataSize = 0;
+            this.attributeTable = new int[ATTRIBUTE_ROW_SIZE * 16];
+            this.attributeTableSize = 0;
+            this.textPool = new StringBuilder(eventCount * 16);
+            this.nameIndexes = new HashMap<String, Integer>(64);
+            this.names = new String[64];
+            this.nameElementDefinitions = new ElementDefinition[64];
+            this.nameAttributeDefinitions = new AttributeDefinition[64];
+            this.namesSize = 0;
+            this.eventCount = 0;
+        }
+
+
+        void addEvent(final IEngineTemplateEvent event) {
+
+            final int pos = this.eventCount++;
+            this.dataOffsets[pos] = this.dataSize;
+
+            if (event == TemplateStart.TEMPLATE_START_INSTANCE) {
+                this.types[pos] = EVENT_TEMPLATE_START;
+                return;
+            }
+            if (event == TemplateEnd.TEMPLATE_END_INSTANCE) {
+                this.types[pos] = EVENT_TEMPLATE_END;
+                return;
+            }
+
+            if (event instanceof Text) {
+                final Text text = (Text) event;
+                this.types[pos] = EVENT_TEXT;
+                addLocation(text);
+                addText(text.getText());
+            } else if (event instanceof OpenElementTag) {
+                final OpenElementTag tag = (OpenElementTag) event;
+                this.types[pos] = EVENT_OPEN_ELEMENT;
+                addLocation(tag);
+                addData(elementName(tag));
+                addData(tag.synthetic? FLAG_SYNTHETIC : 0);
+                addAttributes(tag.attributes);
+            } else if (event instanceof StandaloneElementTag) {
+                final StandaloneElementTag tag = (StandaloneElementTag) event;
+                this.types[pos] = EVENT_STANDALONE_ELEMENT;
+                addLocation(tag);
+                addData(elementName(tag));
+                addData((tag.synthetic? FLAG_SYNTHETIC : 0) | (tag.minimized? FLAG_MINIMIZED : 0));
+                addAttributes(tag.attributes);
+            } else if (event instanceof CloseElementTag) {
+                final CloseElementTag tag = (CloseElementTag) event;
+                this.types[pos] = EVENT_CLOSE_ELEMENT;
+                addLocation(tag);
+                addData(elementName(tag));
+                addData(name(tag.trailingWhiteSpace));
+                addData((tag.synthetic? FLAG_SYNTHETIC : 0) | (tag.unmatched? FLAG_UNMATCHED : 0));
+            } else if (event instanceof Comment) {
+                final Comment comment = (Comment) event;
+                this.types[pos] = EVENT_COMMENT;
+                addLocation(comment);
+                addData(name(comment.prefix));
+                addText(comment.getContent());
+                addData(name(comment.suffix));
+            } else if (event instanceof CDATASection) {
+                final CDATASection cdataSection = (CDATASection) event;
+                this.types[pos] = EVENT_CDATA_SECTION;
+                addLocation(cdataSection);
+                addData(name(cdataSection.prefix));
+                addText(cdataSection.getContent());
+                addData(name(cdataSection.suffix));
+            } else if (event instanceof DocType) {
+                final DocType docType = (DocType) event;
+                this.types[pos] = EVENT_DOC_TYPE;
+                addLocation(docType);
+                addData(name(docType.getDocType()));
+                addData(name(docType.getKeyword()));
+                addData(name(docType.getElementName()));
+                addData(name(docType.getPublicId()));
+                addData(name(docType.getSystemId()));
+                addData(name(docType.getInternalSubset()));
+            } else if (event instanceof XMLDeclaration) {
+                final XMLDeclaration xmlDeclaration = (XMLDeclaration) event;
+                this.types[pos] = EVENT_XML_DECLARATION;
+                addLocation(xmlDeclaration);
+                addData(name(xmlDeclaration.getXmlDeclaration()));
+                addData(name(xmlDeclaration.getKeyword()));
+                addData(name(xmlDeclaration.getVersion()));
+                addData(name(xmlDeclaration.getEncoding()));
+                addData(name(xmlDeclaration.getStandalone()));
+            } else if (event instanceof ProcessingInstruction) {
+                final ProcessingInstruction processingInstruction = (ProcessingInstruction) event;
+                this.types[pos] = EVENT_PROCESSING_INSTRUCTION;
+                addLocation(processingInstruction);
+                addData(name(processingInstruction.getProcessingInstruction()));
+                addData(name(processingInstruction.getTarget()));
+                addData(name(processingInstruction.getContent()));
+            } else {
+                throw new TemplateProcessingException(
+                        "Cannot compact template model: unknown event type " + event.getClass().getName());
+            }
+
+        }
+
+
+        private void addAttributes(final Attributes attributes) {
+
+            if (attributes == null) {
+                addData(NULL_ATTRIBUTES);
+                addData(NULL);
+                addData(NULL);
+                return;
+            }
+
+            final Attribute[] attributeArray = attributes.attributes;
+            final String[] innerWhiteSpaces = attributes.innerWhiteSpaces;
+
+            if (attributeArray == null) {
+                addData(NO_ATTRIBUTE_ARRAY);
+                addData(NULL);
+            } else {
+                addData(attributeArray.length);
+                addData(this.attributeTableSize);
+                for (int i = 0; i < attributeArray.length; i++) {
+                    addAttribute(attributeArray[i]);
+                }
+            }
+
+            // The inner whitespaces are stored right after the reference to them (offset of the count)
+            addData(this.dataSize + 1);
+            addData(innerWhiteSpaces == null? NULL : innerWhiteSpaces.length);
+            if (innerWhiteSpaces != null) {
+                for (int i = 0; i < innerWhiteSpaces.length; i++) {
+                    addData(name(innerWhiteSpaces[i]));
+                }
+            }
+
+        }
+
+
+        private void addAttribute(final Attribute attribute) {
+
+            if (this.attributeTableSize + ATTRIBUTE_ROW_SIZE > this.attributeTable.length) {
+                this.attributeTable = Arrays.copyOf(this.attributeTable, this.attributeTable.length * 2);
+            }
+
+            final int nameIndex = name(attribute.completeName);
+            if (this.nameAttributeDefinitions[nameIndex] == null) {
+                this.nameAttributeDefinitions[nameIndex] = attribute.definition;
+            }
+
+            final int r = this.attributeTableSize;
+            this.attributeTable[r] = name(attribute.templateName);
+            this.attributeTable[r + 1] = attribute.line;
+            this.attributeTable[r + 2] = attribute.col;
+            this.attributeTable[r + 3] = nameIndex;
+            this.attributeTable[r + 4] = name(attribute.operator);
+            if (attribute.value == null) {
+                this.attributeTable[r + 5] = NULL;
+                this.attributeTable[r + 6] = 0;
+            } else {
+                this.attributeTable[r + 5] = this.textPool.length();
+                this.attributeTable[r + 6] = attribute.value.length();
+                this.textPool.append(attribute.value);
+            }
+            this.attributeTable[r + 7] = (attribute.valueQuotes == null? NULL : attribute.valueQuotes.ordinal());
+            this.attributeTableSize += ATTRIBUTE_ROW_SIZE;
+
+        }
+
+
+        private int elementName(final AbstractElementTag tag) {
+            final int nameIndex = name(tag.elementCompleteName);
+            if (this.nameElementDefinitions[nameIndex] == null) {
+                this.nameElementDefinitions[nameIndex] = tag.elementDefinition;
+            }
+            return nameIndex;
+        }
+
+
+        private void addLocation(final AbstractTemplateEvent event) {
+            addData(name(event.templateName));
+            addData(event.line);
+            addData(event.col);
+        }
+
+
+        private void addText(final String text) {
+            if (text == null) {
+                addData(NULL);
+                addData(0);
+                return;
+            }
+            addData(this.textPool.length());
+            addData(text.length());
+            this.textPool.append(text);
+        }
+
+
+        private void addData(final int value) {
+            if (this.dataSize == this.data.length) {
+                this.data = Arrays.copyOf(this.data, this.data.length * 2);
+            }
+            this.data[this.dataSize++] = value;
+        }
+
+
+        private int name(final String name) {
+
+            if (name == null) {
+                return NULL;
+            }
+
+            final Integer index = this.nameIndexes.get(name);
+            if (index != null) {
+                return index.intValue();
+            }
+
+            if (this.namesSize == this.names.length) {
+                this.names = Arrays.copyOf(this.names, this.names.length * 2);
+                this.nameElementDefinitions = Arrays.copyOf(this.nameElementDefinitions, this.names.length);
+                this.nameAttributeDefinitions = Arrays.copyOf(this.nameAttributeDefinitions, this.names.length);
+            }
+            final int newIndex = this.namesSize++;
+            this.names[newIndex] = name;
+            this.nameIndexes.put(name, Integer.valueOf(newIndex));
+            return newIndex;
+
+        }
+
+
+        CompactTemplateModel build() {
+            final char[] pool = new char[this.textPool.length()];
+            this.textPool.getChars(0, pool.length, pool, 0);
+            return new CompactTemplateModel(
+                    this.templateMode, this.types, this.dataOffsets, Arrays.copyOf(this.data, this.dataSize), pool,
+                    Arrays.copyOf(this.names, this.namesSize),
+                    Arrays.copyOf(this.nameElementDefinitions, this.namesSize),
+                    Arrays.copyOf(this.nameAttributeDefinitions, this.namesSize),
+                    Arrays.copyOf(this.attributeTable, this.attributeTableSize));
+        }
+
+    }
+
+
+}
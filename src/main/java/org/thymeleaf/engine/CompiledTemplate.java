@@ -0,0 +1,173 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2016, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.thymeleaf.context.ITemplateContext;
+import org.thymeleaf.exceptions.TemplateOutputException;
+import org.thymeleaf.exceptions.TemplateProcessingException;
+import org.thymeleaf.standard.expression.Fragment;
+import org.thymeleaf.standard.expression.IStandardExpression;
+import org.thymeleaf.standard.expression.NoOpToken;
+import org.thymeleaf.standard.expression.StandardExpressionExecutionContext;
+import org.unbescape.html.HtmlEscape;
+
+/*
+ * Compiled form of a cached TemplateModel, created by TemplateCompiler. It is made of a flat sequence of
+ * segments, each of which is either a String (pre-rendered output) or an ExpressionSlot (the body of an
+ * element with a th:text or th:utext attribute).
+ *
+ * Instances of this class are immutable and therefore thread-safe.
+ *
+ * @author Daniel Fern&aacute;ndez
+ * @since 3.0.8
+ *
+ */
+final class CompiledTemplate {
+
+    // Signals models that have already been tried and cannot be compiled
+    static final CompiledTemplate NOT_COMPILABLE = new CompiledTemplate(new Object[0]);
+
+
+    private final Object[] segments;
+
+
+
+    CompiledTemplate(final Object[] segments) {
+        super();
+        this.segments = segments;
+    }
+
+
+
+    int getSegmentCount() {
+        return this.segments.length;
+    }
+
+
+
+    void process(final ITemplateContext context, final Writer writer) {
+        try {
+            processSegments(context, writer, this.segments);
+        } catch (final IOException e) {
+            throw new TemplateOutputException(
+                    "An error happened during template rendering", context.getTemplateData().getTemplate(), -1, -1, e);
+        }
+    }
+
+
+    private static void processSegments(
+            final ITemplateContext context, final Writer writer, final Object[] segments) throws IOException {
+
+        for (int i = 0; i < segments.length; i++) {
+            final Object segment = segments[i];
+            if (segment instanceof String) {
+                writer.write((String) segment);
+            } else {
+                ((ExpressionSlot) segment).process(context, writer);
+            }
+        }
+
+    }
+
+
+
+
+    /*
+     * Executes the expression in a th:text or th:utext attribute, in the same way StandardTextTagProcessor and
+     * StandardUtextTagProcessor do, and writes the result in place of the element body. If the result is
+     * the no-op token, the (compiled) original body is output instead.
+     */
+    static final class ExpressionSlot {
+
+        private final IStandardExpression expression;
+        private final boolean escape;
+        private final Object[] bodySegments;
+        private final String processorClassName;
+        private final String templateName;
+        private final int line;
+        private final int col;
+
+
+        ExpressionSlot(
+                final IStandardExpression expression, final boolean escape, final Object[] bodySegments,
+                final String processorClassName, final String templateName, final int line, final int col) {
+            super();
+            this.expression = expression;
+            this.escape = escape;
+            this.bodySegments = bodySegments;
+            this.processorClassName = processorClassName;
+            this.templateName = templateName;
+            this.line = line;
+            this.col = col;
+        }
+
+
+        void process(final ITemplateContext context, final Writer writer) throws IOException {
+
+            final Object expressionResult;
+            try {
+
+                expressionResult =
+                        (this.escape?
+                                this.expression.execute(context) :
+                                this.expression.execute(context, StandardExpressionExecutionContext.RESTRICTED));
+
+            } catch (final TemplateProcessingException e) {
+                if (this.templateName != null) {
+                    if (!e.hasTemplateName()) {
+                        e.setTemplateName(this.templateName);
+                    }
+                    if (!e.hasLineAndCol()) {
+                        e.setLineAndCol(this.line, this.col);
+                    }
+                }
+                throw e;
+            } catch (final Exception e) {
+                throw new TemplateProcessingException(
+                        "Error during execution of processor '" + this.processorClassName + "'",
+                        this.templateName, this.line, this.col, e);
+            }
+
+            if (expressionResult == NoOpToken.VALUE) {
+                processSegments(context, writer, this.bodySegments);
+                return;
+            }
+
+            if (!this.escape && expressionResult instanceof Fragment) {
+                // Unescaped fragments are output as non-processable markup, same as th:utext would do. The
+                // empty fragment (~{}) has no model: th:utext simply removes the body in that case.
+                if (expressionResult != Fragment.EMPTY_FRAGMENT) {
+                    ((Fragment) expressionResult).getTemplateModel().write(writer);
+                }
+                return;
+            }
+
+            final String text = (expressionResult == null? "" : expressionResult.toString());
+            writer.write(this.escape? HtmlEscape.escapeHtml4Xml(text) : text);
+
+        }
+
+    }
+
+
+}
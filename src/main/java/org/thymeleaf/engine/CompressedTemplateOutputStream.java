@@ -0,0 +1,445 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2016, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.thymeleaf.util.Validate;
+
+/**
+ * <p>
+ *   Output stream that compresses (GZIP or DEFLATE) the bytes written to it, and that is aware of the
+ *   points in template output at which it makes sense to flush compressed data to the client.
+ * </p>
+ * <p>
+ *   Instead of wrapping template output in a generic compressing stream (e.g. a servlet filter using
+ *   {@link java.util.zip.GZIPOutputStream}), this stream can be passed directly to the
+ *   <tt>process(...)</tt> methods of {@link org.thymeleaf.IThrottledTemplateProcessor}. In that case
+ *   the engine will perform a <em>sync flush</em> of compressed data only at meaningful points:
+ * </p>
+ * <ul>
+ *   <li>After the <tt>&lt;/head&gt;</tt> tag has been output in HTML templates, so that the browser
+ *       can start requesting stylesheets and scripts as soon as possible.</li>
+ *   <li>At the end of each throttled <tt>process(maxOutput, ...)</tt> call.</li>
+ *   <li>At the end of each event, when the output is Server-Sent Events.</li>
+ * </ul>
+ * <p>
+ *   Any other flushes (including calls to {@link #flush()}, which the engine or the writers wrapping
+ *   this stream might perform often) will not produce a sync flush, and calls to {@link #syncFlush()}
+ *   that happen when no data has been written since the previous sync flush will not produce any
+ *   (useless) output either. Compressed data is produced directly from the byte buffers handed
+ *   by the engine, without any intermediate copies.
+ * </p>
+ * <p>
+ *   {@link Deflater} instances are obtained from a {@link DeflaterPool} and returned to it when the
+ *   stream is {@link #finish() finished} or {@link #close() closed}. Note that, as a consequence, calling
+ *   {@link #finish()} (or {@link #close()}) once all output has been written is <strong>required</strong>.
+ * </p>
+ * <p>
+ *   Objects of this class are not thread-safe.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.0.8
+ *
+ */
+public final class CompressedTemplateOutputStream extends OutputStream {
+
+    public static final int DEFAULT_BUFFER_SIZE = 4096;
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final byte[] GZIP_HEADER =
+            new byte[] {
+                    (byte) GZIP_MAGIC, (byte)(GZIP_MAGIC >> 8),
+                    (byte) Deflater.DEFLATED, 0, // CM, FLG
+                    0, 0, 0, 0, // MTIME
+                    0, (byte) 0xff }; // XFL, OS (unknown)
+
+
+    // Deflater#deflate(byte[],int,int,int) and Deflater.SYNC_FLUSH only exist since Java 7, so these will be
+    // looked up reflectively, falling back to the (documented) Java 6 technique of switching to NO_COMPRESSION
+    // before deflating with no input when not available.
+    private static final Method DEFLATE_WITH_FLUSH_METHOD;
+    private static final Integer SYNC_FLUSH_MODE;
+
+    static {
+        Method deflateWithFlushMethod = null;
+        Integer syncFlushMode = null;
+        try {
+            deflateWithFlushMethod =
+                    Deflater.class.getMethod("deflate", new Class<?>[] { byte[].class, int.class, int.class, int.class });
+            syncFlushMode = Integer.valueOf(Deflater.class.getField("SYNC_FLUSH").getInt(null));
+        } catch (final Exception ignored) {
+            deflateWithFlushMethod = null;
+            syncFlushMode = null;
+        }
+        DEFLATE_WITH_FLUSH_METHOD = deflateWithFlushMethod;
+        SYNC_FLUSH_MODE = syncFlushMode;
+    }
+
+
+
+    /**
+     * <p>
+     *   Compression formats supported by {@link CompressedTemplateOutputStream}.
+     * </p>
+     */
+    public static enum Format {
+
+        /** GZIP format (<tt>Content-Encoding: gzip</tt>) */
+        GZIP(true),
+
+        /** ZLIB-wrapped deflate format (<tt>Content-Encoding: deflate</tt>) */
+        DEFLATE(false);
+
+        private final boolean nowrap;
+
+        Format(final boolean nowrap) {
+            this.nowrap = nowrap;
+        }
+
+    }
+
+
+
+    private final OutputStream out;
+    private final Format format;
+    private final DeflaterPool deflaterPool;
+    private final byte[] buffer;
+    private final CRC32 crc;
+
+    private Deflater deflater;
+
+    private boolean headerWritten;
+    private boolean pendingSyncFlush;
+    private boolean finished;
+
+    private long uncompressedCount;
+    private long compressedCount;
+    private int syncFlushCount;
+
+
+
+
+    public CompressedTemplateOutputStream(
+            final OutputStream out, final Format format, final DeflaterPool deflaterPool) {
+        this(out, format, deflaterPool, DEFAULT_BUFFER_SIZE);
+    }
+
+
+    public CompressedTemplateOutputStream(
+            final OutputStream out, final Format format, final DeflaterPool deflaterPool, final int bufferSize) {
+        super();
+        Validate.notNull(out, "Output stream cannot be null");
+        Validate.notNull(format, "Compression format cannot be null");
+        Validate.notNull(deflaterPool, "Deflater pool cannot be null");
+        Validate.isTrue(bufferSize > 0, "Buffer size must be greater than zero");
+        this.out = out;
+        this.format = format;
+        this.deflaterPool = deflaterPool;
+        this.buffer = new byte[bufferSize];
+        this.crc = (format == Format.GZIP? new CRC32() : null);
+        this.deflater = deflaterPool.borrow(format.nowrap);
+        this.headerWritten = false;
+        this.pendingSyncFlush = false;
+        this.finished = false;
+        this.uncompressedCount = 0L;
+        this.compressedCount = 0L;
+        this.syncFlushCount = 0;
+    }
+
+
+
+
+    public Format getFormat() {
+        return this.format;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the amount of (uncompressed) bytes written to this stream so far.
+     * </p>
+     *
+     * @return the amount of uncompressed bytes.
+     */
+    public long getUncompressedCount() {
+        return this.uncompressedCount;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the amount of (compressed) bytes written to the underlying output stream so far, including
+     *   any format headers and trailers.
+     * </p>
+     *
+     * @return the amount of compressed bytes.
+     */
+    public long getCompressedCount() {
+        return this.compressedCount;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the compression ratio achieved so far, computed as <tt>compressed / uncompressed</tt>
+     *   (so that lower is better). Returns <tt>1.0</tt> if nothing has been written yet.
+     * </p>
+     *
+     * @return the compression ratio.
+     */
+    public double getCompressionRatio() {
+        if (this.uncompressedCount == 0L) {
+            return 1.0d;
+        }
+        return (double) this.compressedCount / (double) this.uncompressedCount;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the number of sync flushes that have actually been performed on compressed output.
+     * </p>
+     *
+     * @return the number of sync flushes.
+     */
+    public int getSyncFlushCount() {
+        return this.syncFlushCount;
+    }
+
+
+    public boolean isFinished() {
+        return this.finished;
+    }
+
+
+
+
+    @Override
+    public void write(final int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+
+    @Override
+    public void write(final byte[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        if (this.finished) {
+            throw new IOException("Compressed output stream has already been finished");
+        }
+        if ((off | len | (off + len) | (b.length - (off + len))) < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return;
+        }
+        writeHeaderIfNeeded();
+        if (this.crc != null) {
+            this.crc.update(b, off, len);
+        }
+        this.deflater.setInput(b, off, len);
+        while (!this.deflater.needsInput()) {
+            deflate();
+        }
+        this.uncompressedCount += len;
+        this.pendingSyncFlush = true;
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Performs a <em>sync flush</em> of compressed data to the underlying output stream, and flushes it.
+     *   Nothing will be output if no data has been written since the previous sync flush.
+     * </p>
+     *
+     * @throws IOException if an error happens while writing compressed data.
+     */
+    public void syncFlush() throws IOException {
+
+        if (this.finished) {
+            return;
+        }
+
+        if (this.pendingSyncFlush) {
+
+            if (DEFLATE_WITH_FLUSH_METHOD != null) {
+                int len;
+                do {
+                    len = deflateWithSyncFlush();
+                    if (len > 0) {
+                        this.out.write(this.buffer, 0, len);
+                        this.compressedCount += len;
+                    }
+                } while (len == this.buffer.length);
+            } else {
+                // Java 6: changing the level and deflating forces the deflater to output everything it has
+                this.deflater.setLevel(Deflater.NO_COMPRESSION);
+                deflatePending();
+                this.deflater.setLevel(this.deflaterPool.getLevel());
+                deflatePending();
+            }
+
+            this.pendingSyncFlush = false;
+            this.syncFlushCount++;
+
+        }
+
+        this.out.flush();
+
+    }
+
+
+    /**
+     * <p>
+     *   Flushes the underlying output stream, <strong>without</strong> performing a sync flush of compressed
+     *   data. Data still held by the deflater will only be output at the next sync flush (see
+     *   {@link #syncFlush()}) or when the stream is finished, so that frequent flushes do not harm compression.
+     * </p>
+     *
+     * @throws IOException if an error happens while flushing the underlying output stream.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (this.finished) {
+            return;
+        }
+        this.out.flush();
+    }
+
+
+    /**
+     * <p>
+     *   Finishes writing compressed data (including the format trailer) to the underlying output stream,
+     *   without closing it, and returns the deflater being used to the pool.
+     * </p>
+     *
+     * @throws IOException if an error happens while writing compressed data.
+     */
+    public void finish() throws IOException {
+
+        if (this.finished) {
+            return;
+        }
+
+        try {
+
+            writeHeaderIfNeeded();
+            this.deflater.finish();
+            while (!this.deflater.finished()) {
+                deflate();
+            }
+
+            if (this.crc != null) {
+                final byte[] trailer = new byte[8];
+                writeInt((int) this.crc.getValue(), trailer, 0);
+                writeInt((int) this.uncompressedCount, trailer, 4); // ISIZE is modulo 2^32
+                this.out.write(trailer);
+                this.compressedCount += trailer.length;
+            }
+
+            this.out.flush();
+
+        } finally {
+            this.finished = true;
+            this.pendingSyncFlush = false;
+            this.deflaterPool.release(this.deflater, this.format.nowrap);
+            this.deflater = null;
+        }
+
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            this.out.close();
+        }
+    }
+
+
+
+
+    private void writeHeaderIfNeeded() throws IOException {
+        if (!this.headerWritten) {
+            if (this.format == Format.GZIP) {
+                this.out.write(GZIP_HEADER);
+                this.compressedCount += GZIP_HEADER.length;
+            }
+            this.headerWritten = true;
+        }
+    }
+
+
+    private void deflate() throws IOException {
+        final int len = this.deflater.deflate(this.buffer, 0, this.buffer.length);
+        if (len > 0) {
+            this.out.write(this.buffer, 0, len);
+            this.compressedCount += len;
+        }
+    }
+
+
+    private void deflatePending() throws IOException {
+        int len;
+        while ((len = this.deflater.deflate(this.buffer, 0, this.buffer.length)) > 0) {
+            this.out.write(this.buffer, 0, len);
+            this.compressedCount += len;
+        }
+    }
+
+
+    private int deflateWithSyncFlush() throws IOException {
+        try {
+            return ((Integer) DEFLATE_WITH_FLUSH_METHOD.invoke(
+                    this.deflater, this.buffer, Integer.valueOf(0), Integer.valueOf(this.buffer.length), SYNC_FLUSH_MODE)).intValue();
+        } catch (final IllegalAccessException e) {
+            throw new IOException("Could not perform sync flush on compressed output: " + e.getMessage());
+        } catch (final InvocationTargetException e) {
+            throw new IOException("Could not perform sync flush on compressed output: " + e.getTargetException().getMessage());
+        }
+    }
+
+
+    private static void writeInt(final int value, final byte[] buf, final int offset) {
+        // GZIP uses little-endian order
+        buf[offset] = (byte) (value & 0xff);
+        buf[offset + 1] = (byte) ((value >> 8) & 0xff);
+        buf[offset + 2] = (byte) ((value >> 16) & 0xff);
+        buf[offset + 3] = (byte) ((value >> 24) & 0xff);
+    }
+
+
+}
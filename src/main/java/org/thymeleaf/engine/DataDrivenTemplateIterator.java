@@ -20,7 +20,7 @@
 package org.thymeleaf.engine;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.ArrayDeque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -39,6 +39,11 @@
  *   containing that part of the data.
  * </p>
  * <p>
+ *   Several data-driven iterators can be used in the same template (each fed independently) by means of a
+ *   {@link DataDrivenTemplateIteratorGroup}. The amount of values buffered by each iterator (i.e. fed but not
+ *   yet consumed by the engine) can be bounded by means of {@link #DataDrivenTemplateIterator(int)}.
+ * </p>
+ * <p>
  *   This class is meant for <strong>internal use only</strong> from the diverse integrations of Thymeleaf in
  *   reactive architectures. There is normally no reason why a user would have to use this class directly.
  * </p>
@@ -54,8 +59,13 @@ public final class DataDrivenTemplateIterator implements Iterator<Object> {
     private static final String SSE_MESSAGE_EVENT_TYPE = "message";
     private static final String SSE_TAIL_EVENT_TYPE = "tail";
 
+    // ArrayDeque does not allow nulls, so these will be stored as this marker
+    private static final Object NULL_VALUE = new Object();
 
-    private final List<Object> values;
+
+    private final ArrayDeque<Object> values;
+    private final int maxBufferedValues;
+    private DataDrivenTemplateIteratorGroup group;
     private IThrottledTemplateWriterControl writerControl;
     private ISSEThrottledTemplateWriterControl sseControl;
     private long sseEventID;
@@ -65,9 +75,29 @@ public final class DataDrivenTemplateIterator implements Iterator<Object> {
 
 
     public DataDrivenTemplateIterator() {
+        this(Integer.MAX_VALUE);
+    }
+
+
+    /**
+     * <p>
+     *   Creates a new data-driven iterator that will not allow more than the specified amount of values
+     *   to be buffered at the same time.
+     * </p>
+     *
+     * @param maxBufferedValues the maximum amount of values that can be waiting to be consumed by the engine.
+     *
+     * @since 3.0.8
+     */
+    public DataDrivenTemplateIterator(final int maxBufferedValues) {
 
         super();
-        this.values = new ArrayList<Object>(10);
+        if (maxBufferedValues <= 0) {
+            throw new IllegalArgumentException("Maximum amount of buffered values must be greater than zero");
+        }
+        this.values = new ArrayDeque<Object>(Math.min(maxBufferedValues, 10));
+        this.maxBufferedValues = maxBufferedValues;
+        this.group = null;
         this.writerControl = null;
         this.sseControl = null;
         this.sseEventID = 0L;
@@ -89,16 +119,51 @@ public void setWriterControl(final IThrottledTemplateWriterControl writerControl
 
 
     public void setFirstSSEEventID(final long firstSSEEventID) {
+        if (this.group != null) {
+            this.group.setFirstSSEEventID(firstSSEEventID);
+            return;
+        }
         this.sseEventID = firstSSEEventID;
     }
 
     public void takeBackLastEventID() {
+        if (this.group != null) {
+            this.group.takeBackLastEventID();
+            return;
+        }
         if (this.sseEventID > 0L) {
             this.sseEventID--;
         }
     }
 
 
+    private String nextSSEEventID() {
+        if (this.group != null) {
+            return Long.toString(this.group.nextSSEEventID());
+        }
+        return Long.toString(this.sseEventID++);
+    }
+
+
+    void setGroup(final DataDrivenTemplateIteratorGroup group) {
+        this.group = group;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the group this iterator belongs to, if any.
+     * </p>
+     *
+     * @return the group, or <tt>null</tt> if this iterator does not belong to any group.
+     *
+     * @since 3.0.8
+     */
+    public DataDrivenTemplateIteratorGroup getGroup() {
+        return this.group;
+    }
+
+
     @Override
     public boolean hasNext() {
         this.queried = true;
@@ -115,9 +180,8 @@ public Object next() {
             throw new NoSuchElementException();
         }
 
-        final Object value = this.values.get(0);
-        this.values.remove(0);
-        return value;
+        final Object value = this.values.poll();
+        return (value == NULL_VALUE? null : value);
 
     }
 
@@ -125,8 +189,7 @@ public Object next() {
     public void startIteration() {
         this.inStep = true;
         if (this.sseControl != null) {
-            this.sseControl.startEvent(Long.toString(this.sseEventID), SSE_MESSAGE_EVENT_TYPE);
-            this.sseEventID++;
+            this.sseControl.startEvent(nextSSEEventID(), SSE_MESSAGE_EVENT_TYPE);
         }
     }
 
@@ -164,7 +227,11 @@ public void remove() {
 
     boolean isPaused() {
         this.queried = true;
-        return this.values.isEmpty() && !this.feedingComplete;
+        final boolean paused = this.values.isEmpty() && !this.feedingComplete;
+        if (paused && this.group != null) {
+            this.group.setWaitingIterator(this);
+        }
+        return paused;
     }
 
 
@@ -174,7 +241,61 @@ public boolean continueBufferExecution() {
 
 
     public void feedBuffer(final List<Object> newElements) {
-        this.values.addAll(newElements);
+        if (newElements.size() > getRemainingBufferCapacity()) {
+            throw new TemplateProcessingException(
+                    "Cannot feed " + newElements.size() + " values to data-driven iterator: maximum amount of " +
+                    "buffered values (" + this.maxBufferedValues + ") would be exceeded (" + this.values.size() +
+                    " values currently buffered)");
+        }
+        for (final Object element : newElements) {
+            this.values.add(element == null? NULL_VALUE : element);
+        }
+    }
+
+
+    /**
+     * <p>
+     *   Returns the amount of values that have been fed to this iterator but not yet consumed by the engine.
+     * </p>
+     *
+     * @return the amount of buffered values.
+     *
+     * @since 3.0.8
+     */
+    public int getBufferedCount() {
+        return this.values.size();
+    }
+
+
+    /**
+     * <p>
+     *   Returns the amount of values that can still be fed to this iterator without exceeding its
+     *   maximum amount of buffered values. Drivers should use this for requesting data from their
+     *   data source (i.e. for applying back-pressure).
+     * </p>
+     *
+     * @return the remaining capacity.
+     *
+     * @since 3.0.8
+     */
+    public int getRemainingBufferCapacity() {
+        return this.maxBufferedValues - this.values.size();
+    }
+
+
+    /**
+     * @since 3.0.8
+     */
+    public int getMaxBufferedValues() {
+        return this.maxBufferedValues;
+    }
+
+
+    /**
+     * @since 3.0.8
+     */
+    public boolean isFeedingComplete() {
+        return this.feedingComplete;
     }
 
 
@@ -182,8 +303,7 @@ public void feedBuffer(final List<Object> newElements) {
     public void startHead() {
         this.inStep = true;
         if (this.sseControl != null) {
-            this.sseControl.startEvent(Long.toString(this.sseEventID), SSE_HEAD_EVENT_TYPE);
-            this.sseEventID++;
+            this.sseControl.startEvent(nextSSEEventID(), SSE_HEAD_EVENT_TYPE);
         }
     }
 
@@ -195,8 +315,7 @@ public void feedingComplete() {
     public void startTail() {
         this.inStep = true;
         if (this.sseControl != null) {
-            this.sseControl.startEvent(Long.toString(this.sseEventID), SSE_TAIL_EVENT_TYPE);
-            this.sseEventID++;
+            this.sseControl.startEvent(nextSSEEventID(), SSE_TAIL_EVENT_TYPE);
         }
     }
 
@@ -0,0 +1,251 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2016, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.thymeleaf.util.Validate;
+
+/**
+ * <p>
+ *   Group of {@link DataDrivenTemplateIterator} objects to be used in the same template execution, allowing
+ *   a template to contain several <em>data-driven</em> iterations (e.g. two large result sets being streamed
+ *   into the same page), each of them fed independently from its own data source.
+ * </p>
+ * <p>
+ *   Template execution will still happen in document order, so the output for each iterator will be produced
+ *   (and flushed) in order, once the previous iterators have signaled that their feeding is complete and all
+ *   their values have been consumed. Meanwhile, values fed to iterators that have not been reached yet will be
+ *   buffered, bounded by the maximum amount of buffered values specified for each of them (see
+ *   {@link DataDrivenTemplateIterator#getRemainingBufferCapacity()}).
+ * </p>
+ * <p>
+ *   Drivers should use {@link #getWaitingIterator()} in order to know which iterator the engine is currently
+ *   waiting for, and {@link #continueBufferExecution()} in order to know whether the engine can be executed
+ *   again after feeding values.
+ * </p>
+ * <p>
+ *   All iterators in a group share the same writer control and the same sequence of SSE event IDs. The
+ *   <em>head</em> step is signaled at the first iterator in the group, and the <em>tail</em> step at the last one.
+ * </p>
+ * <p>
+ *   This class is meant for <strong>internal use only</strong> from the diverse integrations of Thymeleaf in
+ *   reactive architectures. There is normally no reason why a user would have to use this class directly.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.0.8
+ *
+ */
+public final class DataDrivenTemplateIteratorGroup {
+
+    private final Map<String,DataDrivenTemplateIterator> iterators;
+    private long sseEventID;
+    private DataDrivenTemplateIterator waitingIterator;
+
+
+
+    public DataDrivenTemplateIteratorGroup() {
+        super();
+        this.iterators = new LinkedHashMap<String, DataDrivenTemplateIterator>(4, 1.0f);
+        this.sseEventID = 0L;
+        this.waitingIterator = null;
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Creates a new data-driven iterator and adds it to this group. Iterators should be added in the
+     *   same order in which they will be iterated in the template.
+     * </p>
+     *
+     * @param name the name of the iterator (normally the name of the context variable).
+     * @param maxBufferedValues the maximum amount of values that can be buffered by the iterator.
+     * @return the new iterator.
+     */
+    public DataDrivenTemplateIterator createIterator(final String name, final int maxBufferedValues) {
+        final DataDrivenTemplateIterator iterator = new DataDrivenTemplateIterator(maxBufferedValues);
+        addIterator(name, iterator);
+        return iterator;
+    }
+
+
+    public void addIterator(final String name, final DataDrivenTemplateIterator iterator) {
+        Validate.notEmpty(name, "Name cannot be null or empty");
+        Validate.notNull(iterator, "Iterator cannot be null");
+        if (this.iterators.containsKey(name)) {
+            throw new IllegalArgumentException("A data-driven iterator with name \"" + name + "\" already exists in group");
+        }
+        if (iterator.getGroup() != null) {
+            throw new IllegalArgumentException("Data-driven iterator \"" + name + "\" already belongs to a group");
+        }
+        iterator.setGroup(this);
+        this.iterators.put(name, iterator);
+    }
+
+
+    public DataDrivenTemplateIterator getIterator(final String name) {
+        return this.iterators.get(name);
+    }
+
+
+    public List<String> getIteratorNames() {
+        return Collections.unmodifiableList(new ArrayList<String>(this.iterators.keySet()));
+    }
+
+
+    public int size() {
+        return this.iterators.size();
+    }
+
+
+
+
+    public void setWriterControl(final IThrottledTemplateWriterControl writerControl) {
+        for (final DataDrivenTemplateIterator iterator : this.iterators.values()) {
+            iterator.setWriterControl(writerControl);
+        }
+    }
+
+
+    public void setFirstSSEEventID(final long firstSSEEventID) {
+        this.sseEventID = firstSSEEventID;
+    }
+
+
+    public void takeBackLastEventID() {
+        if (this.sseEventID > 0L) {
+            this.sseEventID--;
+        }
+    }
+
+
+    long nextSSEEventID() {
+        return this.sseEventID++;
+    }
+
+
+
+
+    void setWaitingIterator(final DataDrivenTemplateIterator waitingIterator) {
+        this.waitingIterator = waitingIterator;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the iterator the engine is currently waiting for, i.e. the iterator that made template
+     *   execution pause because it had no more values but had not been signaled as complete yet.
+     * </p>
+     *
+     * @return the waiting iterator, or <tt>null</tt> if the engine has not been paused by any iterator in
+     *         this group yet.
+     */
+    public DataDrivenTemplateIterator getWaitingIterator() {
+        return this.waitingIterator;
+    }
+
+
+    /**
+     * <p>
+     *   Returns whether executing the engine again would make progress, i.e. whether the iterator the
+     *   engine is waiting for (if any) has been fed new values or signaled as complete.
+     * </p>
+     *
+     * @return <tt>true</tt> if execution should continue, <tt>false</tt> if not.
+     */
+    public boolean continueBufferExecution() {
+        final DataDrivenTemplateIterator waiting = this.waitingIterator;
+        return waiting == null || waiting.continueBufferExecution() || waiting.isFeedingComplete();
+    }
+
+
+    /**
+     * <p>
+     *   Returns whether all the iterators in the group have been signaled as complete.
+     * </p>
+     *
+     * @return <tt>true</tt> if feeding of all iterators is complete, <tt>false</tt> if not.
+     */
+    public boolean isFeedingComplete() {
+        for (final DataDrivenTemplateIterator iterator : this.iterators.values()) {
+            if (!iterator.isFeedingComplete()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    public boolean hasBeenQueried() {
+        for (final DataDrivenTemplateIterator iterator : this.iterators.values()) {
+            if (iterator.hasBeenQueried()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+
+
+    public void startHead() {
+        if (!this.iterators.isEmpty()) {
+            this.iterators.values().iterator().next().startHead();
+        }
+    }
+
+
+    public void startTail() {
+        DataDrivenTemplateIterator last = null;
+        for (final DataDrivenTemplateIterator iterator : this.iterators.values()) {
+            last = iterator;
+        }
+        if (last != null) {
+            last.startTail();
+        }
+    }
+
+
+    public void finishStep() {
+        for (final DataDrivenTemplateIterator iterator : this.iterators.values()) {
+            iterator.finishStep();
+        }
+    }
+
+
+    public boolean isStepOutputFinished() {
+        for (final DataDrivenTemplateIterator iterator : this.iterators.values()) {
+            if (!iterator.isStepOutputFinished()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+}
@@ -0,0 +1,179 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2016, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+/**
+ * <p>
+ *   Bounded pool of {@link Deflater} instances, used by {@link CompressedTemplateOutputStream} in order to
+ *   avoid creating (and having to {@link Deflater#end() end}) a new native compressor for every template
+ *   being output.
+ * </p>
+ * <p>
+ *   Pools are thread-safe and are normally created once per application and shared among all the
+ *   compressed output streams created for each request. Deflaters are pooled separately depending on whether
+ *   they produce raw (<em>nowrap</em>, as used by the GZIP format) or ZLIB-wrapped output.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.0.8
+ *
+ */
+public final class DeflaterPool {
+
+    public static final int DEFAULT_MAX_POOLED = 32;
+
+    private final int level;
+    private final int maxPooled;
+
+    private final Queue<Deflater> wrappedDeflaters;
+    private final Queue<Deflater> nowrapDeflaters;
+    private final AtomicInteger wrappedSize;
+    private final AtomicInteger nowrapSize;
+
+    private final AtomicLong createdCount;
+    private final AtomicLong reusedCount;
+
+
+
+    public DeflaterPool() {
+        this(Deflater.DEFAULT_COMPRESSION, DEFAULT_MAX_POOLED);
+    }
+
+
+    public DeflaterPool(final int level, final int maxPooled) {
+        super();
+        if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+        if (maxPooled < 0) {
+            throw new IllegalArgumentException("Maximum number of pooled deflaters cannot be negative");
+        }
+        this.level = level;
+        this.maxPooled = maxPooled;
+        this.wrappedDeflaters = new ConcurrentLinkedQueue<Deflater>();
+        this.nowrapDeflaters = new ConcurrentLinkedQueue<Deflater>();
+        this.wrappedSize = new AtomicInteger(0);
+        this.nowrapSize = new AtomicInteger(0);
+        this.createdCount = new AtomicLong(0L);
+        this.reusedCount = new AtomicLong(0L);
+    }
+
+
+
+
+    public int getLevel() {
+        return this.level;
+    }
+
+
+    public int getMaxPooled() {
+        return this.maxPooled;
+    }
+
+
+    public long getCreatedCount() {
+        return this.createdCount.get();
+    }
+
+
+    public long getReusedCount() {
+        return this.reusedCount.get();
+    }
+
+
+    public int getPooledCount() {
+        return this.wrappedSize.get() + this.nowrapSize.get();
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Obtains a deflater from the pool, creating a new one if the pool is empty.
+     * </p>
+     *
+     * @param nowrap whether the deflater should produce raw deflate data (no ZLIB header and checksum).
+     * @return the deflater, ready to be used.
+     */
+    public Deflater borrow(final boolean nowrap) {
+        final Deflater deflater = (nowrap? this.nowrapDeflaters.poll() : this.wrappedDeflaters.poll());
+        if (deflater != null) {
+            (nowrap? this.nowrapSize : this.wrappedSize).decrementAndGet();
+            this.reusedCount.incrementAndGet();
+            return deflater;
+        }
+        this.createdCount.incrementAndGet();
+        return new Deflater(this.level, nowrap);
+    }
+
+
+    /**
+     * <p>
+     *   Returns a deflater to the pool. If the pool is full the deflater will be ended (its native
+     *   resources released) instead.
+     * </p>
+     *
+     * @param deflater the deflater being returned.
+     * @param nowrap the value of <tt>nowrap</tt> with which the deflater was borrowed.
+     */
+    public void release(final Deflater deflater, final boolean nowrap) {
+        if (deflater == null) {
+            return;
+        }
+        final AtomicInteger size = (nowrap? this.nowrapSize : this.wrappedSize);
+        if (size.incrementAndGet() > this.maxPooled) {
+            size.decrementAndGet();
+            deflater.end();
+            return;
+        }
+        deflater.reset();
+        // Level might have been changed temporarily for flushing
+        deflater.setLevel(this.level);
+        (nowrap? this.nowrapDeflaters : this.wrappedDeflaters).offer(deflater);
+    }
+
+
+    /**
+     * <p>
+     *   Ends all the deflaters currently in the pool, releasing their native resources.
+     * </p>
+     */
+    public void clear() {
+        Deflater deflater;
+        while ((deflater = this.wrappedDeflaters.poll()) != null) {
+            this.wrappedSize.decrementAndGet();
+            deflater.end();
+        }
+        while ((deflater = this.nowrapDeflaters.poll()) != null) {
+            this.nowrapSize.decrementAndGet();
+            deflater.end();
+        }
+    }
+
+
+}
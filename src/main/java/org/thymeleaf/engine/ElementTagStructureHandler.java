@@ -106,6 +106,8 @@ public final class ElementTagStructureHandler implements IElementTagStructureHan
     boolean setTemplateData;
     TemplateData setTemplateDataValue;
 
+    boolean flushOutput;
+
     boolean iterateElement;
     String iterVariableName;
     String iterStatusVariableName;
@@ -411,6 +413,14 @@ public void setTemplateData(final TemplateData templateData) {
     }
 
 
+    // NOTE this method is not part of the structure handler interface, as output flushing is an engine-level
+    // operation. The idea is that it can be used by processors in Standard Dialects (th:flush), after casting.
+    public void flushOutput() {
+        // Can be combined with others, no need to resetGathering
+        this.flushOutput = true;
+    }
+
+
     public void iterateElement(final String iterVariableName, final String iterStatusVariableName, final Object iteratedObject) {
         Validate.notEmpty(iterVariableName, "Iteration variable name cannot be null");
         // Iteration status variable name CAN be null
@@ -448,6 +458,8 @@ public void reset() {
         this.setTemplateData = false;
         this.setTemplateDataValue = null;
 
+        this.flushOutput = false;
+
         this.setAttribute = false;
         this.setAttributeValuesSize = 0;
 
@@ -19,12 +19,21 @@
  */
 package org.thymeleaf.engine;
 
+import java.util.Set;
+
+import org.thymeleaf.IEngineConfiguration;
 import org.thymeleaf.context.ITemplateContext;
 import org.thymeleaf.model.ICDATASection;
 import org.thymeleaf.model.IComment;
 import org.thymeleaf.model.IProcessableElementTag;
 import org.thymeleaf.model.IText;
+import org.thymeleaf.standard.expression.AssignationSequence;
+import org.thymeleaf.standard.expression.AssignationUtils;
+import org.thymeleaf.standard.expression.Each;
+import org.thymeleaf.standard.expression.EachUtils;
 import org.thymeleaf.standard.expression.FragmentExpression;
+import org.thymeleaf.standard.expression.FragmentSignature;
+import org.thymeleaf.standard.expression.FragmentSignatureUtils;
 import org.thymeleaf.standard.expression.IStandardExpression;
 import org.thymeleaf.standard.expression.IStandardExpressionParser;
 import org.thymeleaf.standard.expression.StandardExpressions;
@@ -215,6 +224,160 @@ public static IStandardExpression computeAttributeExpression(
     }
 
 
+    /*
+     * Same as computeAttributeExpression(...), but for attributes containing assignation sequences (th:with, th:attr...)
+     */
+    public static AssignationSequence computeAttributeAssignationSequence(
+            final ITemplateContext context, final IProcessableElementTag tag, final AttributeName attributeName,
+            final String attributeValue, final boolean allowParametersWithoutValue) {
+
+        final Attribute attribute = obtainAttribute(tag, attributeName);
+        if (attribute == null) {
+            return AssignationUtils.parseAssignationSequence(context, attributeValue, allowParametersWithoutValue);
+        }
+
+        final Object cached = attribute.getCachedStandardParsedValue();
+        if (cached instanceof AssignationSequence) {
+            return (AssignationSequence) cached;
+        }
+
+        final AssignationSequence assignationSequence =
+                AssignationUtils.parseAssignationSequence(context, attributeValue, allowParametersWithoutValue);
+        // Only if it does not contain preprocessing marks (_)
+        if (assignationSequence != null && attributeValue.indexOf('_') < 0) {
+            attribute.setCachedStandardParsedValue(assignationSequence);
+        }
+
+        return assignationSequence;
+
+    }
+
+
+    /*
+     * Same as computeAttributeExpression(...), but for attributes containing iteration specs (th:each)
+     */
+    public static Each computeAttributeEach(
+            final ITemplateContext context, final IProcessableElementTag tag, final AttributeName attributeName,
+            final String attributeValue) {
+
+        final Attribute attribute = obtainAttribute(tag, attributeName);
+        if (attribute == null) {
+            return EachUtils.parseEach(context, attributeValue);
+        }
+
+        final Object cached = attribute.getCachedStandardParsedValue();
+        if (cached instanceof Each) {
+            return (Each) cached;
+        }
+
+        final Each each = EachUtils.parseEach(context, attributeValue);
+        // Only if it does not contain preprocessing marks (_)
+        if (each != null && attributeValue.indexOf('_') < 0) {
+            attribute.setCachedStandardParsedValue(each);
+        }
+
+        return each;
+
+    }
+
+
+    /*
+     * Same as computeAttributeExpression(...), but for attributes containing fragment signatures (th:fragment). Note
+     * signatures are never preprocessed, and the value specified here is expected to be already unescaped.
+     */
+    public static FragmentSignature computeAttributeFragmentSignature(
+            final IEngineConfiguration configuration, final IProcessableElementTag tag,
+            final String attributePrefix, final String attributeName, final String attributeValue) {
+
+        final Attribute attribute =
+                (tag instanceof AbstractProcessableElementTag? (Attribute) tag.getAttribute(attributePrefix, attributeName) : null);
+        if (attribute == null) {
+            return FragmentSignatureUtils.parseFragmentSignature(configuration, attributeValue);
+        }
+
+        final Object cached = attribute.getCachedStandardParsedValue();
+        if (cached instanceof FragmentSignature) {
+            return (FragmentSignature) cached;
+        }
+
+        final FragmentSignature fragmentSignature =
+                FragmentSignatureUtils.parseFragmentSignature(configuration, attributeValue);
+        if (fragmentSignature != null) {
+            attribute.setCachedStandardParsedValue(fragmentSignature);
+        }
+
+        return fragmentSignature;
+
+    }
+
+
+    /*
+     * Fragment insertion attributes (th:insert, th:replace...) keep a small cache of the fragment models resolved
+     * for them, so that executions resolving the same template name and selectors again do not need to look up
+     * the template cache. Returns null if there is no valid model cached for these template name and selectors.
+     */
+    public static TemplateModel obtainAttributeFragmentModel(
+            final ITemplateContext context, final IProcessableElementTag tag, final AttributeName attributeName,
+            final String templateName, final Set<String> templateSelectors) {
+
+        final Attribute attribute = obtainAttribute(tag, attributeName);
+        if (attribute == null) {
+            return null;
+        }
+
+        final Object cached = attribute.getCachedStandardParsedValue();
+        if (cached instanceof FragmentResolutionCache) {
+            return ((FragmentResolutionCache) cached).get(context, templateName, templateSelectors);
+        }
+
+        return null;
+
+    }
+
+
+    /*
+     * Returns the generation of the template caches, which must be obtained before resolving a fragment model
+     * that is going to be cached at a fragment insertion attribute (see cacheAttributeFragmentModel(...))
+     */
+    public static int obtainTemplateCacheGeneration(final ITemplateContext context) {
+        return FragmentResolutionCache.getCacheGeneration(context);
+    }
+
+
+    /*
+     * Puts a fragment model resolved for a fragment insertion attribute into the cache of such attribute, if the
+     * model can be reused by other executions (see obtainAttributeFragmentModel(...)). The cache generation is
+     * the one obtained before resolving the model.
+     */
+    public static void cacheAttributeFragmentModel(
+            final ITemplateContext context, final IProcessableElementTag tag, final AttributeName attributeName,
+            final int cacheGeneration, final String templateName, final Set<String> templateSelectors,
+            final TemplateModel fragmentModel) {
+
+        final Attribute attribute = obtainAttribute(tag, attributeName);
+        if (attribute == null || !FragmentResolutionCache.isCacheable(context, fragmentModel)) {
+            return;
+        }
+
+        final Object cached = attribute.getCachedStandardParsedValue();
+        if (cached == null || cached instanceof FragmentResolutionCache) {
+            attribute.setCachedStandardParsedValue(
+                    FragmentResolutionCache.add(
+                            (FragmentResolutionCache) cached, context, cacheGeneration,
+                            templateName, templateSelectors, fragmentModel));
+        }
+
+    }
+
+
+    private static Attribute obtainAttribute(final IProcessableElementTag tag, final AttributeName attributeName) {
+        if (!(tag instanceof AbstractProcessableElementTag)) {
+            return null;
+        }
+        return (Attribute) ((AbstractProcessableElementTag)tag).getAttribute(attributeName);
+    }
+
+
     private static IStandardExpression parseAttributeExpression(final ITemplateContext context, final String attributeValue) {
         final IStandardExpressionParser expressionParser = StandardExpressions.getExpressionParser(context.getConfiguration());
         return expressionParser.parseExpression(context, attributeValue);
@@ -0,0 +1,178 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2016, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.thymeleaf.IEngineConfiguration;
+import org.thymeleaf.context.ITemplateContext;
+
+/*
+ * Small cache of the fragment models resolved at a specific fragment insertion point (the attribute of a
+ * th:insert, th:replace...), kept at the attribute itself so that executions resolving the same template name
+ * and selectors again can obtain the fragment model by comparing these values, without building (and hashing)
+ * a template cache key or resolving the template again.
+ *
+ * Entries are only returned for the same owner template and template resolution attributes they were resolved
+ * for, as long as the template caches have not been cleared since then and the cached model is still valid.
+ * Only models that the TemplateManager would have returned from the template cache are kept, recorded with the
+ * cache generation read before they were resolved. Template resolution attributes are not kept as the (mutable)
+ * maps they are specified with, but as an immutable copy, which is only compared once everything else matches.
+ *
+ * Instances of this class are immutable (adding an entry creates a new instance, keeping the most recent
+ * entries first), and therefore thread-safe.
+ *
+ * @author Daniel Fern&aacute;ndez
+ * @since 3.0.8
+ *
+ */
+final class FragmentResolutionCache {
+
+    private static final int MAX_ENTRIES = 4;
+
+    private final Entry[] entries;
+
+
+
+    static boolean isCacheable(final ITemplateContext context, final TemplateModel fragmentModel) {
+        final IEngineConfiguration configuration = context.getConfiguration();
+        // Non-cacheable pre-processors are applied to fragment models each time they are obtained
+        return fragmentModel.getTemplateData().getValidity().isCacheable() &&
+                configuration.getTemplateManager().hasTemplateCache() &&
+                !TemplateManager.hasNonCacheablePreProcessors(configuration, fragmentModel.getTemplateMode());
+    }
+
+
+    /*
+     * The cache generation has to be read before the fragment model is resolved, or a model resolved from cache
+     * entries cleared in the meantime would be recorded as valid for the new generation
+     */
+    static int getCacheGeneration(final ITemplateContext context) {
+        return context.getConfiguration().getTemplateManager().getCacheGeneration();
+    }
+
+
+    static FragmentResolutionCache add(
+            final FragmentResolutionCache cache, final ITemplateContext context, final int cacheGeneration,
+            final String templateName, final Set<String> templateSelectors, final TemplateModel fragmentModel) {
+
+        final Entry entry =
+                new Entry(
+                        templateName, templateSelectors,
+                        context.getTemplateData().getTemplate(), context.getTemplateResolutionAttributes(),
+                        cacheGeneration, fragmentModel);
+
+        if (cache == null) {
+            return new FragmentResolutionCache(new Entry[] { entry });
+        }
+
+        final Entry[] newEntries = new Entry[Math.min(cache.entries.length + 1, MAX_ENTRIES)];
+        newEntries[0] = entry;
+        System.arraycopy(cache.entries, 0, newEntries, 1, newEntries.length - 1);
+        return new FragmentResolutionCache(newEntries);
+
+    }
+
+
+
+
+    private FragmentResolutionCache(final Entry[] entries) {
+        super();
+        this.entries = entries;
+    }
+
+
+    TemplateModel get(final ITemplateContext context, final String templateName, final Set<String> templateSelectors) {
+
+        final String ownerTemplate = context.getTemplateData().getTemplate();
+        final Map<String,Object> templateResolutionAttributes = context.getTemplateResolutionAttributes();
+
+        for (int i = 0; i < this.entries.length; i++) {
+            final Entry entry = this.entries[i];
+            if (entry.matches(templateName, templateSelectors, ownerTemplate, templateResolutionAttributes)) {
+                if (entry.cacheGeneration != getCacheGeneration(context) ||
+                        !entry.fragmentModel.getTemplateData().getValidity().isCacheStillValid()) {
+                    return null;
+                }
+                return entry.fragmentModel;
+            }
+        }
+        return null;
+
+    }
+
+
+
+
+    private static final class Entry {
+
+        final String templateName;
+        final Set<String> templateSelectors;
+        final String ownerTemplate;
+        final Map<String,Object> templateResolutionAttributes; // immutable copy
+        final int cacheGeneration;
+        final TemplateModel fragmentModel;
+
+        Entry(
+                final String templateName, final Set<String> templateSelectors,
+                final String ownerTemplate, final Map<String,Object> templateResolutionAttributes,
+                final int cacheGeneration, final TemplateModel fragmentModel) {
+            super();
+            this.templateName = templateName;
+            this.templateSelectors = templateSelectors;
+            this.ownerTemplate = ownerTemplate;
+            this.templateResolutionAttributes =
+                    (templateResolutionAttributes == null?
+                            null : Collections.unmodifiableMap(new HashMap<String, Object>(templateResolutionAttributes)));
+            this.cacheGeneration = cacheGeneration;
+            this.fragmentModel = fragmentModel;
+        }
+
+        boolean matches(
+                final String templateName, final Set<String> templateSelectors,
+                final String ownerTemplate, final Map<String,Object> templateResolutionAttributes) {
+            return this.templateName.equals(templateName) &&
+                    equals(this.templateSelectors, templateSelectors) &&
+                    equals(this.ownerTemplate, ownerTemplate) &&
+                    attributesEqual(this.templateResolutionAttributes, templateResolutionAttributes);
+        }
+
+        // Most executions specify no attributes at all, and maps of different sizes are rejected without
+        // iterating (or hashing) their contents
+        private static boolean attributesEqual(final Map<String,Object> m1, final Map<String,Object> m2) {
+            if (m1 == m2) {
+                return true;
+            }
+            if (m1 == null || m2 == null || m1.size() != m2.size()) {
+                return false;
+            }
+            return m1.equals(m2);
+        }
+
+        private static boolean equals(final Object o1, final Object o2) {
+            return (o1 == o2 || (o1 != null && o1.equals(o2)));
+        }
+
+    }
+
+}
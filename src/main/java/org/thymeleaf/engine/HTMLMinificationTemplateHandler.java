@@ -0,0 +1,304 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2016, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.thymeleaf.model.ICDATASection;
+import org.thymeleaf.model.ICloseElementTag;
+import org.thymeleaf.model.IComment;
+import org.thymeleaf.model.IDocType;
+import org.thymeleaf.model.IElementTag;
+import org.thymeleaf.model.IOpenElementTag;
+import org.thymeleaf.model.IProcessingInstruction;
+import org.thymeleaf.model.IStandaloneElementTag;
+import org.thymeleaf.model.ITemplateEnd;
+import org.thymeleaf.model.IText;
+import org.thymeleaf.model.IXMLDeclaration;
+
+/*
+ * Template handler that minifies HTML markup at parse time, so that the minification is performed only once per
+ * cached template instead of once per execution. It:
+ *
+ *    - Removes whitespace-only texts between block-level elements.
+ *    - Collapses runs of whitespace inside texts into a single white space.
+ *    - Removes comments, except conditional comments (<!--[if IE]>...<![endif]-->) and comments
+ *      containing inlined expressions.
+ *
+ * The contents of <pre>, <textarea>, <script>, <style> and <title> elements are never modified. Neither are
+ * texts containing inlined expressions ([[...]] or [(...)]), as these might contain literals which should not
+ * be altered.
+ *
+ * Only applied for the HTML template mode when the template resolver marks the template resolution for it.
+ *
+ * @author Daniel Fern&aacute;ndez
+ * @since 3.0.8
+ */
+final class HTMLMinificationTemplateHandler extends AbstractTemplateHandler {
+
+    private static final String SINGLE_WHITE_SPACE = " ";
+
+    private static final Set<String> BLOCK_ELEMENT_NAMES =
+            new HashSet<String>(Arrays.asList(new String[] {
+                    "html", "head", "body", "title", "base", "link", "meta", "style", "script", "noscript",
+                    "address", "article", "aside", "blockquote", "caption", "col", "colgroup", "dd", "details",
+                    "dialog", "div", "dl", "dt", "fieldset", "figcaption", "figure", "footer", "form",
+                    "h1", "h2", "h3", "h4", "h5", "h6", "header", "hgroup", "hr", "li", "main", "menu", "nav",
+                    "ol", "optgroup", "option", "p", "pre", "section", "summary", "table", "tbody", "td",
+                    "template", "tfoot", "th", "thead", "tr", "ul"}));
+
+
+    // Depth of elements whose contents should be preserved as-is (pre, textarea, script, style, title)
+    private int preservedDepth = 0;
+
+    // Whether the last event sent to the next handler marks a block boundary (block element, template start...)
+    private boolean lastWasBlockBoundary = true;
+
+    // Whitespace-only text that has not been output yet, waiting to know whether it is next to a block boundary
+    private IText pendingWhiteSpace = null;
+
+
+
+    HTMLMinificationTemplateHandler() {
+        super();
+    }
+
+
+
+
+    @Override
+    public void handleTemplateEnd(final ITemplateEnd templateEnd) {
+        flushPendingWhiteSpace(true);
+        this.lastWasBlockBoundary = true;
+        super.handleTemplateEnd(templateEnd);
+    }
+
+
+
+
+    @Override
+    public void handleText(final IText text) {
+
+        if (this.preservedDepth > 0) {
+            super.handleText(text);
+            this.lastWasBlockBoundary = false;
+            return;
+        }
+
+        if (EngineEventUtils.isWhitespace(text)) {
+            // Whitespace will be output (or not) once we know what comes next. If there already was
+            // a pending white space (e.g. because a comment was removed in between), we simply merge both
+            if (this.pendingWhiteSpace == null) {
+                this.pendingWhiteSpace = text;
+            }
+            return;
+        }
+
+        flushPendingWhiteSpace(false);
+
+        if (EngineEventUtils.isInlineable(text)) {
+            super.handleText(text);
+        } else {
+            final String collapsed = collapseWhiteSpace(text.getText());
+            if (collapsed == null) {
+                super.handleText(text);
+            } else {
+                super.handleText(new Text(collapsed, text.getTemplateName(), text.getLine(), text.getCol()));
+            }
+        }
+        this.lastWasBlockBoundary = false;
+
+    }
+
+
+
+
+    @Override
+    public void handleComment(final IComment comment) {
+
+        if (this.preservedDepth > 0 || isConditionalComment(comment) || EngineEventUtils.isInlineable(comment)) {
+            flushPendingWhiteSpace(false);
+            super.handleComment(comment);
+            this.lastWasBlockBoundary = false;
+        }
+
+        // Any other comment is simply removed, and any whitespace around it will be merged
+
+    }
+
+
+
+
+    @Override
+    public void handleCDATASection(final ICDATASection cdataSection) {
+        flushPendingWhiteSpace(false);
+        super.handleCDATASection(cdataSection);
+        this.lastWasBlockBoundary = false;
+    }
+
+
+
+
+    @Override
+    public void handleStandaloneElement(final IStandaloneElementTag standaloneElementTag) {
+        final boolean block = isBlockElement(standaloneElementTag);
+        flushPendingWhiteSpace(block);
+        super.handleStandaloneElement(standaloneElementTag);
+        this.lastWasBlockBoundary = block;
+    }
+
+
+    @Override
+    public void handleOpenElement(final IOpenElementTag openElementTag) {
+        final boolean block = isBlockElement(openElementTag);
+        flushPendingWhiteSpace(block);
+        super.handleOpenElement(openElementTag);
+        if (isPreservedElement(openElementTag)) {
+            this.preservedDepth++;
+        }
+        this.lastWasBlockBoundary = block;
+    }
+
+
+    @Override
+    public void handleCloseElement(final ICloseElementTag closeElementTag) {
+        if (this.preservedDepth > 0 && isPreservedElement(closeElementTag)) {
+            this.preservedDepth--;
+        }
+        final boolean block = isBlockElement(closeElementTag);
+        flushPendingWhiteSpace(block);
+        super.handleCloseElement(closeElementTag);
+        this.lastWasBlockBoundary = block;
+    }
+
+
+
+
+    @Override
+    public void handleDocType(final IDocType docType) {
+        flushPendingWhiteSpace(true);
+        super.handleDocType(docType);
+        this.lastWasBlockBoundary = true;
+    }
+
+
+    @Override
+    public void handleXMLDeclaration(final IXMLDeclaration xmlDeclaration) {
+        flushPendingWhiteSpace(true);
+        super.handleXMLDeclaration(xmlDeclaration);
+        this.lastWasBlockBoundary = true;
+    }
+
+
+    @Override
+    public void handleProcessingInstruction(final IProcessingInstruction processingInstruction) {
+        flushPendingWhiteSpace(false);
+        super.handleProcessingInstruction(processingInstruction);
+        this.lastWasBlockBoundary = false;
+    }
+
+
+
+
+    private void flushPendingWhiteSpace(final boolean nextIsBlockBoundary) {
+        if (this.pendingWhiteSpace == null) {
+            return;
+        }
+        final IText whiteSpace = this.pendingWhiteSpace;
+        this.pendingWhiteSpace = null;
+        if (this.lastWasBlockBoundary && nextIsBlockBoundary) {
+            // Whitespace between block boundaries is not significant
+            return;
+        }
+        super.handleText(
+                new Text(SINGLE_WHITE_SPACE, whiteSpace.getTemplateName(), whiteSpace.getLine(), whiteSpace.getCol()));
+    }
+
+
+
+
+    private static String collapseWhiteSpace(final String text) {
+
+        // Returns null if there is nothing to collapse, so that we avoid creating new events when not needed
+
+        final int textLen = text.length();
+        StringBuilder strBuilder = null;
+        boolean inWhiteSpace = false;
+
+        for (int i = 0; i < textLen; i++) {
+            final char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                if (inWhiteSpace) {
+                    if (strBuilder == null) {
+                        strBuilder = new StringBuilder(textLen);
+                        strBuilder.append(text, 0, i);
+                    }
+                    continue;
+                }
+                inWhiteSpace = true;
+                if (c != ' ') {
+                    if (strBuilder == null) {
+                        strBuilder = new StringBuilder(textLen);
+                        strBuilder.append(text, 0, i);
+                    }
+                    strBuilder.append(' ');
+                    continue;
+                }
+            } else {
+                inWhiteSpace = false;
+            }
+            if (strBuilder != null) {
+                strBuilder.append(c);
+            }
+        }
+
+        return (strBuilder == null? null : strBuilder.toString());
+
+    }
+
+
+
+
+    private static boolean isConditionalComment(final IComment comment) {
+        final String content = comment.getContent();
+        return content.startsWith("[if") || content.startsWith("<![endif]") || content.endsWith("<![endif]");
+    }
+
+
+    private static boolean isBlockElement(final IElementTag tag) {
+        final ElementName elementName = tag.getElementDefinition().getElementName();
+        return !elementName.isPrefixed() && BLOCK_ELEMENT_NAMES.contains(elementName.getElementName());
+    }
+
+
+    private static boolean isPreservedElement(final IElementTag tag) {
+        final ElementDefinition elementDefinition = tag.getElementDefinition();
+        if (!(elementDefinition instanceof HTMLElementDefinition)) {
+            return false;
+        }
+        final HTMLElementType type = ((HTMLElementDefinition) elementDefinition).getType();
+        return (type == HTMLElementType.RAW_TEXT || type == HTMLElementType.ESCAPABLE_RAW_TEXT ||
+                "pre".equals(elementDefinition.getElementName().getElementName()));
+    }
+
+
+}
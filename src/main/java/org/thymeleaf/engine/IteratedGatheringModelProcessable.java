@@ -20,18 +20,44 @@
 package org.thymeleaf.engine;
 
 import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.thymeleaf.EngineConfiguration;
 import org.thymeleaf.IEngineConfiguration;
+import org.thymeleaf.context.EngineContext;
 import org.thymeleaf.context.IEngineContext;
+import org.thymeleaf.context.IWebContext;
 import org.thymeleaf.engine.TemplateModelController.SkipBody;
+import org.thymeleaf.exceptions.TemplateEngineException;
+import org.thymeleaf.exceptions.TemplateProcessingException;
+import org.thymeleaf.inline.IInliner;
 import org.thymeleaf.model.ITemplateEvent;
+import org.thymeleaf.model.IProcessableElementTag;
 import org.thymeleaf.model.IText;
+import org.thymeleaf.postprocessor.IPostProcessor;
+import org.thymeleaf.standard.processor.StandardParallelTagProcessor;
 import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.util.FastStringWriter;
 import org.thymeleaf.util.StringUtils;
 
 
@@ -45,9 +71,101 @@ final class IteratedGatheringModelProcessable extends AbstractGatheringModelProc
 
     private static final String DEFAULT_STATUS_VAR_SUFFIX = "Stat";
 
+    private static final int MIN_PARALLEL_CHUNK_SIZE = 64;
+
+    // Iterations nested inside a chunk of a parallel iteration should never be parallelized themselves, or we
+    // could end up with all the threads in the executor waiting for tasks that cannot be executed
+    private static final ThreadLocal<Boolean> IN_PARALLEL_ITERATION = new ThreadLocal<Boolean>();
+
     enum IterationWhiteSpaceHandling {ZERO_ITER, SINGLE_ITER, MULTIPLE_ITER}
 
+    // Streams and spliterators only exist since Java 8, so they need to be dealt with reflectively
+    private static final Class<?> STREAM_CLASS;
+    private static final Method STREAM_ITERATOR_METHOD;
+    private static final Method STREAM_CLOSE_METHOD;
+    private static final Class<?> SPLITERATOR_CLASS;
+    private static final Method SPLITERATORS_ITERATOR_METHOD;
+
+    // JDBC result sets are also dealt with reflectively, so that the engine does not depend on the java.sql module
+    private static final Class<?> RESULT_SET_CLASS;
+    private static final Method RESULT_SET_NEXT_METHOD;
+    private static final Method RESULT_SET_GET_META_DATA_METHOD;
+    private static final Method RESULT_SET_GET_OBJECT_METHOD;
+    private static final Method RESULT_SET_META_DATA_GET_COLUMN_COUNT_METHOD;
+    private static final Method RESULT_SET_META_DATA_GET_COLUMN_LABEL_METHOD;
+
+    // Fork/join pools only exist since Java 7, so their parallelism is also obtained reflectively
+    private static final Class<?> FORK_JOIN_POOL_CLASS;
+    private static final Method FORK_JOIN_POOL_GET_PARALLELISM_METHOD;
+
+    static {
+
+        Class<?> streamClass = null;
+        Method streamIteratorMethod = null;
+        Method streamCloseMethod = null;
+        try {
+            streamClass = Class.forName("java.util.stream.BaseStream");
+            streamIteratorMethod = streamClass.getMethod("iterator");
+            streamCloseMethod = streamClass.getMethod("close");
+        } catch (final Exception ignored) {
+            streamClass = null;
+        }
+        STREAM_CLASS = streamClass;
+        STREAM_ITERATOR_METHOD = streamIteratorMethod;
+        STREAM_CLOSE_METHOD = streamCloseMethod;
+
+        Class<?> spliteratorClass = null;
+        Method spliteratorsIteratorMethod = null;
+        try {
+            spliteratorClass = Class.forName("java.util.Spliterator");
+            spliteratorsIteratorMethod =
+                    Class.forName("java.util.Spliterators").getMethod("iterator", new Class<?>[] { spliteratorClass });
+        } catch (final Exception ignored) {
+            spliteratorClass = null;
+        }
+        SPLITERATOR_CLASS = spliteratorClass;
+        SPLITERATORS_ITERATOR_METHOD = spliteratorsIteratorMethod;
+
+        Class<?> resultSetClass = null;
+        Method resultSetNextMethod = null;
+        Method resultSetGetMetaDataMethod = null;
+        Method resultSetGetObjectMethod = null;
+        Method resultSetMetaDataGetColumnCountMethod = null;
+        Method resultSetMetaDataGetColumnLabelMethod = null;
+        try {
+            resultSetClass = Class.forName("java.sql.ResultSet");
+            resultSetNextMethod = resultSetClass.getMethod("next");
+            resultSetGetMetaDataMethod = resultSetClass.getMethod("getMetaData");
+            resultSetGetObjectMethod = resultSetClass.getMethod("getObject", new Class<?>[] { int.class });
+            final Class<?> resultSetMetaDataClass = Class.forName("java.sql.ResultSetMetaData");
+            resultSetMetaDataGetColumnCountMethod = resultSetMetaDataClass.getMethod("getColumnCount");
+            resultSetMetaDataGetColumnLabelMethod =
+                    resultSetMetaDataClass.getMethod("getColumnLabel", new Class<?>[] { int.class });
+        } catch (final Exception ignored) {
+            resultSetClass = null;
+        }
+        RESULT_SET_CLASS = resultSetClass;
+        RESULT_SET_NEXT_METHOD = resultSetNextMethod;
+        RESULT_SET_GET_META_DATA_METHOD = resultSetGetMetaDataMethod;
+        RESULT_SET_GET_OBJECT_METHOD = resultSetGetObjectMethod;
+        RESULT_SET_META_DATA_GET_COLUMN_COUNT_METHOD = resultSetMetaDataGetColumnCountMethod;
+        RESULT_SET_META_DATA_GET_COLUMN_LABEL_METHOD = resultSetMetaDataGetColumnLabelMethod;
+
+        Class<?> forkJoinPoolClass = null;
+        Method forkJoinPoolGetParallelismMethod = null;
+        try {
+            forkJoinPoolClass = Class.forName("java.util.concurrent.ForkJoinPool");
+            forkJoinPoolGetParallelismMethod = forkJoinPoolClass.getMethod("getParallelism");
+        } catch (final Exception ignored) {
+            forkJoinPoolClass = null;
+        }
+        FORK_JOIN_POOL_CLASS = forkJoinPoolClass;
+        FORK_JOIN_POOL_GET_PARALLELISM_METHOD = forkJoinPoolGetParallelismMethod;
+
+    }
+
 
+    private final IEngineConfiguration configuration;
     private final IEngineContext context;
     private final TemplateMode templateMode;
 
@@ -56,6 +174,8 @@ enum IterationWhiteSpaceHandling {ZERO_ITER, SINGLE_ITER, MULTIPLE_ITER}
     private final IterationStatusVar iterStatusVariable;
     private final Iterator<?> iterator;
     private final Text precedingWhitespace;
+    private final Object parallelIteratedObject; // a RandomAccess List or an array, only if parallel iteration applies
+    private final boolean maskParallelVariable;
 
     private IterationModels iterationModels;
 
@@ -76,6 +196,7 @@ enum IterationWhiteSpaceHandling {ZERO_ITER, SINGLE_ITER, MULTIPLE_ITER}
 
         super(configuration, processorTemplateHandler, context, modelController, flowController, gatheredSkipBody, gatheredSkipCloseTag, processorExecutionVars);
 
+        this.configuration = configuration;
         this.context = context;
         this.templateMode = context.getTemplateMode();
 
@@ -102,6 +223,16 @@ enum IterationWhiteSpaceHandling {ZERO_ITER, SINGLE_ITER, MULTIPLE_ITER}
             this.dataDrivenIterator = null;
         }
 
+        // The th:parallel opt-in is set as a local variable at the level of the iterated element, so it has to be
+        // hidden from the iterations themselves or any iterations nested inside would inherit it
+        final Object parallelVariable = context.getVariable(StandardParallelTagProcessor.PARALLEL_VARIABLE_NAME);
+        this.maskParallelVariable = (parallelVariable != null);
+
+        this.parallelIteratedObject =
+                (Boolean.TRUE.equals(parallelVariable) && this.dataDrivenIterator == null && this.iterStatusVariable.size != null?
+                        computeParallelIteratedObject(configuration, context, iteratedObject, this.iterStatusVariable.size.intValue()) :
+                        null);
+
         this.iter = 0;
         this.iterOffset = 0;
         this.iterModel = null;
@@ -121,6 +252,48 @@ public ProcessorExecutionVars initializeProcessorExecutionVars() {
 
     public boolean process() {
 
+        // If iteration fails, the iterated stream (if any) is closed, as nobody else will be able to do it
+        boolean failed = true;
+        try {
+            final boolean processed = processIterations();
+            failed = false;
+            return processed;
+        } finally {
+            if (failed) {
+                closeIterator(true);
+            }
+        }
+
+    }
+
+
+    /*
+     * Called when the execution this iteration belongs to is abandoned before finishing (e.g. a throttled execution
+     * whose output is not needed anymore), so that any resources held by the iterated object are released.
+     */
+    void abort() {
+        closeIterator(false);
+    }
+
+
+    private void closeIterator(final boolean quietly) {
+        if (!(this.iterator instanceof StreamIterator)) {
+            return;
+        }
+        try {
+            ((StreamIterator) this.iterator).close();
+        } catch (final RuntimeException e) {
+            if (!quietly) {
+                throw e;
+            }
+            // Otherwise, the exception that made the iteration fail is more relevant than this one
+        }
+    }
+
+
+
+    private boolean processIterations() {
+
         final TemplateFlowController flowController = getFlowController();
 
         /*
@@ -143,6 +316,20 @@ public boolean process() {
         }
 
 
+        /*
+         * If this iteration has been marked as parallel, is big enough and parallel iteration is enabled, process
+         * it in chunks in parallel. This is never done in throttled executions (which are the only ones having a
+         * flow controller). If any of the chunks turns out to need sequential processing (e.g. because it uses
+         * #ids), the iteration will be processed in the normal way.
+         */
+        if (this.iterationModels == null && this.parallelIteratedObject != null && flowController == null) {
+            if (processInParallel()) {
+                this.context.decreaseLevel();
+                return true;
+            }
+        }
+
+
         /*
          * We will need to compute the iteration models before the actual first iteration starts. These
          * models will give us instructions on how whitespace should be dealt with during iteration.
@@ -167,6 +354,7 @@ public boolean process() {
                 if (this.iterator.hasNext()) {
                     iterationWhiteSpaceHandling = IterationWhiteSpaceHandling.SINGLE_ITER;
                     this.iterStatusVariable.current = this.iterator.next();
+                    computeLookahead(this.iterator.hasNext());
                 } else {
                     iterationWhiteSpaceHandling = IterationWhiteSpaceHandling.ZERO_ITER;
                 }
@@ -180,8 +368,10 @@ public boolean process() {
                     this.iterStatusVariable.current = this.iterator.next();
                     if (this.iterator.hasNext()) {
                         iterationWhiteSpaceHandling = IterationWhiteSpaceHandling.MULTIPLE_ITER;
+                        computeLookahead(true);
                     } else {
                         iterationWhiteSpaceHandling = IterationWhiteSpaceHandling.SINGLE_ITER;
+                        computeLookahead(false);
                     }
                 } else {
                     iterationWhiteSpaceHandling = IterationWhiteSpaceHandling.ZERO_ITER;
@@ -194,7 +384,7 @@ public boolean process() {
              * Once the type of iteration we have has been determined, compute the models that will be used
              * for the first, the middle and the last iterations
              */
-            this.iterationModels = computeIterationModels(iterationWhiteSpaceHandling);
+            this.iterationModels = obtainIterationModels(iterationWhiteSpaceHandling);
 
         }
 
@@ -271,20 +461,20 @@ public boolean process() {
                 this.iterStatusVariable.index++;
 
                 /*
-                 * Obtain the new iterated objects
+                 * Obtain the new iterated objects, and look ahead one element so that we know whether this is
+                 * the last one (without needing to know the size of the iterated object)
                  */
                 this.iterStatusVariable.current = this.iterator.next();
+                final boolean hasNext = this.iterator.hasNext();
+                computeLookahead(hasNext);
 
-                iterationIsNew = true;
+                /*
+                 * Select the model to be processed
+                 */
+                this.iterModel = (hasNext ? this.iterationModels.modelMiddle : this.iterationModels.modelLast);
 
-            }
+                iterationIsNew = true;
 
-            /*
-             * Select the model to be processed
-             */
-            if (this.iterModel == null) {
-                this.iterModel =
-                        (this.iterator.hasNext() ? this.iterationModels.modelMiddle : this.iterationModels.modelLast);
             }
 
             /*
@@ -330,6 +520,30 @@ public boolean process() {
 
 
 
+    /*
+     * Updates the iteration status variable once we know (by looking one element ahead) whether there are more
+     * elements after the current one. If we are at the last element, this also lets us know the size of the
+     * iterated object, in case it could not be computed beforehand.
+     */
+    private void computeLookahead(final boolean hasNext) {
+        if (hasNext) {
+            this.iterStatusVariable.last = false;
+            return;
+        }
+        if (this.dataDrivenIterator != null && !this.dataDrivenIterator.isFeedingComplete()) {
+            // More data might still come for data-driven iterations, so we cannot know yet
+            this.iterStatusVariable.last = false;
+            return;
+        }
+        this.iterStatusVariable.last = true;
+        if (this.iterStatusVariable.size == null) {
+            this.iterStatusVariable.size = Integer.valueOf(this.iterStatusVariable.index + 1);
+        }
+    }
+
+
+
+
     private boolean processIterationModel(final TemplateFlowController flowController, final boolean iterationIsNew) {
 
         if (iterationIsNew) {
@@ -344,6 +558,9 @@ private boolean processIterationModel(final TemplateFlowController flowControlle
              */
             this.context.setVariable(this.iterVariableName, this.iterStatusVariable.current);
             this.context.setVariable(this.iterStatusVariableName, this.iterStatusVariable);
+            if (this.maskParallelVariable) {
+                this.context.removeVariable(StandardParallelTagProcessor.PARALLEL_VARIABLE_NAME);
+            }
 
             /*
              * Reset the "skipBody" and "skipCloseTag" values at the event model controller, and also set this
@@ -425,6 +642,12 @@ private static Integer computeIteratedObjectSize(final Object iteratedObject) {
         if (iteratedObject instanceof Iterator<?>) {
             return null; // Cannot determine before actually iterating
         }
+        if (iteratedObject instanceof Enumeration<?> ||
+                (RESULT_SET_CLASS != null && RESULT_SET_CLASS.isInstance(iteratedObject)) ||
+                (STREAM_CLASS != null && STREAM_CLASS.isInstance(iteratedObject)) ||
+                (SPLITERATOR_CLASS != null && SPLITERATOR_CLASS.isInstance(iteratedObject))) {
+            return null; // Cannot determine before actually iterating (will be known when reaching the last element)
+        }
         return Integer.valueOf(1); // In this case, we will iterate the object as a collection of size 1
     }
 
@@ -491,12 +714,364 @@ public void remove() {
 
             };
         }
+        if (RESULT_SET_CLASS != null && RESULT_SET_CLASS.isInstance(iteratedObject)) {
+            return new ResultSetIterator(iteratedObject);
+        }
+        if (STREAM_CLASS != null && STREAM_CLASS.isInstance(iteratedObject)) {
+            return new StreamIterator(iteratedObject);
+        }
+        if (SPLITERATOR_CLASS != null && SPLITERATOR_CLASS.isInstance(iteratedObject)) {
+            return (Iterator<?>) invokeReflectively(SPLITERATORS_ITERATOR_METHOD, null, iteratedObject);
+        }
         return Collections.singletonList(iteratedObject).iterator();
     }
 
 
 
 
+    private static Object invokeReflectively(final Method method, final Object target, final Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (final InvocationTargetException e) {
+            throw new TemplateProcessingException("Error while iterating object", e.getTargetException());
+        } catch (final Exception e) {
+            throw new TemplateProcessingException("Error while iterating object", e);
+        }
+    }
+
+
+
+
+    /*
+     * Lazy iterator over a java.util.stream.BaseStream (Java 8+), which will be closed once exhausted so
+     * that any resources it might hold (e.g. a database cursor) are released. It will also be closed if the
+     * iteration fails or is abandoned before the stream is exhausted (see close()).
+     */
+    private static final class StreamIterator implements Iterator<Object> {
+
+        private final Object stream;
+        private final Iterator<?> iterator;
+        private boolean closed;
+
+        StreamIterator(final Object stream) {
+            super();
+            this.stream = stream;
+            this.iterator = (Iterator<?>) invokeReflectively(STREAM_ITERATOR_METHOD, stream);
+            this.closed = false;
+        }
+
+        public boolean hasNext() {
+            if (this.closed) {
+                return false;
+            }
+            final boolean hasNext = this.iterator.hasNext();
+            if (!hasNext) {
+                close();
+            }
+            return hasNext;
+        }
+
+        void close() {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            invokeReflectively(STREAM_CLOSE_METHOD, this.stream);
+        }
+
+        public Object next() {
+            return this.iterator.next();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("Cannot remove from a Stream iterator");
+        }
+
+    }
+
+
+
+
+    /*
+     * Lazy iterator over a JDBC ResultSet, which will return each row as a Map (column label -> value). Only
+     * one row will be held in memory at a time (plus the one being looked ahead).
+     */
+    private static final class ResultSetIterator implements Iterator<Object> {
+
+        private final Object resultSet;
+        private String[] columnLabels;
+        private Boolean nextAvailable;
+
+        ResultSetIterator(final Object resultSet) {
+            super();
+            this.resultSet = resultSet;
+            this.columnLabels = null;
+            this.nextAvailable = null;
+        }
+
+        public boolean hasNext() {
+            if (this.nextAvailable == null) {
+                this.nextAvailable = (Boolean) invokeReflectively(RESULT_SET_NEXT_METHOD, this.resultSet);
+            }
+            return this.nextAvailable.booleanValue();
+        }
+
+        public Object next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            this.nextAvailable = null;
+            if (this.columnLabels == null) {
+                final Object metaData = invokeReflectively(RESULT_SET_GET_META_DATA_METHOD, this.resultSet);
+                final int columnCount =
+                        ((Integer) invokeReflectively(RESULT_SET_META_DATA_GET_COLUMN_COUNT_METHOD, metaData)).intValue();
+                this.columnLabels = new String[columnCount];
+                for (int i = 0; i < this.columnLabels.length; i++) {
+                    this.columnLabels[i] =
+                            (String) invokeReflectively(
+                                    RESULT_SET_META_DATA_GET_COLUMN_LABEL_METHOD, metaData, Integer.valueOf(i + 1));
+                }
+            }
+            final Map<String,Object> row = new LinkedHashMap<String, Object>(this.columnLabels.length + 1, 1.0f);
+            for (int i = 0; i < this.columnLabels.length; i++) {
+                row.put(
+                        this.columnLabels[i],
+                        invokeReflectively(RESULT_SET_GET_OBJECT_METHOD, this.resultSet, Integer.valueOf(i + 1)));
+            }
+            return row;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("Cannot remove from a JDBC result set iterator");
+        }
+
+    }
+
+
+
+
+
+
+
+    /*
+     * Determines whether the iterated object should be iterated in parallel, returning it if so. Only lists
+     * allowing random access and arrays are iterated in parallel, and only outside web contexts (request
+     * attributes are not safe to be shared among threads) and when no post-processors have to be applied.
+     */
+    private static Object computeParallelIteratedObject(
+            final IEngineConfiguration configuration, final IEngineContext context,
+            final Object iteratedObject, final int size) {
+
+        if (!(configuration instanceof EngineConfiguration)) {
+            return null;
+        }
+        final EngineConfiguration engineConfiguration = (EngineConfiguration) configuration;
+        if (engineConfiguration.getParallelIterationExecutor() == null ||
+                size < engineConfiguration.getParallelIterationThreshold()) {
+            return null;
+        }
+        if (!((iteratedObject instanceof List<?> && iteratedObject instanceof RandomAccess) ||
+                (iteratedObject != null && iteratedObject.getClass().isArray()))) {
+            return null;
+        }
+        if (context instanceof IWebContext || IN_PARALLEL_ITERATION.get() != null) {
+            return null;
+        }
+        final Set<IPostProcessor> postProcessors = configuration.getPostProcessors(context.getTemplateMode());
+        if (postProcessors != null && !postProcessors.isEmpty()) {
+            return null;
+        }
+        return iteratedObject;
+
+    }
+
+
+
+
+    /*
+     * Splits the iteration in chunks that are rendered in parallel (the first one in the current thread) into
+     * separate buffers, each of them using a copy of the current context, and then outputs the buffers in order.
+     * As output is already processed, it is sent directly to the handler after the processor template handler.
+     * Nothing is output until all chunks have been rendered, so if any of them signals that it cannot be
+     * rendered out of order (returning null), false is returned and the iteration can be processed serially.
+     * The current thread never waits for a chunk that has not been started yet: it renders it itself. Otherwise,
+     * rendering from a thread of the same executor the chunks are queued on could block waiting for chunks that
+     * no thread is left to run.
+     */
+    private boolean processInParallel() {
+
+        final int size = this.iterStatusVariable.size.intValue();
+        if (size < 2) {
+            // Iterations of zero or one elements need whitespace handling of their own, and nothing to split anyway
+            return false;
+        }
+        final ExecutorService executor = ((EngineConfiguration) this.configuration).getParallelIterationExecutor();
+
+        this.iterationModels = obtainIterationModels(IterationWhiteSpaceHandling.MULTIPLE_ITER);
+
+        // Chunks are twice as many as the threads that can render them, so that the load is evenly distributed
+        final int parallelism = computeParallelism(executor);
+        final int chunkSize = Math.max(MIN_PARALLEL_CHUNK_SIZE, (size + (parallelism * 2) - 1) / (parallelism * 2));
+        final int chunkCount = (size + chunkSize - 1) / chunkSize;
+
+        final Set<String> variableNames = this.context.getVariableNames();
+        final Map<String,Object> variables = new LinkedHashMap<String, Object>(variableNames.size() + 1, 1.0f);
+        final Map<String,Object> localVariables = new LinkedHashMap<String, Object>(variableNames.size() + 1, 1.0f);
+        for (final String variableName : variableNames) {
+            if (StandardParallelTagProcessor.PARALLEL_VARIABLE_NAME.equals(variableName)) {
+                continue;
+            }
+            if (this.context.isVariableLocal(variableName)) {
+                localVariables.put(variableName, this.context.getVariable(variableName));
+            } else {
+                variables.put(variableName, this.context.getVariable(variableName));
+            }
+        }
+
+        final List<TemplateData> templateStack = this.context.getTemplateStack();
+        final List<IProcessableElementTag> elementStack = this.context.getElementStack();
+        final AtomicBoolean aborted = new AtomicBoolean(false);
+
+        final ParallelIterationChunk[] chunks = new ParallelIterationChunk[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            chunks[i] =
+                    new ParallelIterationChunk(
+                            this.configuration, this.context, templateStack, elementStack, variables, localVariables,
+                            this.iterationModels, this.iterVariableName, this.iterStatusVariableName,
+                            this.parallelIteratedObject, size, i * chunkSize, Math.min(size, (i + 1) * chunkSize), aborted);
+        }
+
+        final List<Future<String>> futures = new ArrayList<Future<String>>(chunkCount - 1);
+        final String[] outputs = new String[chunkCount];
+        try {
+
+            for (int i = 1; i < chunkCount; i++) {
+                futures.add(executor.submit(chunks[i]));
+            }
+
+            outputs[0] = chunks[0].call();
+            for (int i = 1; i < chunkCount && outputs[i - 1] != null; i++) {
+                if (chunks[i].claim()) {
+                    // Not started by the executor yet, so it is rendered here instead of waiting for it
+                    futures.get(i - 1).cancel(false);
+                    outputs[i] = chunks[i].render();
+                } else {
+                    outputs[i] = futures.get(i - 1).get();
+                }
+            }
+
+        } catch (final ExecutionException e) {
+            cancelParallelIterationChunks(chunks, futures);
+            final Throwable cause = e.getCause();
+            if (cause instanceof TemplateEngineException) {
+                throw (TemplateEngineException) cause;
+            }
+            throw new TemplateProcessingException("Error during parallel execution of iteration", cause);
+        } catch (final InterruptedException e) {
+            cancelParallelIterationChunks(chunks, futures);
+            Thread.currentThread().interrupt();
+            throw new TemplateProcessingException("Interrupted during parallel execution of iteration", e);
+        } catch (final RuntimeException e) {
+            cancelParallelIterationChunks(chunks, futures);
+            throw e;
+        }
+
+        if (outputs[chunkCount - 1] == null) {
+            // Parallel rendering was aborted, so everything will be done again in the normal way
+            cancelParallelIterationChunks(chunks, futures);
+            this.iterationModels = null;
+            return false;
+        }
+
+        final ITemplateHandler next = getProcessorTemplateHandler().getNext();
+        for (int i = 0; i < chunkCount; i++) {
+            outputParallelIterationChunk(next, outputs[i]);
+        }
+
+        // Leave the skip flags as they would be after performing the iterations in the normal way
+        resetGatheredSkipFlags();
+
+        return true;
+
+    }
+
+
+    /*
+     * Computes the amount of threads that will be rendering chunks of a parallel iteration, i.e. those of the
+     * executor plus the current one. If the executor does not limit its threads, the amount of available
+     * processors is used instead.
+     */
+    private static int computeParallelism(final ExecutorService executor) {
+        final int availableProcessors = Math.max(1, Runtime.getRuntime().availableProcessors());
+        int threads = 0;
+        if (executor instanceof ThreadPoolExecutor) {
+            final ThreadPoolExecutor threadPoolExecutor = (ThreadPoolExecutor) executor;
+            threads =
+                    (threadPoolExecutor.getCorePoolSize() > 0?
+                            threadPoolExecutor.getCorePoolSize() :
+                            Math.min(threadPoolExecutor.getMaximumPoolSize(), availableProcessors));
+        } else if (FORK_JOIN_POOL_CLASS != null && FORK_JOIN_POOL_CLASS.isInstance(executor)) {
+            threads = ((Integer) invokeReflectively(FORK_JOIN_POOL_GET_PARALLELISM_METHOD, executor)).intValue();
+        }
+        return (threads > 0? threads + 1 : availableProcessors);
+    }
+
+
+    private static void outputParallelIterationChunk(final ITemplateHandler handler, final String output) {
+        if (output.length() > 0) {
+            handler.handleText(new Text(output));
+        }
+    }
+
+
+    private static void cancelParallelIterationChunks(
+            final ParallelIterationChunk[] chunks, final List<Future<String>> futures) {
+        // Claiming chunks makes sure those still queued will do nothing even if the executor ignores cancellation
+        for (final ParallelIterationChunk chunk : chunks) {
+            chunk.claim();
+        }
+        for (final Future<String> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+
+
+
+    /*
+     * Iteration models only depend on the gathered events (and the preceding whitespace), which for cached
+     * templates will normally be the very same event objects every time the element is executed. So once computed
+     * they are cached at the close tag of the iterated element, and reused as long as the gathered events match.
+     */
+    private IterationModels obtainIterationModels(final IterationWhiteSpaceHandling iterationWhiteSpaceHandling) {
+
+        if (iterationWhiteSpaceHandling == IterationWhiteSpaceHandling.ZERO_ITER) {
+            return IterationModels.EMPTY;
+        }
+
+        final Model innerModel = getInnerModel();
+        final int innerModelSize = innerModel.size();
+        if (innerModelSize < 2 || !(innerModel.get(innerModelSize - 1) instanceof CloseElementTag)) {
+            // Standalone elements or unusual structures: nothing worth caching here
+            return computeIterationModels(iterationWhiteSpaceHandling);
+        }
+
+        final CloseElementTag closeTag = (CloseElementTag) innerModel.get(innerModelSize - 1);
+        final CachedIterationModels cached = closeTag.getCachedIterationModels();
+        if (cached != null && cached.matches(iterationWhiteSpaceHandling, this.precedingWhitespace, innerModel)) {
+            return cached.iterationModels;
+        }
+
+        // Some iteration models might be the gathered model itself, which must not be kept at the (shared) close
+        // tag. So these are replaced with a copy, which will only keep the events
+        final IterationModels iterationModels =
+                computeIterationModels(iterationWhiteSpaceHandling).detachFrom(innerModel);
+        closeTag.setCachedIterationModels(
+                new CachedIterationModels(iterationWhiteSpaceHandling, this.precedingWhitespace, innerModel, iterationModels));
+        return iterationModels;
+
+    }
+
 
 
 
@@ -701,7 +1276,7 @@ private IterationModels computeIterationModels(final IterationWhiteSpaceHandling
 
 
 
-    private static final class IterationModels  {
+    static final class IterationModels  {
 
         static IterationModels EMPTY = new IterationModels(null, null, null);
 
@@ -722,8 +1297,284 @@ boolean isEmpty() {
             return this.empty;
         }
 
+        /*
+         * Returns equivalent iteration models that do not reference the specified model, but a copy of it instead
+         */
+        IterationModels detachFrom(final Model model) {
+            if (this.modelFirst != model && this.modelMiddle != model && this.modelLast != model) {
+                return this;
+            }
+            final Model copy = new Model(model);
+            return new IterationModels(
+                    (this.modelFirst == model? copy : this.modelFirst),
+                    (this.modelMiddle == model? copy : this.modelMiddle),
+                    (this.modelLast == model? copy : this.modelLast));
+        }
+
+    }
+
+
+
+
+    /*
+     * Iteration models cached at the close tag of the iterated element. The gathered body will normally be made
+     * of the very same event objects every time the element is executed, but not always: a processor executed
+     * before the iteration (e.g. th:insert) can replace the body with events that change from one execution to
+     * the next. So the body and close tag are compared by identity with the events the cached models were computed
+     * from. The open tag is compared by structure, as it will normally have been re-created by the iteration
+     * processor. Only the events are kept, not the gathered Model they belonged to (neither here nor at the
+     * iteration models, see IterationModels#detachFrom(Model)).
+     */
+    static final class CachedIterationModels {
+
+        private final IterationWhiteSpaceHandling iterationWhiteSpaceHandling;
+        private final Text precedingWhitespace;
+        private final ITemplateEvent[] sourceEvents;
+        final IterationModels iterationModels;
+
+        CachedIterationModels(
+                final IterationWhiteSpaceHandling iterationWhiteSpaceHandling, final Text precedingWhitespace,
+                final Model sourceModel, final IterationModels iterationModels) {
+            super();
+            this.iterationWhiteSpaceHandling = iterationWhiteSpaceHandling;
+            this.precedingWhitespace = precedingWhitespace;
+            this.sourceEvents = new ITemplateEvent[sourceModel.size()];
+            for (int i = 0; i < this.sourceEvents.length; i++) {
+                this.sourceEvents[i] = sourceModel.get(i);
+            }
+            this.iterationModels = iterationModels;
+        }
+
+        boolean matches(
+                final IterationWhiteSpaceHandling iterationWhiteSpaceHandling, final Text precedingWhitespace,
+                final Model model) {
+            if (this.iterationWhiteSpaceHandling != iterationWhiteSpaceHandling ||
+                    this.precedingWhitespace != precedingWhitespace) {
+                return false;
+            }
+            final int size = model.size();
+            if (this.sourceEvents.length != size) {
+                return false;
+            }
+            // Body and close tag must be the very same event objects
+            for (int i = size - 1; i > 0; i--) {
+                if (this.sourceEvents[i] != model.get(i)) {
+                    return false;
+                }
+            }
+            return isSameOpenElementTag(this.sourceEvents[0], model.get(0));
+        }
+
+        private static boolean isSameOpenElementTag(final ITemplateEvent event1, final ITemplateEvent event2) {
+            if (event1 == event2) {
+                return true;
+            }
+            if (!(event1 instanceof OpenElementTag) || !(event2 instanceof OpenElementTag)) {
+                return false;
+            }
+            final OpenElementTag tag1 = (OpenElementTag) event1;
+            final OpenElementTag tag2 = (OpenElementTag) event2;
+            if (tag1.elementDefinition != tag2.elementDefinition || tag1.synthetic != tag2.synthetic ||
+                    tag1.line != tag2.line || tag1.col != tag2.col ||
+                    !tag1.elementCompleteName.equals(tag2.elementCompleteName) ||
+                    (tag1.templateName == null? tag2.templateName != null : !tag1.templateName.equals(tag2.templateName))) {
+                return false;
+            }
+            final Attributes attributes1 = tag1.attributes;
+            final Attributes attributes2 = tag2.attributes;
+            if (attributes1 == attributes2) {
+                return true;
+            }
+            if (attributes1 == null || attributes2 == null) {
+                return false;
+            }
+            if (!Arrays.equals(attributes1.innerWhiteSpaces, attributes2.innerWhiteSpaces)) {
+                return false;
+            }
+            final Attribute[] attributeArray1 = attributes1.attributes;
+            final Attribute[] attributeArray2 = attributes2.attributes;
+            if (attributeArray1 == attributeArray2) {
+                return true;
+            }
+            if (attributeArray1 == null || attributeArray2 == null || attributeArray1.length != attributeArray2.length) {
+                return false;
+            }
+            for (int i = 0; i < attributeArray1.length; i++) {
+                if (attributeArray1[i] != attributeArray2[i]) { // Attributes are immutable, so identity is enough
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+
+
+
+    /*
+     * Renders a range of the iterations of a parallel iteration into a String, using its own engine context
+     * (a copy of the context at the moment the iteration started, including its template and element stacks)
+     * and its own processing handler chain. Identifier sequences (#ids) cannot be shared among chunks without
+     * making the output depend on the order in which chunks are rendered, so if a chunk uses them it aborts
+     * the whole parallel iteration, signaling it by returning null. A chunk is rendered only by the first thread
+     * that claims it: either the executor (through call()) or the thread waiting for its output.
+     */
+    private static final class ParallelIterationChunk implements Callable<String> {
+
+        private final IEngineConfiguration configuration;
+        private final List<TemplateData> templateStack;
+        private final List<IProcessableElementTag> elementStack;
+        private final Map<String,Object> templateResolutionAttributes;
+        private final Locale locale;
+        private final Map<String,Object> variables;
+        private final Map<String,Object> localVariables;
+        private final boolean hasSelectionTarget;
+        private final Object selectionTarget;
+        private final IInliner inliner;
+        private final IterationModels iterationModels;
+        private final String iterVariableName;
+        private final String iterStatusVariableName;
+        private final Object iteratedObject;
+        private final int size;
+        private final int from;
+        private final int to;
+        private final AtomicBoolean aborted;
+        private final AtomicBoolean claimed = new AtomicBoolean(false);
+
+        ParallelIterationChunk(
+                final IEngineConfiguration configuration, final IEngineContext context,
+                final List<TemplateData> templateStack, final List<IProcessableElementTag> elementStack,
+                final Map<String,Object> variables, final Map<String,Object> localVariables,
+                final IterationModels iterationModels, final String iterVariableName, final String iterStatusVariableName,
+                final Object iteratedObject, final int size, final int from, final int to, final AtomicBoolean aborted) {
+            super();
+            this.configuration = configuration;
+            this.templateStack = templateStack;
+            this.elementStack = elementStack;
+            this.templateResolutionAttributes = context.getTemplateResolutionAttributes();
+            this.locale = context.getLocale();
+            this.variables = variables;
+            this.localVariables = localVariables;
+            this.hasSelectionTarget = context.hasSelectionTarget();
+            this.selectionTarget = (this.hasSelectionTarget? context.getSelectionTarget() : null);
+            this.inliner = context.getInliner();
+            this.iterationModels = iterationModels;
+            this.iterVariableName = iterVariableName;
+            this.iterStatusVariableName = iterStatusVariableName;
+            this.iteratedObject = iteratedObject;
+            this.size = size;
+            this.from = from;
+            this.to = to;
+            this.aborted = aborted;
+        }
+
+        boolean claim() {
+            return this.claimed.compareAndSet(false, true);
+        }
+
+        public String call() {
+            // If already claimed, the output of this call will never be used
+            return (claim()? render() : null);
+        }
+
+        String render() {
+
+            if (this.aborted.get()) {
+                return null;
+            }
+
+            final Boolean previous = IN_PARALLEL_ITERATION.get();
+            IN_PARALLEL_ITERATION.set(Boolean.TRUE);
+
+            try {
+
+                final EngineContext chunkContext = createChunkContext();
+
+                final FastStringWriter writer = new FastStringWriter(1024);
+
+                final ProcessorTemplateHandler processorTemplateHandler = new ProcessorTemplateHandler();
+                final OutputTemplateHandler outputTemplateHandler = new OutputTemplateHandler(writer);
+                processorTemplateHandler.setContext(chunkContext);
+                outputTemplateHandler.setContext(chunkContext);
+                processorTemplateHandler.setNext(outputTemplateHandler);
+
+                final IterationStatusVar statusVariable = new IterationStatusVar();
+                statusVariable.size = Integer.valueOf(this.size);
+
+                final List<?> list = (this.iteratedObject instanceof List<?>? (List<?>) this.iteratedObject : null);
+
+                for (int i = this.from; i < this.to; i++) {
+
+                    statusVariable.index = i;
+                    statusVariable.current = (list != null? list.get(i) : Array.get(this.iteratedObject, i));
+                    statusVariable.last = (i == this.size - 1);
+
+                    chunkContext.increaseLevel();
+                    chunkContext.setVariable(this.iterVariableName, statusVariable.current);
+                    chunkContext.setVariable(this.iterStatusVariableName, statusVariable);
+
+                    final Model model =
+                            (i == 0? this.iterationModels.modelFirst :
+                                    (i == this.size - 1? this.iterationModels.modelLast : this.iterationModels.modelMiddle));
+                    model.process(processorTemplateHandler);
+
+                    chunkContext.decreaseLevel();
+
+                    if (chunkContext.isIdentifierSequencesInitialized()) {
+                        this.aborted.set(true);
+                    }
+                    if (this.aborted.get()) {
+                        return null;
+                    }
+
+                }
+
+                return writer.toString();
+
+            } finally {
+                if (previous == null) {
+                    IN_PARALLEL_ITERATION.remove();
+                } else {
+                    IN_PARALLEL_ITERATION.set(previous);
+                }
+            }
+
+        }
+
+        /*
+         * Creates a context replicating the template and element stacks of the original one, with its
+         * non-local variables at level 0 and its local variables at the level where the iteration starts.
+         */
+        private EngineContext createChunkContext() {
+
+            final EngineContext chunkContext =
+                    new EngineContext(
+                            this.configuration, this.templateStack.get(0), this.templateResolutionAttributes,
+                            this.locale, this.variables);
+
+            for (int i = 1; i < this.templateStack.size(); i++) {
+                chunkContext.increaseLevel();
+                chunkContext.setTemplateData(this.templateStack.get(i));
+            }
+            for (final IProcessableElementTag elementTag : this.elementStack) {
+                chunkContext.increaseLevel();
+                chunkContext.setElementTag(elementTag);
+            }
+
+            chunkContext.setVariables(this.localVariables);
+            if (this.hasSelectionTarget) {
+                chunkContext.setSelectionTarget(this.selectionTarget);
+            }
+            if (this.inliner != null) {
+                chunkContext.setInliner(this.inliner);
+            }
+
+            return chunkContext;
+
+        }
+
     }
 
 
-    
-}
\ No newline at end of file
+}
@@ -31,6 +31,7 @@ public final class IterationStatusVar {
     int index;
     Integer size; // it can be null if we don't know the size of the iterated object beforehand!
     Object current;
+    boolean last; // computed by one-element lookahead, so that it can be known even if size is not
 
     IterationStatusVar() {
         super();
@@ -70,7 +71,10 @@ public boolean isFirst() {
     }
 
     public boolean isLast() {
-        return (this.index == this.size - 1);
+        if (this.size != null) {
+            return (this.index == this.size.intValue() - 1);
+        }
+        return this.last;
     }
 
     @Override
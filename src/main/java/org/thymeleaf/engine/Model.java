@@ -57,8 +57,13 @@ final class Model implements IModel {
     private IEngineConfiguration configuration;
     private TemplateMode templateMode;
 
+    // The queue array might be shared with other models (copy-on-write), in which case events will start at
+    // queueOffset and the array will be copied before performing any modifications on it (see unshareQueue()).
+    // Arrays coming from TemplateModels are always shared, and their events start at 1 (after TemplateStart).
     IEngineTemplateEvent[] queue;
+    int queueOffset;
     int queueSize;
+    private boolean queueShared;
 
 
 
@@ -76,7 +81,9 @@ final class Model implements IModel {
         this.queue = new IEngineTemplateEvent[INITIAL_EVENT_QUEUE_SIZE];
         Arrays.fill(this.queue, null);
 
+        this.queueOffset = 0;
         this.queueSize = 0;
+        this.queueShared = false;
 
     }
 
@@ -92,22 +99,32 @@ final class Model implements IModel {
 
         if (model instanceof Model) {
 
+            // Clones are copy-on-write: both models will copy the array before modifying it
             final Model mmodel = (Model) model;
-            this.queue = mmodel.queue.clone();
+            this.queue = mmodel.queue;
+            this.queueOffset = mmodel.queueOffset;
             this.queueSize = mmodel.queueSize;
+            this.queueShared = true;
+            mmodel.queueShared = true;
 
         } else if (model instanceof TemplateModel) {
 
-            final TemplateModel templateModel = (TemplateModel) model;
-            this.queue = new IEngineTemplateEvent[templateModel.queue.length + INITIAL_EVENT_QUEUE_SIZE/2];
-            System.arraycopy(templateModel.queue, 1, this.queue, 0, templateModel.queue.length - 2);
-            this.queueSize = templateModel.queue.length - 2;
+            // A view on the (immutable) events of the template model, excluding TemplateStart/TemplateEnd. For compact
+            // template models, these are the events already materialized and reused by the template model itself,
+            // so nothing is copied or created here
+            final IEngineTemplateEvent[] templateModelEvents = ((TemplateModel) model).getEvents();
+            this.queue = templateModelEvents;
+            this.queueOffset = 1;
+            this.queueSize = templateModelEvents.length - 2;
+            this.queueShared = true;
 
         } else {
 
             this.queue = new IEngineTemplateEvent[INITIAL_EVENT_QUEUE_SIZE];
             Arrays.fill(this.queue, null);
+            this.queueOffset = 0;
             this.queueSize = 0;
+            this.queueShared = false;
             insertModel(0, model);
 
         }
@@ -133,7 +150,7 @@ public int size() {
 
 
     public ITemplateEvent get(final int pos) {
-        return this.queue[pos];
+        return this.queue[this.queueOffset + pos];
     }
 
 
@@ -157,6 +174,10 @@ public void insert(final int pos, final ITemplateEvent event) {
                     "events can only be added to models internally during template parsing.");
         }
 
+        if (this.queueShared) {
+            unshareQueue(this.queueSize + 1);
+        }
+
         // Check there is room for a new event, or grow the queue if not
         if (this.queue.length == this.queueSize) {
             this.queue = Arrays.copyOf(this.queue, this.queue.length + INITIAL_EVENT_QUEUE_SIZE/2);
@@ -190,6 +211,10 @@ public void replace(final int pos, final ITemplateEvent event) {
                     "events can only be added to models internally during template parsing.");
         }
 
+        if (this.queueShared) {
+            unshareQueue(this.queueSize);
+        }
+
         // Set the new event in its new position
         this.queue[pos] = engineEvent;
 
@@ -220,6 +245,10 @@ public void insertModel(final int pos, final IModel model) {
                     "the current " + this.templateMode);
         }
 
+        if (this.queueShared) {
+            unshareQueue(this.queueSize + model.size());
+        }
+
         if (this.queue.length <= (this.queueSize + model.size())) {
             // We need to grow the queue!
             this.queue = Arrays.copyOf(this.queue, Math.max(this.queueSize + model.size(), this.queue.length + INITIAL_EVENT_QUEUE_SIZE/2));
@@ -240,18 +269,20 @@ private void doInsertModel(final int pos, final Model model) {
         // Make room for the new events (if necessary because pos < this.queueSize)
         System.arraycopy(this.queue, pos, this.queue, pos + model.queueSize, this.queueSize - pos);
         // Copy the new events to their new position
-        System.arraycopy(model.queue, 0, this.queue, pos, model.queueSize);
+        System.arraycopy(model.queue, model.queueOffset, this.queue, pos, model.queueSize);
         this.queueSize += model.queueSize;
     }
 
 
     private void doInsertTemplateModel(final int pos, final TemplateModel model) {
+        // For compact template models these are the events already materialized (and reused) by the model itself
+        final IEngineTemplateEvent[] modelEvents = model.getEvents();
         // We compute the insertion size by subtracting the TemplateStart/TemplateEnd events
-        final int insertionSize = model.queue.length - 2;
+        final int insertionSize = modelEvents.length - 2;
         // Make room for the new events (if necessary because pos < this.queueSize)
         System.arraycopy(this.queue, pos, this.queue, pos + insertionSize, this.queueSize - pos);
         // Copy the new events to their new position
-        System.arraycopy(model.queue, 1, this.queue, pos, insertionSize);
+        System.arraycopy(modelEvents, 1, this.queue, pos, insertionSize);
         this.queueSize += insertionSize;
     }
 
@@ -266,19 +297,37 @@ private void doInsertOtherModel(final int pos, final IModel model) {
 
 
     public void remove(final int pos) {
+        if (this.queueShared) {
+            unshareQueue(this.queueSize);
+        }
         System.arraycopy(this.queue, pos + 1, this.queue, pos, this.queueSize - (pos + 1));
         this.queueSize--;
     }
 
 
     public void reset() {
+        // If the queue is shared, it will be replaced with a new one as soon as new events are added
         this.queueSize = 0;
     }
 
 
+    /*
+     * Copies the (shared) queue array into a new one owned by this model, so that it can be modified.
+     */
+    private void unshareQueue(final int minCapacity) {
+        final IEngineTemplateEvent[] newQueue =
+                new IEngineTemplateEvent[Math.max(minCapacity, this.queueSize + INITIAL_EVENT_QUEUE_SIZE/2)];
+        System.arraycopy(this.queue, this.queueOffset, newQueue, 0, this.queueSize);
+        this.queue = newQueue;
+        this.queueOffset = 0;
+        this.queueShared = false;
+    }
+
+
 
     void process(final ITemplateHandler handler) {
-        for (int i = 0; i < this.queueSize; i++) {
+        final int end = this.queueOffset + this.queueSize;
+        for (int i = this.queueOffset; i < end; i++) {
             this.queue[i].beHandled(handler);
         }
     }
@@ -297,7 +346,7 @@ int process(final ITemplateHandler handler, final int offset, final TemplateFlow
 
         int i = offset;
         while (i < this.queueSize && !controller.stopProcessing) {
-            this.queue[i++].beHandled(handler);
+            this.queue[this.queueOffset + i++].beHandled(handler);
         }
 
         return (i - offset);
@@ -317,18 +366,19 @@ public IModel cloneModel() {
     void resetAsCloneOf(final Model model) {
         this.configuration = model.configuration;
         this.templateMode = model.templateMode;
-        if (this.queue.length < model.queueSize) {
-            this.queue = new IEngineTemplateEvent[model.queueSize];
-        }
-        System.arraycopy(model.queue, 0, this.queue, 0, model.queueSize);
+        this.queue = model.queue;
+        this.queueOffset = model.queueOffset;
         this.queueSize = model.queueSize;
+        this.queueShared = true;
+        model.queueShared = true;
     }
 
 
 
 
     public final void write(final Writer writer) throws IOException {
-        for (int i = 0; i < this.queueSize; i++) {
+        final int end = this.queueOffset + this.queueSize;
+        for (int i = this.queueOffset; i < end; i++) {
             this.queue[i].write(writer);
         }
     }
@@ -337,7 +387,8 @@ public final void write(final Writer writer) throws IOException {
 
 
     public void accept(final IModelVisitor visitor) {
-        for (int i = 0; i < this.queueSize; i++) {
+        final int end = this.queueOffset + this.queueSize;
+        for (int i = this.queueOffset; i < end; i++) {
             // We will execute the visitor on the Immutable events, that we need to create during the visit
             this.queue[i].accept(visitor);
         }
@@ -353,8 +404,12 @@ boolean sameAs(final Model model) {
         if (model == null || model.queueSize != this.queueSize) {
             return false;
         }
+        if (this.queue == model.queue && this.queueOffset == model.queueOffset) {
+            // Still sharing the same events (copy-on-write clone with no modifications)
+            return true;
+        }
         for (int i = 0; i < this.queueSize; i++) {
-            if (this.queue[i] != model.queue[i]) {
+            if (this.queue[this.queueOffset + i] != model.queue[model.queueOffset + i]) {
                 return false;
             }
         }
@@ -48,6 +48,7 @@ public final class ModelBuilderTemplateHandler extends AbstractTemplateHandler {
     private final List<IEngineTemplateEvent> events;
     private final IEngineConfiguration configuration;
     private final TemplateData templateData;
+    private final TemplateEventCanonicalizer canonicalizer; // might be null
 
 
 
@@ -58,6 +59,10 @@ public ModelBuilderTemplateHandler(final IEngineConfiguration configuration, fin
         this.configuration = configuration;
         this.templateData = templateData;
         this.events = new ArrayList<IEngineTemplateEvent>(100);
+        // Only models that might end up in the template cache are worth canonicalizing
+        this.canonicalizer =
+                (templateData.getValidity().isCacheable()?
+                        this.configuration.getTemplateManager().getEventCanonicalizer() : null);
     }
 
 
@@ -93,7 +98,8 @@ public void handleTemplateEnd(final ITemplateEnd templateEnd) {
 
     @Override
     public void handleText(final IText text) {
-        this.events.add(Text.asEngineText(text));
+        final Text engineText = Text.asEngineText(text);
+        this.events.add(this.canonicalizer != null? this.canonicalizer.canonicalize(engineText) : engineText);
         // The engine event we might have created is not forwarded - this makes cache creating transparent to the handler chain
         super.handleText(text);
     }
@@ -120,7 +126,10 @@ public void handleCDATASection(final ICDATASection cdataSection) {
 
     @Override
     public void handleStandaloneElement(final IStandaloneElementTag standaloneElementTag) {
-        this.events.add(StandaloneElementTag.asEngineStandaloneElementTag(standaloneElementTag));
+        final StandaloneElementTag engineStandaloneElementTag = StandaloneElementTag.asEngineStandaloneElementTag(standaloneElementTag);
+        this.events.add(
+                this.canonicalizer != null?
+                        this.canonicalizer.canonicalize(engineStandaloneElementTag) : engineStandaloneElementTag);
         // The engine event we might have created is not forwarded - this makes cache creating transparent to the handler chain
         super.handleStandaloneElement(standaloneElementTag);
     }
@@ -128,7 +137,10 @@ public void handleStandaloneElement(final IStandaloneElementTag standaloneElemen
 
     @Override
     public void handleOpenElement(final IOpenElementTag openElementTag) {
-        this.events.add(OpenElementTag.asEngineOpenElementTag(openElementTag));
+        final OpenElementTag engineOpenElementTag = OpenElementTag.asEngineOpenElementTag(openElementTag);
+        this.events.add(
+                this.canonicalizer != null?
+                        this.canonicalizer.canonicalize(engineOpenElementTag) : engineOpenElementTag);
         // The engine event we might have created is not forwarded - this makes cache creating transparent to the handler chain
         super.handleOpenElement(openElementTag);
     }
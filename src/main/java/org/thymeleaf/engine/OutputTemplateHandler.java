@@ -19,8 +19,12 @@
  */
 package org.thymeleaf.engine;
 
+import java.io.IOException;
 import java.io.Writer;
 
+import org.thymeleaf.EngineConfiguration;
+import org.thymeleaf.IEngineConfiguration;
+import org.thymeleaf.context.ITemplateContext;
 import org.thymeleaf.exceptions.TemplateOutputException;
 import org.thymeleaf.model.ICDATASection;
 import org.thymeleaf.model.ICloseElementTag;
@@ -30,7 +34,9 @@
 import org.thymeleaf.model.IProcessingInstruction;
 import org.thymeleaf.model.IStandaloneElementTag;
 import org.thymeleaf.model.IText;
+import org.thymeleaf.model.ITemplateEvent;
 import org.thymeleaf.model.IXMLDeclaration;
+import org.thymeleaf.templatemode.TemplateMode;
 
 
 /**
@@ -42,7 +48,13 @@
 public final class OutputTemplateHandler extends AbstractTemplateHandler {
 
 
-    private final Writer writer;
+    private Writer writer;
+    private final ThrottledTemplateWriter throttledWriter;
+
+    // Auto-flush policy, as configured at the engine configuration
+    private boolean autoFlushAfterHead = false;
+    private int autoFlushThreshold = 0;
+    private CharCountingWriter countingWriter = null;
 
 
 
@@ -59,6 +71,33 @@ public OutputTemplateHandler(final Writer writer) {
             throw new IllegalArgumentException("Writer cannot be null");
         }
         this.writer = writer;
+        this.throttledWriter =
+                (writer instanceof ThrottledTemplateWriter? (ThrottledTemplateWriter)writer : null);
+    }
+
+
+
+
+    @Override
+    public void setContext(final ITemplateContext context) {
+
+        super.setContext(context);
+
+        final IEngineConfiguration configuration = context.getConfiguration();
+        if (configuration instanceof EngineConfiguration) {
+            this.autoFlushAfterHead = ((EngineConfiguration) configuration).isAutoFlushAfterHead();
+            this.autoFlushThreshold = ((EngineConfiguration) configuration).getAutoFlushThreshold();
+        } else {
+            this.autoFlushAfterHead = false;
+            this.autoFlushThreshold = 0;
+        }
+
+        if (this.autoFlushThreshold > 0 && this.countingWriter == null) {
+            // Only when a threshold is set we will need to count the chars being output
+            this.countingWriter = new CharCountingWriter(this.writer);
+            this.writer = this.countingWriter;
+        }
+
     }
 
 
@@ -69,6 +108,7 @@ public void handleText(final IText text) {
         
         try {
             text.write(this.writer);
+            checkAutoFlush();
         } catch (final Exception e) {
             throw new TemplateOutputException(
                     "An error happened during template rendering",
@@ -87,6 +127,7 @@ public void handleComment(final IComment comment) {
         
         try {
             comment.write(this.writer);
+            checkAutoFlush();
         } catch (final Exception e) {
             throw new TemplateOutputException(
                     "An error happened during template rendering",
@@ -104,6 +145,7 @@ public void handleCDATASection(final ICDATASection cdataSection) {
         
         try {
             cdataSection.write(this.writer);
+            checkAutoFlush();
         } catch (final Exception e) {
             throw new TemplateOutputException(
                     "An error happened during template rendering",
@@ -123,6 +165,7 @@ public void handleStandaloneElement(final IStandaloneElementTag standaloneElemen
 
         try {
             standaloneElementTag.write(this.writer);
+            checkAutoFlush();
         } catch (final Exception e) {
             throw new TemplateOutputException(
                     "An error happened during template rendering",
@@ -140,6 +183,7 @@ public void handleOpenElement(final IOpenElementTag openElementTag) {
 
         try {
             openElementTag.write(this.writer);
+            checkAutoFlush();
         } catch (final Exception e) {
             throw new TemplateOutputException(
                     "An error happened during template rendering",
@@ -157,6 +201,13 @@ public void handleCloseElement(final ICloseElementTag closeElementTag) {
 
         try {
             closeElementTag.write(this.writer);
+            if ((this.autoFlushAfterHead || this.throttledWriter != null) && isHeadCloseElement(closeElementTag)) {
+                // Closing </head> is a good moment for output to reach the client, so that it can start
+                // requesting resources. Throttled writers will only flush here if output is being compressed.
+                flushOutput();
+            } else {
+                checkAutoFlush();
+            }
         } catch (final Exception e) {
             throw new TemplateOutputException(
                     "An error happened during template rendering",
@@ -176,6 +227,7 @@ public void handleDocType(final IDocType docType) {
         
         try {
             docType.write(this.writer);
+            checkAutoFlush();
         } catch (final Exception e) {
             throw new TemplateOutputException(
                     "An error happened during template rendering",
@@ -195,6 +247,7 @@ public void handleXMLDeclaration(final IXMLDeclaration xmlDeclaration) {
 
         try {
             xmlDeclaration.write(this.writer);
+            checkAutoFlush();
         } catch (final Exception e) {
             throw new TemplateOutputException(
                     "An error happened during template rendering",
@@ -216,6 +269,7 @@ public void handleProcessingInstruction(final IProcessingInstruction processingI
         
         try {
             processingInstruction.write(this.writer);
+            checkAutoFlush();
         } catch (final Exception e) {
             throw new TemplateOutputException(
                     "An error happened during template rendering",
@@ -228,6 +282,101 @@ public void handleProcessingInstruction(final IProcessingInstruction processingI
     }
 
 
-    
-    
-}
\ No newline at end of file
+
+
+    /*
+     * Flushes all output written so far. Called from the ProcessorTemplateHandler when a processor asks for it
+     * (e.g. th:flush).
+     */
+    void flush(final ITemplateEvent event) {
+        try {
+            flushOutput();
+        } catch (final Exception e) {
+            throw new TemplateOutputException(
+                    "An error happened during template output flushing",
+                    event.getTemplateName(), event.getLine(), event.getCol(), e);
+        }
+    }
+
+
+    private void checkAutoFlush() throws IOException {
+        if (this.countingWriter != null && this.countingWriter.count >= this.autoFlushThreshold) {
+            flushOutput();
+        }
+    }
+
+
+    private void flushOutput() throws IOException {
+        if (this.throttledWriter != null) {
+            // Throttled output is released at the end of each step, so only compressed output needs flushing
+            this.throttledWriter.flushPoint();
+        } else {
+            this.writer.flush();
+        }
+        if (this.countingWriter != null) {
+            this.countingWriter.count = 0;
+        }
+    }
+
+
+    private static boolean isHeadCloseElement(final ICloseElementTag closeElementTag) {
+        return closeElementTag.getTemplateMode() == TemplateMode.HTML &&
+                !closeElementTag.isUnmatched() &&
+                "head".equalsIgnoreCase(closeElementTag.getElementCompleteName());
+    }
+
+
+
+
+    /*
+     * Writer wrapper used for counting the amount of chars output since the last flush, so that the auto-flush
+     * threshold can be checked at event boundaries.
+     */
+    private static final class CharCountingWriter extends Writer {
+
+        private final Writer writer;
+        int count = 0;
+
+        CharCountingWriter(final Writer writer) {
+            super();
+            this.writer = writer;
+        }
+
+        @Override
+        public void write(final int c) throws IOException {
+            this.writer.write(c);
+            this.count++;
+        }
+
+        @Override
+        public void write(final char[] cbuf, final int off, final int len) throws IOException {
+            this.writer.write(cbuf, off, len);
+            this.count += len;
+        }
+
+        @Override
+        public void write(final String str) throws IOException {
+            this.writer.write(str);
+            this.count += str.length();
+        }
+
+        @Override
+        public void write(final String str, final int off, final int len) throws IOException {
+            this.writer.write(str, off, len);
+            this.count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            this.writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.writer.close();
+        }
+
+    }
+
+
+}
@@ -106,6 +106,9 @@ public final class ProcessorTemplateHandler implements ITemplateHandler {
     // in this class is extremely time-critical, and we want to avoid tons of calls to super.handleX() or getNext().
     private ITemplateHandler next = null;
 
+    // Output handler to be flushed when processors ask for it (e.g. th:flush), if this chain writes output
+    private OutputTemplateHandler outputHandler = null;
+
     private IEngineConfiguration configuration = null;
     private AttributeDefinitions attributeDefinitions = null;
     private TemplateMode templateMode = null;
@@ -195,11 +198,25 @@ public void setNext(final ITemplateHandler next) {
     }
 
 
+    ITemplateHandler getNext() {
+        return this.next;
+    }
+
+
+    void setOutputHandler(final OutputTemplateHandler outputHandler) {
+        this.outputHandler = outputHandler;
+    }
+
+
 
 
     @Override
     public void setContext(final ITemplateContext context) {
 
+        // Keep these so that we can check whether processor arrays can be reused (see reset())
+        final IEngineConfiguration previousConfiguration = this.configuration;
+        final TemplateMode previousTemplateMode = this.templateMode;
+
         this.context = context;
         Validate.notNull(this.context, "Context cannot be null");
         Validate.notNull(this.context.getTemplateMode(), "Template Mode returned by context cannot be null");
@@ -229,6 +246,11 @@ public void setContext(final ITemplateContext context) {
         this.modelController.setTemplateFlowController(this.flowController); // Might have been already initialized or not
         this.decreaseContextLevelProcessable = new DecreaseContextLevelProcessable(this.engineContext, this.flowController);
 
+        // If this handler is being reused for the same configuration and template mode, processor arrays are still valid
+        if (this.configuration == previousConfiguration && this.templateMode == previousTemplateMode) {
+            return;
+        }
+
         // Obtain all processor sets and compute sizes
         final Set<ITemplateBoundariesProcessor> templateBoundariesProcessorSet = this.configuration.getTemplateBoundariesProcessors(this.templateMode);
         final Set<ICDATASectionProcessor> cdataSectionProcessorSet = this.configuration.getCDATASectionProcessors(this.templateMode);
@@ -259,6 +281,43 @@ public void setContext(final ITemplateContext context) {
 
 
 
+    /*
+     * Resets this handler so that it can be reused for a new, complete execution of the engine (see
+     * ProcessorTemplateHandlerPool). Structure handlers and the arrays of non-element processors are kept, the
+     * latter being reused if the next context has the same configuration and template mode as the previous one.
+     * Throttled executions should never be reset (nor pooled), as they keep pending work between calls.
+     */
+    void reset() {
+        this.next = null;
+        this.outputHandler = null;
+        this.context = null;
+        this.engineContext = null;
+        this.flowController = null;
+        this.throttleEngine = false;
+        this.initialContextLevel = null;
+        this.modelController = null;
+        this.currentGatheringModel = null;
+        if (this.pendingProcessings != null) {
+            Arrays.fill(this.pendingProcessings, null);
+        }
+        this.pendingProcessingsSize = 0;
+        this.decreaseContextLevelProcessable = null;
+        // Structure handlers are normally reset before being used, but they might still hold references to
+        // the values set by the last processors executed (e.g. models or selection targets)
+        this.elementTagStructureHandler.reset();
+        this.elementModelStructureHandler.reset();
+        this.templateBoundariesStructureHandler.reset();
+        this.cdataSectionStructureHandler.reset();
+        this.commentStructureHandler.reset();
+        this.docTypeStructureHandler.reset();
+        this.processingInstructionStructureHandler.reset();
+        this.textStructureHandler.reset();
+        this.xmlDeclarationStructureHandler.reset();
+    }
+
+
+
+
     public void setFlowController(final TemplateFlowController flowController) {
         this.flowController = flowController;
         this.throttleEngine = (this.flowController != null);
@@ -917,6 +976,11 @@ public void handleStandaloneElement(final IStandaloneElementTag istandaloneEleme
                 final IElementTagProcessor elementProcessor = ((IElementTagProcessor)processor);
                 elementProcessor.process(this.context, standaloneElementTag, tagStructureHandler);
 
+                // Flush the output written so far, if the processor asked for it (e.g. th:flush)
+                if (tagStructureHandler.flushOutput && this.outputHandler != null) {
+                    this.outputHandler.flush(standaloneElementTag);
+                }
+
                 // Apply any context modifications made by the processor (local vars, inlining, etc.)
                 tagStructureHandler.applyContextModifications(this.engineContext);
 
@@ -1313,6 +1377,11 @@ public void handleOpenElement(final IOpenElementTag iopenElementTag) {
                 final IElementTagProcessor elementProcessor = ((IElementTagProcessor)processor);
                 elementProcessor.process(this.context, openElementTag, tagStructureHandler);
 
+                // Flush the output written so far, if the processor asked for it (e.g. th:flush)
+                if (tagStructureHandler.flushOutput && this.outputHandler != null) {
+                    this.outputHandler.flush(openElementTag);
+                }
+
                 // Apply any context modifications made by the processor (local vars, inlining, etc.)
                 tagStructureHandler.applyContextModifications(this.engineContext);
 
@@ -2027,6 +2096,21 @@ public void handleProcessingInstruction(final IProcessingInstruction iprocessing
 
 
 
+    /*
+     * Called when a throttled execution is abandoned before finishing, so that pending processings holding
+     * resources (e.g. iterations over streams) can release them. Processing cannot be resumed afterwards.
+     */
+    void abortPending() {
+        for (int i = 0; i < this.pendingProcessingsSize; i++) {
+            if (this.pendingProcessings[i] instanceof IteratedGatheringModelProcessable) {
+                ((IteratedGatheringModelProcessable) this.pendingProcessings[i]).abort();
+            }
+        }
+    }
+
+
+
+
     /**
      * <p>
      *   Handle any processing that might have been left pending during its execution because of the process having
@@ -0,0 +1,109 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2016, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.thymeleaf.templatemode.TemplateMode;
+
+/*
+ * Bounded pool of ProcessorTemplateHandler instances, used by the TemplateManager in order to avoid creating
+ * a new processor handler (plus all its structure handlers and arrays of processors) for every complete
+ * execution of the engine. Handlers are pooled separately for each template mode, so that the processor arrays
+ * computed for a mode can be directly reused next time the handler is set a context for that same mode.
+ *
+ * Only handlers used for non-throttled executions that finished without errors should be released to this pool.
+ *
+ * @author Daniel Fern&aacute;ndez
+ * @since 3.0.8
+ *
+ */
+final class ProcessorTemplateHandlerPool {
+
+    static final int DEFAULT_MAX_POOLED_PER_TEMPLATE_MODE = 32;
+
+    private final int maxPooledPerTemplateMode;
+    private final HandlerQueue[] queues; // one per template mode
+
+
+
+    ProcessorTemplateHandlerPool() {
+        this(DEFAULT_MAX_POOLED_PER_TEMPLATE_MODE);
+    }
+
+
+    ProcessorTemplateHandlerPool(final int maxPooledPerTemplateMode) {
+        super();
+        this.maxPooledPerTemplateMode = maxPooledPerTemplateMode;
+        final int templateModeCount = TemplateMode.values().length;
+        this.queues = new HandlerQueue[templateModeCount];
+        for (int i = 0; i < templateModeCount; i++) {
+            this.queues[i] = new HandlerQueue();
+        }
+    }
+
+
+
+
+    ProcessorTemplateHandler borrow(final TemplateMode templateMode) {
+        final HandlerQueue queue = this.queues[templateMode.ordinal()];
+        final ProcessorTemplateHandler handler = queue.handlers.poll();
+        if (handler != null) {
+            queue.size.decrementAndGet();
+            return handler;
+        }
+        return new ProcessorTemplateHandler();
+    }
+
+
+    void release(final TemplateMode templateMode, final ProcessorTemplateHandler handler) {
+        final HandlerQueue queue = this.queues[templateMode.ordinal()];
+        if (queue.size.incrementAndGet() > this.maxPooledPerTemplateMode) {
+            queue.size.decrementAndGet();
+            return;
+        }
+        handler.reset();
+        queue.handlers.offer(handler);
+    }
+
+
+    void clear() {
+        for (final HandlerQueue queue : this.queues) {
+            while (queue.handlers.poll() != null) {
+                queue.size.decrementAndGet();
+            }
+        }
+    }
+
+
+
+
+    private static final class HandlerQueue {
+
+        final ConcurrentLinkedQueue<ProcessorTemplateHandler> handlers =
+                new ConcurrentLinkedQueue<ProcessorTemplateHandler>();
+        // Kept separately because ConcurrentLinkedQueue#size() is not a constant-time operation
+        final AtomicInteger size = new AtomicInteger(0);
+
+    }
+
+
+}
@@ -88,6 +88,8 @@ public void endEvent() throws IOException {
             // If we only wrote meta, we still need an additional line feed to separate from the next event
             super.write('\n');
         }
+        // The end of an event is the point at which (compressed) output should reach the client
+        flushPoint();
     }
 
 
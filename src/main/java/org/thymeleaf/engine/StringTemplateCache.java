@@ -0,0 +1,175 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2016, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.thymeleaf.cache.TemplateCacheKey;
+import org.thymeleaf.exceptions.TemplateInputException;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.TemplateResolution;
+import org.thymeleaf.templateresource.ITemplateResource;
+import org.thymeleaf.templateresource.StringTemplateResource;
+
+/*
+ * Bounded LRU cache for parsed String templates that are not cacheable according to their template resolvers
+ * (e.g. StringTemplateResolver's default), keyed by a SHA-256 hash of their contents so that the same contents
+ * are only parsed once, and modified contents simply produce a different key.
+ *
+ * This cache is kept by the TemplateManager separately from the template cache configured at the cache manager,
+ * so that arbitrary String templates cannot evict other templates from there.
+ *
+ * @author Daniel Fern&aacute;ndez
+ * @since 3.0.8
+ *
+ */
+final class StringTemplateCache {
+
+    private static final Charset DIGEST_CHARSET = Charset.forName("UTF-8");
+    private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+
+    private final Map<TemplateCacheKey,TemplateModel> models;
+
+
+
+    StringTemplateCache(final int maxSize) {
+
+        super();
+
+        this.models =
+                new LinkedHashMap<TemplateCacheKey, TemplateModel>(Math.min(maxSize, 64), 0.75f, true) {
+
+                    private static final long serialVersionUID = 5637190287396582468L;
+
+                    @Override
+                    protected boolean removeEldestEntry(final Map.Entry<TemplateCacheKey, TemplateModel> eldest) {
+                        return size() > maxSize;
+                    }
+
+                };
+
+    }
+
+
+
+    static boolean isApplicable(final TemplateResolution templateResolution) {
+        return !templateResolution.getValidity().isCacheable() &&
+                templateResolution.getTemplateResource() instanceof StringTemplateResource;
+    }
+
+
+    static TemplateCacheKey computeCacheKey(
+            final String ownerTemplate, final String template, final Set<String> templateSelectors,
+            final TemplateResolution templateResolution, final TemplateMode templateMode,
+            final Map<String,Object> templateResolutionAttributes) {
+
+        final ITemplateResource templateResource = templateResolution.getTemplateResource();
+        final String contents = readContents(templateResource);
+
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new TemplateInputException("SHA-256 digest algorithm is not available for hashing String templates", e);
+        }
+        digest.update(contents.getBytes(DIGEST_CHARSET));
+        if (!template.equals(contents)) {
+            // Templates only sharing contents should not share models, as events refer to their template name
+            digest.update((byte) 0);
+            digest.update(template.getBytes(DIGEST_CHARSET));
+        }
+        if (templateResolution.getUseMinification()) {
+            digest.update((byte) 1);
+        }
+
+        return new TemplateCacheKey(
+                ownerTemplate, toHex(digest.digest()), templateSelectors, 0, 0, templateMode, templateResolutionAttributes);
+
+    }
+
+
+    private static String readContents(final ITemplateResource templateResource) {
+
+        Reader reader = null;
+        try {
+            reader = templateResource.reader();
+            final StringBuilder strBuilder = new StringBuilder(256);
+            final char[] buffer = new char[1024];
+            int read;
+            while ((read = reader.read(buffer)) >= 0) {
+                strBuilder.append(buffer, 0, read);
+            }
+            return strBuilder.toString();
+        } catch (final IOException e) {
+            throw new TemplateInputException("Error reading String template for computing its hash", e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (final IOException ignored) {
+                    // ignored
+                }
+            }
+        }
+
+    }
+
+
+    private static String toHex(final byte[] bytes) {
+        final char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_CHARS[(bytes[i] >> 4) & 0x0F];
+            chars[i * 2 + 1] = HEX_CHARS[bytes[i] & 0x0F];
+        }
+        return new String(chars);
+    }
+
+
+
+
+    TemplateModel get(final TemplateCacheKey key) {
+        synchronized (this.models) {
+            return this.models.get(key);
+        }
+    }
+
+
+    void put(final TemplateCacheKey key, final TemplateModel templateModel) {
+        synchronized (this.models) {
+            this.models.put(key, templateModel);
+        }
+    }
+
+
+    void clear() {
+        synchronized (this.models) {
+            this.models.clear();
+        }
+    }
+
+
+}
@@ -0,0 +1,415 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2016, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.thymeleaf.EngineConfiguration;
+import org.thymeleaf.IEngineConfiguration;
+import org.thymeleaf.context.ITemplateContext;
+import org.thymeleaf.exceptions.TemplateProcessingException;
+import org.thymeleaf.processor.cdatasection.ICDATASectionProcessor;
+import org.thymeleaf.processor.comment.ICommentProcessor;
+import org.thymeleaf.processor.doctype.IDocTypeProcessor;
+import org.thymeleaf.processor.element.IElementProcessor;
+import org.thymeleaf.processor.templateboundaries.ITemplateBoundariesProcessor;
+import org.thymeleaf.processor.text.ITextProcessor;
+import org.thymeleaf.standard.expression.FragmentExpression;
+import org.thymeleaf.standard.expression.IStandardExpression;
+import org.thymeleaf.standard.processor.StandardConditionalCommentProcessor;
+import org.thymeleaf.standard.processor.StandardDefaultAttributesTagProcessor;
+import org.thymeleaf.standard.processor.StandardInlineEnablementTemplateBoundariesProcessor;
+import org.thymeleaf.standard.processor.StandardInliningCDATASectionProcessor;
+import org.thymeleaf.standard.processor.StandardInliningCommentProcessor;
+import org.thymeleaf.standard.processor.StandardInliningTextProcessor;
+import org.thymeleaf.standard.processor.StandardTextTagProcessor;
+import org.thymeleaf.standard.processor.StandardTranslationDocTypeProcessor;
+import org.thymeleaf.standard.processor.StandardUtextTagProcessor;
+import org.thymeleaf.standard.processor.StandardXmlNsTagProcessor;
+import org.thymeleaf.standard.util.StandardConditionalCommentUtils;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.util.EscapedAttributeUtils;
+import org.thymeleaf.util.FastStringWriter;
+import org.thymeleaf.util.ProcessorConfigurationUtils;
+
+/*
+ * Compiles cached TemplateModel objects into CompiledTemplate objects: flat sequences of pre-rendered output
+ * (computed once) and expression slots (executed for each template execution), which can be output without
+ * going through the whole template handler chain.
+ *
+ * Only a very restricted (but common) subset of templates can be compiled: HTML templates whose only
+ * processors are th:text, th:utext and the removal of xmlns:th, with no inlined expressions, conditional
+ * comments or SYSTEM DOCTYPEs, and for engine configurations without pre-processors, post-processors or
+ * non-Standard processors for non-element events. Any other model is marked as not compilable, and will be processed by the interpreter as usual.
+ *
+ * @author Daniel Fern&aacute;ndez
+ * @since 3.0.8
+ *
+ */
+final class TemplateCompiler {
+
+
+
+    /*
+     * Returns the compiled version of the specified model, compiling it if it has not been tried yet. Returns
+     * null if the model cannot be compiled.
+     */
+    static CompiledTemplate obtainCompiledTemplate(final ITemplateContext context, final TemplateModel templateModel) {
+
+        CompiledTemplate compiledTemplate = templateModel.compiledTemplate;
+        if (compiledTemplate == null) {
+            // Compiling the same model more than once by concurrent executions would do no harm
+            compiledTemplate = compile(context, templateModel);
+            templateModel.compiledTemplate = compiledTemplate;
+        }
+        return (compiledTemplate == CompiledTemplate.NOT_COMPILABLE? null : compiledTemplate);
+
+    }
+
+
+
+
+    private static CompiledTemplate compile(final ITemplateContext context, final TemplateModel templateModel) {
+
+        if (!isCompilableConfiguration(templateModel.getConfiguration(), templateModel.getTemplateMode())) {
+            return CompiledTemplate.NOT_COMPILABLE;
+        }
+
+        try {
+            final IEngineTemplateEvent[] events = templateModel.getEvents();
+            final Object[] segments = compileEvents(context, events, 0, events.length);
+            return (segments == null? CompiledTemplate.NOT_COMPILABLE : new CompiledTemplate(segments));
+        } catch (final IOException e) {
+            throw new TemplateProcessingException("Error while compiling template model", e);
+        }
+
+    }
+
+
+
+
+    private static boolean isCompilableConfiguration(
+            final IEngineConfiguration configuration, final TemplateMode templateMode) {
+
+        if (templateMode != TemplateMode.HTML) {
+            return false;
+        }
+
+        // Cacheable pre-processors are fine, as they will already have been applied to the template model
+        if (TemplateManager.hasNonCacheablePreProcessors(configuration, templateMode) ||
+                !configuration.getPostProcessors(templateMode).isEmpty()) {
+            return false;
+        }
+
+        // Compiled templates write directly to the output, so they cannot apply auto-flush policies
+        if (configuration instanceof EngineConfiguration &&
+                (((EngineConfiguration) configuration).isAutoFlushAfterHead() ||
+                        ((EngineConfiguration) configuration).getAutoFlushThreshold() > 0)) {
+            return false;
+        }
+
+        if (!configuration.getXMLDeclarationProcessors(templateMode).isEmpty() ||
+                !configuration.getProcessingInstructionProcessors(templateMode).isEmpty()) {
+            return false;
+        }
+
+        final Set<ITemplateBoundariesProcessor> templateBoundariesProcessors =
+                configuration.getTemplateBoundariesProcessors(templateMode);
+        for (final ITemplateBoundariesProcessor processor : templateBoundariesProcessors) {
+            if (!(ProcessorConfigurationUtils.unwrap(processor) instanceof StandardInlineEnablementTemplateBoundariesProcessor)) {
+                return false;
+            }
+        }
+
+        // DOCTYPE translation only applies to SYSTEM DOCTYPEs, which are not compiled
+        for (final IDocTypeProcessor processor : configuration.getDocTypeProcessors(templateMode)) {
+            if (!(ProcessorConfigurationUtils.unwrap(processor) instanceof StandardTranslationDocTypeProcessor)) {
+                return false;
+            }
+        }
+
+        // Standard inlining processors do nothing on non-inlineable events, which are the only ones compiled
+        for (final ITextProcessor processor : configuration.getTextProcessors(templateMode)) {
+            if (!(ProcessorConfigurationUtils.unwrap(processor) instanceof StandardInliningTextProcessor)) {
+                return false;
+            }
+        }
+        for (final ICommentProcessor processor : configuration.getCommentProcessors(templateMode)) {
+            final ICommentProcessor unwrappedProcessor = ProcessorConfigurationUtils.unwrap(processor);
+            if (!(unwrappedProcessor instanceof StandardInliningCommentProcessor) &&
+                    !(unwrappedProcessor instanceof StandardConditionalCommentProcessor)) {
+                return false;
+            }
+        }
+        for (final ICDATASectionProcessor processor : configuration.getCDATASectionProcessors(templateMode)) {
+            if (!(ProcessorConfigurationUtils.unwrap(processor) instanceof StandardInliningCDATASectionProcessor)) {
+                return false;
+            }
+        }
+
+        return true;
+
+    }
+
+
+
+
+    /*
+     * Compiles the events in the [from, to) range of the queue. Returns null if any of them cannot be compiled.
+     */
+    private static Object[] compileEvents(
+            final ITemplateContext context, final IEngineTemplateEvent[] queue,
+            final int from, final int to) throws IOException {
+
+        final List<Object> segments = new ArrayList<Object>(4);
+        FastStringWriter output = new FastStringWriter();
+
+        for (int i = from; i < to; i++) {
+
+            final IEngineTemplateEvent event = queue[i];
+
+            if (event instanceof TemplateStart || event instanceof TemplateEnd) {
+                continue;
+            }
+
+            if (event instanceof Text) {
+                if (((Text) event).isInlineable()) {
+                    return null;
+                }
+            } else if (event instanceof Comment) {
+                if (((Comment) event).isInlineable() ||
+                        StandardConditionalCommentUtils.parseConditionalComment((Comment) event) != null) {
+                    return null;
+                }
+            } else if (event instanceof CDATASection) {
+                if (((CDATASection) event).isInlineable()) {
+                    return null;
+                }
+            } else if (event instanceof DocType) {
+                if ("SYSTEM".equalsIgnoreCase(((DocType) event).getType())) {
+                    return null;
+                }
+            } else if (event instanceof StandaloneElementTag) {
+                if (((StandaloneElementTag) event).hasAssociatedProcessors()) {
+                    return null;
+                }
+            } else if (event instanceof OpenElementTag && ((OpenElementTag) event).hasAssociatedProcessors()) {
+
+                final OpenElementTag openElementTag = (OpenElementTag) event;
+
+                final int expressionAttributeIndex = computeExpressionAttributeIndex(openElementTag);
+                if (expressionAttributeIndex == NOT_COMPILABLE) {
+                    return null;
+                }
+
+                // Attributes processed by the (supported) processors are removed at compile time
+                final OpenElementTag outputTag = removeProcessedAttributes(openElementTag);
+
+                if (expressionAttributeIndex == NO_EXPRESSION_ATTRIBUTE) {
+                    // Only xmlns:th was present, so the body is processed normally
+                    outputTag.write(output);
+                    continue;
+                }
+
+                final int closeIndex = findCloseElementIndex(queue, i + 1, to);
+                if (closeIndex < 0) {
+                    return null;
+                }
+
+                final CompiledTemplate.ExpressionSlot slot =
+                        compileExpressionSlot(
+                                context, queue, openElementTag, openElementTag.attributes.attributes[expressionAttributeIndex],
+                                i + 1, closeIndex);
+                if (slot == null) {
+                    return null;
+                }
+
+                outputTag.write(output);
+                output = flushOutput(output, segments);
+                segments.add(slot);
+
+                // The close tag will be output as a normal event at the next iteration
+                i = closeIndex - 1;
+                continue;
+
+            }
+
+            event.write(output);
+
+        }
+
+        flushOutput(output, segments);
+
+        return segments.toArray(new Object[segments.size()]);
+
+    }
+
+
+    private static FastStringWriter flushOutput(final FastStringWriter output, final List<Object> segments) {
+        final String outputStr = output.toString();
+        if (outputStr.length() == 0) {
+            return output;
+        }
+        segments.add(outputStr);
+        return new FastStringWriter();
+    }
+
+
+
+
+    private static final int NO_EXPRESSION_ATTRIBUTE = -1;
+    private static final int NOT_COMPILABLE = -2;
+
+
+    /*
+     * Returns the position of the th:text or th:utext attribute in the element, NO_EXPRESSION_ATTRIBUTE if
+     * there is none (only xmlns:th), or NOT_COMPILABLE if the element has processors that cannot be compiled.
+     */
+    private static int computeExpressionAttributeIndex(final OpenElementTag tag) {
+
+        if (tag.elementDefinition.hasAssociatedProcessors || tag.attributes == null) {
+            return NOT_COMPILABLE;
+        }
+
+        int expressionAttributeIndex = NO_EXPRESSION_ATTRIBUTE;
+        final Attribute[] attributes = tag.attributes.attributes;
+        for (int i = 0; i < attributes.length; i++) {
+
+            final AttributeDefinition definition = attributes[i].definition;
+            if (!definition.hasAssociatedProcessors) {
+                continue;
+            }
+
+            boolean processed = false;
+            for (int j = 0; j < definition.associatedProcessors.length; j++) {
+                final IElementProcessor processor = ProcessorConfigurationUtils.unwrap(definition.associatedProcessors[j]);
+                if (processor instanceof StandardTextTagProcessor || processor instanceof StandardUtextTagProcessor) {
+                    if (expressionAttributeIndex != NO_EXPRESSION_ATTRIBUTE) {
+                        return NOT_COMPILABLE;
+                    }
+                    expressionAttributeIndex = i;
+                    processed = true;
+                } else if (processor instanceof StandardXmlNsTagProcessor) {
+                    processed = true;
+                } else if (!(processor instanceof StandardDefaultAttributesTagProcessor)) {
+                    return NOT_COMPILABLE;
+                }
+            }
+
+            // Attributes only matched by the default attribute processor would be output by it
+            if (!processed) {
+                return NOT_COMPILABLE;
+            }
+
+        }
+
+        return expressionAttributeIndex;
+
+    }
+
+
+    private static OpenElementTag removeProcessedAttributes(final OpenElementTag tag) {
+
+        OpenElementTag outputTag = tag;
+        final Attribute[] attributes = tag.attributes.attributes;
+        for (int i = 0; i < attributes.length; i++) {
+            if (attributes[i].definition.hasAssociatedProcessors) {
+                outputTag = outputTag.removeAttribute(attributes[i].definition.attributeName);
+            }
+        }
+        return outputTag;
+
+    }
+
+
+    private static int findCloseElementIndex(final IEngineTemplateEvent[] queue, final int from, final int to) {
+
+        int level = 1;
+        for (int i = from; i < to; i++) {
+            if (queue[i] instanceof OpenElementTag) {
+                level++;
+            } else if (queue[i] instanceof CloseElementTag) {
+                if (--level == 0) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+
+    }
+
+
+    private static CompiledTemplate.ExpressionSlot compileExpressionSlot(
+            final ITemplateContext context, final IEngineTemplateEvent[] queue, final OpenElementTag tag,
+            final Attribute attribute, final int bodyFrom, final int bodyTo) throws IOException {
+
+        final String attributeValue = EscapedAttributeUtils.unescapeAttribute(TemplateMode.HTML, attribute.value);
+
+        // Expressions that need preprocessing cannot be parsed in advance
+        if (attributeValue == null || attributeValue.contains("__")) {
+            return null;
+        }
+
+        final IStandardExpression expression =
+                EngineEventUtils.computeAttributeExpression(
+                        context, tag, attribute.definition.attributeName, attributeValue);
+
+        // Fragment expressions are resolved in a specific way by the text processors
+        if (expression == null || expression instanceof FragmentExpression) {
+            return null;
+        }
+
+        final Object[] bodySegments = compileEvents(context, queue, bodyFrom, bodyTo);
+        if (bodySegments == null) {
+            return null;
+        }
+
+        final boolean escape =
+                isProcessedBy(attribute.definition, StandardTextTagProcessor.class);
+
+        return new CompiledTemplate.ExpressionSlot(
+                expression, escape, bodySegments,
+                (escape? StandardTextTagProcessor.class.getName() : StandardUtextTagProcessor.class.getName()),
+                (tag.hasLocation()? tag.getTemplateName() : null), tag.getLine(), tag.getCol());
+
+    }
+
+
+    private static boolean isProcessedBy(final AttributeDefinition definition, final Class<?> processorClass) {
+        for (int i = 0; i < definition.associatedProcessors.length; i++) {
+            if (processorClass.isInstance(ProcessorConfigurationUtils.unwrap(definition.associatedProcessors[i]))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+
+
+    private TemplateCompiler() {
+        super();
+    }
+
+
+}
@@ -0,0 +1,428 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2016, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.thymeleaf.model.AttributeValueQuotes;
+
+
+/**
+ * <p>
+ *   Canonicalization table for immutable template events and attributes that are frequently repeated
+ *   across cached templates, like whitespace-only {@link Text} events, processor-less {@link Attribute}s
+ *   (e.g. <tt>class="row"</tt>, <tt>type="hidden"</tt>) and small {@link Attributes} objects entirely made
+ *   of such attributes.
+ * </p>
+ * <p>
+ *   Canonical instances are kept in a <em>weak</em> table, so that they can be garbage collected once
+ *   no cached template references them anymore.
+ * </p>
+ * <p>
+ *   Note canonical instances <strong>do not contain location information</strong> (template name, line
+ *   and column), as they are shared among different templates. This is why only events and attributes whose
+ *   location will never be used by the engine for error reporting (because no processors can be applied to
+ *   them) are canonicalized.
+ * </p>
+ * <p>
+ *   Instances of this class are created by the {@link TemplateManager} when event canonicalization is enabled
+ *   at the engine configuration, and are used by {@link ModelBuilderTemplateHandler} when building cacheable
+ *   template models.
+ * </p>
+ * <p>
+ *   Objects of this class are <strong>thread-safe</strong>.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ * @since 3.0.8
+ *
+ */
+public final class TemplateEventCanonicalizer {
+
+    // Maximum number of attributes for an Attributes object to be considered for canonicalization
+    private static final int MAX_CANONICAL_ATTRIBUTES_SIZE = 8;
+
+    // Rough estimations of the shallow size of the objects being deduplicated (assuming compressed oops), used
+    // only for reporting the memory saved by canonicalization
+    private static final int TEXT_SHALLOW_SIZE = 48;
+    private static final int ATTRIBUTE_SHALLOW_SIZE = 48;
+    private static final int ATTRIBUTES_SHALLOW_SIZE = 24;
+    private static final int ARRAY_SHALLOW_SIZE = 16;
+    private static final int REFERENCE_SIZE = 4;
+    private static final int STRING_SHALLOW_SIZE = 40;
+
+
+    private final CanonicalTable<Object,Text> texts;
+    private final CanonicalTable<Object,Attribute> attributes;
+    private final CanonicalTable<Object,Attributes> attributeSets;
+
+    private final AtomicLong canonicalizationCount;
+    private final AtomicLong estimatedSavedBytes;
+
+
+
+    TemplateEventCanonicalizer() {
+        super();
+        this.texts = new CanonicalTable<Object, Text>();
+        this.attributes = new CanonicalTable<Object, Attribute>();
+        this.attributeSets = new CanonicalTable<Object, Attributes>();
+        this.canonicalizationCount = new AtomicLong(0L);
+        this.estimatedSavedBytes = new AtomicLong(0L);
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Returns the number of times an event or attribute has been replaced by its canonical instance.
+     * </p>
+     *
+     * @return the number of canonicalizations performed.
+     */
+    public long getCanonicalizationCount() {
+        return this.canonicalizationCount.get();
+    }
+
+
+    /**
+     * <p>
+     *   Returns an <em>estimation</em> of the amount of heap memory (in bytes) saved by canonicalization, computed
+     *   as the accumulated shallow size of all the duplicate objects that have been replaced by canonical instances.
+     * </p>
+     *
+     * @return the estimated amount of bytes saved.
+     */
+    public long getEstimatedSavedBytes() {
+        return this.estimatedSavedBytes.get();
+    }
+
+
+    /**
+     * <p>
+     *   Returns the number of canonical instances currently held at the canonicalization tables.
+     * </p>
+     *
+     * @return the number of canonical instances.
+     */
+    public int size() {
+        return this.texts.size() + this.attributes.size() + this.attributeSets.size();
+    }
+
+
+
+
+    Text canonicalize(final Text text) {
+
+        if (!text.isWhitespace()) {
+            // Only whitespace texts are canonicalized, other texts are too varied and might be processed (inlining)
+            return text;
+        }
+
+        final String content = text.getText();
+
+        final Text canonical = this.texts.get(content);
+        if (canonical != null) {
+            saved(TEXT_SHALLOW_SIZE + stringSize(content, canonical.getText()));
+            return canonical;
+        }
+        return this.texts.putIfAbsent(content, new Text(content));
+
+    }
+
+
+    OpenElementTag canonicalize(final OpenElementTag tag) {
+        final Attributes canonicalAttributes = canonicalize(tag.attributes);
+        if (canonicalAttributes == tag.attributes) {
+            return tag;
+        }
+        return new OpenElementTag(
+                tag.templateMode, tag.elementDefinition, tag.elementCompleteName, canonicalAttributes, tag.synthetic,
+                tag.templateName, tag.line, tag.col);
+    }
+
+
+    StandaloneElementTag canonicalize(final StandaloneElementTag tag) {
+        final Attributes canonicalAttributes = canonicalize(tag.attributes);
+        if (canonicalAttributes == tag.attributes) {
+            return tag;
+        }
+        return new StandaloneElementTag(
+                tag.templateMode, tag.elementDefinition, tag.elementCompleteName, canonicalAttributes, tag.synthetic,
+                tag.minimized, tag.templateName, tag.line, tag.col);
+    }
+
+
+
+
+    private Attributes canonicalize(final Attributes attributesObj) {
+
+        if (attributesObj == null || attributesObj.attributes == null || attributesObj.attributes.length == 0) {
+            return attributesObj;
+        }
+
+        final Attribute[] attributeArray = attributesObj.attributes;
+
+        Attribute[] canonicalArray = null;
+        boolean allCanonical = true;
+        for (int i = 0; i < attributeArray.length; i++) {
+            final Attribute canonicalAttribute = canonicalize(attributeArray[i]);
+            if (canonicalAttribute == attributeArray[i]) {
+                allCanonical = false;
+                continue;
+            }
+            if (canonicalArray == null) {
+                canonicalArray = attributeArray.clone();
+            }
+            canonicalArray[i] = canonicalAttribute;
+        }
+
+        if (canonicalArray == null) {
+            // No attribute could be canonicalized
+            return attributesObj;
+        }
+
+        final Attributes newAttributesObj = new Attributes(canonicalArray, attributesObj.innerWhiteSpaces);
+        if (!allCanonical || canonicalArray.length > MAX_CANONICAL_ATTRIBUTES_SIZE) {
+            // Some of the attributes could not be canonicalized (probably because they have associated processors),
+            // so the Attributes object cannot be canonicalized as a whole either
+            return newAttributesObj;
+        }
+
+        final AttributesKey key = new AttributesKey(canonicalArray, attributesObj.innerWhiteSpaces);
+        final Attributes canonical = this.attributeSets.get(key);
+        if (canonical != null) {
+            saved(ATTRIBUTES_SHALLOW_SIZE + (2 * ARRAY_SHALLOW_SIZE) + (2 * canonicalArray.length * REFERENCE_SIZE));
+            return canonical;
+        }
+        return this.attributeSets.putIfAbsent(key, newAttributesObj);
+
+    }
+
+
+    private Attribute canonicalize(final Attribute attribute) {
+
+        if (attribute.definition == null || attribute.definition.hasAssociatedProcessors) {
+            // Attributes that might be processed need to keep their location for error reporting
+            return attribute;
+        }
+
+        final AttributeKey key = new AttributeKey(attribute);
+        final Attribute canonical = this.attributes.get(key);
+        if (canonical != null) {
+            saved(ATTRIBUTE_SHALLOW_SIZE +
+                    stringSize(attribute.completeName, canonical.completeName) + stringSize(attribute.value, canonical.value));
+            return canonical;
+        }
+        return this.attributes.putIfAbsent(
+                key,
+                new Attribute(
+                        attribute.definition, attribute.completeName, attribute.operator, attribute.value,
+                        attribute.valueQuotes, null, -1, -1));
+
+    }
+
+
+
+
+    private void saved(final long bytes) {
+        this.canonicalizationCount.incrementAndGet();
+        this.estimatedSavedBytes.addAndGet(bytes);
+    }
+
+
+    private static int stringSize(final String duplicate, final String canonical) {
+        if (duplicate == null || duplicate == canonical) {
+            return 0;
+        }
+        return STRING_SHALLOW_SIZE + (2 * duplicate.length());
+    }
+
+
+
+
+    private static final class AttributeKey {
+
+        private final AttributeDefinition definition;
+        private final String completeName;
+        private final String operator;
+        private final String value;
+        private final AttributeValueQuotes valueQuotes;
+        private final int h;
+
+        AttributeKey(final Attribute attribute) {
+            super();
+            this.definition = attribute.definition;
+            this.completeName = attribute.completeName;
+            this.operator = attribute.operator;
+            this.value = attribute.value;
+            this.valueQuotes = attribute.valueQuotes;
+            int result = System.identityHashCode(this.definition);
+            result = 31 * result + this.completeName.hashCode();
+            result = 31 * result + (this.operator != null ? this.operator.hashCode() : 0);
+            result = 31 * result + (this.value != null ? this.value.hashCode() : 0);
+            result = 31 * result + (this.valueQuotes != null ? this.valueQuotes.hashCode() : 0);
+            this.h = result;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof AttributeKey)) {
+                return false;
+            }
+            final AttributeKey that = (AttributeKey) o;
+            return this.h == that.h &&
+                    this.definition == that.definition &&
+                    this.completeName.equals(that.completeName) &&
+                    (this.operator != null ? this.operator.equals(that.operator) : that.operator == null) &&
+                    (this.value != null ? this.value.equals(that.value) : that.value == null) &&
+                    this.valueQuotes == that.valueQuotes;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.h;
+        }
+
+    }
+
+
+
+
+    private static final class AttributesKey {
+
+        // Attribute instances here are always canonical, so identity is enough for comparing them
+        private final Attribute[] attributes;
+        private final String[] innerWhiteSpaces;
+        private final int h;
+
+        AttributesKey(final Attribute[] attributes, final String[] innerWhiteSpaces) {
+            super();
+            this.attributes = attributes;
+            this.innerWhiteSpaces = innerWhiteSpaces;
+            int result = 0;
+            for (int i = 0; i < this.attributes.length; i++) {
+                result = 31 * result + System.identityHashCode(this.attributes[i]);
+            }
+            this.h = 31 * result + Arrays.hashCode(this.innerWhiteSpaces);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof AttributesKey)) {
+                return false;
+            }
+            final AttributesKey that = (AttributesKey) o;
+            if (this.h != that.h || this.attributes.length != that.attributes.length) {
+                return false;
+            }
+            for (int i = 0; i < this.attributes.length; i++) {
+                if (this.attributes[i] != that.attributes[i]) {
+                    return false;
+                }
+            }
+            return Arrays.equals(this.innerWhiteSpaces, that.innerWhiteSpaces);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.h;
+        }
+
+    }
+
+
+
+
+    /*
+     * Map of weakly-referenced canonical values. Entries are cleaned once their values are garbage-collected.
+     */
+    private static final class CanonicalTable<K,V> {
+
+        private final Map<K,CanonicalReference<K,V>> table;
+        private final ReferenceQueue<V> queue;
+
+        CanonicalTable() {
+            super();
+            this.table = new HashMap<K, CanonicalReference<K,V>>(256);
+            this.queue = new ReferenceQueue<V>();
+        }
+
+        synchronized V get(final K key) {
+            expungeStaleEntries();
+            final CanonicalReference<K,V> reference = this.table.get(key);
+            return (reference == null? null : reference.get());
+        }
+
+        synchronized V putIfAbsent(final K key, final V value) {
+            final CanonicalReference<K,V> reference = this.table.get(key);
+            if (reference != null) {
+                final V existing = reference.get();
+                if (existing != null) {
+                    return existing;
+                }
+            }
+            this.table.put(key, new CanonicalReference<K,V>(key, value, this.queue));
+            return value;
+        }
+
+        synchronized int size() {
+            expungeStaleEntries();
+            return this.table.size();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void expungeStaleEntries() {
+            CanonicalReference<K,V> reference;
+            while ((reference = (CanonicalReference<K,V>) this.queue.poll()) != null) {
+                // Only remove if the entry has not been replaced by a new (live) one in the meantime
+                if (this.table.get(reference.key) == reference) {
+                    this.table.remove(reference.key);
+                }
+            }
+        }
+
+    }
+
+
+    private static final class CanonicalReference<K,V> extends WeakReference<V> {
+
+        final K key;
+
+        CanonicalReference(final K key, final V value, final ReferenceQueue<V> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+
+    }
+
+
+}
@@ -0,0 +1,238 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2016, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import org.thymeleaf.templatemode.TemplateMode;
+
+/*
+ * Index of the selectable blocks (elements) in an entire (non-selected) template model, so that fragment
+ * selections on the same template can be computed as slices of that model instead of parsing the template
+ * again for each different set of selectors.
+ *
+ * Only the simplest (and by far most common) kinds of selectors are supported: references (names in
+ * th:fragment or th:ref attributes, which plain names also match as element names) and ids ("#id"). Any
+ * other selector needs to be applied by the parser as usual.
+ *
+ * Instances of this class are immutable once built, and therefore thread-safe.
+ *
+ * @author Daniel Fern&aacute;ndez
+ * @since 3.0.8
+ *
+ */
+final class TemplateFragmentIndex {
+
+    private static final Pattern INDEXABLE_SELECTOR_PATTERN = Pattern.compile("#?[A-Za-z_][A-Za-z0-9_\\-]*");
+
+    private final IEngineTemplateEvent[] queue;
+    private final int[] blockEnds;
+    private final Map<String,List<Integer>> elementNames = new HashMap<String, List<Integer>>(20);
+    private final Map<String,List<Integer>> references = new HashMap<String, List<Integer>>(20);
+    private final Map<String,List<Integer>> ids = new HashMap<String, List<Integer>>(20);
+
+
+
+    static boolean isIndexable(final Set<String> templateSelectors) {
+        for (final String templateSelector : templateSelectors) {
+            if (!INDEXABLE_SELECTOR_PATTERN.matcher(templateSelector).matches()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /*
+     * Returns the index for the specified model, computing it the first time it is needed.
+     */
+    static TemplateFragmentIndex obtainIndex(final TemplateModel templateModel, final String standardDialectPrefix) {
+        TemplateFragmentIndex index = templateModel.fragmentIndex;
+        if (index == null) {
+            // Computing the same index more than once by concurrent executions would do no harm
+            index = new TemplateFragmentIndex(templateModel, standardDialectPrefix);
+            templateModel.fragmentIndex = index;
+        }
+        return index;
+    }
+
+
+
+
+    private TemplateFragmentIndex(final TemplateModel templateModel, final String standardDialectPrefix) {
+
+        super();
+
+        this.queue = templateModel.getEvents();
+        this.blockEnds = new int[this.queue.length];
+
+        final boolean html = (templateModel.getTemplateMode() == TemplateMode.HTML);
+
+        final String refAttrName = standardDialectPrefix + ":ref";
+        final String fragmentAttrName = standardDialectPrefix + ":fragment";
+        final String dataRefAttrName = (html? "data-" + standardDialectPrefix + "-ref" : null);
+        final String dataFragmentAttrName = (html? "data-" + standardDialectPrefix + "-fragment" : null);
+
+        final int[] openElements = new int[this.queue.length];
+        int openElementsSize = 0;
+
+        for (int i = 0; i < this.queue.length; i++) {
+
+            final IEngineTemplateEvent event = this.queue[i];
+            this.blockEnds[i] = -1;
+
+            if (event instanceof CloseElementTag) {
+                if (!((CloseElementTag) event).isUnmatched() && openElementsSize > 0) {
+                    this.blockEnds[openElements[--openElementsSize]] = i;
+                }
+                continue;
+            }
+
+            if (!(event instanceof AbstractProcessableElementTag)) {
+                continue;
+            }
+
+            final AbstractProcessableElementTag tag = (AbstractProcessableElementTag) event;
+
+            if (event instanceof OpenElementTag) {
+                openElements[openElementsSize++] = i;
+            } else {
+                this.blockEnds[i] = i;
+            }
+
+            final String elementName = tag.getElementCompleteName();
+            addPosition(this.elementNames, (html? elementName.toLowerCase() : elementName), i);
+
+            if (tag.attributes == null || tag.attributes.attributes == null) {
+                continue;
+            }
+
+            final Attribute[] attributes = tag.attributes.attributes;
+            for (int j = 0; j < attributes.length; j++) {
+
+                final String attrName = attributes[j].completeName;
+                final String attrValue = attributes[j].value;
+                if (attrValue == null) {
+                    continue;
+                }
+
+                if (attrNameEquals(html, attrName, "id")) {
+                    addPosition(this.ids, attrValue, i);
+                } else if (attrNameEquals(html, attrName, refAttrName) || attrNameEquals(html, attrName, dataRefAttrName)) {
+                    addPosition(this.references, attrValue, i);
+                } else if (attrNameEquals(html, attrName, fragmentAttrName) || attrNameEquals(html, attrName, dataFragmentAttrName)) {
+                    // Fragment selection matches the entire attribute value, or its beginning followed by "(" or " ("
+                    addPosition(this.references, attrValue, i);
+                    final int parenthesisPos = attrValue.indexOf('(');
+                    if (parenthesisPos > 0) {
+                        addPosition(this.references, attrValue.substring(0, parenthesisPos), i);
+                        if (parenthesisPos > 1 && attrValue.charAt(parenthesisPos - 1) == ' ') {
+                            addPosition(this.references, attrValue.substring(0, parenthesisPos - 1), i);
+                        }
+                    }
+                }
+
+            }
+
+        }
+
+        // Elements not closed at the end of the template extend until its end
+        while (openElementsSize > 0) {
+            this.blockEnds[openElements[--openElementsSize]] = this.queue.length - 2;
+        }
+
+    }
+
+
+    private static boolean attrNameEquals(final boolean html, final String attrName, final String name) {
+        if (name == null) {
+            return false;
+        }
+        return (html? attrName.equalsIgnoreCase(name) : attrName.equals(name));
+    }
+
+
+    private static void addPosition(final Map<String,List<Integer>> positionsByName, final String name, final int pos) {
+        List<Integer> positions = positionsByName.get(name);
+        if (positions == null) {
+            positions = new ArrayList<Integer>(2);
+            positionsByName.put(name, positions);
+        } else if (positions.get(positions.size() - 1).intValue() == pos) {
+            return;
+        }
+        positions.add(Integer.valueOf(pos));
+    }
+
+
+
+
+    /*
+     * Computes the events that a parser would output for the specified (indexable) selectors: every block
+     * matching any of them, in document order, without repeating blocks nested in already selected ones.
+     */
+    IEngineTemplateEvent[] select(final Set<String> templateSelectors, final boolean html) {
+
+        final TreeSet<Integer> starts = new TreeSet<Integer>();
+        for (final String templateSelector : templateSelectors) {
+            if (templateSelector.charAt(0) == '#') {
+                addAll(starts, this.ids.get(templateSelector.substring(1)));
+            } else {
+                addAll(starts, this.elementNames.get(html? templateSelector.toLowerCase() : templateSelector));
+                addAll(starts, this.references.get(templateSelector));
+            }
+        }
+
+        final List<IEngineTemplateEvent> events = new ArrayList<IEngineTemplateEvent>(20);
+        events.add(TemplateStart.TEMPLATE_START_INSTANCE);
+
+        int lastEnd = -1;
+        for (final Integer start : starts) {
+            final int blockStart = start.intValue();
+            if (blockStart <= lastEnd) {
+                continue;
+            }
+            final int blockEnd = this.blockEnds[blockStart];
+            for (int i = blockStart; i <= blockEnd; i++) {
+                events.add(this.queue[i]);
+            }
+            lastEnd = blockEnd;
+        }
+
+        events.add(TemplateEnd.TEMPLATE_END_INSTANCE);
+
+        return events.toArray(new IEngineTemplateEvent[events.size()]);
+
+    }
+
+
+    private static void addAll(final TreeSet<Integer> starts, final List<Integer> positions) {
+        if (positions != null) {
+            starts.addAll(positions);
+        }
+    }
+
+
+}
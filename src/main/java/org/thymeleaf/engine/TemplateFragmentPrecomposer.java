@@ -0,0 +1,655 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2016, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.thymeleaf.EngineConfiguration;
+import org.thymeleaf.IEngineConfiguration;
+import org.thymeleaf.cache.ICacheEntryValidity;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.context.IEngineContext;
+import org.thymeleaf.context.IExpressionContext;
+import org.thymeleaf.exceptions.TemplateEngineException;
+import org.thymeleaf.exceptions.TemplateProcessingException;
+import org.thymeleaf.model.IAttribute;
+import org.thymeleaf.processor.element.IElementProcessor;
+import org.thymeleaf.standard.expression.Assignation;
+import org.thymeleaf.standard.expression.AssignationSequence;
+import org.thymeleaf.standard.expression.AssignationUtils;
+import org.thymeleaf.standard.expression.BinaryOperationExpression;
+import org.thymeleaf.standard.expression.BooleanTokenExpression;
+import org.thymeleaf.standard.expression.ConditionalExpression;
+import org.thymeleaf.standard.expression.ConstantExpression;
+import org.thymeleaf.standard.expression.DefaultExpression;
+import org.thymeleaf.standard.expression.Each;
+import org.thymeleaf.standard.expression.EachUtils;
+import org.thymeleaf.standard.expression.ExpressionSequence;
+import org.thymeleaf.standard.expression.ExpressionSequenceUtils;
+import org.thymeleaf.standard.expression.GenericTokenExpression;
+import org.thymeleaf.standard.expression.IStandardExpression;
+import org.thymeleaf.standard.expression.LinkExpression;
+import org.thymeleaf.standard.expression.MinusExpression;
+import org.thymeleaf.standard.expression.NegationExpression;
+import org.thymeleaf.standard.expression.NoOpTokenExpression;
+import org.thymeleaf.standard.expression.NullTokenExpression;
+import org.thymeleaf.standard.expression.NumberTokenExpression;
+import org.thymeleaf.standard.expression.SelectionVariableExpression;
+import org.thymeleaf.standard.expression.StandardExpressions;
+import org.thymeleaf.standard.expression.TextLiteralExpression;
+import org.thymeleaf.standard.expression.VariableExpression;
+import org.thymeleaf.standard.processor.AbstractStandardAssertionTagProcessor;
+import org.thymeleaf.standard.processor.AbstractStandardFragmentInsertionTagProcessor;
+import org.thymeleaf.standard.processor.AbstractStandardMultipleAttributeModifierTagProcessor;
+import org.thymeleaf.standard.processor.AbstractStandardTextInlineSettingTagProcessor;
+import org.thymeleaf.standard.processor.StandardEachTagProcessor;
+import org.thymeleaf.standard.processor.StandardFragmentTagProcessor;
+import org.thymeleaf.standard.processor.StandardInsertTagProcessor;
+import org.thymeleaf.standard.processor.StandardRefAttributeTagProcessor;
+import org.thymeleaf.standard.processor.StandardReplaceTagProcessor;
+import org.thymeleaf.standard.processor.StandardTextTagProcessor;
+import org.thymeleaf.standard.processor.StandardWithTagProcessor;
+import org.thymeleaf.standard.processor.StandardXmlNsTagProcessor;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.util.EscapedAttributeUtils;
+import org.thymeleaf.util.ProcessorConfigurationUtils;
+
+/*
+ * Inlines fragment insertions that use literal, parameterless fragment expressions (th:insert, th:replace) into
+ * the model of the template containing them, so that templates can be cached already composed with the fragments
+ * they always insert, and these fragments do not need to be resolved and inserted for each execution.
+ *
+ * Inlined fragments are processed as a part of the template they are inlined into, so only fragments whose
+ * processing could never depend on the template they are defined at are inlined: only processors of the Standard
+ * Dialects, no message or fragment expressions, no access to the context or execution info from variable
+ * expressions, no text inlining and no remaining fragment insertions (literal ones are inlined recursively).
+ * Also, the insertion processor needs to be the first one executed on the host element, so that executing
+ * it at cache time does not change the order in which processors are applied.
+ *
+ * The cache validity of a precomposed model depends on that of all the fragments inlined into it, and the
+ * names of these fragments can be obtained so that clearing the cache for a template can also clear the
+ * templates it was inlined into.
+ *
+ * @author Daniel Fern&aacute;ndez
+ * @since 3.0.8
+ *
+ */
+final class TemplateFragmentPrecomposer {
+
+    // Only the simplest (and by far most common) forms are considered literal: a template name made of letters,
+    // numbers and the usual path characters, optionally followed by a reference or id selector
+    private static final Pattern LITERAL_FRAGMENT_PATTERN =
+            Pattern.compile("(?:~\\{\\s*([\\w\\-./]+)(?:\\s*::\\s*(#?[A-Za-z_][\\w\\-]*))?\\s*\\}|([\\w\\-./]+)(?:\\s*::\\s*(#?[A-Za-z_][\\w\\-]*))?)");
+
+    // Expression objects (and the legacy 'execInfo' variable) that variable expressions could use for accessing
+    // the template they are executed at
+    private static final Pattern TEMPLATE_DEPENDENT_VARIABLE_PATTERN =
+            Pattern.compile("#(?:ctx|vars|root|messages|execInfo)\\b|(?<![\\w#.])execInfo\\b");
+
+    // Inlined expressions in texts are only parsed when processed, as a part of the template they are at
+    private static final String[] TEXT_INLINING_MARKERS = new String[] { "[[", "[(", "[#" };
+
+    // Standard processors not listed at computeValueKind() use Standard Expressions as attribute values
+    private static final Package STANDARD_PROCESSORS_PACKAGE = StandardTextTagProcessor.class.getPackage();
+
+    private static final int VALUE_NONE = 0;
+    private static final int VALUE_EXPRESSION = 1;
+    private static final int VALUE_ASSIGNATION_SEQUENCE = 2;
+    private static final int VALUE_EXPRESSION_SEQUENCE = 3;
+    private static final int VALUE_EACH = 4;
+
+    private static final int MAX_INLINING_DEPTH = 8;
+
+
+
+
+    static boolean isApplicable(final IEngineConfiguration configuration, final TemplateMode templateMode) {
+        return configuration instanceof EngineConfiguration &&
+                ((EngineConfiguration) configuration).isFragmentPrecompositionEnabled() &&
+                configuration.getStandardDialectPrefix() != null &&
+                (templateMode == TemplateMode.HTML || templateMode == TemplateMode.XML) &&
+                !TemplateManager.hasNonCacheablePreProcessors(configuration, templateMode);
+    }
+
+
+    /*
+     * Returns the specified model with all the literal fragment insertions that can be inlined already inlined, or
+     * the same model if there are none.
+     */
+    static TemplateModel precompose(
+            final TemplateManager templateManager, final TemplateModel templateModel,
+            final Map<String,Object> templateResolutionAttributes) {
+
+        if (!isApplicable(templateModel.getConfiguration(), templateModel.getTemplateMode())) {
+            return templateModel;
+        }
+        return precompose(templateManager, templateModel, templateResolutionAttributes, new ArrayList<String>(4));
+
+    }
+
+
+    /*
+     * Returns the names of the templates inlined into the specified model, at any depth.
+     */
+    static Set<String> computeInlinedTemplates(final TemplateModel templateModel) {
+        final ICacheEntryValidity validity = templateModel.getTemplateData().getValidity();
+        if (!(validity instanceof PrecomposedCacheEntryValidity)) {
+            return Collections.emptySet();
+        }
+        final Set<String> inlinedTemplates = new HashSet<String>(4);
+        ((PrecomposedCacheEntryValidity) validity).collectInlinedTemplates(inlinedTemplates);
+        return inlinedTemplates;
+    }
+
+
+
+
+    private static TemplateModel precompose(
+            final TemplateManager templateManager, final TemplateModel templateModel,
+            final Map<String,Object> templateResolutionAttributes, final List<String> inliningStack) {
+
+        final IEngineConfiguration configuration = templateModel.getConfiguration();
+        final TemplateData templateData = templateModel.getTemplateData();
+        final IEngineTemplateEvent[] queue = templateModel.getEvents();
+
+        // Both will only be created once the first fragment is inlined
+        List<IEngineTemplateEvent> events = null;
+        List<TemplateData> inlinedTemplateData = null;
+
+        IEngineContext context = null;
+
+        for (int i = 0; i < queue.length; i++) {
+
+            final IEngineTemplateEvent event = queue[i];
+
+            final AbstractStandardFragmentInsertionTagProcessor processor = computeInsertionProcessor(event);
+            final boolean replaceHost = (processor instanceof StandardReplaceTagProcessor);
+            if (!replaceHost && !(processor instanceof StandardInsertTagProcessor && event instanceof OpenElementTag)) {
+                if (events != null) {
+                    events.add(event);
+                }
+                continue;
+            }
+
+            final AbstractProcessableElementTag tag = (AbstractProcessableElementTag) event;
+            final AttributeName attributeName = processor.getMatchingAttributeName().getMatchingAttributeName();
+
+            final int closeIndex = (tag instanceof OpenElementTag? findCloseElementIndex(queue, i + 1) : i);
+            final Matcher matcher = matchLiteralFragment(tag.getAttributeValue(attributeName), tag.getTemplateMode());
+
+            if (closeIndex < 0 || matcher == null || inliningStack.size() >= MAX_INLINING_DEPTH) {
+                if (events != null) {
+                    events.add(event);
+                }
+                continue;
+            }
+
+            final String fragmentTemplate = (matcher.group(1) != null? matcher.group(1) : matcher.group(3));
+            final String fragmentSelector = (matcher.group(1) != null? matcher.group(2) : matcher.group(4));
+            final String fragmentKey = fragmentTemplate + "::" + fragmentSelector;
+
+            if (context == null) {
+                // Pre-processors are not applied to these fragments, so a context without variables is enough
+                context =
+                        EngineContextManager.prepareEngineContext(
+                                configuration, templateData, templateResolutionAttributes, new Context());
+            }
+
+            TemplateModel fragmentModel =
+                    (inliningStack.contains(fragmentKey)?
+                            null : parseFragment(templateManager, context, fragmentTemplate, fragmentSelector));
+
+            if (fragmentModel != null && isInlineable(fragmentModel, templateModel.getTemplateMode())) {
+                inliningStack.add(fragmentKey);
+                fragmentModel = precompose(templateManager, fragmentModel, templateResolutionAttributes, inliningStack);
+                inliningStack.remove(inliningStack.size() - 1);
+                if (dependsOnTemplate(context, fragmentModel.getEvents())) {
+                    fragmentModel = null;
+                }
+            } else {
+                fragmentModel = null;
+            }
+
+            if (fragmentModel == null) {
+                if (events != null) {
+                    events.add(event);
+                }
+                continue;
+            }
+
+            if (events == null) {
+                events = new ArrayList<IEngineTemplateEvent>(queue.length + 50);
+                inlinedTemplateData = new ArrayList<TemplateData>(4);
+                for (int j = 0; j < i; j++) {
+                    events.add(queue[j]);
+                }
+            }
+
+            final IEngineTemplateEvent[] fragmentQueue = fragmentModel.getEvents();
+
+            if (replaceHost) {
+                // The fragment replaces the host element, including its body
+                for (int j = 1; j < fragmentQueue.length - 1; j++) {
+                    events.add(fragmentQueue[j]);
+                }
+                i = closeIndex;
+            } else {
+                // The fragment replaces the body of the host element, which is kept without the insertion attribute
+                events.add((IEngineTemplateEvent) tag.removeAttribute(attributeName));
+                for (int j = 1; j < fragmentQueue.length - 1; j++) {
+                    events.add(fragmentQueue[j]);
+                }
+                events.add(queue[closeIndex]);
+                i = closeIndex;
+            }
+
+            inlinedTemplateData.add(fragmentModel.getTemplateData());
+
+        }
+
+        if (context != null) {
+            EngineContextManager.disposeEngineContext(context);
+        }
+
+        if (events == null) {
+            return templateModel;
+        }
+
+        final TemplateData precomposedTemplateData =
+                new TemplateData(
+                        templateData.getTemplate(), templateData.getTemplateSelectors(),
+                        templateData.getTemplateResource(), templateData.getTemplateMode(),
+                        new PrecomposedCacheEntryValidity(templateData.getValidity(), inlinedTemplateData));
+
+        return new TemplateModel(
+                configuration, precomposedTemplateData, events.toArray(new IEngineTemplateEvent[events.size()]));
+
+    }
+
+
+
+
+    /*
+     * Returns the insertion processor that would be executed first on the specified event, or null if the event
+     * is not an element or the first processor to be executed on it is not a fragment insertion one
+     */
+    private static AbstractStandardFragmentInsertionTagProcessor computeInsertionProcessor(
+            final IEngineTemplateEvent event) {
+
+        if (!(event instanceof OpenElementTag) && !(event instanceof StandaloneElementTag)) {
+            return null;
+        }
+
+        final IElementProcessor[] processors = ((AbstractProcessableElementTag) event).getAssociatedProcessors();
+        if (processors.length == 0) {
+            return null;
+        }
+
+        final IElementProcessor processor = ProcessorConfigurationUtils.unwrap(processors[0]);
+        return (processor instanceof AbstractStandardFragmentInsertionTagProcessor?
+                    (AbstractStandardFragmentInsertionTagProcessor) processor : null);
+
+    }
+
+
+    /*
+     * Parses the fragment the same way a fragment insertion would. Any problems are left for processing time, when
+     * the insertion will be executed normally (if it ever is).
+     */
+    private static TemplateModel parseFragment(
+            final TemplateManager templateManager, final IEngineContext context,
+            final String fragmentTemplate, final String fragmentSelector) {
+        try {
+            return templateManager.parseStandalone(
+                    context, fragmentTemplate,
+                    (fragmentSelector == null? null : Collections.singleton(fragmentSelector)),
+                    null, true, false);
+        } catch (final TemplateEngineException e) {
+            return null;
+        }
+    }
+
+
+    private static Matcher matchLiteralFragment(final String attributeValue, final TemplateMode templateMode) {
+
+        if (attributeValue == null) {
+            return null;
+        }
+
+        final String fragmentSpec = EscapedAttributeUtils.unescapeAttribute(templateMode, attributeValue).trim();
+        final Matcher matcher = LITERAL_FRAGMENT_PATTERN.matcher(fragmentSpec);
+        if (!matcher.matches()) {
+            return null;
+        }
+
+        // These template names would not be literal names, but references to the current template or literals
+        // of other types
+        final String fragmentTemplate = (matcher.group(1) != null? matcher.group(1) : matcher.group(3));
+        if ("this".equals(fragmentTemplate) || "null".equals(fragmentTemplate) ||
+                "true".equals(fragmentTemplate) || "false".equals(fragmentTemplate)) {
+            return null;
+        }
+
+        return matcher;
+
+    }
+
+
+    private static boolean isInlineable(final TemplateModel fragmentModel, final TemplateMode templateMode) {
+
+        // Empty selections are not inlined so that the insertion fails during processing as it should
+        if (fragmentModel.size() <= 2 || fragmentModel.getTemplateMode() != templateMode ||
+                !fragmentModel.getTemplateData().getValidity().isCacheable()) {
+            return false;
+        }
+
+        // Fragments declaring parameters in their signature would need these parameters to be applied
+        final IEngineTemplateEvent firstEvent = fragmentModel.getEvents()[1];
+        if (firstEvent instanceof AbstractProcessableElementTag) {
+            final String prefix = fragmentModel.getConfiguration().getStandardDialectPrefix();
+            final String signature = ((AbstractProcessableElementTag) firstEvent).getAttributeValue(prefix, "fragment");
+            if (signature != null && signature.indexOf('(') >= 0) {
+                return false;
+            }
+        }
+
+        return true;
+
+    }
+
+
+    private static boolean dependsOnTemplate(final IExpressionContext context, final IEngineTemplateEvent[] queue) {
+
+        for (int i = 1; i < queue.length - 1; i++) {
+
+            final IEngineTemplateEvent event = queue[i];
+
+            if (event instanceof AbstractProcessableElementTag) {
+                if (dependsOnTemplate(context, (AbstractProcessableElementTag) event)) {
+                    return true;
+                }
+            } else if (event instanceof Text) {
+                if (hasTextInlining(((Text) event).getText())) {
+                    return true;
+                }
+            } else if (event instanceof Comment) {
+                if (hasTextInlining(((Comment) event).getContent())) {
+                    return true;
+                }
+            } else if (event instanceof CDATASection) {
+                if (hasTextInlining(((CDATASection) event).getContent())) {
+                    return true;
+                }
+            }
+
+        }
+
+        return false;
+
+    }
+
+
+    private static boolean dependsOnTemplate(final IExpressionContext context, final AbstractProcessableElementTag tag) {
+
+        for (final IElementProcessor processor : tag.getAssociatedProcessors()) {
+            final IElementProcessor unwrappedProcessor = ProcessorConfigurationUtils.unwrap(processor);
+            // Any remaining insertions could not be inlined, and will need to be resolved from this fragment. Also,
+            // there is no way to know what processors from other dialects might do.
+            if (unwrappedProcessor instanceof AbstractStandardFragmentInsertionTagProcessor ||
+                    unwrappedProcessor.getClass().getPackage() != STANDARD_PROCESSORS_PACKAGE) {
+                return true;
+            }
+        }
+
+        for (final IAttribute attribute : tag.getAllAttributes()) {
+            final AttributeDefinition attributeDefinition = ((Attribute) attribute).getAttributeDefinition();
+            if (!attributeDefinition.hasAssociatedProcessors()) {
+                continue;
+            }
+            for (final IElementProcessor processor : attributeDefinition.getAssociatedProcessors()) {
+                final int valueKind = computeValueKind(ProcessorConfigurationUtils.unwrap(processor));
+                if (valueKind != VALUE_NONE && dependsOnTemplate(context, valueKind, attribute.getValue())) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+
+    }
+
+
+    private static int computeValueKind(final IElementProcessor processor) {
+        if (processor instanceof StandardFragmentTagProcessor ||
+                processor instanceof StandardRefAttributeTagProcessor ||
+                processor instanceof StandardXmlNsTagProcessor ||
+                processor instanceof AbstractStandardTextInlineSettingTagProcessor) {
+            // Values are names, signatures or modes, not expressions
+            return VALUE_NONE;
+        }
+        if (processor instanceof StandardWithTagProcessor ||
+                processor instanceof AbstractStandardMultipleAttributeModifierTagProcessor) {
+            return VALUE_ASSIGNATION_SEQUENCE;
+        }
+        if (processor instanceof AbstractStandardAssertionTagProcessor) {
+            return VALUE_EXPRESSION_SEQUENCE;
+        }
+        if (processor instanceof StandardEachTagProcessor) {
+            return VALUE_EACH;
+        }
+        return VALUE_EXPRESSION;
+    }
+
+
+    /*
+     * Parses attribute values the same way their processors would, and checks the resulting expressions. Anything
+     * that cannot be checked at this point is considered to depend on the template.
+     */
+    private static boolean dependsOnTemplate(final IExpressionContext context, final int valueKind, final String value) {
+
+        if (value == null) {
+            return false;
+        }
+        if (value.indexOf("__") >= 0) {
+            // Preprocessed expressions can only be known at processing time
+            return true;
+        }
+
+        try {
+            switch (valueKind) {
+                case VALUE_ASSIGNATION_SEQUENCE:
+                    return dependsOnTemplate(AssignationUtils.parseAssignationSequence(context, value, false));
+                case VALUE_EXPRESSION_SEQUENCE:
+                    final ExpressionSequence expressionSequence =
+                            ExpressionSequenceUtils.parseExpressionSequence(context, value);
+                    for (final IStandardExpression expression : expressionSequence) {
+                        if (dependsOnTemplate(expression)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                case VALUE_EACH:
+                    final Each each = EachUtils.parseEach(context, value);
+                    return dependsOnTemplate(each.getIterable());
+                default:
+                    return dependsOnTemplate(
+                            StandardExpressions.getExpressionParser(context.getConfiguration()).parseExpression(context, value));
+            }
+        } catch (final TemplateProcessingException e) {
+            // Will fail again when processed, but that should not happen at a different template
+            return true;
+        }
+
+    }
+
+
+    private static boolean dependsOnTemplate(final AssignationSequence assignationSequence) {
+        if (assignationSequence == null) {
+            return false;
+        }
+        for (final Assignation assignation : assignationSequence) {
+            if (dependsOnTemplate(assignation.getLeft()) || dependsOnTemplate(assignation.getRight())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    private static boolean dependsOnTemplate(final IStandardExpression expression) {
+
+        if (expression == null ||
+                expression instanceof TextLiteralExpression ||
+                expression instanceof NumberTokenExpression ||
+                expression instanceof BooleanTokenExpression ||
+                expression instanceof NullTokenExpression ||
+                expression instanceof GenericTokenExpression ||
+                expression instanceof NoOpTokenExpression ||
+                expression instanceof ConstantExpression) {
+            return false;
+        }
+
+        if (expression instanceof VariableExpression) {
+            return TEMPLATE_DEPENDENT_VARIABLE_PATTERN.matcher(((VariableExpression) expression).getExpression()).find();
+        }
+        if (expression instanceof SelectionVariableExpression) {
+            return TEMPLATE_DEPENDENT_VARIABLE_PATTERN.matcher(
+                    ((SelectionVariableExpression) expression).getExpression()).find();
+        }
+        if (expression instanceof LinkExpression) {
+            final LinkExpression linkExpression = (LinkExpression) expression;
+            return dependsOnTemplate(linkExpression.getBase()) || dependsOnTemplate(linkExpression.getParameters());
+        }
+        if (expression instanceof BinaryOperationExpression) {
+            final BinaryOperationExpression operationExpression = (BinaryOperationExpression) expression;
+            return dependsOnTemplate(operationExpression.getLeft()) || dependsOnTemplate(operationExpression.getRight());
+        }
+        if (expression instanceof MinusExpression) {
+            return dependsOnTemplate(((MinusExpression) expression).getOperand());
+        }
+        if (expression instanceof NegationExpression) {
+            return dependsOnTemplate(((NegationExpression) expression).getOperand());
+        }
+        if (expression instanceof ConditionalExpression) {
+            final ConditionalExpression conditionalExpression = (ConditionalExpression) expression;
+            return dependsOnTemplate(conditionalExpression.getConditionExpression()) ||
+                    dependsOnTemplate(conditionalExpression.getThenExpression()) ||
+                    dependsOnTemplate(conditionalExpression.getElseExpression());
+        }
+        if (expression instanceof DefaultExpression) {
+            final DefaultExpression defaultExpression = (DefaultExpression) expression;
+            return dependsOnTemplate(defaultExpression.getQueriedExpression()) ||
+                    dependsOnTemplate(defaultExpression.getDefaultExpression());
+        }
+
+        // Message and fragment expressions are resolved from the template being processed, and any other
+        // (unknown) types of expressions could be too
+        return true;
+
+    }
+
+
+    private static boolean hasTextInlining(final String text) {
+        for (final String marker : TEXT_INLINING_MARKERS) {
+            if (text.contains(marker)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    private static int findCloseElementIndex(final IEngineTemplateEvent[] queue, final int from) {
+
+        int level = 1;
+        for (int i = from; i < queue.length; i++) {
+            if (queue[i] instanceof OpenElementTag) {
+                level++;
+            } else if (queue[i] instanceof CloseElementTag && !((CloseElementTag) queue[i]).isUnmatched()) {
+                if (--level == 0) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+
+    }
+
+
+
+
+    private TemplateFragmentPrecomposer() {
+        super();
+    }
+
+
+
+
+    /*
+     * Precomposed models are only valid as long as both the template and all of the inlined fragments are
+     */
+    static final class PrecomposedCacheEntryValidity implements ICacheEntryValidity {
+
+        private final ICacheEntryValidity templateValidity;
+        private final TemplateData[] inlinedTemplateData;
+
+        PrecomposedCacheEntryValidity(
+                final ICacheEntryValidity templateValidity, final List<TemplateData> inlinedTemplateData) {
+            super();
+            this.templateValidity = templateValidity;
+            this.inlinedTemplateData = inlinedTemplateData.toArray(new TemplateData[inlinedTemplateData.size()]);
+        }
+
+        public boolean isCacheable() {
+            return this.templateValidity.isCacheable();
+        }
+
+        public boolean isCacheStillValid() {
+            if (!this.templateValidity.isCacheStillValid()) {
+                return false;
+            }
+            for (final TemplateData templateData : this.inlinedTemplateData) {
+                if (!templateData.getValidity().isCacheStillValid()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void collectInlinedTemplates(final Set<String> inlinedTemplates) {
+            for (final TemplateData templateData : this.inlinedTemplateData) {
+                inlinedTemplates.add(templateData.getTemplate());
+                final ICacheEntryValidity validity = templateData.getValidity();
+                if (validity instanceof PrecomposedCacheEntryValidity) {
+                    ((PrecomposedCacheEntryValidity) validity).collectInlinedTemplates(inlinedTemplates);
+                }
+            }
+        }
+
+    }
+
+}
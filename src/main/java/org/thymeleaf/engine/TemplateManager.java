@@ -22,12 +22,16 @@
 import java.io.Writer;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.thymeleaf.EngineConfiguration;
 import org.thymeleaf.IEngineConfiguration;
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.TemplateSpec;
@@ -37,12 +41,14 @@
 import org.thymeleaf.cache.ICacheManager;
 import org.thymeleaf.cache.NonCacheableCacheEntryValidity;
 import org.thymeleaf.cache.TemplateCacheKey;
+import org.thymeleaf.context.Context;
 import org.thymeleaf.context.IContext;
 import org.thymeleaf.context.IEngineContext;
 import org.thymeleaf.context.ITemplateContext;
 import org.thymeleaf.exceptions.TemplateInputException;
 import org.thymeleaf.exceptions.TemplateProcessingException;
 import org.thymeleaf.postprocessor.IPostProcessor;
+import org.thymeleaf.preprocessor.ICacheablePreProcessor;
 import org.thymeleaf.preprocessor.IPreProcessor;
 import org.thymeleaf.templatemode.TemplateMode;
 import org.thymeleaf.templateparser.ITemplateParser;
@@ -72,6 +78,7 @@ public final class TemplateManager {
 
     private static final int DEFAULT_PARSER_POOL_SIZE = 40;
     private static final int DEFAULT_PARSER_BLOCK_SIZE = 2048;
+    private static final int MIN_PRECOMPOSED_TEMPLATE_KEYS_SWEEP_THRESHOLD = 100;
 
     private final IEngineConfiguration configuration;
 
@@ -84,6 +91,22 @@ public final class TemplateManager {
 
 
     private final ICache<TemplateCacheKey,TemplateModel> templateCache; // might be null! (= no cache)
+    private final TemplateEventCanonicalizer eventCanonicalizer; // might be null! (= no canonicalization)
+    private final StringTemplateCache stringTemplateCache; // might be null! (= no caching of String templates)
+    private final ProcessorTemplateHandlerPool processorTemplateHandlerPool;
+    private final boolean templateCompilationEnabled;
+    private final boolean compactTemplateModelsEnabled;
+    private final boolean fragmentPrecompositionEnabled;
+    // Changed every time caches are cleared, so that models cached elsewhere can be known to be outdated
+    private final AtomicInteger cacheGeneration = new AtomicInteger(0);
+    // Keys of the precomposed templates in cache (mapped to the sweep in which they were recorded), by the name of
+    // each of the templates inlined into them. Keys evicted or expired from the template cache are swept from time
+    // to time, see sweepPrecomposedTemplateKeys()
+    private final ConcurrentHashMap<String,ConcurrentHashMap<TemplateCacheKey,Integer>> precomposedTemplateKeys =
+            new ConcurrentHashMap<String, ConcurrentHashMap<TemplateCacheKey,Integer>>(4);
+    private final AtomicInteger precomposedTemplateKeysSweep = new AtomicInteger(0);
+    private final AtomicInteger precomposedTemplateKeysRecorded = new AtomicInteger(0); // since the last sweep
+    private volatile int precomposedTemplateKeysSweepThreshold = MIN_PRECOMPOSED_TEMPLATE_KEYS_SWEEP_THRESHOLD;
 
 
 
@@ -111,6 +134,31 @@ public TemplateManager(final IEngineConfiguration configuration) {
             this.templateCache = cacheManager.getTemplateCache();
         }
 
+        // These settings are not a part of IEngineConfiguration, so defaults apply for other implementations
+        final EngineConfiguration engineConfiguration =
+                (this.configuration instanceof EngineConfiguration? (EngineConfiguration) this.configuration : null);
+
+        if (this.templateCache != null && engineConfiguration != null && engineConfiguration.isEventCanonicalizationEnabled()) {
+            this.eventCanonicalizer = new TemplateEventCanonicalizer();
+        } else {
+            this.eventCanonicalizer = null;
+        }
+
+        if (engineConfiguration != null && engineConfiguration.getStringTemplateCacheMaxSize() > 0) {
+            this.stringTemplateCache = new StringTemplateCache(engineConfiguration.getStringTemplateCacheMaxSize());
+        } else {
+            this.stringTemplateCache = null;
+        }
+
+        this.templateCompilationEnabled =
+                (engineConfiguration != null && engineConfiguration.isTemplateCompilationEnabled());
+        this.compactTemplateModelsEnabled =
+                (engineConfiguration != null && engineConfiguration.isCompactTemplateModelsEnabled());
+        this.fragmentPrecompositionEnabled =
+                (engineConfiguration != null && engineConfiguration.isFragmentPrecompositionEnabled());
+
+        this.processorTemplateHandlerPool = new ProcessorTemplateHandlerPool();
+
         final boolean standardDialectPresent = this.configuration.isStandardDialectPresent();
 
         // TODO Make these parser implementations configurable: one parser per template mode, then make default implementations extensible/configurable (e.g. AttoParser config)
@@ -127,6 +175,32 @@ public TemplateManager(final IEngineConfiguration configuration) {
     
     
     
+    /**
+     * <p>
+     *   Returns the canonicalizer being applied to the events of cacheable templates, or <tt>null</tt> if
+     *   event canonicalization is not enabled (or there is no template cache).
+     * </p>
+     *
+     * @return the event canonicalizer, or null if none is being used.
+     * @since 3.0.8
+     */
+    public TemplateEventCanonicalizer getEventCanonicalizer() {
+        return this.eventCanonicalizer;
+    }
+
+
+
+
+    boolean hasTemplateCache() {
+        return this.templateCache != null;
+    }
+
+
+    int getCacheGeneration() {
+        return this.cacheGeneration.get();
+    }
+
+
     /**
      * <p>
      *   Clears the template cache.
@@ -136,14 +210,165 @@ public void clearCaches() {
         if (this.templateCache != null) {
             this.templateCache.clear();
         }
+        if (this.stringTemplateCache != null) {
+            this.stringTemplateCache.clear();
+        }
+        this.precomposedTemplateKeys.clear();
+        this.precomposedTemplateKeysRecorded.set(0);
+        // Only after clearing, or fragments resolved from not-yet-cleared entries could be kept for the new generation
+        this.cacheGeneration.incrementAndGet();
     }
 
     
+    /**
+     * <p>
+     *   Parses (or obtains from cache) the entire model of the template specified, so that it can be processed
+     *   several times by means of {@link #processTemplateModel(TemplateModel, Map, IContext, Writer)} without
+     *   resolving or looking it up in cache again.
+     * </p>
+     * <p>
+     *   Note the returned model is not put into the template cache if it is not cacheable, and therefore
+     *   holders of this model are responsible for its life cycle.
+     * </p>
+     *
+     * @param templateSpec the template spec containing the template to be parsed.
+     * @return the parsed model of the template.
+     * @since 3.0.8
+     */
+    public TemplateModel parseTemplateSpec(final TemplateSpec templateSpec) {
+
+        Validate.notNull(templateSpec, "Template Specification cannot be null");
+
+        final String template = templateSpec.getTemplate();
+        final Set<String> templateSelectors = templateSpec.getTemplateSelectors();
+        final TemplateMode templateMode = templateSpec.getTemplateMode();
+        final Map<String, Object> templateResolutionAttributes = templateSpec.getTemplateResolutionAttributes();
+
+        final TemplateCacheKey cacheKey =
+                new TemplateCacheKey(
+                        null, // ownerTemplate
+                        template, templateSelectors,
+                        0, 0, // lineOffset, colOffset
+                        templateMode,
+                        templateResolutionAttributes);
+
+        if (this.templateCache != null) {
+            final TemplateModel cached =  this.templateCache.get(cacheKey);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        final TemplateResolution templateResolution =
+                resolveTemplate(this.configuration, null, template, templateResolutionAttributes, true);
+
+        final TemplateData templateData =
+                buildTemplateData(templateResolution, template, templateSelectors, templateMode, true);
+
+        if (this.stringTemplateCache != null && StringTemplateCache.isApplicable(templateResolution)) {
+            return obtainStringTemplateModel(
+                    null, template, templateSelectors, templateResolutionAttributes, templateResolution, templateData);
+        }
+
+        final ModelBuilderTemplateHandler builderHandler = new ModelBuilderTemplateHandler(this.configuration, templateData);
+
+        final ITemplateParser parser = getParserForTemplateMode(templateData.getTemplateMode());
+        parser.parseStandalone(
+                this.configuration,
+                null, template, templateSelectors, templateData.getTemplateResource(),
+                templateData.getTemplateMode(), templateResolution.getUseDecoupledLogic(),
+                applyMinificationIfNeeded(
+                        templateResolution, templateData.getTemplateMode(),
+                        applyCacheablePreProcessorsIfNeeded(templateData, templateResolutionAttributes, builderHandler)));
+
+        final TemplateModel templateModel =
+                precomposeIfNeeded(
+                        cacheKey, templateResolution, builderHandler.getModel(), templateResolutionAttributes);
+
+        if (templateResolution.getValidity().isCacheable() && this.templateCache != null) {
+            this.templateCache.put(cacheKey, prepareForCache(templateModel));
+        }
+
+        return templateModel;
+
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Processes an entire template model previously obtained by means of {@link #parseTemplateSpec(TemplateSpec)},
+     *   in the same way {@link #parseAndProcess(TemplateSpec, IContext, Writer)} would (i.e. applying
+     *   pre-processors and post-processors).
+     * </p>
+     *
+     * @param templateModel the template model to be processed.
+     * @param templateResolutionAttributes the template resolution attributes of the template spec the model was
+     *                                     obtained for, if any. Might be null.
+     * @param context the context.
+     * @param writer the writer output will be written to.
+     * @since 3.0.8
+     */
+    public void processTemplateModel(
+            final TemplateModel templateModel,
+            final Map<String, Object> templateResolutionAttributes,
+            final IContext context,
+            final Writer writer) {
+
+        Validate.notNull(templateModel, "Template Model cannot be null");
+        Validate.notNull(context, "Context cannot be null");
+        Validate.notNull(writer, "Writer cannot be null");
+        Validate.isTrue(
+                this.configuration == templateModel.getConfiguration(),
+                "Specified template was built by a different Template Engine instance");
+
+        final IEngineContext engineContext =
+                EngineContextManager.prepareEngineContext(this.configuration, templateModel.getTemplateData(), templateResolutionAttributes, context);
+
+        /*
+         * If template compilation is enabled and this template can be compiled, there is no need to go
+         * through the handler chain at all
+         */
+        if (this.templateCompilationEnabled) {
+            final CompiledTemplate compiledTemplate = TemplateCompiler.obtainCompiledTemplate(engineContext, templateModel);
+            if (compiledTemplate != null) {
+                compiledTemplate.process(engineContext, writer);
+                EngineContextManager.disposeEngineContext(engineContext);
+                return;
+            }
+        }
+
+        /*
+         * Create the handler chain to process the data.
+         * This is PARSE + PROCESS, so its called from the TemplateEngine, and the only case in which we should apply
+         * both pre-processors and post-processors (besides creating a last output-to-writer step)
+         */
+        final ProcessorTemplateHandler processorTemplateHandler =
+                this.processorTemplateHandlerPool.borrow(engineContext.getTemplateMode());
+        final ITemplateHandler processingHandlerChain =
+                createTemplateProcessingHandlerChain(engineContext, true, true, processorTemplateHandler, writer);
+
+        templateModel.process(processingHandlerChain);
+
+        EngineContextManager.disposeEngineContext(engineContext);
+
+        this.processorTemplateHandlerPool.release(engineContext.getTemplateMode(), processorTemplateHandler);
+
+    }
+
+
+
+
     /**
      * <p>
      *   Clears any existing entries for template of the specified
      *   name at the template cache.
      * </p>
+     * <p>
+     *   If fragment precomposition is enabled, entries for the templates the specified one has been
+     *   inlined into will also be cleared.
+     * </p>
      * 
      * @param template the name of the template whose entries have to be cleared.
      */
@@ -160,6 +385,9 @@ public void clearCachesFor(final String template) {
                     // It's not a standalone template, so we are interested on the owner template
                     if (ownerTemplate.equals(template)) {
                         keysToBeRemoved.add(templateCacheKey);
+                    } else if (this.fragmentPrecompositionEnabled && templateCacheKey.getTemplate().equals(template)) {
+                        // Fragments of this template would be inlined again from these entries
+                        keysToBeRemoved.add(templateCacheKey);
                     }
                 } else {
                     if (templateCacheKey.getTemplate().equals(template)) {
@@ -167,10 +395,17 @@ public void clearCachesFor(final String template) {
                     }
                 }
             }
+            // Templates this one has been inlined into (at any depth) are also affected
+            final Map<TemplateCacheKey,Integer> precomposedKeys = this.precomposedTemplateKeys.remove(template);
+            if (precomposedKeys != null) {
+                keysToBeRemoved.addAll(precomposedKeys.keySet());
+            }
             for (final TemplateCacheKey keyToBeRemoved : keysToBeRemoved) {
                 this.templateCache.clearKey(keyToBeRemoved);
             }
         }
+        // Only after clearing, or fragments resolved from not-yet-cleared entries could be kept for the new generation
+        this.cacheGeneration.incrementAndGet();
     }
 
 
@@ -282,6 +517,26 @@ public TemplateModel parseStandalone(
         }
 
 
+        /*
+         * If fragments are being selected from a cacheable template, we might be able to avoid parsing the entire
+         * template again for this specific selection by slicing an (also cached) indexed model of the whole template
+         */
+        if (useCache && this.templateCache != null && cleanTemplateSelectors != null &&
+                templateResolution.getValidity().isCacheable()) {
+
+            final TemplateModel selectedModel =
+                    selectFromFragmentIndex(
+                            ownerTemplate, template, cleanTemplateSelectors, templateMode,
+                            templateResolutionAttributes, templateResolution);
+
+            if (selectedModel != null) {
+                this.templateCache.put(cacheKey, prepareForCache(selectedModel));
+                return applyPreProcessorsIfNeeded(context, selectedModel);
+            }
+
+        }
+
+
         /*
          * Build the TemplateData object
          */
@@ -289,6 +544,18 @@ public TemplateModel parseStandalone(
                 buildTemplateData(templateResolution, template, cleanTemplateSelectors, templateMode, useCache);
 
 
+        /*
+         * Non-cacheable String templates might have already been parsed, if cached by their contents
+         */
+        if (useCache && this.stringTemplateCache != null && StringTemplateCache.isApplicable(templateResolution)) {
+            return applyPreProcessorsIfNeeded(
+                    context,
+                    obtainStringTemplateModel(
+                            ownerTemplate, template, cleanTemplateSelectors, templateResolutionAttributes,
+                            templateResolution, templateData));
+        }
+
+
         /*
          *  Create the Template Handler that will be in charge of building the TemplateModel
          */
@@ -302,7 +569,10 @@ public TemplateModel parseStandalone(
         parser.parseStandalone(
                 this.configuration,
                 ownerTemplate, template, cleanTemplateSelectors, templateData.getTemplateResource(),
-                templateData.getTemplateMode(), templateResolution.getUseDecoupledLogic(), builderHandler);
+                templateData.getTemplateMode(), templateResolution.getUseDecoupledLogic(),
+                applyMinificationIfNeeded(
+                        templateResolution, templateData.getTemplateMode(),
+                        applyCacheablePreProcessorsIfNeeded(templateData, templateResolutionAttributes, builderHandler)));
 
         final TemplateModel templateModel = builderHandler.getModel();
 
@@ -312,7 +582,7 @@ public TemplateModel parseStandalone(
          */
         if (useCache && this.templateCache != null) {
             if (templateResolution.getValidity().isCacheable()) {
-                this.templateCache.put(cacheKey, templateModel);
+                this.templateCache.put(cacheKey, prepareForCache(templateModel));
             }
         }
 
@@ -346,7 +616,8 @@ private TemplateModel applyPreProcessorsIfNeeded(final ITemplateContext context,
 
         final TemplateData templateData = templateModel.getTemplateData();
 
-        if (this.configuration.getPreProcessors(templateData.getTemplateMode()).isEmpty()) {
+        // Cacheable pre-processors will already have been applied when the model was parsed
+        if (!hasNonCacheablePreProcessors(this.configuration, templateData.getTemplateMode())) {
             return templateModel;
         }
 
@@ -459,7 +730,7 @@ public TemplateModel parseString(
          */
         if (useCache && this.templateCache != null) {
             if (cacheValidity.isCacheable()) {
-                this.templateCache.put(cacheKey, parsedTemplate);
+                this.templateCache.put(cacheKey, prepareForCache(parsedTemplate));
             }
         }
         
@@ -509,7 +780,8 @@ public void process(
          * LazyProcessingCharSequence, and in such case we know those CharSequences are only used when there are
          * NO post-processors, so we are safe anyway.
          */
-        final ProcessorTemplateHandler processorTemplateHandler = new ProcessorTemplateHandler();
+        final ProcessorTemplateHandler processorTemplateHandler =
+                this.processorTemplateHandlerPool.borrow(engineContext.getTemplateMode());
         final ITemplateHandler processingHandlerChain =
                 createTemplateProcessingHandlerChain(engineContext, false, false, processorTemplateHandler, writer);
 
@@ -520,9 +792,10 @@ public void process(
 
 
         /*
-         * Dispose the engine context now that processing has been done
+         * Dispose the engine context now that processing has been done, and give the processor handler back
          */
         EngineContextManager.disposeEngineContext(engineContext);
+        this.processorTemplateHandlerPool.release(engineContext.getTemplateMode(), processorTemplateHandler);
 
     }
 
@@ -576,25 +849,8 @@ public void parseAndProcess(
             final TemplateModel cached =  this.templateCache.get(cacheKey);
 
             if (cached != null) {
-
-                final IEngineContext engineContext =
-                        EngineContextManager.prepareEngineContext(this.configuration, cached.getTemplateData(), templateResolutionAttributes, context);
-
-                /*
-                 * Create the handler chain to process the data.
-                 * This is PARSE + PROCESS, so its called from the TemplateEngine, and the only case in which we should apply
-                 * both pre-processors and post-processors (besides creating a last output-to-writer step)
-                 */
-                final ProcessorTemplateHandler processorTemplateHandler = new ProcessorTemplateHandler();
-                final ITemplateHandler processingHandlerChain =
-                        createTemplateProcessingHandlerChain(engineContext, true, true, processorTemplateHandler, writer);
-
-                cached.process(processingHandlerChain);
-
-                EngineContextManager.disposeEngineContext(engineContext);
-
+                processTemplateModel(cached, templateResolutionAttributes, context, writer);
                 return;
-
             }
 
         }
@@ -626,7 +882,8 @@ public void parseAndProcess(
          * This is PARSE + PROCESS, so its called from the TemplateEngine, and the only case in which we should apply
          * both pre-processors and post-processors (besides creating a last output-to-writer step)
          */
-        final ProcessorTemplateHandler processorTemplateHandler = new ProcessorTemplateHandler();
+        final ProcessorTemplateHandler processorTemplateHandler =
+                this.processorTemplateHandlerPool.borrow(engineContext.getTemplateMode());
         final ITemplateHandler processingHandlerChain =
                 createTemplateProcessingHandlerChain(engineContext, true, true, processorTemplateHandler, writer);
 
@@ -649,32 +906,51 @@ public void parseAndProcess(
             parser.parseStandalone(
                     this.configuration,
                     null, template, templateSelectors, templateData.getTemplateResource(),
-                    engineContext.getTemplateMode(), templateResolution.getUseDecoupledLogic(), builderHandler);
+                    engineContext.getTemplateMode(), templateResolution.getUseDecoupledLogic(),
+                    applyMinificationIfNeeded(
+                            templateResolution, engineContext.getTemplateMode(),
+                            applyCacheablePreProcessorsIfNeeded(templateData, templateResolutionAttributes, builderHandler)));
 
-            // Obtain the TemplateModel
-            final TemplateModel templateModel = builderHandler.getModel();
+            // Obtain the TemplateModel (composed with the fragments it inserts, if so configured)
+            final TemplateModel templateModel =
+                    precomposeIfNeeded(
+                            cacheKey, templateResolution, builderHandler.getModel(), templateResolutionAttributes);
 
             // Put the new template into cache
-            this.templateCache.put(cacheKey, templateModel);
+            this.templateCache.put(cacheKey, prepareForCache(templateModel));
 
             // Process the read (+cached) template itself
             templateModel.process(processingHandlerChain);
 
+        } else if (this.stringTemplateCache != null && StringTemplateCache.isApplicable(templateResolution)) {
+
+            // Non-cacheable String template: it might have already been parsed, if cached by its contents
+            final TemplateModel templateModel =
+                    obtainStringTemplateModel(
+                            null, template, templateSelectors, templateResolutionAttributes,
+                            templateResolution, templateData);
+
+            templateModel.process(processingHandlerChain);
+
         } else {
 
             //  Process the template, which is not cacheable (so no worry about caching)
             parser.parseStandalone(
                     this.configuration,
                     null, template, templateSelectors, templateData.getTemplateResource(),
-                    engineContext.getTemplateMode(), templateResolution.getUseDecoupledLogic(),  processingHandlerChain);
+                    engineContext.getTemplateMode(), templateResolution.getUseDecoupledLogic(),
+                    applyMinificationIfNeeded(
+                            templateResolution, engineContext.getTemplateMode(),
+                            applyCacheablePreProcessorsIfNeeded(templateData, templateResolutionAttributes, processingHandlerChain)));
 
         }
 
 
         /*
-         * Dispose the engine context now that processing has been done
+         * Dispose the engine context now that processing has been done, and give the processor handler back
          */
         EngineContextManager.disposeEngineContext(engineContext);
+        this.processorTemplateHandlerPool.release(engineContext.getTemplateMode(), processorTemplateHandler);
 
 
     }
@@ -793,12 +1069,25 @@ public ThrottledTemplateProcessor parseAndProcessThrottled(final TemplateSpec te
          * will always be processed first into a TemplateModel, so that throttling can then be applied on an
          * already-in-memory sequence of events
          */
-        final ModelBuilderTemplateHandler builderHandler = new ModelBuilderTemplateHandler(this.configuration, templateData);
-        parser.parseStandalone(
-                this.configuration,
-                null, template, templateSelectors, templateData.getTemplateResource(),
-                engineContext.getTemplateMode(), templateResolution.getUseDecoupledLogic(), builderHandler);
-        final TemplateModel templateModel = builderHandler.getModel();
+        final TemplateModel templateModel;
+        if (this.stringTemplateCache != null && StringTemplateCache.isApplicable(templateResolution)) {
+            templateModel =
+                    obtainStringTemplateModel(
+                            null, template, templateSelectors, templateResolutionAttributes,
+                            templateResolution, templateData);
+        } else {
+            final ModelBuilderTemplateHandler builderHandler = new ModelBuilderTemplateHandler(this.configuration, templateData);
+            parser.parseStandalone(
+                    this.configuration,
+                    null, template, templateSelectors, templateData.getTemplateResource(),
+                    engineContext.getTemplateMode(), templateResolution.getUseDecoupledLogic(),
+                    applyMinificationIfNeeded(
+                            templateResolution, engineContext.getTemplateMode(),
+                            applyCacheablePreProcessorsIfNeeded(templateData, templateResolutionAttributes, builderHandler)));
+            templateModel =
+                    precomposeIfNeeded(
+                            cacheKey, templateResolution, builderHandler.getModel(), templateResolutionAttributes);
+        }
 
 
         /*
@@ -807,7 +1096,7 @@ public ThrottledTemplateProcessor parseAndProcessThrottled(final TemplateSpec te
         if (templateResolution.getValidity().isCacheable() && this.templateCache != null) {
 
             // Put the new template into cache
-            this.templateCache.put(cacheKey, templateModel);
+            this.templateCache.put(cacheKey, prepareForCache(templateModel));
 
         }
 
@@ -876,6 +1165,208 @@ private static TemplateResolution resolveTemplate(
 
 
 
+    /*
+     * Obtains the model for a non-cacheable String template from the String template cache, parsing it and
+     * putting it into such cache if not there yet.
+     */
+    private TemplateModel obtainStringTemplateModel(
+            final String ownerTemplate, final String template, final Set<String> templateSelectors,
+            final Map<String,Object> templateResolutionAttributes,
+            final TemplateResolution templateResolution, final TemplateData templateData) {
+
+        final TemplateCacheKey cacheKey =
+                StringTemplateCache.computeCacheKey(
+                        ownerTemplate, template, templateSelectors, templateResolution,
+                        templateData.getTemplateMode(), templateResolutionAttributes);
+
+        final TemplateModel cached = this.stringTemplateCache.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+
+        final ModelBuilderTemplateHandler builderHandler = new ModelBuilderTemplateHandler(this.configuration, templateData);
+
+        final ITemplateParser parser = getParserForTemplateMode(templateData.getTemplateMode());
+        parser.parseStandalone(
+                this.configuration,
+                ownerTemplate, template, templateSelectors, templateData.getTemplateResource(),
+                templateData.getTemplateMode(), templateResolution.getUseDecoupledLogic(),
+                applyMinificationIfNeeded(
+                        templateResolution, templateData.getTemplateMode(),
+                        applyCacheablePreProcessorsIfNeeded(templateData, templateResolutionAttributes, builderHandler)));
+
+        final TemplateModel templateModel = builderHandler.getModel();
+        this.stringTemplateCache.put(cacheKey, prepareForCache(templateModel));
+
+        return templateModel;
+
+    }
+
+
+
+
+    /*
+     * Templates that are going to be cached can be cached already composed with the (literal) fragments they insert,
+     * if so configured. The same composed model will be processed right away, so that results do not depend on
+     * whether the template was already in cache or not.
+     */
+    private TemplateModel precomposeIfNeeded(
+            final TemplateCacheKey cacheKey, final TemplateResolution templateResolution,
+            final TemplateModel templateModel, final Map<String,Object> templateResolutionAttributes) {
+        if (this.templateCache == null || !templateResolution.getValidity().isCacheable()) {
+            return templateModel;
+        }
+        final TemplateModel precomposedModel =
+                TemplateFragmentPrecomposer.precompose(this, templateModel, templateResolutionAttributes);
+        // Recorded before the model is cached, so that clearing any of the inlined templates also clears its entry
+        final Integer sweep = Integer.valueOf(this.precomposedTemplateKeysSweep.get());
+        for (final String inlinedTemplate : TemplateFragmentPrecomposer.computeInlinedTemplates(precomposedModel)) {
+            ConcurrentHashMap<TemplateCacheKey,Integer> keys = this.precomposedTemplateKeys.get(inlinedTemplate);
+            if (keys == null) {
+                final ConcurrentHashMap<TemplateCacheKey,Integer> newKeys =
+                        new ConcurrentHashMap<TemplateCacheKey, Integer>(4);
+                keys = this.precomposedTemplateKeys.putIfAbsent(inlinedTemplate, newKeys);
+                if (keys == null) {
+                    keys = newKeys;
+                }
+            }
+            if (keys.put(cacheKey, sweep) == null &&
+                    this.precomposedTemplateKeysRecorded.incrementAndGet() > this.precomposedTemplateKeysSweepThreshold) {
+                sweepPrecomposedTemplateKeys();
+            }
+        }
+        return precomposedModel;
+    }
+
+
+    /*
+     * Removes the keys of the precomposed templates that are not in the template cache anymore (evicted, expired),
+     * which would otherwise be kept until the caches are cleared. Sweeps are performed once the number of keys
+     * recorded since the last one exceeds the number of keys left by it, so their cost is amortized.
+     */
+    private void sweepPrecomposedTemplateKeys() {
+
+        synchronized (this.precomposedTemplateKeys) {
+
+            if (this.precomposedTemplateKeysRecorded.get() <= this.precomposedTemplateKeysSweepThreshold) {
+                // Another thread already performed this sweep
+                return;
+            }
+
+            // Keys recorded since the previous sweep will have the current sweep number
+            final int currentSweep = this.precomposedTemplateKeysSweep.getAndIncrement();
+            this.precomposedTemplateKeysRecorded.set(0);
+
+            final Set<TemplateCacheKey> cachedKeys = this.templateCache.keySet();
+
+            int remaining = 0;
+            // Empty maps are not removed, as there will be at most one per fragment template and a thread could
+            // be adding a key to them right now
+            for (final Map<TemplateCacheKey,Integer> keys : this.precomposedTemplateKeys.values()) {
+                final Iterator<Map.Entry<TemplateCacheKey,Integer>> keyIterator = keys.entrySet().iterator();
+                while (keyIterator.hasNext()) {
+                    final Map.Entry<TemplateCacheKey,Integer> key = keyIterator.next();
+                    // Keys recorded since the previous sweep are kept anyway, as their models might not have been
+                    // put into the cache yet
+                    if (key.getValue().intValue() < currentSweep && !cachedKeys.contains(key.getKey())) {
+                        keyIterator.remove();
+                    } else {
+                        remaining++;
+                    }
+                }
+            }
+
+            this.precomposedTemplateKeysSweepThreshold =
+                    Math.max(MIN_PRECOMPOSED_TEMPLATE_KEYS_SWEEP_THRESHOLD, remaining);
+
+        }
+
+    }
+
+
+
+
+    /*
+     * Templates can be stored at the caches in a compact (columnar) form, if so configured. Note this will only affect
+     * the object being cached, and the original model can still be used by whoever created it.
+     */
+    private TemplateModel prepareForCache(final TemplateModel templateModel) {
+        if (this.compactTemplateModelsEnabled) {
+            return templateModel.compact();
+        }
+        return templateModel;
+    }
+
+
+    /*
+     * Computes a fragment selection as a slice of the entire template model, parsing (and caching) such entire
+     * model only if it is not in cache yet. Returns null if the selection cannot be computed this way, either
+     * because of the selectors being used or because parsing the template with selectors could produce
+     * different results (decoupled logic, minification).
+     */
+    private TemplateModel selectFromFragmentIndex(
+            final String ownerTemplate, final String template, final Set<String> templateSelectors,
+            final TemplateMode templateMode, final Map<String,Object> templateResolutionAttributes,
+            final TemplateResolution templateResolution) {
+
+        final String standardDialectPrefix = this.configuration.getStandardDialectPrefix();
+        final TemplateMode definitiveTemplateMode =
+                (templateMode == null ? templateResolution.getTemplateMode() : templateMode);
+
+        // Indexes need all the events of the entire template, which compact models would have to materialize. Also,
+        // cacheable pre-processors should only see the events of the selected fragments, as when parsing them
+        if (standardDialectPrefix == null || this.compactTemplateModelsEnabled ||
+                hasCacheablePreProcessors(this.configuration, definitiveTemplateMode) ||
+                (definitiveTemplateMode != TemplateMode.HTML && definitiveTemplateMode != TemplateMode.XML) ||
+                templateResolution.getUseDecoupledLogic() || templateResolution.getUseMinification() ||
+                !TemplateFragmentIndex.isIndexable(templateSelectors)) {
+            return null;
+        }
+
+        final TemplateCacheKey entireTemplateCacheKey =
+                new TemplateCacheKey(
+                        ownerTemplate,
+                        template, null,
+                        0, 0,
+                        templateMode,
+                        templateResolutionAttributes);
+
+        TemplateModel entireTemplateModel = this.templateCache.get(entireTemplateCacheKey);
+
+        if (entireTemplateModel == null) {
+
+            final TemplateData entireTemplateData =
+                    buildTemplateData(templateResolution, template, null, templateMode, true);
+
+            final ModelBuilderTemplateHandler builderHandler =
+                    new ModelBuilderTemplateHandler(this.configuration, entireTemplateData);
+
+            final ITemplateParser parser = getParserForTemplateMode(definitiveTemplateMode);
+            parser.parseStandalone(
+                    this.configuration,
+                    ownerTemplate, template, null, entireTemplateData.getTemplateResource(),
+                    definitiveTemplateMode, false, builderHandler);
+
+            entireTemplateModel = builderHandler.getModel();
+            this.templateCache.put(entireTemplateCacheKey, entireTemplateModel);
+
+        }
+
+        final TemplateFragmentIndex fragmentIndex =
+                TemplateFragmentIndex.obtainIndex(entireTemplateModel, standardDialectPrefix);
+
+        final TemplateData templateData =
+                buildTemplateData(templateResolution, template, templateSelectors, templateMode, true);
+
+        return new TemplateModel(
+                this.configuration, templateData,
+                fragmentIndex.select(templateSelectors, definitiveTemplateMode == TemplateMode.HTML));
+
+    }
+
+
+
+
     private static TemplateData buildTemplateData(
             final TemplateResolution templateResolution,
             final String template,
@@ -898,6 +1389,90 @@ private static TemplateData buildTemplateData(
 
 
 
+    /*
+     * Minification is applied as an additional handler placed just after the parser, so that (for cacheable
+     * templates) the model being cached is already minified and the work is done only once.
+     */
+    private static ITemplateHandler applyMinificationIfNeeded(
+            final TemplateResolution templateResolution, final TemplateMode templateMode, final ITemplateHandler handler) {
+
+        if (!templateResolution.getUseMinification() || templateMode != TemplateMode.HTML) {
+            return handler;
+        }
+
+        final HTMLMinificationTemplateHandler minificationHandler = new HTMLMinificationTemplateHandler();
+        minificationHandler.setNext(handler);
+        return minificationHandler;
+
+    }
+
+
+
+
+    /*
+     * Cacheable pre-processors are applied as additional handlers placed just before the model builder (or the
+     * processing chain, for non-cacheable templates), so that the model being cached is already pre-processed and
+     * the work is done only once. As their results will be reused for any context, their handlers are given a
+     * context containing no variables.
+     */
+    private ITemplateHandler applyCacheablePreProcessorsIfNeeded(
+            final TemplateData templateData, final Map<String,Object> templateResolutionAttributes,
+            final ITemplateHandler handler) {
+
+        if (!hasCacheablePreProcessors(this.configuration, templateData.getTemplateMode())) {
+            return handler;
+        }
+
+        // No need to dispose this engine context afterwards, as it is not shared with any other executions
+        final IEngineContext engineContext =
+                EngineContextManager.prepareEngineContext(
+                        this.configuration, templateData, templateResolutionAttributes, new Context());
+
+        ITemplateHandler firstHandler = null;
+        ITemplateHandler lastHandler = null;
+
+        for (final IPreProcessor preProcessor : this.configuration.getPreProcessors(templateData.getTemplateMode())) {
+            if (!(preProcessor instanceof ICacheablePreProcessor)) {
+                continue;
+            }
+            final ITemplateHandler preProcessorHandler = createPreProcessorHandler(preProcessor);
+            preProcessorHandler.setContext(engineContext);
+            if (firstHandler == null) {
+                firstHandler = preProcessorHandler;
+            } else {
+                lastHandler.setNext(preProcessorHandler);
+            }
+            lastHandler = preProcessorHandler;
+        }
+
+        lastHandler.setNext(handler);
+        return firstHandler;
+
+    }
+
+
+    static boolean hasCacheablePreProcessors(final IEngineConfiguration configuration, final TemplateMode templateMode) {
+        for (final IPreProcessor preProcessor : configuration.getPreProcessors(templateMode)) {
+            if (preProcessor instanceof ICacheablePreProcessor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    static boolean hasNonCacheablePreProcessors(final IEngineConfiguration configuration, final TemplateMode templateMode) {
+        for (final IPreProcessor preProcessor : configuration.getPreProcessors(templateMode)) {
+            if (!(preProcessor instanceof ICacheablePreProcessor)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+
+
     private ITemplateParser getParserForTemplateMode(final TemplateMode templateMode) {
         switch (templateMode) {
             case HTML:       return this.htmlParser;
@@ -915,6 +1490,18 @@ private ITemplateParser getParserForTemplateMode(final TemplateMode templateMode
 
 
 
+    private static ITemplateHandler createPreProcessorHandler(final IPreProcessor preProcessor) {
+        final Class<? extends ITemplateHandler> preProcessorClass = preProcessor.getHandlerClass();
+        try {
+            return preProcessorClass.newInstance();
+        } catch (final Exception e) {
+            // This should never happen - class was already checked during configuration to contain a zero-arg constructor
+            throw new TemplateProcessingException(
+                    "An exception happened during the creation of a new instance of pre-processor " + preProcessorClass.getClass().getName(), e);
+        }
+    }
+
+
     private static ITemplateHandler createTemplateProcessingHandlerChain(
             final IEngineContext context,
             final boolean setPreProcessors, final boolean setPostProcessors,
@@ -935,15 +1522,11 @@ private static ITemplateHandler createTemplateProcessingHandlerChain(
             final Set<IPreProcessor> preProcessors = configuration.getPreProcessors(context.getTemplateMode());
             if (preProcessors != null && preProcessors.size() > 0) {
                 for (final IPreProcessor preProcessor : preProcessors) {
-                    final Class<? extends ITemplateHandler> preProcessorClass = preProcessor.getHandlerClass();
-                    final ITemplateHandler preProcessorHandler;
-                    try {
-                        preProcessorHandler = preProcessorClass.newInstance();
-                    } catch (final Exception e) {
-                        // This should never happen - class was already checked during configuration to contain a zero-arg constructor
-                        throw new TemplateProcessingException(
-                                "An exception happened during the creation of a new instance of pre-processor " + preProcessorClass.getClass().getName(), e);
+                    if (preProcessor instanceof ICacheablePreProcessor) {
+                        // Already applied when parsing the template, so already part of the model being processed
+                        continue;
                     }
+                    final ITemplateHandler preProcessorHandler = createPreProcessorHandler(preProcessor);
                     // Initialize the pre-processor
                     preProcessorHandler.setContext(context);
                     if (firstHandler == null) {
@@ -1007,6 +1590,9 @@ private static ITemplateHandler createTemplateProcessingHandlerChain(
         if (writer != null) {
             final OutputTemplateHandler outputHandler = new OutputTemplateHandler(writer);
             outputHandler.setContext(context);
+            if (handler instanceof ProcessorTemplateHandler) {
+                ((ProcessorTemplateHandler)handler).setOutputHandler(outputHandler);
+            }
             if (firstHandler == null) {
                 firstHandler = outputHandler;
             } else {
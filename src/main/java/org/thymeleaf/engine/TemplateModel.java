@@ -42,7 +42,14 @@ public final class TemplateModel implements IModel {
 
     final IEngineConfiguration configuration;
     final TemplateData templateData;
-    final IEngineTemplateEvent[] queue; // This is final because this IModel is IMMUTABLE
+    final IEngineTemplateEvent[] queue; // This is final because this IModel is IMMUTABLE (null if compact)
+    final CompactTemplateModel compact; // Columnar representation of the events, only if 'queue' is null
+
+    // Computed (if enabled) the first time this model is processed from the cache, see TemplateCompiler
+    volatile CompiledTemplate compiledTemplate = null;
+
+    // Computed the first time fragments are selected from this (entire) model, see TemplateFragmentIndex
+    volatile TemplateFragmentIndex fragmentIndex = null;
 
 
     // Package-protected constructor, because we don't want anyone creating these objects from outside the engine.
@@ -64,6 +71,22 @@ public final class TemplateModel implements IModel {
         this.configuration = configuration;
         this.templateData = templateData;
         this.queue = queue;
+        this.compact = null;
+
+    }
+
+
+    // Compact (columnar) models are only created from already existing models, see compact()
+    private TemplateModel(
+            final IEngineConfiguration configuration, final TemplateData templateData,
+            final CompactTemplateModel compact) {
+
+        super();
+
+        this.configuration = configuration;
+        this.templateData = templateData;
+        this.queue = null;
+        this.compact = compact;
 
     }
 
@@ -85,12 +108,12 @@ public final TemplateMode getTemplateMode() {
 
 
     public final int size() {
-        return this.queue.length;
+        return (this.queue != null? this.queue.length : this.compact.size());
     }
 
 
     public final ITemplateEvent get(final int pos) {
-        return this.queue[pos];
+        return (this.queue != null? this.queue[pos] : this.compact.getEvents()[pos]);
     }
 
 
@@ -132,6 +155,10 @@ public final void reset() {
 
 
     void process(final ITemplateHandler handler) {
+        if (this.compact != null) {
+            this.compact.process(handler);
+            return;
+        }
         for (int i = 0; i < this.queue.length; i++) {
             this.queue[i].beHandled(handler);
         }
@@ -140,6 +167,10 @@ void process(final ITemplateHandler handler) {
 
     int process(final ITemplateHandler handler, final int offset, final TemplateFlowController controller) {
 
+        if (this.compact != null) {
+            return this.compact.process(handler, offset, controller);
+        }
+
         if (controller == null) {
             process(handler);
             return this.queue.length;
@@ -171,6 +202,10 @@ public final IModel cloneModel() {
 
 
     public final void write(final Writer writer) throws IOException {
+        if (this.compact != null) {
+            this.compact.write(writer);
+            return;
+        }
         for (int i = 0; i < this.queue.length; i++) {
             this.queue[i].write(writer);
         }
@@ -180,10 +215,42 @@ public final void write(final Writer writer) throws IOException {
 
 
     public void accept(final IModelVisitor visitor) {
-        for (int i = 0; i < this.queue.length; i++) {
+        final int size = size();
+        for (int i = 0; i < size; i++) {
             // We will execute the visitor on the Immutable events, that we need to create during the visit
-            this.queue[i].accept(visitor);
+            ((IEngineTemplateEvent) get(i)).accept(visitor);
+        }
+    }
+
+
+
+
+    /*
+     * Returns the whole array of events of this model. For compact models, these are materialized the first time
+     * they are needed and then reused for as long as memory allows (see CompactTemplateModel). The returned array
+     * must never be modified.
+     */
+    IEngineTemplateEvent[] getEvents() {
+        return (this.queue != null? this.queue : this.compact.getEvents());
+    }
+
+
+    boolean isCompact() {
+        return this.compact != null;
+    }
+
+
+    /*
+     * Creates an equivalent model using a columnar representation of its events (see CompactTemplateModel), meant
+     * for reducing the memory footprint of cached templates.
+     */
+    TemplateModel compact() {
+        if (this.compact != null) {
+            return this;
         }
+        return new TemplateModel(
+                this.configuration, this.templateData,
+                CompactTemplateModel.compact(this.templateData.getTemplateMode(), this.queue));
     }
 
 
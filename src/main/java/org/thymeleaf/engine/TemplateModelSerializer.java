@@ -0,0 +1,507 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2016, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.thymeleaf.IEngineConfiguration;
+import org.thymeleaf.exceptions.TemplateProcessingException;
+import org.thymeleaf.model.AttributeValueQuotes;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.util.Validate;
+
+
+/**
+ * <p>
+ *   Converts {@link TemplateModel} objects to and from a compact binary form, so that they can be kept
+ *   outside of the heap (e.g. in direct {@link ByteBuffer}s) and rehydrated without re-parsing the
+ *   original template resource.
+ * </p>
+ * <p>
+ *   The serialized form does not include the {@link TemplateData} nor the {@link IEngineConfiguration} of the
+ *   model, which are expected to be kept (on heap) by whoever stores the serialized form and passed again
+ *   when rehydrating. Element and attribute definitions are looked up again by name at the configuration
+ *   at rehydration time, and all repeated Strings (names, whitespace, template names...) are only written
+ *   once per model.
+ * </p>
+ * <p>
+ *   Meant for <strong>internal use only</strong>.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ * @since 3.0.8
+ *
+ */
+public final class TemplateModelSerializer {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private static final byte EVENT_TEMPLATE_START = 1;
+    private static final byte EVENT_TEMPLATE_END = 2;
+    private static final byte EVENT_TEXT = 3;
+    private static final byte EVENT_COMMENT = 4;
+    private static final byte EVENT_CDATA_SECTION = 5;
+    private static final byte EVENT_DOC_TYPE = 6;
+    private static final byte EVENT_XML_DECLARATION = 7;
+    private static final byte EVENT_PROCESSING_INSTRUCTION = 8;
+    private static final byte EVENT_OPEN_ELEMENT = 9;
+    private static final byte EVENT_STANDALONE_ELEMENT = 10;
+    private static final byte EVENT_CLOSE_ELEMENT = 11;
+
+    private static final int NULL_STRING = -1;
+
+
+
+
+    public static byte[] serialize(final TemplateModel templateModel) {
+
+        Validate.notNull(templateModel, "Template Model cannot be null");
+
+        final IEngineTemplateEvent[] events = templateModel.getEvents();
+
+        final ByteArrayOutputStream byteStream = new ByteArrayOutputStream(events.length * 16);
+        final ModelWriter writer = new ModelWriter(new DataOutputStream(byteStream));
+
+        try {
+
+            writer.out.writeByte(FORMAT_VERSION);
+            writer.out.writeByte(templateModel.getTemplateMode().ordinal());
+            writer.out.writeInt(events.length);
+
+            for (int i = 0; i < events.length; i++) {
+                writer.writeEvent(events[i]);
+            }
+
+            writer.out.flush();
+
+        } catch (final IOException e) {
+            // Should never happen, we are writing to memory
+            throw new TemplateProcessingException("Error serializing template model", e);
+        }
+
+        return byteStream.toByteArray();
+
+    }
+
+
+
+
+    public static TemplateModel deserialize(
+            final IEngineConfiguration configuration, final TemplateData templateData, final ByteBuffer buffer) {
+
+        Validate.notNull(configuration, "Engine Configuration cannot be null");
+        Validate.notNull(templateData, "Template Data cannot be null");
+        Validate.notNull(buffer, "Buffer cannot be null");
+
+        // We will work on a duplicate so that several threads can rehydrate the same buffer at the same time
+        final ModelReader reader = new ModelReader(configuration, buffer.duplicate());
+
+        final byte formatVersion = reader.in.get();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new TemplateProcessingException(
+                    "Cannot deserialize template model: unknown serialization format version " + formatVersion);
+        }
+
+        final TemplateMode templateMode = TemplateMode.values()[reader.in.get()];
+        final int queueSize = reader.in.getInt();
+
+        final IEngineTemplateEvent[] queue = new IEngineTemplateEvent[queueSize];
+        for (int i = 0; i < queueSize; i++) {
+            queue[i] = reader.readEvent(templateMode);
+        }
+
+        return new TemplateModel(configuration, templateData, queue);
+
+    }
+
+
+
+
+    private static final class ModelWriter {
+
+        final DataOutputStream out;
+        private final Map<String,Integer> stringTable;
+
+        ModelWriter(final DataOutputStream out) {
+            super();
+            this.out = out;
+            this.stringTable = new HashMap<String, Integer>(64);
+        }
+
+
+        void writeEvent(final IEngineTemplateEvent event) throws IOException {
+
+            if (event instanceof Text) {
+                final Text text = (Text) event;
+                this.out.writeByte(EVENT_TEXT);
+                writeLocation(text);
+                writeString(text.getText());
+            } else if (event instanceof OpenElementTag) {
+                final OpenElementTag tag = (OpenElementTag) event;
+                this.out.writeByte(EVENT_OPEN_ELEMENT);
+                writeLocation(tag);
+                writeString(tag.elementCompleteName);
+                this.out.writeBoolean(tag.synthetic);
+                writeAttributes(tag.attributes);
+            } else if (event instanceof CloseElementTag) {
+                final CloseElementTag tag = (CloseElementTag) event;
+                this.out.writeByte(EVENT_CLOSE_ELEMENT);
+                writeLocation(tag);
+                writeString(tag.elementCompleteName);
+                writeString(tag.trailingWhiteSpace);
+                this.out.writeBoolean(tag.synthetic);
+                this.out.writeBoolean(tag.unmatched);
+            } else if (event instanceof StandaloneElementTag) {
+                final StandaloneElementTag tag = (StandaloneElementTag) event;
+                this.out.writeByte(EVENT_STANDALONE_ELEMENT);
+                writeLocation(tag);
+                writeString(tag.elementCompleteName);
+                this.out.writeBoolean(tag.synthetic);
+                this.out.writeBoolean(tag.minimized);
+                writeAttributes(tag.attributes);
+            } else if (event instanceof Comment) {
+                final Comment comment = (Comment) event;
+                this.out.writeByte(EVENT_COMMENT);
+                writeLocation(comment);
+                writeString(comment.prefix);
+                writeString(comment.getContent());
+                writeString(comment.suffix);
+            } else if (event instanceof CDATASection) {
+                final CDATASection cdataSection = (CDATASection) event;
+                this.out.writeByte(EVENT_CDATA_SECTION);
+                writeLocation(cdataSection);
+                writeString(cdataSection.prefix);
+                writeString(cdataSection.getContent());
+                writeString(cdataSection.suffix);
+            } else if (event instanceof DocType) {
+                final DocType docType = (DocType) event;
+                this.out.writeByte(EVENT_DOC_TYPE);
+                writeLocation(docType);
+                writeString(docType.getDocType());
+                writeString(docType.getKeyword());
+                writeString(docType.getElementName());
+                writeString(docType.getPublicId());
+                writeString(docType.getSystemId());
+                writeString(docType.getInternalSubset());
+            } else if (event instanceof XMLDeclaration) {
+                final XMLDeclaration xmlDeclaration = (XMLDeclaration) event;
+                this.out.writeByte(EVENT_XML_DECLARATION);
+                writeLocation(xmlDeclaration);
+                writeString(xmlDeclaration.getXmlDeclaration());
+                writeString(xmlDeclaration.getKeyword());
+                writeString(xmlDeclaration.getVersion());
+                writeString(xmlDeclaration.getEncoding());
+                writeString(xmlDeclaration.getStandalone());
+            } else if (event instanceof ProcessingInstruction) {
+                final ProcessingInstruction processingInstruction = (ProcessingInstruction) event;
+                this.out.writeByte(EVENT_PROCESSING_INSTRUCTION);
+                writeLocation(processingInstruction);
+                writeString(processingInstruction.getProcessingInstruction());
+                writeString(processingInstruction.getTarget());
+                writeString(processingInstruction.getContent());
+            } else if (event == TemplateStart.TEMPLATE_START_INSTANCE) {
+                this.out.writeByte(EVENT_TEMPLATE_START);
+            } else if (event == TemplateEnd.TEMPLATE_END_INSTANCE) {
+                this.out.writeByte(EVENT_TEMPLATE_END);
+            } else {
+                throw new TemplateProcessingException(
+                        "Cannot serialize template model: unknown event type " + event.getClass().getName());
+            }
+
+        }
+
+
+        private void writeAttributes(final Attributes attributes) throws IOException {
+
+            this.out.writeBoolean(attributes != null);
+            if (attributes == null) {
+                return;
+            }
+
+            final Attribute[] attributeArray = attributes.attributes;
+            final String[] innerWhiteSpaces = attributes.innerWhiteSpaces;
+
+            this.out.writeInt(attributeArray == null? -1 : attributeArray.length);
+            if (attributeArray != null) {
+                for (int i = 0; i < attributeArray.length; i++) {
+                    final Attribute attribute = attributeArray[i];
+                    writeString(attribute.templateName);
+                    this.out.writeInt(attribute.line);
+                    this.out.writeInt(attribute.col);
+                    writeString(attribute.completeName);
+                    writeString(attribute.operator);
+                    writeString(attribute.value);
+                    this.out.writeByte(attribute.valueQuotes == null? -1 : attribute.valueQuotes.ordinal());
+                }
+            }
+
+            this.out.writeInt(innerWhiteSpaces == null? -1 : innerWhiteSpaces.length);
+            if (innerWhiteSpaces != null) {
+                for (int i = 0; i < innerWhiteSpaces.length; i++) {
+                    writeString(innerWhiteSpaces[i]);
+                }
+            }
+
+        }
+
+
+        private void writeLocation(final AbstractTemplateEvent event) throws IOException {
+            writeString(event.templateName);
+            this.out.writeInt(event.line);
+            this.out.writeInt(event.col);
+        }
+
+
+        private void writeString(final String str) throws IOException {
+
+            if (str == null) {
+                this.out.writeInt(NULL_STRING);
+                return;
+            }
+
+            final Integer index = this.stringTable.get(str);
+            if (index != null) {
+                this.out.writeInt(index.intValue());
+                return;
+            }
+
+            // New String: its index will be the current size of the table, and the reader will know this index
+            // is not known yet and therefore must be followed by the String contents
+            final int newIndex = this.stringTable.size();
+            this.stringTable.put(str, Integer.valueOf(newIndex));
+
+            final byte[] bytes = str.getBytes(UTF8);
+            this.out.writeInt(newIndex);
+            this.out.writeInt(bytes.length);
+            this.out.write(bytes);
+
+        }
+
+    }
+
+
+
+
+    private static final class ModelReader {
+
+        final ByteBuffer in;
+        private final ElementDefinitions elementDefinitions;
+        private final AttributeDefinitions attributeDefinitions;
+        private final List<String> stringTable;
+
+        ModelReader(final IEngineConfiguration configuration, final ByteBuffer in) {
+            super();
+            this.in = in;
+            this.elementDefinitions = configuration.getElementDefinitions();
+            this.attributeDefinitions = configuration.getAttributeDefinitions();
+            this.stringTable = new ArrayList<String>(64);
+        }
+
+
+        IEngineTemplateEvent readEvent(final TemplateMode templateMode) {
+
+            final byte eventType = this.in.get();
+
+            if (eventType == EVENT_TEMPLATE_START) {
+                return TemplateStart.TEMPLATE_START_INSTANCE;
+            }
+            if (eventType == EVENT_TEMPLATE_END) {
+                return TemplateEnd.TEMPLATE_END_INSTANCE;
+            }
+
+            final String templateName = readString();
+            final int line = this.in.getInt();
+            final int col = this.in.getInt();
+
+            switch (eventType) {
+
+                case EVENT_TEXT:
+                    return new Text(readString(), templateName, line, col);
+
+                case EVENT_OPEN_ELEMENT: {
+                    final String elementCompleteName = readString();
+                    final boolean synthetic = readBoolean();
+                    final Attributes attributes = readAttributes(templateMode);
+                    return new OpenElementTag(
+                            templateMode, this.elementDefinitions.forName(templateMode, elementCompleteName),
+                            elementCompleteName, attributes, synthetic, templateName, line, col);
+                }
+
+                case EVENT_CLOSE_ELEMENT: {
+                    final String elementCompleteName = readString();
+                    final String trailingWhiteSpace = readString();
+                    final boolean synthetic = readBoolean();
+                    final boolean unmatched = readBoolean();
+                    return new CloseElementTag(
+                            templateMode, this.elementDefinitions.forName(templateMode, elementCompleteName),
+                            elementCompleteName, trailingWhiteSpace, synthetic, unmatched, templateName, line, col);
+                }
+
+                case EVENT_STANDALONE_ELEMENT: {
+                    final String elementCompleteName = readString();
+                    final boolean synthetic = readBoolean();
+                    final boolean minimized = readBoolean();
+                    final Attributes attributes = readAttributes(templateMode);
+                    return new StandaloneElementTag(
+                            templateMode, this.elementDefinitions.forName(templateMode, elementCompleteName),
+                            elementCompleteName, attributes, synthetic, minimized, templateName, line, col);
+                }
+
+                case EVENT_COMMENT: {
+                    final String prefix = readString();
+                    final String content = readString();
+                    final String suffix = readString();
+                    return new Comment(prefix, content, suffix, templateName, line, col);
+                }
+
+                case EVENT_CDATA_SECTION: {
+                    final String prefix = readString();
+                    final String content = readString();
+                    final String suffix = readString();
+                    return new CDATASection(prefix, content, suffix, templateName, line, col);
+                }
+
+                case EVENT_DOC_TYPE: {
+                    final String docType = readString();
+                    final String keyword = readString();
+                    final String elementName = readString();
+                    final String publicId = readString();
+                    final String systemId = readString();
+                    final String internalSubset = readString();
+                    return new DocType(
+                            docType, keyword, elementName, publicId, systemId, internalSubset, templateName, line, col);
+                }
+
+                case EVENT_XML_DECLARATION: {
+                    final String xmlDeclaration = readString();
+                    final String keyword = readString();
+                    final String version = readString();
+                    final String encoding = readString();
+                    final String standalone = readString();
+                    return new XMLDeclaration(
+                            xmlDeclaration, keyword, version, encoding, standalone, templateName, line, col);
+                }
+
+                case EVENT_PROCESSING_INSTRUCTION: {
+                    final String processingInstruction = readString();
+                    final String target = readString();
+                    final String content = readString();
+                    return new ProcessingInstruction(processingInstruction, target, content, templateName, line, col);
+                }
+
+                default:
+                    throw new TemplateProcessingException(
+                            "Cannot deserialize template model: unknown event type code " + eventType);
+
+            }
+
+        }
+
+
+        private Attributes readAttributes(final TemplateMode templateMode) {
+
+            if (!readBoolean()) {
+                return null;
+            }
+
+            final int attributeCount = this.in.getInt();
+
+            Attribute[] attributeArray = null;
+            if (attributeCount >= 0) {
+                attributeArray = new Attribute[attributeCount];
+                for (int i = 0; i < attributeCount; i++) {
+                    final String templateName = readString();
+                    final int line = this.in.getInt();
+                    final int col = this.in.getInt();
+                    final String completeName = readString();
+                    final String operator = readString();
+                    final String value = readString();
+                    final byte valueQuotesOrdinal = this.in.get();
+                    final AttributeValueQuotes valueQuotes =
+                            (valueQuotesOrdinal < 0? null : AttributeValueQuotes.values()[valueQuotesOrdinal]);
+                    attributeArray[i] =
+                            new Attribute(
+                                    this.attributeDefinitions.forName(templateMode, completeName), completeName,
+                                    operator, value, valueQuotes, templateName, line, col);
+                }
+            }
+
+            String[] innerWhiteSpaces = null;
+            final int innerWhiteSpaceCount = this.in.getInt();
+            if (innerWhiteSpaceCount >= 0) {
+                innerWhiteSpaces = new String[innerWhiteSpaceCount];
+                for (int i = 0; i < innerWhiteSpaceCount; i++) {
+                    innerWhiteSpaces[i] = readString();
+                }
+            }
+
+            if (attributeArray == null && innerWhiteSpaces == null) {
+                return Attributes.EMPTY_ATTRIBUTES;
+            }
+            return new Attributes(attributeArray, innerWhiteSpaces);
+
+        }
+
+
+        private boolean readBoolean() {
+            return this.in.get() != 0;
+        }
+
+
+        private String readString() {
+
+            final int index = this.in.getInt();
+            if (index == NULL_STRING) {
+                return null;
+            }
+            if (index < this.stringTable.size()) {
+                return this.stringTable.get(index);
+            }
+
+            final int len = this.in.getInt();
+            final byte[] bytes = new byte[len];
+            this.in.get(bytes);
+            final String str = new String(bytes, UTF8);
+            this.stringTable.add(str);
+            return str;
+
+        }
+
+    }
+
+
+
+
+    private TemplateModelSerializer() {
+        super();
+    }
+
+
+}
@@ -122,6 +122,25 @@ public boolean isFinished() {
 
 
 
+    /*
+     * Stops processing before the template has been finished (e.g. because whoever was consuming the output has
+     * gone away), so that the engine context (and any resources bound to it) is disposed anyway. Must never be
+     * called concurrently with any process(...) call.
+     */
+    void abort() {
+
+        if (!this.eventProcessingFinished) {
+            this.processorTemplateHandler.abortPending();
+            EngineContextManager.disposeEngineContext(this.context);
+            this.eventProcessingFinished = true;
+        }
+        this.allProcessingFinished = true;
+
+    }
+
+
+
+
     private boolean computeFinish() throws IOException {
 
         if (this.allProcessingFinished) {
@@ -148,6 +167,15 @@ private void reportFinish(final String outputType) {
                         "[THYMELEAF][{}] Finished throttled processing of template \"{}\" with locale {}. Maximum overflow was {} {} (overflow buffer grown {} times).",
                         new Object[]{TemplateEngine.threadIndex(), this.templateSpec, this.context.getLocale(), Integer.valueOf(this.writer.getMaxOverflowSize()), outputType, this.writer.getOverflowGrowCount() });
             }
+            final CompressedTemplateOutputStream compressedOutputStream = this.writer.getCompressedOutputStream();
+            if (compressedOutputStream != null && logger.isTraceEnabled()) {
+                logger.trace(
+                        "[THYMELEAF][{}] Compressed output of template \"{}\" with locale {}: {} bytes -> {} bytes (ratio {}, {} sync flushes).",
+                        new Object[]{TemplateEngine.threadIndex(), this.templateSpec, this.context.getLocale(),
+                                Long.valueOf(compressedOutputStream.getUncompressedCount()), Long.valueOf(compressedOutputStream.getCompressedCount()),
+                                String.format("%.3f", Double.valueOf(compressedOutputStream.getCompressionRatio())),
+                                Integer.valueOf(compressedOutputStream.getSyncFlushCount())});
+            }
         }
 
     }
@@ -250,6 +278,8 @@ private int process(final int maxOutput, final String outputType) {
              */
             try {
                 this.writer.flush();
+                // The end of a throttled execution is a meaningful point for flushing (compressed) output
+                this.writer.flushPoint();
             } catch (final IOException e) {
                 throw new TemplateOutputException("An error happened while flushing output writer", templateSpec.getTemplate(), -1, -1, e);
             }
@@ -0,0 +1,486 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2016, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.thymeleaf.IThrottledTemplateProcessor;
+import org.thymeleaf.util.Validate;
+
+/**
+ * <p>
+ *   Demand-driven publisher of template output in the form of {@link ByteBuffer} chunks, built on top of
+ *   an {@link IThrottledTemplateProcessor} (as returned by <tt>TemplateEngine.processThrottled(...)</tt>).
+ * </p>
+ * <p>
+ *   Each chunk is produced by a call to
+ *   {@link IThrottledTemplateProcessor#process(int, OutputStream, Charset)} limited to the size of the buffers
+ *   in the configured {@link ByteBufferPool}, and only when the subscriber has requested it, so that huge
+ *   templates can be served with bounded memory. The subscriber owns the buffers it receives, and should
+ *   {@link ByteBufferPool#release(ByteBuffer) release} them to the pool once consumed.
+ * </p>
+ * <p>
+ *   The {@link Subscriber} and {@link Subscription} interfaces follow the contract (and method signatures) of
+ *   the <em>Reactive Streams</em> specification and of <tt>java.util.concurrent.Flow</tt>, so adapting this
+ *   publisher to any of them only requires a thin delegating wrapper:
+ * </p>
+ * <ul>
+ *   <li>Signals to the subscriber are always serialized and never reentrant, even if
+ *       {@link Subscription#request(long)} is called from inside {@link Subscriber#onNext(Object)}.</li>
+ *   <li>Requesting a non-positive amount of chunks results in {@link Subscriber#onError(Throwable)} being
+ *       signaled with an {@link IllegalArgumentException}.</li>
+ *   <li>After {@link Subscription#cancel()}, no more chunks are produced and no more signals are sent. The
+ *       throttled processor is aborted (releasing its engine context) and any chunk produced in advance is
+ *       returned to the pool.</li>
+ *   <li>Processing is kept one chunk ahead of demand, so that {@link Subscriber#onComplete()} is signaled as soon
+ *       as the template is finished, even if the subscriber has not requested more chunks after the last one.</li>
+ *   <li>As the underlying throttled processor is stateful, only one subscriber is allowed.</li>
+ * </ul>
+ * <p>
+ *   If an {@link Executor} is specified, template processing will be performed by it (one task at a time). If
+ *   not, processing will be performed by the thread calling {@link Subscription#request(long)}, which is the
+ *   normal choice for event-loop based servers. If the executor rejects a processing task,
+ *   {@link Subscriber#onError(Throwable)} is signaled with the corresponding exception.
+ * </p>
+ * <p>
+ *   A call to the throttled processor might produce no output without the template being finished (e.g. when
+ *   a data-driven iteration is waiting for more data). In such case processing does not insist and the
+ *   subscription is left <em>stalled</em>, releasing the thread that was processing. Whoever feeds the data the
+ *   template is waiting for should then call {@link #resume()}, which will restart processing (at the executor,
+ *   or at the calling thread if there is no executor). Processing is also restarted by any new call to
+ *   {@link Subscription#request(long)}. Additionally, if the executor is a {@link ScheduledExecutorService},
+ *   stalled processing will be retried by it after an exponentially increasing delay (from
+ *   {@value #MIN_STALL_RETRY_DELAY_MILLIS} to {@value #MAX_STALL_RETRY_DELAY_MILLIS} milliseconds) in case
+ *   {@link #resume()} is never called. Note that when there is no executor there is nobody to retry processing,
+ *   so {@link #resume()} <strong>must</strong> be called when stalled templates can make progress again, or
+ *   the subscriber will wait forever.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.0.8
+ *
+ */
+public final class ThrottledTemplatePublisher {
+
+    public static final long MIN_STALL_RETRY_DELAY_MILLIS = 1L;
+    public static final long MAX_STALL_RETRY_DELAY_MILLIS = 128L;
+
+
+    private final IThrottledTemplateProcessor processor;
+    private final Charset charset;
+    private final ByteBufferPool bufferPool;
+    private final Executor executor;
+
+    private final AtomicBoolean subscribed;
+    private volatile ThrottledTemplateSubscription subscription;
+
+
+
+
+    public ThrottledTemplatePublisher(
+            final IThrottledTemplateProcessor processor, final Charset charset, final ByteBufferPool bufferPool) {
+        this(processor, charset, bufferPool, null);
+    }
+
+
+    public ThrottledTemplatePublisher(
+            final IThrottledTemplateProcessor processor, final Charset charset,
+            final ByteBufferPool bufferPool, final Executor executor) {
+        super();
+        Validate.notNull(processor, "Throttled template processor cannot be null");
+        Validate.notNull(charset, "Charset cannot be null");
+        Validate.notNull(bufferPool, "Buffer pool cannot be null");
+        this.processor = processor;
+        this.charset = charset;
+        this.bufferPool = bufferPool;
+        this.executor = executor;
+        this.subscribed = new AtomicBoolean(false);
+        this.subscription = null;
+    }
+
+
+
+
+    public IThrottledTemplateProcessor getProcessor() {
+        return this.processor;
+    }
+
+
+    public ByteBufferPool getBufferPool() {
+        return this.bufferPool;
+    }
+
+
+
+
+    public void subscribe(final Subscriber<? super ByteBuffer> subscriber) {
+        Validate.notNull(subscriber, "Subscriber cannot be null");
+        if (!this.subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(NoOpSubscription.INSTANCE);
+            subscriber.onError(
+                    new IllegalStateException(
+                            "Throttled template publisher for template \"" + this.processor.getTemplateSpec() + "\" " +
+                            "only allows one subscriber"));
+            return;
+        }
+        final ThrottledTemplateSubscription subscription = new ThrottledTemplateSubscription(subscriber);
+        this.subscription = subscription;
+        subscriber.onSubscribe(subscription);
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Signals that the template might be able to produce output again after having stalled, normally because
+     *   new data has been fed into a data-driven iterator (see {@link DataDrivenTemplateIterator}) being used by
+     *   the template. If there is outstanding demand, processing will be restarted at the executor (or at the
+     *   calling thread, if there is no executor).
+     * </p>
+     * <p>
+     *   This method can be safely called at any moment and from any thread. Calling it when processing is not
+     *   stalled, or before any subscriber has subscribed, has no effect.
+     * </p>
+     */
+    public void resume() {
+        final ThrottledTemplateSubscription subscription = this.subscription;
+        if (subscription != null) {
+            subscription.schedule();
+        }
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Subscriber to a {@link ThrottledTemplatePublisher}. Equivalent to
+     *   <tt>org.reactivestreams.Subscriber</tt> and <tt>java.util.concurrent.Flow.Subscriber</tt>.
+     * </p>
+     *
+     * @param <T> the type of the elements received.
+     */
+    public interface Subscriber<T> {
+
+        void onSubscribe(final Subscription subscription);
+        void onNext(final T item);
+        void onError(final Throwable throwable);
+        void onComplete();
+
+    }
+
+
+    /**
+     * <p>
+     *   Subscription to a {@link ThrottledTemplatePublisher}. Equivalent to
+     *   <tt>org.reactivestreams.Subscription</tt> and <tt>java.util.concurrent.Flow.Subscription</tt>.
+     * </p>
+     */
+    public interface Subscription {
+
+        void request(final long n);
+        void cancel();
+
+    }
+
+
+
+
+    private final class ThrottledTemplateSubscription implements Subscription, Runnable {
+
+        private final Subscriber<? super ByteBuffer> subscriber;
+
+        private final AtomicLong requested;
+        private final AtomicInteger workInProgress;
+        private final AtomicBoolean stallRetryScheduled;
+        private final AtomicLong stallRetryDelayMillis;
+
+        private volatile boolean cancelled;
+        private volatile Throwable pendingError;
+        private boolean done;
+        private boolean released;
+        private ByteBuffer pending; // chunk produced in advance, waiting for demand
+
+
+        ThrottledTemplateSubscription(final Subscriber<? super ByteBuffer> subscriber) {
+            super();
+            this.subscriber = subscriber;
+            this.requested = new AtomicLong(0L);
+            this.workInProgress = new AtomicInteger(0);
+            this.stallRetryScheduled = new AtomicBoolean(false);
+            this.stallRetryDelayMillis = new AtomicLong(MIN_STALL_RETRY_DELAY_MILLIS);
+            this.cancelled = false;
+            this.pendingError = null;
+            this.done = false;
+            this.released = false;
+            this.pending = null;
+        }
+
+
+        public void request(final long n) {
+            if (n <= 0L) {
+                this.pendingError =
+                        new IllegalArgumentException("Amount of requested chunks must be greater than zero (was " + n + ")");
+            } else {
+                long current, next;
+                do {
+                    current = this.requested.get();
+                    if (current == Long.MAX_VALUE) {
+                        break;
+                    }
+                    next = current + n;
+                    if (next < 0L) { // overflow: unbounded demand
+                        next = Long.MAX_VALUE;
+                    }
+                } while (!this.requested.compareAndSet(current, next));
+            }
+            schedule();
+        }
+
+
+        public void cancel() {
+            this.cancelled = true;
+            // Resources are released by the emitting thread, so that this never happens during a call to the processor
+            schedule();
+        }
+
+
+        private void schedule() {
+            if (this.workInProgress.getAndIncrement() != 0) {
+                // Some other thread (or an outer call in this same thread) is already emitting, and will notice
+                return;
+            }
+            if (executor != null) {
+                try {
+                    executor.execute(this);
+                } catch (final RejectedExecutionException e) {
+                    // We still own the emission (workInProgress will never get back to zero), so no other signals
+                    // can be sent concurrently or afterwards
+                    if (!this.done && !this.cancelled) {
+                        this.done = true;
+                        this.subscriber.onError(e);
+                    }
+                    releaseResources();
+                }
+            } else {
+                run();
+            }
+        }
+
+
+        public void run() {
+
+            int missed = 1;
+            boolean stalled;
+
+            do {
+
+                final long req = this.requested.get();
+                long emitted = 0L;
+                stalled = false;
+
+                while (!this.done && !this.cancelled) {
+
+                    final Throwable error = this.pendingError;
+                    if (error != null) {
+                        this.done = true;
+                        this.subscriber.onError(error);
+                        break;
+                    }
+
+                    // A chunk is produced even if there is no demand for it yet. This way, if the template finishes
+                    // with no more output, completion can be signaled without waiting for the subscriber to request
+                    if (this.pending == null && !processor.isFinished()) {
+
+                        final ByteBuffer buffer = bufferPool.acquire();
+                        try {
+                            processor.process(buffer.remaining(), new ByteBufferOutputStream(buffer), charset);
+                        } catch (final Throwable t) {
+                            bufferPool.release(buffer);
+                            this.done = true;
+                            this.subscriber.onError(t);
+                            break;
+                        }
+
+                        if (buffer.position() > 0) {
+                            buffer.flip();
+                            this.pending = buffer;
+                            this.stallRetryDelayMillis.set(MIN_STALL_RETRY_DELAY_MILLIS);
+                        } else {
+                            bufferPool.release(buffer);
+                            if (!processor.isFinished()) {
+                                // No progress could be made, so insisting would only mean spinning
+                                stalled = true;
+                                break;
+                            }
+                        }
+
+                    }
+
+                    if (this.pending != null) {
+                        if (emitted == req) {
+                            // The chunk will wait for demand
+                            break;
+                        }
+                        final ByteBuffer chunk = this.pending;
+                        this.pending = null;
+                        emitted++;
+                        this.subscriber.onNext(chunk);
+                        continue;
+                    }
+
+                    // Nothing pending, and the processor is finished
+                    this.done = true;
+                    this.subscriber.onComplete();
+
+                }
+
+                if (emitted > 0L && req != Long.MAX_VALUE) {
+                    this.requested.addAndGet(-emitted);
+                }
+
+                if (this.done || this.cancelled) {
+                    releaseResources();
+                }
+
+                missed = this.workInProgress.addAndGet(-missed);
+
+            } while (missed != 0);
+
+            if (stalled && !this.done && !this.cancelled) {
+                // Processing will be restarted by resume() or request(). Scheduled executors also retry after a
+                // delay (just in case nobody calls resume()), but never immediately, as that would mean spinning
+                scheduleStallRetry();
+            }
+
+        }
+
+
+        /*
+         * Only called by the thread owning the emission, so it can never happen concurrently with processing
+         */
+        private void releaseResources() {
+            if (this.released) {
+                return;
+            }
+            this.released = true;
+            if (this.pending != null) {
+                bufferPool.release(this.pending);
+                this.pending = null;
+            }
+            if (processor instanceof ThrottledTemplateProcessor) {
+                // Does nothing if the template was already finished
+                ((ThrottledTemplateProcessor) processor).abort();
+            }
+        }
+
+
+        private void scheduleStallRetry() {
+
+            if (!(executor instanceof ScheduledExecutorService)) {
+                return;
+            }
+            if (!this.stallRetryScheduled.compareAndSet(false, true)) {
+                // A retry is already waiting, no need for more
+                return;
+            }
+
+            final long delay = this.stallRetryDelayMillis.get();
+            this.stallRetryDelayMillis.set(Math.min(delay * 2L, MAX_STALL_RETRY_DELAY_MILLIS));
+
+            try {
+                ((ScheduledExecutorService) executor).schedule(
+                        new Runnable() {
+                            public void run() {
+                                stallRetryScheduled.set(false);
+                                schedule();
+                            }
+                        },
+                        delay, TimeUnit.MILLISECONDS);
+            } catch (final RejectedExecutionException e) {
+                // Executor is probably shutting down: processing will only be restarted by resume() or request()
+                this.stallRetryScheduled.set(false);
+            }
+
+        }
+
+    }
+
+
+
+
+    private static final class NoOpSubscription implements Subscription {
+
+        private static final NoOpSubscription INSTANCE = new NoOpSubscription();
+
+        public void request(final long n) {
+            // Nothing to do
+        }
+
+        public void cancel() {
+            // Nothing to do
+        }
+
+    }
+
+
+
+
+    private static final class ByteBufferOutputStream extends OutputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferOutputStream(final ByteBuffer buffer) {
+            super();
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            if (!this.buffer.hasRemaining()) {
+                throw new IOException("Output chunk buffer is full");
+            }
+            this.buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            if (len > this.buffer.remaining()) {
+                throw new IOException("Output chunk buffer is full");
+            }
+            this.buffer.put(b, off, len);
+        }
+
+    }
+
+
+}
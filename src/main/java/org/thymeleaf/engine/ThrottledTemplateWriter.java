@@ -46,6 +46,8 @@ class ThrottledTemplateWriter extends Writer implements IThrottledTemplateWriter
 
     private boolean flushable;
 
+    private CompressedTemplateOutputStream compressedOutputStream;
+
 
     ThrottledTemplateWriter(final String templateName, final TemplateFlowController flowController) {
         super();
@@ -54,6 +56,7 @@ class ThrottledTemplateWriter extends Writer implements IThrottledTemplateWriter
         this.adapter = null;
         this.writer = null;
         this.flushable = false;
+        this.compressedOutputStream = null;
     }
 
 
@@ -123,9 +126,38 @@ void setOutput(final OutputStream outputStream, final Charset charset, final int
             //this.writer = new BufferedWriter(new OutputStreamWriter((ThrottledTemplateWriterOutputStreamAdapter)this.adapter, charset));
         }
         ((ThrottledTemplateWriterOutputStreamAdapter)this.adapter).setOutputStream(outputStream);
+        this.compressedOutputStream =
+                (outputStream instanceof CompressedTemplateOutputStream? (CompressedTemplateOutputStream)outputStream : null);
+    }
+
+
+
+
+    /*
+     * Returns the compressed output stream being used as output, if any. Output streams of this kind will
+     * only be flushed at meaningful points of template output (see flushPoint()).
+     */
+    CompressedTemplateOutputStream getCompressedOutputStream() {
+        return this.compressedOutputStream;
     }
 
 
+    /*
+     * Signals a point in output at which it makes sense to flush output to the client (e.g. after </head>, or
+     * at the end of an SSE event). This only has effect when output is being compressed, as flushing compressed
+     * output has a cost in compression ratio and therefore should only be done when it is worth it.
+     */
+    void flushPoint() throws IOException {
+        if (this.compressedOutputStream != null) {
+            this.flushable = false;
+            this.writer.flush();
+            // Flushing the writer only makes bytes reach the compressed stream: compressed data has to be sync-flushed
+            this.compressedOutputStream.syncFlush();
+        }
+    }
+
+
+
 
 
     public boolean isOverflown() throws IOException {
@@ -0,0 +1,51 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2016, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.preprocessor;
+
+/**
+ * <p>
+ *   Interface defining <em>cacheable</em> pre-processors.
+ * </p>
+ * <p>
+ *   Cacheable pre-processors are pre-processors whose output depends only on the template being pre-processed
+ *   (e.g. structural rewrites like adding attributes to specific elements, or rewriting asset URLs). Instead of
+ *   being executed on every processing of a template, they are executed only once, when the template is parsed
+ *   into a {@link org.thymeleaf.engine.TemplateModel}, so that the pre-processed model is the one stored at the
+ *   template cache.
+ * </p>
+ * <p>
+ *   Because of this, the handlers of cacheable pre-processors will be executed on a context containing no
+ *   variables and the default locale, and they should never rely on any context-dependent information. Note
+ *   also that they will be executed before any non-cacheable pre-processors, independently of their precedence.
+ * </p>
+ * <p>
+ *   Most of the times, the {@link CacheablePreProcessor} implementation will be used for registering
+ *   cacheable pre-processors.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ * @since 3.0.8
+ *
+ */
+public interface ICacheablePreProcessor extends IPreProcessor {
+
+    // Marker interface: no additional methods
+
+}
@@ -37,6 +37,11 @@
  *   Pre-processors can be used to re-shape the template model just before it is processed.
  * </p>
  * <p>
+ *   Pre-processors whose output depends only on the template (and not on the context) can implement
+ *   {@link ICacheablePreProcessor} instead, so that they are executed only once, before the template model
+ *   is cached.
+ * </p>
+ * <p>
  *   Most of the times, the {@link PreProcessor} implementation will be used for registering pre-processors.
  * </p>
  *
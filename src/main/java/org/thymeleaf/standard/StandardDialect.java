@@ -19,7 +19,9 @@
  */
 package org.thymeleaf.standard;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
@@ -51,6 +53,7 @@
 import org.thymeleaf.standard.processor.StandardDOMEventAttributeTagProcessor;
 import org.thymeleaf.standard.processor.StandardDefaultAttributesTagProcessor;
 import org.thymeleaf.standard.processor.StandardEachTagProcessor;
+import org.thymeleaf.standard.processor.StandardFlushTagProcessor;
 import org.thymeleaf.standard.processor.StandardFragmentTagProcessor;
 import org.thymeleaf.standard.processor.StandardHrefTagProcessor;
 import org.thymeleaf.standard.processor.StandardIfTagProcessor;
@@ -67,6 +70,7 @@
 import org.thymeleaf.standard.processor.StandardMethodTagProcessor;
 import org.thymeleaf.standard.processor.StandardNonRemovableAttributeTagProcessor;
 import org.thymeleaf.standard.processor.StandardObjectTagProcessor;
+import org.thymeleaf.standard.processor.StandardParallelTagProcessor;
 import org.thymeleaf.standard.processor.StandardRefAttributeTagProcessor;
 import org.thymeleaf.standard.processor.StandardRemovableAttributeTagProcessor;
 import org.thymeleaf.standard.processor.StandardRemoveTagProcessor;
@@ -135,6 +139,9 @@
     private IStandardJavaScriptSerializer javaScriptSerializer = null;
     private IStandardCSSSerializer cssSerializer = null;
 
+    // Names of the variables the results of expressions on which can be memoized during each template execution
+    private Set<String> pureVariableNames = null;
+
     // Note this is not settable - just lazily initialized
     private IExpressionObjectFactory expressionObjectFactory = null;
 
@@ -251,6 +258,53 @@ public void setExpressionParser(final IStandardExpressionParser expressionParser
     }
 
 
+    /**
+     * <p>
+     *   Returns the names of the variables that have been declared as <i>pure</i> at this instance of the
+     *   Standard Dialect. See {@link #setPureVariableNames(Set)}.
+     * </p>
+     *
+     * @return the set of pure variable names (never null).
+     * @since 3.0.8
+     */
+    public Set<String> getPureVariableNames() {
+        if (this.pureVariableNames == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(this.pureVariableNames);
+    }
+
+
+    /**
+     * <p>
+     *   Sets the names of the variables that should be considered <i>pure</i> at this instance of the
+     *   Standard Dialect, i.e. variables whose values (and the object graphs reachable from them) are not
+     *   going to be modified during the execution of a template. Expression objects can also be declared pure
+     *   by prefixing their names with <tt>#</tt> (e.g. <tt>#authentication</tt>), as long as their factory
+     *   declares them as cacheable.
+     * </p>
+     * <p>
+     *   Variable expressions that simply navigate a pure variable (e.g. <tt>${user.permissions.canEdit}</tt>)
+     *   will be evaluated only once per template execution, their results being memoized at the engine context
+     *   and reused for as long as the variable holds the same object. Setting a new value for the variable
+     *   (e.g. by means of <tt>th:with</tt>) or removing it will invalidate such results.
+     * </p>
+     * <p>
+     *   This method has no effect once the Template Engine has been initialized.
+     * </p>
+     *
+     * @param pureVariableNames the set of pure variable names (can be null).
+     * @since 3.0.8
+     */
+    public void setPureVariableNames(final Set<String> pureVariableNames) {
+        if (pureVariableNames == null || pureVariableNames.isEmpty()) {
+            this.pureVariableNames = null;
+        } else {
+            this.pureVariableNames = new HashSet<String>(pureVariableNames);
+        }
+    }
+
+
     /**
      * <p>
      *   Returns the Standard Conversion Service (implementation of {@link IStandardConversionService})
@@ -388,7 +442,7 @@ public void setCSSSerializer(final IStandardCSSSerializer cssSerializer) {
 
     public Map<String, Object> getExecutionAttributes() {
 
-        final Map<String,Object> executionAttributes = new HashMap<String, Object>(5, 1.0f);
+        final Map<String,Object> executionAttributes = new HashMap<String, Object>(6, 1.0f);
         executionAttributes.put(
                 StandardExpressions.STANDARD_VARIABLE_EXPRESSION_EVALUATOR_ATTRIBUTE_NAME, getVariableExpressionEvaluator());
         executionAttributes.put(
@@ -399,6 +453,11 @@ public Map<String, Object> getExecutionAttributes() {
                 StandardSerializers.STANDARD_JAVASCRIPT_SERIALIZER_ATTRIBUTE_NAME, getJavaScriptSerializer());
         executionAttributes.put(
                 StandardSerializers.STANDARD_CSS_SERIALIZER_ATTRIBUTE_NAME, getCSSSerializer());
+        if (this.pureVariableNames != null) {
+            executionAttributes.put(
+                    StandardExpressions.STANDARD_PURE_VARIABLE_NAMES_ATTRIBUTE_NAME,
+                    Collections.unmodifiableSet(new HashSet<String>(this.pureVariableNames)));
+        }
 
         return executionAttributes;
 
@@ -472,6 +531,7 @@ public static Set<IProcessor> createStandardProcessorsSet(final String dialectPr
             processors.add(new StandardRemovableAttributeTagProcessor(dialectPrefix, attrName));
         }
         processors.add(new StandardEachTagProcessor(TemplateMode.HTML, dialectPrefix));
+        processors.add(new StandardFlushTagProcessor(TemplateMode.HTML, dialectPrefix));
         processors.add(new StandardFragmentTagProcessor(TemplateMode.HTML, dialectPrefix));
         processors.add(new StandardHrefTagProcessor(dialectPrefix));
         processors.add(new StandardIfTagProcessor(TemplateMode.HTML, dialectPrefix));
@@ -484,6 +544,7 @@ public static Set<IProcessor> createStandardProcessorsSet(final String dialectPr
             processors.add(new StandardNonRemovableAttributeTagProcessor(dialectPrefix, attrName));
         }
         processors.add(new StandardObjectTagProcessor(TemplateMode.HTML, dialectPrefix));
+        processors.add(new StandardParallelTagProcessor(TemplateMode.HTML, dialectPrefix));
         for (final String attrName : StandardRemovableAttributeTagProcessor.ATTR_NAMES) {
             processors.add(new StandardRemovableAttributeTagProcessor(dialectPrefix, attrName));
         }
@@ -568,12 +629,14 @@ public static Set<IProcessor> createStandardProcessorsSet(final String dialectPr
         processors.add(new StandardAttrprependTagProcessor(TemplateMode.XML, dialectPrefix));
         processors.add(new StandardCaseTagProcessor(TemplateMode.XML, dialectPrefix));
         processors.add(new StandardEachTagProcessor(TemplateMode.XML, dialectPrefix));
+        processors.add(new StandardFlushTagProcessor(TemplateMode.XML, dialectPrefix));
         processors.add(new StandardFragmentTagProcessor(TemplateMode.XML, dialectPrefix));
         processors.add(new StandardIfTagProcessor(TemplateMode.XML, dialectPrefix));
         processors.add(new StandardIncludeTagProcessor(TemplateMode.XML, dialectPrefix));
         processors.add(new StandardInlineXMLTagProcessor(dialectPrefix));
         processors.add(new StandardInsertTagProcessor(TemplateMode.XML, dialectPrefix));
         processors.add(new StandardObjectTagProcessor(TemplateMode.XML, dialectPrefix));
+        processors.add(new StandardParallelTagProcessor(TemplateMode.XML, dialectPrefix));
         processors.add(new StandardRemoveTagProcessor(TemplateMode.XML, dialectPrefix));
         processors.add(new StandardReplaceTagProcessor(TemplateMode.XML, dialectPrefix));
         processors.add(new StandardSubstituteByTagProcessor(TemplateMode.XML, dialectPrefix));
@@ -640,12 +703,14 @@ public static Set<IProcessor> createStandardProcessorsSet(final String dialectPr
         processors.add(new StandardAssertTagProcessor(TemplateMode.TEXT, dialectPrefix));
         processors.add(new StandardCaseTagProcessor(TemplateMode.TEXT, dialectPrefix));
         processors.add(new StandardEachTagProcessor(TemplateMode.TEXT, dialectPrefix));
+        processors.add(new StandardFlushTagProcessor(TemplateMode.TEXT, dialectPrefix));
         // No th:fragment attribute in text modes: no fragment selection available!
         processors.add(new StandardIfTagProcessor(TemplateMode.TEXT, dialectPrefix));
         // No th:include to be added here, as it is already deprecated since 3.0
         processors.add(new StandardInlineTextualTagProcessor(TemplateMode.TEXT, dialectPrefix));
         processors.add(new StandardInsertTagProcessor(TemplateMode.TEXT, dialectPrefix));
         processors.add(new StandardObjectTagProcessor(TemplateMode.TEXT, dialectPrefix));
+        processors.add(new StandardParallelTagProcessor(TemplateMode.TEXT, dialectPrefix));
         processors.add(new StandardRemoveTagProcessor(TemplateMode.TEXT, dialectPrefix));
         processors.add(new StandardReplaceTagProcessor(TemplateMode.TEXT, dialectPrefix));
         // No th:substituteby to be added here, as it is already deprecated since 2.1
@@ -693,12 +758,14 @@ public static Set<IProcessor> createStandardProcessorsSet(final String dialectPr
         processors.add(new StandardAssertTagProcessor(TemplateMode.JAVASCRIPT, dialectPrefix));
         processors.add(new StandardCaseTagProcessor(TemplateMode.JAVASCRIPT, dialectPrefix));
         processors.add(new StandardEachTagProcessor(TemplateMode.JAVASCRIPT, dialectPrefix));
+        processors.add(new StandardFlushTagProcessor(TemplateMode.JAVASCRIPT, dialectPrefix));
         // No th:fragment attribute in text modes: no fragment selection available!
         processors.add(new StandardIfTagProcessor(TemplateMode.JAVASCRIPT, dialectPrefix));
         // No th:include to be added here, as it is already deprecated since 3.0
         processors.add(new StandardInlineTextualTagProcessor(TemplateMode.JAVASCRIPT, dialectPrefix));
         processors.add(new StandardInsertTagProcessor(TemplateMode.JAVASCRIPT, dialectPrefix));
         processors.add(new StandardObjectTagProcessor(TemplateMode.JAVASCRIPT, dialectPrefix));
+        processors.add(new StandardParallelTagProcessor(TemplateMode.JAVASCRIPT, dialectPrefix));
         processors.add(new StandardRemoveTagProcessor(TemplateMode.JAVASCRIPT, dialectPrefix));
         processors.add(new StandardReplaceTagProcessor(TemplateMode.JAVASCRIPT, dialectPrefix));
         // No th:substituteby to be added here, as it is already deprecated since 2.1
@@ -746,12 +813,14 @@ public static Set<IProcessor> createStandardProcessorsSet(final String dialectPr
         processors.add(new StandardAssertTagProcessor(TemplateMode.CSS, dialectPrefix));
         processors.add(new StandardCaseTagProcessor(TemplateMode.CSS, dialectPrefix));
         processors.add(new StandardEachTagProcessor(TemplateMode.CSS, dialectPrefix));
+        processors.add(new StandardFlushTagProcessor(TemplateMode.CSS, dialectPrefix));
         // No th:fragment attribute in text modes: no fragment selection available!
         processors.add(new StandardIfTagProcessor(TemplateMode.CSS, dialectPrefix));
         // No th:include to be added here, as it is already deprecated since 3.0
         processors.add(new StandardInlineTextualTagProcessor(TemplateMode.CSS, dialectPrefix));
         processors.add(new StandardInsertTagProcessor(TemplateMode.CSS, dialectPrefix));
         processors.add(new StandardObjectTagProcessor(TemplateMode.CSS, dialectPrefix));
+        processors.add(new StandardParallelTagProcessor(TemplateMode.CSS, dialectPrefix));
         processors.add(new StandardRemoveTagProcessor(TemplateMode.CSS, dialectPrefix));
         processors.add(new StandardReplaceTagProcessor(TemplateMode.CSS, dialectPrefix));
         // No th:substituteby to be added here, as it is already deprecated since 2.1
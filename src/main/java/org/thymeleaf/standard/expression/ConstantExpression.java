@@ -0,0 +1,90 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2016, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.standard.expression;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.IExpressionContext;
+
+
+/**
+ * <p>
+ *   Constant expression (Thymeleaf Standard Expressions), resulting from folding a subexpression made
+ *   only of literals and operators (e.g. <tt>'a' + 'b'</tt>, <tt>1 + 2</tt> or <tt>true and false</tt>)
+ *   at parsing time.
+ * </p>
+ * <p>
+ *   The string representation of these expressions is that of the folded subexpression, and their value is
+ *   exactly the one the subexpression would have returned (including any internal literal wrapping, so that
+ *   further operations behave in the same way).
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.0.8
+ *
+ */
+public final class ConstantExpression extends SimpleExpression {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConstantExpression.class);
+
+    private static final long serialVersionUID = 2837409163580716274L;
+
+
+    private final String stringRepresentation;
+    private final Object value;
+
+
+
+    ConstantExpression(final String stringRepresentation, final Object value) {
+        super();
+        this.stringRepresentation = stringRepresentation;
+        this.value = value;
+    }
+
+
+
+    public Object getValue() {
+        return this.value;
+    }
+
+
+    @Override
+    public String getStringRepresentation() {
+        return this.stringRepresentation;
+    }
+
+
+
+    static Object executeConstantExpression(
+            final IExpressionContext context,
+            final ConstantExpression expression,
+            final StandardExpressionExecutionContext expContext) {
+
+        if (logger.isTraceEnabled()) {
+            logger.trace("[THYMELEAF][{}] Evaluating constant expression: \"{}\"", TemplateEngine.threadIndex(), expression.getStringRepresentation());
+        }
+
+        return expression.getValue();
+
+    }
+
+}
@@ -0,0 +1,378 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2016, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.standard.expression;
+
+import org.thymeleaf.context.IExpressionContext;
+import org.thymeleaf.util.EvaluationUtils;
+
+
+/**
+ * <p>
+ *   Optimization pass applied on parsed expressions before they are cached, folding subexpressions
+ *   made only of number or boolean literals and operators into {@link ConstantExpression} nodes, resolving
+ *   conditional and default expressions whose result can be statically determined, and removing default
+ *   expressions (<tt>?:</tt>) the queried expression of which can never be null.
+ * </p>
+ * <p>
+ *   Operations on any other literals (e.g. texts being concatenated or compared) are never folded, as
+ *   they might need the conversion service, which might depend on the context of execution.
+ * </p>
+ * <p>
+ *   Folding never changes the result of an expression: constant subexpressions are executed once at
+ *   parsing time exactly as they would be executed at processing time and, if such execution fails (e.g. a
+ *   division by zero), the subexpression is left as is so that the error is raised when executed.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ * @since 3.0.8
+ *
+ */
+final class ExpressionFoldingUtil {
+
+
+
+    static Expression foldExpression(final IExpressionContext context, final Expression expression) {
+        final Expression folded = fold(context, expression);
+        if (folded != expression && folded instanceof ConstantExpression) {
+            // At the root level, no parentheses are needed in the representation of the expression
+            return new ConstantExpression(expression.getStringRepresentation(), ((ConstantExpression) folded).getValue());
+        }
+        return folded;
+    }
+
+
+
+
+    private static Expression fold(final IExpressionContext context, final Expression expression) {
+
+        if (expression instanceof SimpleExpression) {
+            return expression;
+        }
+
+        if (expression instanceof BinaryOperationExpression) {
+            return foldBinaryOperation(context, (BinaryOperationExpression) expression);
+        }
+
+        if (expression instanceof MinusExpression) {
+            final MinusExpression minusExpression = (MinusExpression) expression;
+            final Expression operand = fold(context, minusExpression.getOperand());
+            final Expression folded =
+                    (operand == minusExpression.getOperand()? minusExpression : new MinusExpression(operand));
+            return (isNumberOrBooleanConstant(operand)? executeAsConstant(context, folded) : folded);
+        }
+
+        if (expression instanceof NegationExpression) {
+            final NegationExpression negationExpression = (NegationExpression) expression;
+            final Expression operand = fold(context, negationExpression.getOperand());
+            final Expression folded =
+                    (operand == negationExpression.getOperand()? negationExpression : new NegationExpression(operand));
+            return (isNumberOrBooleanConstant(operand)? executeAsConstant(context, folded) : folded);
+        }
+
+        if (expression instanceof ConditionalExpression) {
+            return foldConditional(context, (ConditionalExpression) expression);
+        }
+
+        if (expression instanceof DefaultExpression) {
+            return foldDefault(context, (DefaultExpression) expression);
+        }
+
+        return expression;
+
+    }
+
+
+
+
+    private static Expression foldBinaryOperation(
+            final IExpressionContext context, final BinaryOperationExpression expression) {
+
+        if (!(expression.getLeft() instanceof Expression) || !(expression.getRight() instanceof Expression)) {
+            return expression;
+        }
+
+        final Expression left = fold(context, (Expression) expression.getLeft());
+        final Expression right = fold(context, (Expression) expression.getRight());
+
+        final Expression folded;
+        if (left == expression.getLeft() && right == expression.getRight()) {
+            folded = expression;
+        } else {
+            folded = createBinaryOperation(expression, left, right);
+            if (folded == null) {
+                // Unknown type of operation, we will not modify it
+                return expression;
+            }
+        }
+
+        // Operations are only executed if all operands are numbers or booleans, as any other values (e.g. texts
+        // being concatenated or compared) might need the conversion service, which might depend on the context
+        if (isNumberOrBooleanConstant(left) && isNumberOrBooleanConstant(right)) {
+            return executeAsConstant(context, folded);
+        }
+
+        return folded;
+
+    }
+
+
+
+
+    private static Expression foldConditional(
+            final IExpressionContext context, final ConditionalExpression expression) {
+
+        final Expression condition = fold(context, expression.getConditionExpression());
+        final Expression thenExpression = fold(context, expression.getThenExpression());
+        final Expression elseExpression = fold(context, expression.getElseExpression());
+
+        if (isConstant(condition)) {
+            final Object conditionValue = executeConstant(context, condition);
+            if (conditionValue != NO_VALUE) {
+                // Conditional expressions unwrap the results of their branches
+                final boolean cond = EvaluationUtils.evaluateAsBoolean(LiteralValue.unwrap(conditionValue));
+                final Expression branch = foldBranch(context, expression, (cond? thenExpression : elseExpression));
+                if (branch != null) {
+                    return branch;
+                }
+            }
+        }
+
+        if (condition == expression.getConditionExpression() &&
+                thenExpression == expression.getThenExpression() &&
+                elseExpression == expression.getElseExpression()) {
+            return expression;
+        }
+        return new ConditionalExpression(condition, thenExpression, elseExpression);
+
+    }
+
+
+
+
+    private static Expression foldDefault(
+            final IExpressionContext context, final DefaultExpression expression) {
+
+        final Expression queriedExpression = fold(context, expression.getQueriedExpression());
+        final Expression defaultExpression = fold(context, expression.getDefaultExpression());
+
+        if (isConstant(queriedExpression)) {
+            final Object queriedValue = executeConstant(context, queriedExpression);
+            if (queriedValue != NO_VALUE) {
+                // Default expressions unwrap the results of their branches
+                final Expression branch =
+                        (queriedValue != null?
+                                new ConstantExpression(representation(expression), LiteralValue.unwrap(queriedValue)) :
+                                foldBranch(context, expression, defaultExpression));
+                if (branch != null) {
+                    return branch;
+                }
+            }
+        } else if (isNeverNull(queriedExpression) && !mightReturnLiteralValue(queriedExpression)) {
+            // The default expression would never be used, and no unwrapping is needed: the queried one is enough
+            return queriedExpression;
+        }
+
+        if (queriedExpression == expression.getQueriedExpression() &&
+                defaultExpression == expression.getDefaultExpression()) {
+            return expression;
+        }
+        return new DefaultExpression(queriedExpression, defaultExpression);
+
+    }
+
+
+
+
+    /*
+     * Computes the replacement for a conditional or default expression, once it is known that its result will
+     * be the one of the specified branch. Returns null if the expression cannot be replaced by its branch.
+     */
+    private static Expression foldBranch(
+            final IExpressionContext context, final Expression expression, final Expression branch) {
+
+        if (isConstant(branch)) {
+            final Object branchValue = executeConstant(context, branch);
+            if (branchValue == NO_VALUE) {
+                return null;
+            }
+            return new ConstantExpression(representation(expression), LiteralValue.unwrap(branchValue));
+        }
+        if (!mightReturnLiteralValue(branch) && !(branch instanceof FragmentExpression)) {
+            // Results of the branch would not be modified by unwrapping, so it can be executed directly. Fragment
+            // expressions are excluded because processors apply specific shortcuts to them when found at the root.
+            return branch;
+        }
+        return null;
+
+    }
+
+
+
+
+    private static Expression createBinaryOperation(
+            final BinaryOperationExpression expression, final Expression left, final Expression right) {
+        if (expression instanceof AdditionExpression) {
+            return new AdditionExpression(left, right);
+        }
+        if (expression instanceof SubtractionExpression) {
+            return new SubtractionExpression(left, right);
+        }
+        if (expression instanceof MultiplicationExpression) {
+            return new MultiplicationExpression(left, right);
+        }
+        if (expression instanceof DivisionExpression) {
+            return new DivisionExpression(left, right);
+        }
+        if (expression instanceof RemainderExpression) {
+            return new RemainderExpression(left, right);
+        }
+        if (expression instanceof AndExpression) {
+            return new AndExpression(left, right);
+        }
+        if (expression instanceof OrExpression) {
+            return new OrExpression(left, right);
+        }
+        if (expression instanceof EqualsExpression) {
+            return new EqualsExpression(left, right);
+        }
+        if (expression instanceof NotEqualsExpression) {
+            return new NotEqualsExpression(left, right);
+        }
+        if (expression instanceof GreaterThanExpression) {
+            return new GreaterThanExpression(left, right);
+        }
+        if (expression instanceof GreaterOrEqualToExpression) {
+            return new GreaterOrEqualToExpression(left, right);
+        }
+        if (expression instanceof LessThanExpression) {
+            return new LessThanExpression(left, right);
+        }
+        if (expression instanceof LessOrEqualToExpression) {
+            return new LessOrEqualToExpression(left, right);
+        }
+        return null;
+    }
+
+
+
+
+    private static boolean isConstant(final Expression expression) {
+        return expression instanceof ConstantExpression ||
+               expression instanceof TextLiteralExpression ||
+               expression instanceof NumberTokenExpression ||
+               expression instanceof BooleanTokenExpression ||
+               expression instanceof NullTokenExpression ||
+               expression instanceof GenericTokenExpression ||
+               expression == VariableExpression.NULL_VALUE; // used as default 'else' in conditional expressions
+    }
+
+
+    private static boolean isNumberOrBooleanConstant(final Expression expression) {
+        if (expression instanceof ConstantExpression) {
+            final Object value = ((ConstantExpression) expression).getValue();
+            return value instanceof Number || value instanceof Boolean;
+        }
+        return expression instanceof NumberTokenExpression ||
+               expression instanceof BooleanTokenExpression;
+    }
+
+
+    private static boolean isNeverNull(final Expression expression) {
+        if (expression instanceof ConstantExpression) {
+            return ((ConstantExpression) expression).getValue() != null;
+        }
+        if (expression instanceof TextLiteralExpression ||
+                expression instanceof NumberTokenExpression ||
+                expression instanceof BooleanTokenExpression ||
+                expression instanceof GenericTokenExpression) {
+            return true;
+        }
+        if (expression instanceof BinaryOperationExpression ||
+                expression instanceof MinusExpression ||
+                expression instanceof NegationExpression) {
+            // Operators either return a (non-null) result or raise an exception
+            return true;
+        }
+        if (expression instanceof ConditionalExpression) {
+            final ConditionalExpression conditionalExpression = (ConditionalExpression) expression;
+            return isNeverNull(conditionalExpression.getThenExpression()) &&
+                    isNeverNull(conditionalExpression.getElseExpression());
+        }
+        if (expression instanceof DefaultExpression) {
+            return isNeverNull(((DefaultExpression) expression).getDefaultExpression());
+        }
+        return false;
+    }
+
+
+    private static boolean mightReturnLiteralValue(final Expression expression) {
+        if (expression instanceof ConstantExpression) {
+            return ((ConstantExpression) expression).getValue() instanceof LiteralValue;
+        }
+        return expression instanceof TextLiteralExpression ||
+               expression instanceof GenericTokenExpression ||
+               expression instanceof AdditionExpression;
+    }
+
+
+
+
+    private static final Object NO_VALUE = new Object();
+
+
+    private static Object executeConstant(final IExpressionContext context, final Expression expression) {
+        if (expression == VariableExpression.NULL_VALUE) {
+            return null;
+        }
+        try {
+            return Expression.execute(
+                    context, expression,
+                    StandardExpressions.getVariableExpressionEvaluator(context.getConfiguration()),
+                    StandardExpressionExecutionContext.NORMAL);
+        } catch (final RuntimeException e) {
+            // Execution failed: the expression will not be folded so that the error happens at processing time
+            return NO_VALUE;
+        }
+    }
+
+
+    private static Expression executeAsConstant(final IExpressionContext context, final Expression expression) {
+        final Object value = executeConstant(context, expression);
+        if (value == NO_VALUE) {
+            return expression;
+        }
+        return new ConstantExpression(representation(expression), value);
+    }
+
+
+    private static String representation(final Expression expression) {
+        // Complex expressions are output between parentheses when they are operands of other expressions
+        return "(" + expression.getStringRepresentation() + ")";
+    }
+
+
+
+
+    private ExpressionFoldingUtil() {
+        super();
+    }
+
+
+}
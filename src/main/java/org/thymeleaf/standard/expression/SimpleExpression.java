@@ -95,6 +95,9 @@ static Object executeSimple(
         if (expression instanceof GenericTokenExpression) {
             return GenericTokenExpression.executeGenericTokenExpression(context, (GenericTokenExpression) expression, expContext);
         }
+        if (expression instanceof ConstantExpression) {
+            return ConstantExpression.executeConstantExpression(context, (ConstantExpression) expression, expContext);
+        }
 
         throw new TemplateProcessingException("Unrecognized simple expression: " + expression.getClass().getName());
         
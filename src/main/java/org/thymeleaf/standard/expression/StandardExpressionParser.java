@@ -125,11 +125,14 @@ static IStandardExpression parseExpression(
             return cachedExpression;
         }
 
-        final Expression expression = Expression.parse(preprocessedInput.trim());
+        final Expression parsedExpression = Expression.parse(preprocessedInput.trim());
         
-        if (expression == null) {
+        if (parsedExpression == null) {
             throw new TemplateProcessingException("Could not parse as expression: \"" + input + "\"");
         }
+
+        // Fold constant subexpressions before caching, so that they are not executed again every time
+        final Expression expression = ExpressionFoldingUtil.foldExpression(context, parsedExpression);
         
         ExpressionCache.putExpressionIntoCache(configuration, preprocessedInput, expression);
 
@@ -19,6 +19,8 @@
  */
 package org.thymeleaf.standard.expression;
 
+import java.util.Set;
+
 import org.thymeleaf.IEngineConfiguration;
 import org.thymeleaf.exceptions.TemplateProcessingException;
 
@@ -59,6 +61,14 @@ public final class StandardExpressions {
      */
     public static final String STANDARD_CONVERSION_SERVICE_ATTRIBUTE_NAME = "StandardConversionService";
 
+    /**
+     * Name used for registering the set of names of <i>pure</i> variables (the results of expressions on which
+     * can be memoized during each template execution) as an <i>execution attribute</i> at the Standard Dialects.
+     *
+     * @since 3.0.8
+     */
+    public static final String STANDARD_PURE_VARIABLE_NAMES_ATTRIBUTE_NAME = "StandardPureVariableNames";
+
 
 
 
@@ -150,4 +160,27 @@ public static IStandardConversionService getConversionService(final IEngineConfi
     }
 
 
+
+    /**
+     * <p>
+     *   Obtain the names of the variables (or expression objects, prefixed with <tt>#</tt>) that have been
+     *   declared as <i>pure</i> at the Standard Dialect being currently used, if any. The results of variable
+     *   expressions navigating these variables will be memoized during each template execution.
+     * </p>
+     *
+     * @param configuration the configuration object for the current template execution environment.
+     * @return the set of pure variable names, or <tt>null</tt> if none have been declared.
+     * @since 3.0.8
+     */
+    @SuppressWarnings("unchecked")
+    public static Set<String> getPureVariableNames(final IEngineConfiguration configuration) {
+        final Object pureVariableNames =
+                configuration.getExecutionAttributes().get(STANDARD_PURE_VARIABLE_NAMES_ATTRIBUTE_NAME);
+        if (pureVariableNames == null || (!(pureVariableNames instanceof Set))) {
+            return null;
+        }
+        return (Set<String>) pureVariableNames;
+    }
+
+
 }
@@ -19,12 +19,15 @@
  */
 package org.thymeleaf.standard.expression;
 
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.AbstractEngineContext;
+import org.thymeleaf.context.ExpressionMemoizationTable;
 import org.thymeleaf.context.IExpressionContext;
 import org.thymeleaf.util.Validate;
 
@@ -53,6 +56,10 @@ public final class VariableExpression extends SimpleExpression implements IStand
     
     static final Expression NULL_VALUE = VariableExpression.parseVariableExpression("${null}");
 
+    // Expressions that merely navigate properties (or call no-arg methods) from a root variable or expression object
+    private static final Pattern MEMOIZABLE_PATTERN =
+        Pattern.compile("^\\s*(#?[A-Za-z_$][A-Za-z0-9_$]*)(\\s*\\.\\s*[A-Za-z_$][A-Za-z0-9_$]*(\\(\\s*\\))?)*\\s*$");
+
 
     
     
@@ -60,6 +67,9 @@ public final class VariableExpression extends SimpleExpression implements IStand
     private final boolean convertToString;
 
     private volatile Object cachedExpression = null;
+
+    // Name of the root variable if this expression is a candidate for memoization, "" if not. Computed lazily.
+    private volatile String memoizationRoot = null;
     
     
     
@@ -116,6 +126,18 @@ public void setCachedExpression(final Object cachedExpression) {
 
 
     
+    private String getMemoizationRoot() {
+        String root = this.memoizationRoot;
+        if (root == null) {
+            final Matcher matcher = MEMOIZABLE_PATTERN.matcher(this.expression);
+            root = (matcher.matches()? matcher.group(1) : "");
+            this.memoizationRoot = root;
+        }
+        return root;
+    }
+
+
+
     @Override
     public String getStringRepresentation() {
         return String.valueOf(SELECTOR) + 
@@ -162,7 +184,38 @@ static Object executeVariableExpression(
         final StandardExpressionExecutionContext evalExpContext =
             (expression.getConvertToString()? expContext.withTypeConversion() : expContext.withoutTypeConversion());
 
-        return expressionEvaluator.evaluate(context, expression, evalExpContext);
+        final Set<String> pureVariableNames = StandardExpressions.getPureVariableNames(context.getConfiguration());
+        if (pureVariableNames == null || !(context instanceof AbstractEngineContext)) {
+            return expressionEvaluator.evaluate(context, expression, evalExpContext);
+        }
+
+        final String root = expression.getMemoizationRoot();
+        if (root.length() == 0 || !pureVariableNames.contains(root)) {
+            return expressionEvaluator.evaluate(context, expression, evalExpContext);
+        }
+
+        // The identity of the root object will tell us whether a memoized result is still valid
+        final Object rootValue;
+        if (root.charAt(0) == '#') {
+            final String expressionObjectName = root.substring(1);
+            if (!context.getConfiguration().getExpressionObjectFactory().isCacheable(expressionObjectName)) {
+                // A new object would be created each time, so memoized results could never be reused
+                return expressionEvaluator.evaluate(context, expression, evalExpContext);
+            }
+            rootValue = context.getExpressionObjects().getObject(expressionObjectName);
+        } else {
+            rootValue = context.getVariable(root);
+        }
+
+        final ExpressionMemoizationTable memoizationTable =
+                ((AbstractEngineContext) context).getExpressionMemoizationTable();
+
+        Object result = memoizationTable.getResult(expression, evalExpContext, rootValue);
+        if (result == ExpressionMemoizationTable.NO_RESULT) {
+            result = expressionEvaluator.evaluate(context, expression, evalExpContext);
+            memoizationTable.putResult(expression, evalExpContext, rootValue, result);
+        }
+        return result;
 
     }
     
@@ -21,11 +21,13 @@
 
 import java.io.Writer;
 import java.util.Map;
+import java.util.Set;
 
 import org.thymeleaf.IEngineConfiguration;
 import org.thymeleaf.context.IEngineContext;
 import org.thymeleaf.context.ITemplateContext;
 import org.thymeleaf.engine.AttributeName;
+import org.thymeleaf.engine.EngineEventUtils;
 import org.thymeleaf.engine.TemplateData;
 import org.thymeleaf.engine.TemplateModel;
 import org.thymeleaf.exceptions.TemplateInputException;
@@ -108,7 +110,7 @@ protected void doProcess(
         /*
          * PARSE AND PROCESS THE FRAGMENT
          */
-        final Object fragmentObj = computeFragment(context, attributeValue);
+        final Object fragmentObj = computeFragment(context, tag, attributeName, attributeValue);
         if (fragmentObj == null) {
 
             // If the Fragment result is null, this is an error. Note a NULL result is not the same as the
@@ -169,7 +171,8 @@ protected void doProcess(
                 if (!StringUtils.isEmptyOrWhitespace(fragmentSignatureSpec)) {
 
                     final FragmentSignature fragmentSignature =
-                            FragmentSignatureUtils.parseFragmentSignature(configuration, fragmentSignatureSpec);
+                            EngineEventUtils.computeAttributeFragmentSignature(
+                                    configuration, fragmentHolderEvent, dialectPrefix, FRAGMENT_ATTR_NAME, fragmentSignatureSpec);
                     if (fragmentSignature != null) {
 
                         // Reshape the fragment parameters into the ones that we will actually use, according to the signature
@@ -340,7 +343,9 @@ protected void doProcess(
     /*
      * This can return a Fragment, NoOpToken (if nothing should be done) or null
      */
-    private static Object computeFragment(final ITemplateContext context, final String input) {
+    private static Object computeFragment(
+            final ITemplateContext context, final IProcessableElementTag tag, final AttributeName attributeName,
+            final String input) {
 
         final IStandardExpressionParser expressionParser = StandardExpressions.getExpressionParser(context.getConfiguration());
 
@@ -377,7 +382,7 @@ private static Object computeFragment(final ITemplateContext context, final Stri
             // of the fragment a failure. The reason we do this here instead of just waiting and seeing if we receive
             // a null and then failing is that, in order to receive such "null", the underlying resolution system would
             // have to execute a (potentially costly) resource.exists() call on the resolved resource.
-            return FragmentExpression.resolveExecutedFragmentExpression(context, executedFragmentExpression, true);
+            return resolveFragment(context, tag, attributeName, executedFragmentExpression);
 
         }
 
@@ -396,8 +401,7 @@ private static Object computeFragment(final ITemplateContext context, final Stri
             final FragmentExpression.ExecutedFragmentExpression executedFragmentExpression =
                     FragmentExpression.createExecutedFragmentExpression(context, (FragmentExpression) fragmentExpression, StandardExpressionExecutionContext.NORMAL);
 
-            fragmentExpressionResult =
-                    FragmentExpression.resolveExecutedFragmentExpression(context, executedFragmentExpression, true);
+            fragmentExpressionResult = resolveFragment(context, tag, attributeName, executedFragmentExpression);
 
         } else {
 
@@ -421,6 +425,50 @@ private static Object computeFragment(final ITemplateContext context, final Stri
 
 
 
+    /*
+     * Resolves the executed fragment expression (failing if it does not exist), first trying the fragment models
+     * cached at the attribute for previously resolved template names and selectors. References to the current
+     * template are always resolved normally, as they depend on the template stack.
+     */
+    private static Fragment resolveFragment(
+            final ITemplateContext context, final IProcessableElementTag tag, final AttributeName attributeName,
+            final FragmentExpression.ExecutedFragmentExpression executedFragmentExpression) {
+
+        if (executedFragmentExpression == FragmentExpression.ExecutedFragmentExpression.EMPTY_EXECUTED_FRAGMENT_EXPRESSION) {
+            return Fragment.EMPTY_FRAGMENT;
+        }
+
+        final String templateName = FragmentExpression.resolveTemplateName(executedFragmentExpression);
+        if (StringUtils.isEmptyOrWhitespace(templateName)) {
+            return FragmentExpression.resolveExecutedFragmentExpression(context, executedFragmentExpression, true);
+        }
+
+        final Set<String> templateSelectors = FragmentExpression.resolveFragments(executedFragmentExpression);
+
+        final TemplateModel cachedFragmentModel =
+                EngineEventUtils.obtainAttributeFragmentModel(context, tag, attributeName, templateName, templateSelectors);
+        if (cachedFragmentModel != null) {
+            return new Fragment(
+                    cachedFragmentModel,
+                    executedFragmentExpression.getFragmentParameters(), executedFragmentExpression.hasSyntheticParameters());
+        }
+
+        // Read before resolving, so that the model is not recorded as valid for caches cleared in the meantime
+        final int cacheGeneration = EngineEventUtils.obtainTemplateCacheGeneration(context);
+        final Fragment fragment =
+                FragmentExpression.resolveExecutedFragmentExpression(context, executedFragmentExpression, true);
+        if (fragment != null) {
+            EngineEventUtils.cacheAttributeFragmentModel(
+                    context, tag, attributeName, cacheGeneration,
+                    templateName, templateSelectors, fragment.getTemplateModel());
+        }
+
+        return fragment;
+
+    }
+
+
+
     static boolean shouldBeWrappedAsFragmentExpression(final String input) {
 
         final int inputLen = input.length();
@@ -21,12 +21,12 @@
 
 import org.thymeleaf.context.ITemplateContext;
 import org.thymeleaf.engine.AttributeName;
+import org.thymeleaf.engine.EngineEventUtils;
 import org.thymeleaf.exceptions.TemplateProcessingException;
 import org.thymeleaf.model.IProcessableElementTag;
 import org.thymeleaf.processor.element.AbstractAttributeTagProcessor;
 import org.thymeleaf.processor.element.IElementTagStructureHandler;
 import org.thymeleaf.standard.expression.Each;
-import org.thymeleaf.standard.expression.EachUtils;
 import org.thymeleaf.standard.expression.IStandardExpression;
 import org.thymeleaf.templatemode.TemplateMode;
 import org.thymeleaf.util.StringUtils;
@@ -56,7 +56,7 @@ protected void doProcess(
             final AttributeName attributeName, final String attributeValue,
             final IElementTagStructureHandler structureHandler) {
 
-        final Each each = EachUtils.parseEach(context, attributeValue);
+        final Each each = EngineEventUtils.computeAttributeEach(context, tag, attributeName, attributeValue);
 
         final IStandardExpression iterVarExpr = each.getIterVar();
         final Object iterVarValue = iterVarExpr.execute(context);
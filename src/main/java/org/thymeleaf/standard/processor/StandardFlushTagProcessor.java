@@ -0,0 +1,87 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2016, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.standard.processor;
+
+import org.thymeleaf.context.ITemplateContext;
+import org.thymeleaf.engine.AttributeName;
+import org.thymeleaf.engine.EngineEventUtils;
+import org.thymeleaf.engine.ElementTagStructureHandler;
+import org.thymeleaf.model.IProcessableElementTag;
+import org.thymeleaf.processor.element.AbstractAttributeTagProcessor;
+import org.thymeleaf.processor.element.IElementTagStructureHandler;
+import org.thymeleaf.standard.expression.IStandardExpression;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.util.EvaluationUtils;
+import org.thymeleaf.util.StringUtils;
+
+/**
+ * <p>
+ *   Processor for the <tt>th:flush</tt> attribute, which flushes all output written so far before the
+ *   element is processed. An (optional) boolean expression can be specified as value, e.g.
+ *   <tt>th:flush="${slowBody}"</tt>, in which case output will only be flushed if it evaluates to true.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.0.8
+ *
+ */
+public final class StandardFlushTagProcessor extends AbstractAttributeTagProcessor {
+
+    // Executed before th:insert and th:each, so that output is flushed before the (possibly slow) element
+    public static final int PRECEDENCE = 50;
+    public static final String ATTR_NAME = "flush";
+
+
+    public StandardFlushTagProcessor(final TemplateMode templateMode, final String dialectPrefix) {
+        super(templateMode, dialectPrefix, null, false, ATTR_NAME, true, PRECEDENCE, true);
+    }
+
+
+
+    @Override
+    protected void doProcess(
+            final ITemplateContext context,
+            final IProcessableElementTag tag,
+            final AttributeName attributeName, final String attributeValue,
+            final IElementTagStructureHandler structureHandler) {
+
+        if (!StringUtils.isEmptyOrWhitespace(attributeValue)) {
+
+            final IStandardExpression expression =
+                    EngineEventUtils.computeAttributeExpression(context, tag, attributeName, attributeValue);
+            final Object value = expression.execute(context);
+
+            if (!EvaluationUtils.evaluateAsBoolean(value)) {
+                return;
+            }
+
+        }
+
+        // Flushing output is not part of the IElementTagStructureHandler interface, so if a different
+        // implementation is being used, this processor will simply do nothing
+        if (structureHandler instanceof ElementTagStructureHandler) {
+            ((ElementTagStructureHandler) structureHandler).flushOutput();
+        }
+
+    }
+
+
+}
@@ -0,0 +1,95 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2016, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.standard.processor;
+
+import org.thymeleaf.context.ITemplateContext;
+import org.thymeleaf.engine.AttributeName;
+import org.thymeleaf.engine.EngineEventUtils;
+import org.thymeleaf.exceptions.TemplateProcessingException;
+import org.thymeleaf.model.IProcessableElementTag;
+import org.thymeleaf.processor.element.AbstractAttributeTagProcessor;
+import org.thymeleaf.processor.element.IElementTagStructureHandler;
+import org.thymeleaf.standard.expression.IStandardExpression;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.util.EvaluationUtils;
+import org.thymeleaf.util.StringUtils;
+
+/**
+ * <p>
+ *   Processor for the <tt>th:parallel</tt> attribute, which allows the <tt>th:each</tt> iteration in the
+ *   same element to be rendered in parallel (if a parallel iteration executor has been configured at the
+ *   template engine). An (optional) boolean expression can be specified as value, e.g.
+ *   <tt>th:parallel="${manyRows}"</tt>, in which case parallel rendering will only be allowed if it
+ *   evaluates to true.
+ * </p>
+ * <p>
+ *   Iterations without this attribute are always rendered serially.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.0.8
+ *
+ */
+public final class StandardParallelTagProcessor extends AbstractAttributeTagProcessor {
+
+    // Executed right before th:each, which is the processor that will check the variable
+    public static final int PRECEDENCE = 190;
+    public static final String ATTR_NAME = "parallel";
+
+    public static final String PARALLEL_VARIABLE_NAME = "%%PARALLEL_ITERATION%%";
+
+
+    public StandardParallelTagProcessor(final TemplateMode templateMode, final String dialectPrefix) {
+        super(templateMode, dialectPrefix, null, false, ATTR_NAME, true, PRECEDENCE, true);
+    }
+
+
+
+    @Override
+    protected void doProcess(
+            final ITemplateContext context,
+            final IProcessableElementTag tag,
+            final AttributeName attributeName, final String attributeValue,
+            final IElementTagStructureHandler structureHandler) {
+
+        if (!tag.hasAttribute(attributeName.getPrefix(), StandardEachTagProcessor.ATTR_NAME)) {
+            final String prefix = (attributeName.isPrefixed()? attributeName.getPrefix() + ":" : "");
+            throw new TemplateProcessingException(
+                    "Attribute \"" + prefix + ATTR_NAME + "\" can only be used in elements also containing " +
+                    "a \"" + prefix + StandardEachTagProcessor.ATTR_NAME + "\" attribute");
+        }
+
+        final boolean parallel;
+        if (StringUtils.isEmptyOrWhitespace(attributeValue)) {
+            parallel = true;
+        } else {
+            final IStandardExpression expression =
+                    EngineEventUtils.computeAttributeExpression(context, tag, attributeName, attributeValue);
+            parallel = EvaluationUtils.evaluateAsBoolean(expression.execute(context));
+        }
+
+        // Always set (even if false) so that any value set at an outer element is never inherited
+        structureHandler.setLocalVariable(PARALLEL_VARIABLE_NAME, Boolean.valueOf(parallel));
+
+    }
+
+
+}
@@ -83,6 +83,20 @@ public abstract class AbstractConfigurableTemplateResolver extends AbstractTempl
      */
     public static final Long DEFAULT_CACHE_TTL_MS = null;
 
+    /**
+     * <p>
+     *   Default value for the resolution cache TTL: null. This means resolution results will not be cached.
+     * </p>
+     */
+    public static final Long DEFAULT_RESOLUTION_CACHE_TTL_MS = null;
+
+    /**
+     * <p>
+     *   Default maximum amount of entries in the resolution cache: {@value}.
+     * </p>
+     */
+    public static final int DEFAULT_RESOLUTION_CACHE_MAX_SIZE = 1000;
+
 
     private String prefix = null;
     private String suffix = null;
@@ -92,6 +106,9 @@ public abstract class AbstractConfigurableTemplateResolver extends AbstractTempl
     private boolean forceTemplateMode = false;
     private boolean cacheable = DEFAULT_CACHEABLE;
     private Long cacheTTLMs = DEFAULT_CACHE_TTL_MS;
+    private Long resolutionCacheTTLMs = DEFAULT_RESOLUTION_CACHE_TTL_MS;
+    private int resolutionCacheMaxSize = DEFAULT_RESOLUTION_CACHE_MAX_SIZE;
+    private volatile TemplateResolutionCache resolutionCache = null;
 
     private final HashMap<String,String> templateAliases = new HashMap<String, String>(8);
     
@@ -445,6 +462,115 @@ public final void setCacheTTLMs(final Long cacheTTLMs) {
         this.cacheTTLMs = cacheTTLMs;
     }
 
+
+    /**
+     * <p>
+     *   Returns the TTL (Time To Live) of the entries in the resolution cache of this resolver, or null
+     *   if resolution results are not cached (the default).
+     * </p>
+     * <p>
+     *   See {@link #setResolutionCacheTTLMs(Long)}.
+     * </p>
+     *
+     * @return the resolution cache TTL.
+     * @since 3.0.8
+     */
+    public final Long getResolutionCacheTTLMs() {
+        return this.resolutionCacheTTLMs;
+    }
+
+
+    /**
+     * <p>
+     *   Sets a new value for the TTL of the entries in the resolution cache of this resolver, or null
+     *   for not caching resolution results (the default).
+     * </p>
+     * <p>
+     *   The resolution cache remembers, for each template name (and owner template, if any), both
+     *   <em>negative</em> results (templates not matching the resolvable patterns or, if
+     *   {@link #setCheckExistence(boolean)} is enabled, whose resources do not exist) and <em>positive</em>
+     *   ones (the resource and template mode). This avoids repeating pattern matching and, most
+     *   importantly, existence checks on resources when several resolvers are chained and templates are
+     *   not cached or not cacheable. Resolutions performed with template resolution attributes are never
+     *   cached.
+     * </p>
+     * <p>
+     *   Note resources created or removed after being resolved will not be noticed by this resolver until
+     *   their entries expire or {@link #clearResolutionCache()} is called. The same applies to changes in
+     *   the configuration of this resolver performed after templates have been resolved.
+     * </p>
+     *
+     * @param resolutionCacheTTLMs the new resolution cache TTL, or null for not caching resolution results.
+     * @since 3.0.8
+     */
+    public final void setResolutionCacheTTLMs(final Long resolutionCacheTTLMs) {
+        Validate.isTrue(
+                resolutionCacheTTLMs == null || resolutionCacheTTLMs.longValue() > 0L,
+                "Resolution cache TTL must be greater than zero");
+        this.resolutionCacheTTLMs = resolutionCacheTTLMs;
+        this.resolutionCache = createResolutionCache();
+    }
+
+
+    /**
+     * <p>
+     *   Returns the maximum amount of entries in the resolution cache of this resolver. See
+     *   {@link #setResolutionCacheTTLMs(Long)}.
+     * </p>
+     *
+     * @return the maximum size of the resolution cache.
+     * @since 3.0.8
+     */
+    public final int getResolutionCacheMaxSize() {
+        return this.resolutionCacheMaxSize;
+    }
+
+
+    /**
+     * <p>
+     *   Sets the maximum amount of entries in the resolution cache of this resolver (default:
+     *   {@value #DEFAULT_RESOLUTION_CACHE_MAX_SIZE}). Once this size is reached, the least recently used
+     *   entry is evicted for every new result cached. See {@link #setResolutionCacheTTLMs(Long)}.
+     * </p>
+     *
+     * @param resolutionCacheMaxSize the maximum size of the resolution cache.
+     * @since 3.0.8
+     */
+    public final void setResolutionCacheMaxSize(final int resolutionCacheMaxSize) {
+        Validate.isTrue(resolutionCacheMaxSize > 0, "Resolution cache max size must be greater than zero");
+        this.resolutionCacheMaxSize = resolutionCacheMaxSize;
+        this.resolutionCache = createResolutionCache();
+    }
+
+
+    /**
+     * <p>
+     *   Removes all the entries in the resolution cache of this resolver, if it is enabled.
+     * </p>
+     *
+     * @since 3.0.8
+     */
+    public final void clearResolutionCache() {
+        final TemplateResolutionCache cache = this.resolutionCache;
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+
+    private TemplateResolutionCache createResolutionCache() {
+        if (this.resolutionCacheTTLMs == null) {
+            return null;
+        }
+        return new TemplateResolutionCache(this.resolutionCacheTTLMs.longValue(), this.resolutionCacheMaxSize);
+    }
+
+
+    @Override
+    final TemplateResolutionCache getResolutionCache() {
+        return this.resolutionCache;
+    }
+
     
     /**
      * <p>
@@ -62,11 +62,19 @@ public abstract class AbstractTemplateResolver implements ITemplateResolver {
      */
     public static final boolean DEFAULT_USE_DECOUPLED_LOGIC = false;
 
+    /**
+     * <p>
+     *   By default, resources will not be minified during parsing.
+     * </p>
+     */
+    public static final boolean DEFAULT_USE_MINIFICATION = false;
+
     
     private String name = this.getClass().getName();
     private Integer order = null;
     private boolean checkExistence = DEFAULT_EXISTENCE_CHECK;
     private boolean useDecoupledLogic = DEFAULT_USE_DECOUPLED_LOGIC;
+    private boolean useMinification = DEFAULT_USE_MINIFICATION;
 
     private final PatternSpec resolvablePatternSpec = new PatternSpec();
     
@@ -338,6 +346,63 @@ public void setUseDecoupledLogic(final boolean useDecoupledLogic) {
 
 
 
+    /**
+     * <p>
+     *   Returns whether the markup of resolved templates should be minified during parsing.
+     * </p>
+     * <p>
+     *   Minification removes whitespace-only texts between block-level elements, collapses runs of whitespace
+     *   inside texts and removes all comments except conditional comments and comments containing inlined
+     *   expressions. The contents of <tt>&lt;pre&gt;</tt>, <tt>&lt;textarea&gt;</tt>, <tt>&lt;script&gt;</tt>,
+     *   <tt>&lt;style&gt;</tt> and <tt>&lt;title&gt;</tt> elements are never modified.
+     * </p>
+     * <p>
+     *   Minification is performed while templates are parsed, so that cached templates are only minified once.
+     *   Note this flag is only applied for the {@link TemplateMode#HTML} template mode.
+     * </p>
+     * <p>
+     *   Default value is <tt>FALSE</tt>.
+     * </p>
+     *
+     * @return <tt>true</tt> if templates should be minified, <tt>false</tt> if not.
+     *
+     * @since 3.0.8
+     *
+     */
+    public final boolean getUseMinification() {
+        return this.useMinification;
+    }
+
+
+    /**
+     * <p>
+     *   Sets whether the markup of resolved templates should be minified during parsing.
+     * </p>
+     * <p>
+     *   Minification removes whitespace-only texts between block-level elements, collapses runs of whitespace
+     *   inside texts and removes all comments except conditional comments and comments containing inlined
+     *   expressions. The contents of <tt>&lt;pre&gt;</tt>, <tt>&lt;textarea&gt;</tt>, <tt>&lt;script&gt;</tt>,
+     *   <tt>&lt;style&gt;</tt> and <tt>&lt;title&gt;</tt> elements are never modified.
+     * </p>
+     * <p>
+     *   Minification is performed while templates are parsed, so that cached templates are only minified once.
+     *   Note this flag is only applied for the {@link TemplateMode#HTML} template mode.
+     * </p>
+     * <p>
+     *   Default value is <tt>FALSE</tt>.
+     * </p>
+     *
+     * @param useMinification <tt>true</tt> if templates should be minified, <tt>false</tt> if not
+     *
+     * @since 3.0.8
+     *
+     */
+    public void setUseMinification(final boolean useMinification) {
+        this.useMinification = useMinification;
+    }
+
+
+
 
     public final TemplateResolution resolveTemplate(
             final IEngineConfiguration configuration,
@@ -349,27 +414,75 @@ public final TemplateResolution resolveTemplate(
         Validate.notNull(template, "Template Name cannot be null");
         // templateResolutionAttributes CAN be null
 
+        // Resolution results can only be cached if they do not depend on template resolution attributes
+        final TemplateResolutionCache resolutionCache =
+                (templateResolutionAttributes == null? getResolutionCache() : null);
+
+        if (resolutionCache != null) {
+            final TemplateResolutionCache.Entry entry = resolutionCache.get(ownerTemplate, template);
+            if (entry != null) {
+                if (!entry.isResolved()) {
+                    return null;
+                }
+                return new TemplateResolution(
+                        entry.templateResource,
+                        this.checkExistence,
+                        entry.templateMode,
+                        this.useDecoupledLogic,
+                        this.useMinification,
+                        (entry.validity != null?
+                                entry.validity : computeValidity(configuration, ownerTemplate, template, templateResolutionAttributes)));
+            }
+        }
+
         if (!computeResolvable(configuration, ownerTemplate, template, templateResolutionAttributes)) {
+            if (resolutionCache != null) {
+                resolutionCache.putNotResolved(ownerTemplate, template);
+            }
             return null;
         }
 
         final ITemplateResource templateResource = computeTemplateResource(configuration, ownerTemplate, template, templateResolutionAttributes);
         if (templateResource == null) {
+            if (resolutionCache != null) {
+                resolutionCache.putNotResolved(ownerTemplate, template);
+            }
             return null;
         }
 
         if (this.checkExistence && !templateResource.exists()) { // will only check if flag set to true
+            if (resolutionCache != null) {
+                resolutionCache.putNotResolved(ownerTemplate, template);
+            }
             return null;
         }
 
+        final TemplateMode templateMode = computeTemplateMode(configuration, ownerTemplate, template, templateResolutionAttributes);
+        final ICacheEntryValidity validity = computeValidity(configuration, ownerTemplate, template, templateResolutionAttributes);
+
+        if (resolutionCache != null) {
+            resolutionCache.putResolved(ownerTemplate, template, templateResource, templateMode, validity);
+        }
+
         return new TemplateResolution(
                 templateResource,
                 this.checkExistence,
-                computeTemplateMode(configuration, ownerTemplate, template, templateResolutionAttributes),
+                templateMode,
                 this.useDecoupledLogic,
-                computeValidity(configuration, ownerTemplate, template, templateResolutionAttributes));
+                this.useMinification,
+                validity);
         
     }
+
+
+
+    /*
+     * Returns the cache of resolution results to be used by this resolver, or null if results should not be
+     * cached (the default). Overridden by AbstractConfigurableTemplateResolver.
+     */
+    TemplateResolutionCache getResolutionCache() {
+        return null;
+    }
     
     
     
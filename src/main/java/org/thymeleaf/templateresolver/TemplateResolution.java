@@ -60,6 +60,7 @@ public final class TemplateResolution {
     private final boolean templateResourceExistenceVerified;
     private final TemplateMode templateMode;
     private final boolean useDecoupledLogic;
+    private final boolean useMinification;
     private final ICacheEntryValidity validity;
 
 
@@ -78,6 +79,17 @@ public TemplateResolution(
             final TemplateMode templateMode,
             final boolean useDecoupledLogic,
             final ICacheEntryValidity validity) {
+        this(templateResource, templateResourceExistenceVerified, templateMode, useDecoupledLogic, false, validity);
+    }
+
+
+    public TemplateResolution(
+            final ITemplateResource templateResource,
+            final boolean templateResourceExistenceVerified,
+            final TemplateMode templateMode,
+            final boolean useDecoupledLogic,
+            final boolean useMinification,
+            final ICacheEntryValidity validity) {
         super();
         Validate.notNull(templateResource, "Template Resource cannot be null");
         Validate.notNull(templateMode, "Template mode cannot be null");
@@ -86,6 +98,7 @@ public TemplateResolution(
         this.templateResourceExistenceVerified = templateResourceExistenceVerified;
         this.templateMode = templateMode;
         this.useDecoupledLogic = useDecoupledLogic;
+        this.useMinification = useMinification;
         this.validity = validity;
     }
 
@@ -167,6 +180,24 @@ public boolean getUseDecoupledLogic() {
     }
 
 
+    /**
+     * <p>
+     *   Returns whether the markup of this template should be minified during parsing (removal of
+     *   insignificant whitespace and comments).
+     * </p>
+     * <p>
+     *   Minification is only applied for the {@link TemplateMode#HTML} template mode, and as it is performed
+     *   during parsing, it only happens once for cached templates.
+     * </p>
+     *
+     * @return whether the template should be minified during parsing.
+     * @since 3.0.8
+     */
+    public boolean getUseMinification() {
+        return this.useMinification;
+    }
+
+
     /**
      * <p>
      *   Returns the template resolution <i>validity</i>.
@@ -0,0 +1,206 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2016, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.templateresolver;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.thymeleaf.cache.AlwaysValidCacheEntryValidity;
+import org.thymeleaf.cache.ICacheEntryValidity;
+import org.thymeleaf.cache.NonCacheableCacheEntryValidity;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresource.ITemplateResource;
+
+/*
+ * Bounded, TTL-based cache of the results of template resolution at a specific template resolver, including
+ * both positive results (resource + template mode, so that pattern matching does not need to be repeated)
+ * and negative ones (templates not resolvable by the resolver, or whose resources do not exist).
+ *
+ * Entries are kept in access order, so that once the maximum size is reached the least recently used one
+ * is evicted to make room for the new one (expired entries are removed whenever they are found).
+ *
+ * @author Daniel Fern&aacute;ndez
+ * @since 3.0.8
+ *
+ */
+final class TemplateResolutionCache {
+
+    private final long ttlMs;
+    private final int maxSize;
+    private final ResolutionMap entries; // guarded by itself
+
+
+
+    TemplateResolutionCache(final long ttlMs, final int maxSize) {
+        super();
+        this.ttlMs = ttlMs;
+        this.maxSize = maxSize;
+        this.entries = new ResolutionMap(maxSize);
+    }
+
+
+
+    Entry get(final String ownerTemplate, final String template) {
+
+        final ResolutionKey key = new ResolutionKey(ownerTemplate, template);
+        synchronized (this.entries) {
+            final Entry entry = this.entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiration < System.currentTimeMillis()) {
+                this.entries.remove(key);
+                return null;
+            }
+            return entry;
+        }
+
+    }
+
+
+    void putResolved(
+            final String ownerTemplate, final String template,
+            final ITemplateResource templateResource, final TemplateMode templateMode,
+            final ICacheEntryValidity validity) {
+        // Only stateless validities can be reused, others (e.g. TTL-based) need to be computed each time
+        final ICacheEntryValidity reusableValidity =
+                (validity instanceof AlwaysValidCacheEntryValidity || validity instanceof NonCacheableCacheEntryValidity?
+                        validity : null);
+        put(ownerTemplate, template, new Entry(this.ttlMs, templateResource, templateMode, reusableValidity));
+    }
+
+
+    void putNotResolved(final String ownerTemplate, final String template) {
+        put(ownerTemplate, template, new Entry(this.ttlMs, null, null, null));
+    }
+
+
+    private void put(final String ownerTemplate, final String template, final Entry entry) {
+        synchronized (this.entries) {
+            // Will evict the least recently used entry if needed
+            this.entries.put(new ResolutionKey(ownerTemplate, template), entry);
+        }
+    }
+
+
+    void clear() {
+        synchronized (this.entries) {
+            this.entries.clear();
+        }
+    }
+
+
+    int size() {
+        synchronized (this.entries) {
+            return this.entries.size();
+        }
+    }
+
+
+
+
+    // Entry has to be qualified in this class, as the simple name would refer to the inherited Map.Entry
+    private static final class ResolutionMap extends LinkedHashMap<ResolutionKey,TemplateResolutionCache.Entry> {
+
+        private static final long serialVersionUID = 2860231491057742L;
+
+        private final int maxSize;
+
+        ResolutionMap(final int maxSize) {
+            super(Math.min(maxSize, 64), 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<ResolutionKey,TemplateResolutionCache.Entry> eldest) {
+            return size() > this.maxSize;
+        }
+
+    }
+
+
+
+
+    static final class Entry {
+
+        private final long expiration;
+        final ITemplateResource templateResource; // null if not resolved
+        final TemplateMode templateMode;
+        final ICacheEntryValidity validity; // null if it needs to be computed for each resolution
+
+        private Entry(
+                final long ttlMs, final ITemplateResource templateResource,
+                final TemplateMode templateMode, final ICacheEntryValidity validity) {
+            super();
+            this.expiration = System.currentTimeMillis() + ttlMs;
+            this.templateResource = templateResource;
+            this.templateMode = templateMode;
+            this.validity = validity;
+        }
+
+        boolean isResolved() {
+            return this.templateResource != null;
+        }
+
+    }
+
+
+
+
+    private static final class ResolutionKey {
+
+        private final String ownerTemplate;
+        private final String template;
+        private final int h;
+
+        ResolutionKey(final String ownerTemplate, final String template) {
+            super();
+            this.ownerTemplate = ownerTemplate;
+            this.template = template;
+            this.h = 31 * (ownerTemplate != null ? ownerTemplate.hashCode() : 0) + template.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ResolutionKey)) {
+                return false;
+            }
+            final ResolutionKey that = (ResolutionKey) o;
+            if (this.h != that.h) {
+                return false;
+            }
+            if (this.ownerTemplate != null ? !this.ownerTemplate.equals(that.ownerTemplate) : that.ownerTemplate != null) {
+                return false;
+            }
+            return this.template.equals(that.template);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.h;
+        }
+
+    }
+
+
+}
@@ -19,16 +19,12 @@
  */
 package org.thymeleaf.templateresource;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.Reader;
 
 import org.thymeleaf.util.ClassLoaderUtils;
-import org.thymeleaf.util.StringUtils;
 import org.thymeleaf.util.Validate;
 
 /**
@@ -130,11 +126,7 @@ public Reader reader() throws IOException {
             throw new FileNotFoundException(String.format("ClassLoader resource \"%s\" could not be resolved", this.path));
         }
 
-        if (!StringUtils.isEmptyOrWhitespace(this.characterEncoding)) {
-            return new BufferedReader(new InputStreamReader(new BufferedInputStream(inputStream), this.characterEncoding));
-        }
-
-        return new BufferedReader(new InputStreamReader(new BufferedInputStream(inputStream)));
+        return TemplateResourceUtils.createReader(inputStream, this.characterEncoding);
 
     }
 
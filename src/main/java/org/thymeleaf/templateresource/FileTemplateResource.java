@@ -19,17 +19,12 @@
  */
 package org.thymeleaf.templateresource;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.Serializable;
 
-import org.thymeleaf.util.StringUtils;
 import org.thymeleaf.util.Validate;
 
 /**
@@ -99,13 +94,7 @@ public String getBaseName() {
 
     public Reader reader() throws IOException {
 
-        final InputStream inputStream = new FileInputStream(this.file);
-
-        if (!StringUtils.isEmptyOrWhitespace(this.characterEncoding)) {
-            return new BufferedReader(new InputStreamReader(new BufferedInputStream(inputStream), this.characterEncoding));
-        }
-
-        return new BufferedReader(new InputStreamReader(new BufferedInputStream(inputStream)));
+        return TemplateResourceUtils.createReader(new FileInputStream(this.file), this.characterEncoding);
 
     }
 
@@ -19,6 +19,27 @@
  */
 package org.thymeleaf.templateresource;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.CharArrayReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+
 import org.thymeleaf.util.StringUtils;
 
 /**
@@ -32,6 +53,13 @@
  */
 final class TemplateResourceUtils {
 
+    /*
+     * Resources up to this size (in bytes) will be read and decoded in bulk, larger ones will be streamed
+     */
+    private static final int MAX_BULK_READ_SIZE = 32 * 1024 * 1024;
+
+    private static final int STREAM_READ_BUFFER_SIZE = 8192;
+
 
 
     static String cleanPath(final String path) {
@@ -148,6 +176,134 @@ static String computeBaseName(final String path) {
 
 
 
+    /*
+     * Creates a reader for the contents of a file. The file channel is read in bulk and its bytes decoded at
+     * once into a single char[], which avoids going through the (small) buffers of a stream decoder. Note memory
+     * mapping is not used because mapped buffers cannot be released before being garbage collected, which would
+     * keep template files locked on some platforms.
+     */
+    static Reader createReader(final FileInputStream inputStream, final String characterEncoding) throws IOException {
+
+        boolean streamed = false;
+        try {
+
+            final FileChannel channel = inputStream.getChannel();
+            final long size = channel.size();
+            if (size > MAX_BULK_READ_SIZE) {
+                final Reader reader = createStreamReader(inputStream, characterEncoding);
+                streamed = true;
+                return reader;
+            }
+
+            final ByteBuffer bytes = ByteBuffer.allocate((int) size);
+            while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+                // Nothing to do, just keep on reading until the file is completely read
+            }
+            bytes.flip();
+
+            return decode(bytes, characterEncoding);
+
+        } finally {
+            // Streamed inputs will be closed along with their readers
+            if (!streamed) {
+                inputStream.close();
+            }
+        }
+
+    }
+
+
+    /*
+     * Creates a reader for the contents of a stream of unknown size (e.g. a class loader resource), reading and
+     * decoding it in bulk unless it turns out to be too large, in which case it is streamed.
+     */
+    static Reader createReader(final InputStream inputStream, final String characterEncoding) throws IOException {
+
+        boolean streamed = false;
+        try {
+
+            // One extra byte so that reaching the end of the input does not need growing the buffer, but never
+            // above the bulk read limit, whatever the stream estimates as available
+            byte[] buffer =
+                    new byte[(int) Math.min(
+                            MAX_BULK_READ_SIZE, Math.max(inputStream.available() + 1L, STREAM_READ_BUFFER_SIZE))];
+            int size = 0;
+            int read;
+            while ((read = inputStream.read(buffer, size, buffer.length - size)) >= 0) {
+                size += read;
+                if (size == buffer.length) {
+                    if (buffer.length >= MAX_BULK_READ_SIZE) {
+                        // Too large: stream what has already been read, followed by the rest of the input
+                        final Reader reader =
+                                createStreamReader(
+                                        new SequenceInputStream(new ByteArrayInputStream(buffer, 0, size), inputStream),
+                                        characterEncoding);
+                        streamed = true;
+                        return reader;
+                    }
+                    final byte[] newBuffer = new byte[Math.min(buffer.length * 2, MAX_BULK_READ_SIZE)];
+                    System.arraycopy(buffer, 0, newBuffer, 0, size);
+                    buffer = newBuffer;
+                }
+            }
+
+            return decode(ByteBuffer.wrap(buffer, 0, size), characterEncoding);
+
+        } finally {
+            // Streamed inputs will be closed along with their readers
+            if (!streamed) {
+                inputStream.close();
+            }
+        }
+
+    }
+
+
+    private static Reader createStreamReader(final InputStream inputStream, final String characterEncoding) throws IOException {
+        if (!StringUtils.isEmptyOrWhitespace(characterEncoding)) {
+            return new BufferedReader(new InputStreamReader(new BufferedInputStream(inputStream), characterEncoding));
+        }
+        return new BufferedReader(new InputStreamReader(new BufferedInputStream(inputStream)));
+    }
+
+
+    private static Reader decode(final ByteBuffer bytes, final String characterEncoding) throws IOException {
+
+        // Same as InputStreamReader, malformed input and unmappable characters are replaced, not reported
+        final CharsetDecoder decoder =
+                computeCharset(characterEncoding).newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        final CharBuffer chars;
+        try {
+            chars = decoder.decode(bytes);
+        } catch (final CharacterCodingException e) {
+            // Should never happen, as coding errors are being replaced
+            throw new IOException("Error decoding template resource contents: " + e.getMessage());
+        }
+
+        return new CharArrayReader(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+
+    }
+
+
+    private static Charset computeCharset(final String characterEncoding) throws UnsupportedEncodingException {
+        if (StringUtils.isEmptyOrWhitespace(characterEncoding)) {
+            return Charset.defaultCharset();
+        }
+        try {
+            return Charset.forName(characterEncoding);
+        } catch (final IllegalCharsetNameException e) {
+            throw new UnsupportedEncodingException(characterEncoding);
+        } catch (final UnsupportedCharsetException e) {
+            throw new UnsupportedEncodingException(characterEncoding);
+        }
+    }
+
+
+
+
     private TemplateResourceUtils() {
         super();
     }
@@ -37,6 +37,7 @@
 import org.thymeleaf.model.IText;
 import org.thymeleaf.model.IXMLDeclaration;
 import org.thymeleaf.postprocessor.IPostProcessor;
+import org.thymeleaf.preprocessor.ICacheablePreProcessor;
 import org.thymeleaf.preprocessor.IPreProcessor;
 import org.thymeleaf.processor.IProcessor;
 import org.thymeleaf.processor.cdatasection.ICDATASectionProcessor;
@@ -279,6 +280,10 @@ public static IPreProcessor wrap(final IPreProcessor preProcessor, final IProces
         if (preProcessor == null) {
             return null;
         }
+        if (preProcessor instanceof ICacheablePreProcessor) {
+            // Wrapping should not hide the fact that the pre-processor is cacheable
+            return new CacheablePreProcessorWrapper(preProcessor, dialect);
+        }
         return new PreProcessorWrapper(preProcessor, dialect);
     }
 
@@ -770,7 +775,7 @@ public void process(final ITemplateContext context, final IXMLDeclaration xmlDec
 
 
 
-    static final class PreProcessorWrapper implements IPreProcessor, IElementDefinitionsAware, IAttributeDefinitionsAware {
+    static class PreProcessorWrapper implements IPreProcessor, IElementDefinitionsAware, IAttributeDefinitionsAware {
 
         private final IProcessorDialect dialect;
         private final IPreProcessor preProcessor;
@@ -824,6 +829,17 @@ public String toString() {
 
 
 
+    static final class CacheablePreProcessorWrapper extends PreProcessorWrapper implements ICacheablePreProcessor {
+
+        CacheablePreProcessorWrapper(final IPreProcessor preProcessor, final IProcessorDialect dialect) {
+            super(preProcessor, dialect);
+        }
+
+    }
+
+
+
+
     static final class PostProcessorWrapper implements IPostProcessor, IElementDefinitionsAware, IAttributeDefinitionsAware {
 
         private final IProcessorDialect dialect;